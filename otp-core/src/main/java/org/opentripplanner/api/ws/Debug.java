@@ -47,8 +47,8 @@ public class Debug { // rename to DebugOutput
         finishedPrecalculating = System.currentTimeMillis();
     }
 
-    /** Record the time when a path was found. */
-    public void foundPath() {
+    /** Record the time when a path was found. Searches of the same request may run in parallel. */
+    public synchronized void foundPath() {
         foundPaths.add(System.currentTimeMillis());
     }
 
@@ -64,7 +64,7 @@ public class Debug { // rename to DebugOutput
     }
     
     /** Summarize and calculate elapsed times. */
-    private void computeSummary() {
+    private synchronized void computeSummary() {
         precalculationTime = finishedPrecalculating - startedCalculating;
         pathCalculationTime = finishedCalculating - finishedPrecalculating;
         long last_t = finishedPrecalculating;
@@ -0,0 +1,104 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.api.ws;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.UriInfo;
+
+import org.opentripplanner.util.monitoring.Histogram;
+import org.opentripplanner.util.monitoring.MetricsRegistry;
+import org.springframework.util.ClassUtils;
+
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+import com.sun.jersey.spi.container.ContainerResponseWriter;
+
+/**
+ * Records the latency of the API requests in a histogram per endpoint, from the start of the
+ * request filters to the end of the response body, so that the time spent serializing a streamed
+ * response is included. The endpoint is the class of the resource which handled the request, or
+ * "none" for the requests answered by a filter, such as the cached responses.
+ *
+ * This is both a request and a response filter, and should be the first of both.
+ */
+public class MetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    static final String METRIC = "otp_http_request_seconds";
+
+    private static final String START_PROPERTY = MetricsFilter.class.getName() + ".start";
+
+    @Context
+    private UriInfo uriInfo;
+
+    @Override
+    public ContainerRequest filter(ContainerRequest request) {
+        request.getProperties().put(START_PROPERTY, System.nanoTime());
+        return request;
+    }
+
+    @Override
+    public ContainerResponse filter(ContainerRequest request, ContainerResponse response) {
+        Long startNanos = (Long) request.getProperties().get(START_PROPERTY);
+        if (startNanos == null)
+            return response;
+        List<Object> resources = uriInfo == null ? null : uriInfo.getMatchedResources();
+        String endpoint = resources == null || resources.isEmpty() ? "none"
+                : ClassUtils.getUserClass(resources.get(0)).getSimpleName();
+        Histogram histogram = MetricsRegistry.getInstance().getHistogram(METRIC,
+                "Time taken by the API requests, including writing the response.",
+                "endpoint", endpoint);
+        response.setContainerResponseWriter(new TimingResponseWriter(
+                response.getContainerResponseWriter(), histogram, startNanos));
+        return response;
+    }
+
+    /** Records the time of a request when its response has been written. */
+    private static class TimingResponseWriter implements ContainerResponseWriter {
+
+        private final ContainerResponseWriter writer;
+
+        private final Histogram histogram;
+
+        private final long startNanos;
+
+        TimingResponseWriter(ContainerResponseWriter writer, Histogram histogram,
+                long startNanos) {
+            this.writer = writer;
+            this.histogram = histogram;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public OutputStream writeStatusAndHeaders(long contentLength, ContainerResponse response)
+                throws IOException {
+            return writer.writeStatusAndHeaders(contentLength, response);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            try {
+                writer.finish();
+            } finally {
+                histogram.recordNanos(System.nanoTime() - startNanos);
+            }
+        }
+    }
+}
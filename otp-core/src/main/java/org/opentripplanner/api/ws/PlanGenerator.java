@@ -31,7 +31,6 @@ import org.opentripplanner.api.model.RelativeDirection;
 import org.opentripplanner.api.model.TripPlan;
 import org.opentripplanner.api.model.WalkStep;
 import org.opentripplanner.common.geometry.DirectionUtils;
-import org.opentripplanner.common.geometry.GeometryUtils;
 import org.opentripplanner.common.geometry.PackedCoordinateSequence;
 import org.opentripplanner.common.model.P2;
 import org.opentripplanner.routing.core.RoutingContext;
@@ -56,6 +55,7 @@ import org.opentripplanner.routing.error.VertexNotFoundException;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.GraphWarmer;
 import org.opentripplanner.routing.patch.Alert;
 import org.opentripplanner.routing.patch.Patch;
 import org.opentripplanner.routing.services.FareService;
@@ -68,6 +68,9 @@ import org.opentripplanner.routing.util.ElevationProfileSegment;
 import org.opentripplanner.routing.vertextype.ExitVertex;
 import org.opentripplanner.routing.vertextype.TransitVertex;
 import org.opentripplanner.util.PolylineEncoder;
+import org.opentripplanner.util.monitoring.MetricsRegistry;
+import org.opentripplanner.util.monitoring.RequestTrace;
+import org.opentripplanner.util.monitoring.RequestTrace.Span;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -101,6 +104,8 @@ public class PlanGenerator {
         /* try to plan the trip */
         List<GraphPath> paths = null;
         boolean tooSloped = false;
+        long startNanos = System.nanoTime();
+        Span pathsSpan = RequestTrace.getCurrent().start("paths");
         try {
             paths = pathService.getPaths(options);
             if (paths == null && options.isWheelchairAccessible()) {
@@ -113,6 +118,9 @@ public class PlanGenerator {
         } catch (VertexNotFoundException e) {
             LOG.info("Vertex not found: " + options.getFrom() + " : " + options.getTo(), e);
             throw e;
+        } finally {
+            pathsSpan.end();
+            recordMetrics(options, System.nanoTime() - startNanos);
         }
         options.rctx.debug.finishedCalculating();
 
@@ -120,26 +128,48 @@ public class PlanGenerator {
             LOG.info("Path not found: " + options.getFrom() + " : " + options.getTo());
             throw new PathNotFoundException();
         }
+        // keep the request to warm up the next graph of this router
+        GraphWarmer warmer = GraphWarmer.getInstance();
+        if (warmer.isEnabled()) {
+            warmer.record(originalOptions);
+        }
 
-        TripPlan plan = generatePlan(paths, originalOptions);
-        if (plan != null) {
-            for (Itinerary i : plan.itinerary) {
-                i.tooSloped = tooSloped;
-                /* fix up from/to on first/last legs */
-                if (i.legs.size() == 0) {
-                    LOG.warn("itinerary has no legs");
-                    continue;
+        Span renderSpan = RequestTrace.getCurrent().start("render");
+        TripPlan plan;
+        try {
+            plan = generatePlan(paths, originalOptions);
+            if (plan != null) {
+                for (Itinerary i : plan.itinerary) {
+                    i.tooSloped = tooSloped;
+                    /* fix up from/to on first/last legs */
+                    if (i.legs.size() == 0) {
+                        LOG.warn("itinerary has no legs");
+                        continue;
+                    }
+                    Leg firstLeg = i.legs.get(0);
+                    firstLeg.from.orig = options.getFrom().getName();
+                    Leg lastLeg = i.legs.get(i.legs.size() - 1);
+                    lastLeg.to.orig = options.getTo().getName();
                 }
-                Leg firstLeg = i.legs.get(0);
-                firstLeg.from.orig = options.getFrom().getName();
-                Leg lastLeg = i.legs.get(i.legs.size() - 1);
-                lastLeg.to.orig = options.getTo().getName();
             }
+        } finally {
+            renderSpan.end();
         }
         options.rctx.debug.finishedRendering();
         return plan;
     }
 
+    /** Add the time and the work of the searches of a request to the metrics of the service. */
+    private void recordMetrics(RoutingRequest options, long nanos) {
+        String service = pathService.getClass().getSimpleName();
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.getHistogram("otp_path_service_seconds", "Time taken by the path services.",
+                "service", service).recordNanos(nanos);
+        if (options.rctx != null) {
+            options.rctx.counters.recordTo(metrics, service);
+        }
+    }
+
     /**
      * Generates a TripPlan from a set of paths
      */
@@ -251,30 +281,6 @@ public class PlanGenerator {
         return calendar;
     }
 
-    /**
-     * Generate a {@link CoordinateArrayListSequence} based on an {@link Edge} array.
-     *
-     * @param edges The array of input edges
-     * @return The coordinates of the points on the edges
-     */
-    private CoordinateArrayListSequence makeCoordinates(Edge[] edges) {
-        CoordinateArrayListSequence coordinates = new CoordinateArrayListSequence();
-
-        for (Edge edge : edges) {
-            LineString geometry = edge.getGeometry();
-
-            if (geometry != null) {
-                if (coordinates.size() == 0) {
-                    coordinates.extend(geometry.getCoordinates());
-                } else {
-                    coordinates.extend(geometry.getCoordinates(), 1); // Avoid duplications
-                }
-            }
-        }
-
-        return coordinates;
-    }
-
     /**
      * Slice a {@link State} array at the leg boundaries. Leg switches occur when:
      * 1. A LEG_SWITCH mode (which itself isn't part of any leg) is seen
@@ -350,11 +356,16 @@ public class PlanGenerator {
         leg.startTime = makeCalendar(states[0]);
         leg.endTime = makeCalendar(states[states.length - 1]);
 
-        // Calculate leg distance and fill array of edges
+        // Calculate leg distance, fill array of edges and collect their geometries
+        List<LineString> geometries = new ArrayList<LineString>(edges.length);
         leg.distance = 0.0;
         for (int i = 0; i < edges.length; i++) {
             edges[i] = states[i + 1].getBackEdge();
             leg.distance += edges[i].getDistance();
+            LineString geometry = edges[i].getGeometry();
+            if (geometry != null) {
+                geometries.add(geometry);
+            }
         }
 
         addModeAndAlerts(leg, states);
@@ -368,10 +379,7 @@ public class PlanGenerator {
 
         if (leg.isTransitLeg()) addRealTimeData(leg, states);
 
-        CoordinateArrayListSequence coordinates = makeCoordinates(edges);
-        Geometry geometry = GeometryUtils.getGeometryFactory().createLineString(coordinates);
-
-        leg.legGeometry = PolylineEncoder.createEncodings(geometry);
+        leg.legGeometry = PolylineEncoder.createJoinedEncodings(geometries);
 
         leg.interlineWithPreviousLeg = states[0].getBackEdge() instanceof PatternInterlineDwell;
 
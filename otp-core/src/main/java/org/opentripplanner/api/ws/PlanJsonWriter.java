@@ -0,0 +1,284 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.api.ws;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Calendar;
+import java.util.Map;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import org.opentripplanner.api.model.ElevationAdapter;
+import org.opentripplanner.api.model.Itinerary;
+import org.opentripplanner.api.model.Leg;
+import org.opentripplanner.api.model.Place;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.api.model.WalkStep;
+import org.opentripplanner.model.json_serialization.SerializerUtils;
+import org.opentripplanner.util.model.EncodedPolylineBean;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writes planner responses as JSON straight to the output stream. The itineraries, legs and walk
+ * steps, which make up most of a response, are written field by field with a streaming generator
+ * instead of going through the bean introspection of the generic JSON provider. The small objects
+ * whose JSON depends on their annotations (places, fares, alerts, errors) are handed to the same
+ * ObjectMapper configuration as the other JSON serializers.
+ *
+ * The output is the same as that of the generic provider: null fields are left out, times are in
+ * milliseconds since the epoch and walk step elevations are in the string form of
+ * {@link ElevationAdapter}.
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class PlanJsonWriter implements MessageBodyWriter<Response> {
+
+    private static final ObjectMapper MAPPER = SerializerUtils.getMapper();
+
+    private static final JsonFactory FACTORY = MAPPER.getJsonFactory();
+
+    private static final ElevationAdapter ELEVATION_ADAPTER = new ElevationAdapter();
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations,
+            MediaType mediaType) {
+        return Response.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(Response response, Class<?> type, Type genericType,
+            Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(Response response, Class<?> type, Type genericType,
+            Annotation[] annotations, MediaType mediaType,
+            MultivaluedMap<String, Object> httpHeaders, OutputStream out) throws IOException,
+            WebApplicationException {
+        write(response, out);
+    }
+
+    /** Write a response to a stream, as UTF-8 JSON. The stream is not closed. */
+    public static void write(Response response, OutputStream out) throws IOException {
+        JsonGenerator gen = FACTORY.createJsonGenerator(out, JsonEncoding.UTF8);
+        gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        gen.writeStartObject();
+        Map<String, String> requestParameters = response.getRequestParameters();
+        if (requestParameters != null) {
+            gen.writeObjectFieldStart("requestParameters");
+            for (Map.Entry<String, String> entry : requestParameters.entrySet()) {
+                gen.writeStringField(entry.getKey(), entry.getValue());
+            }
+            gen.writeEndObject();
+        }
+        if (response.getPlan() != null) {
+            gen.writeFieldName("plan");
+            writePlan(gen, response.getPlan());
+        }
+        writeObject(gen, "error", response.getError());
+        writeObject(gen, "debug", response.debug);
+        gen.writeEndObject();
+        gen.flush();
+    }
+
+    private static void writePlan(JsonGenerator gen, TripPlan plan) throws IOException {
+        gen.writeStartObject();
+        if (plan.date != null) {
+            gen.writeNumberField("date", plan.date.getTime());
+        }
+        writeObject(gen, "from", plan.from);
+        writeObject(gen, "to", plan.to);
+        if (plan.itinerary != null) {
+            gen.writeArrayFieldStart("itineraries");
+            for (Itinerary itinerary : plan.itinerary) {
+                writeItinerary(gen, itinerary);
+            }
+            gen.writeEndArray();
+        }
+        gen.writeEndObject();
+    }
+
+    private static void writeItinerary(JsonGenerator gen, Itinerary itinerary) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("duration", itinerary.duration);
+        writeTime(gen, "startTime", itinerary.startTime);
+        writeTime(gen, "endTime", itinerary.endTime);
+        gen.writeNumberField("walkTime", itinerary.walkTime);
+        gen.writeNumberField("transitTime", itinerary.transitTime);
+        gen.writeNumberField("waitingTime", itinerary.waitingTime);
+        writeNumber(gen, "walkDistance", itinerary.walkDistance);
+        gen.writeBooleanField("walkLimitExceeded", itinerary.walkLimitExceeded);
+        writeNumber(gen, "elevationLost", itinerary.elevationLost);
+        writeNumber(gen, "elevationGained", itinerary.elevationGained);
+        writeNumber(gen, "transfers", itinerary.transfers);
+        writeObject(gen, "fare", itinerary.fare);
+        if (itinerary.legs != null) {
+            gen.writeArrayFieldStart("legs");
+            for (Leg leg : itinerary.legs) {
+                writeLeg(gen, leg);
+            }
+            gen.writeEndArray();
+        }
+        gen.writeBooleanField("tooSloped", itinerary.tooSloped);
+        gen.writeEndObject();
+    }
+
+    private static void writeLeg(JsonGenerator gen, Leg leg) throws IOException {
+        gen.writeStartObject();
+        writeTime(gen, "startTime", leg.startTime);
+        writeTime(gen, "endTime", leg.endTime);
+        gen.writeNumberField("departureDelay", leg.departureDelay);
+        gen.writeNumberField("arrivalDelay", leg.arrivalDelay);
+        writeBoolean(gen, "realTime", leg.realTime);
+        writeNumber(gen, "distance", leg.distance);
+        writeString(gen, "mode", leg.mode);
+        writeString(gen, "route", leg.route);
+        writeString(gen, "agencyName", leg.agencyName);
+        writeString(gen, "agencyUrl", leg.agencyUrl);
+        gen.writeNumberField("agencyTimeZoneOffset", leg.agencyTimeZoneOffset);
+        writeString(gen, "routeColor", leg.routeColor);
+        writeNumber(gen, "routeType", leg.routeType);
+        writeString(gen, "routeId", leg.routeId);
+        writeString(gen, "routeTextColor", leg.routeTextColor);
+        writeBoolean(gen, "interlineWithPreviousLeg", leg.interlineWithPreviousLeg);
+        writeString(gen, "tripShortName", leg.tripShortName);
+        writeString(gen, "tripBlockId", leg.tripBlockId);
+        writeString(gen, "headsign", leg.headsign);
+        writeString(gen, "agencyId", leg.agencyId);
+        writeString(gen, "tripId", leg.tripId);
+        writeString(gen, "serviceDate", leg.serviceDate);
+        writeObject(gen, "from", leg.from);
+        writeObject(gen, "to", leg.to);
+        if (leg.stop != null) {
+            gen.writeArrayFieldStart("intermediateStops");
+            for (Place place : leg.stop) {
+                gen.writeObject(place);
+            }
+            gen.writeEndArray();
+        }
+        if (leg.legGeometry != null) {
+            EncodedPolylineBean polyline = leg.legGeometry;
+            gen.writeObjectFieldStart("legGeometry");
+            writeString(gen, "points", polyline.getPoints());
+            writeString(gen, "levels", polyline.getLevels());
+            gen.writeNumberField("length", polyline.getLength());
+            gen.writeEndObject();
+        }
+        if (leg.walkSteps != null) {
+            gen.writeArrayFieldStart("steps");
+            for (WalkStep step : leg.walkSteps) {
+                writeWalkStep(gen, step);
+            }
+            gen.writeEndArray();
+        }
+        writeObject(gen, "notes", leg.notes);
+        writeObject(gen, "alerts", leg.alerts);
+        writeString(gen, "routeShortName", leg.routeShortName);
+        writeString(gen, "routeLongName", leg.routeLongName);
+        writeString(gen, "boardRule", leg.boardRule);
+        writeString(gen, "alightRule", leg.alightRule);
+        writeBoolean(gen, "rentedBike", leg.rentedBike);
+        if (leg.startTime != null && leg.endTime != null) {
+            gen.writeNumberField("duration", leg.getDuration());
+        }
+        gen.writeEndObject();
+    }
+
+    private static void writeWalkStep(JsonGenerator gen, WalkStep step) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("distance", step.distance);
+        if (step.relativeDirection != null) {
+            gen.writeStringField("relativeDirection", step.relativeDirection.name());
+        }
+        writeString(gen, "streetName", step.streetName);
+        if (step.absoluteDirection != null) {
+            gen.writeStringField("absoluteDirection", step.absoluteDirection.name());
+        }
+        writeString(gen, "exit", step.exit);
+        writeBoolean(gen, "stayOn", step.stayOn);
+        writeBoolean(gen, "area", step.area);
+        writeBoolean(gen, "bogusName", step.bogusName);
+        gen.writeNumberField("lon", step.lon);
+        gen.writeNumberField("lat", step.lat);
+        if (step.elevation != null) {
+            try {
+                writeString(gen, "elevation", ELEVATION_ADAPTER.marshal(step.elevation));
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+        writeObject(gen, "alerts", step.alerts);
+        gen.writeEndObject();
+    }
+
+    private static void writeTime(JsonGenerator gen, String name, Calendar time)
+            throws IOException {
+        if (time != null) {
+            gen.writeNumberField(name, time.getTimeInMillis());
+        }
+    }
+
+    private static void writeString(JsonGenerator gen, String name, String value)
+            throws IOException {
+        if (value != null) {
+            gen.writeStringField(name, value);
+        }
+    }
+
+    private static void writeBoolean(JsonGenerator gen, String name, Boolean value)
+            throws IOException {
+        if (value != null) {
+            gen.writeBooleanField(name, value);
+        }
+    }
+
+    private static void writeNumber(JsonGenerator gen, String name, Double value)
+            throws IOException {
+        if (value != null) {
+            gen.writeNumberField(name, value);
+        }
+    }
+
+    private static void writeNumber(JsonGenerator gen, String name, Integer value)
+            throws IOException {
+        if (value != null) {
+            gen.writeNumberField(name, value);
+        }
+    }
+
+    private static void writeObject(JsonGenerator gen, String name, Object value)
+            throws IOException {
+        if (value != null) {
+            gen.writeObjectField(name, value);
+        }
+    }
+
+    /** @return the mapper for the objects that are not written field by field. */
+    static ObjectMapper getMapper() {
+        return MAPPER;
+    }
+}
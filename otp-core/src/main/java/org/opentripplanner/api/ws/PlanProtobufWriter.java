@@ -0,0 +1,347 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.api.ws;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import org.opentripplanner.api.model.Itinerary;
+import org.opentripplanner.api.model.Leg;
+import org.opentripplanner.api.model.Note;
+import org.opentripplanner.api.model.Place;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.api.model.WalkStep;
+import org.opentripplanner.api.model.error.PlannerError;
+import org.opentripplanner.common.model.P2;
+import org.opentripplanner.routing.core.Fare;
+import org.opentripplanner.routing.core.Fare.FareType;
+import org.opentripplanner.routing.core.Money;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Writes planner responses in the protocol buffer format described by plan.proto (in the
+ * resources next to this class), for clients which send an Accept header of
+ * {@value #MEDIA_TYPE}. This is much smaller than the JSON or XML of the same response, and
+ * cheaper to produce and to parse: the times are numbers, the directions are enums and the
+ * elevation profiles are packed arrays of doubles.
+ *
+ * The messages are written with the protobuf runtime directly rather than with generated classes,
+ * so that the response is not copied into another object tree first. Each nested message is
+ * encoded into a buffer to find its length, which is written before it.
+ */
+@Provider
+@Produces(PlanProtobufWriter.MEDIA_TYPE)
+public class PlanProtobufWriter implements MessageBodyWriter<Response> {
+
+    public static final String MEDIA_TYPE = "application/x-protobuf";
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations,
+            MediaType mediaType) {
+        return Response.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(Response response, Class<?> type, Type genericType,
+            Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(Response response, Class<?> type, Type genericType,
+            Annotation[] annotations, MediaType mediaType,
+            MultivaluedMap<String, Object> httpHeaders, OutputStream out) throws IOException,
+            WebApplicationException {
+        write(response, out);
+    }
+
+    /** Write a response to a stream as a Response message. The stream is not closed. */
+    public static void write(Response response, OutputStream out) throws IOException {
+        CodedOutputStream cos = CodedOutputStream.newInstance(out);
+        Map<String, String> requestParameters = response.getRequestParameters();
+        if (requestParameters != null) {
+            for (Map.Entry<String, String> entry : requestParameters.entrySet()) {
+                Message parameter = new Message();
+                parameter.out.writeString(1, entry.getKey());
+                parameter.out.writeString(2, entry.getValue());
+                parameter.writeTo(cos, 1);
+            }
+        }
+        if (response.getPlan() != null) {
+            encodePlan(response.getPlan()).writeTo(cos, 2);
+        }
+        if (response.getError() != null) {
+            encodeError(response.getError()).writeTo(cos, 3);
+        }
+        cos.flush();
+    }
+
+    private static Message encodeError(PlannerError error) throws IOException {
+        Message message = new Message();
+        message.out.writeInt32(1, error.getId());
+        writeString(message.out, 2, error.getMsg());
+        if (error.getMissing() != null) {
+            for (String missing : error.getMissing()) {
+                writeString(message.out, 3, missing);
+            }
+        }
+        message.out.writeBool(4, error.getNoPath());
+        return message;
+    }
+
+    private static Message encodePlan(TripPlan plan) throws IOException {
+        Message message = new Message();
+        if (plan.date != null) {
+            message.out.writeInt64(1, plan.date.getTime());
+        }
+        writePlace(message.out, 2, plan.from);
+        writePlace(message.out, 3, plan.to);
+        if (plan.itinerary != null) {
+            for (Itinerary itinerary : plan.itinerary) {
+                encodeItinerary(itinerary).writeTo(message.out, 4);
+            }
+        }
+        return message;
+    }
+
+    private static Message encodeItinerary(Itinerary itinerary) throws IOException {
+        Message message = new Message();
+        CodedOutputStream out = message.out;
+        out.writeInt64(1, itinerary.duration);
+        writeTime(out, 2, itinerary.startTime);
+        writeTime(out, 3, itinerary.endTime);
+        out.writeInt64(4, itinerary.walkTime);
+        out.writeInt64(5, itinerary.transitTime);
+        out.writeInt64(6, itinerary.waitingTime);
+        writeDouble(out, 7, itinerary.walkDistance);
+        out.writeBool(8, itinerary.walkLimitExceeded);
+        writeDouble(out, 9, itinerary.elevationLost);
+        writeDouble(out, 10, itinerary.elevationGained);
+        if (itinerary.transfers != null) {
+            out.writeInt32(11, itinerary.transfers);
+        }
+        writeFares(out, 12, itinerary.fare);
+        if (itinerary.legs != null) {
+            for (Leg leg : itinerary.legs) {
+                encodeLeg(leg).writeTo(out, 13);
+            }
+        }
+        out.writeBool(14, itinerary.tooSloped);
+        return message;
+    }
+
+    private static Message encodeLeg(Leg leg) throws IOException {
+        Message message = new Message();
+        CodedOutputStream out = message.out;
+        writeTime(out, 1, leg.startTime);
+        writeTime(out, 2, leg.endTime);
+        out.writeInt32(3, leg.departureDelay);
+        out.writeInt32(4, leg.arrivalDelay);
+        writeBool(out, 5, leg.realTime);
+        writeDouble(out, 6, leg.distance);
+        writeString(out, 7, leg.mode);
+        writeString(out, 8, leg.route);
+        writeString(out, 9, leg.agencyName);
+        writeString(out, 10, leg.agencyUrl);
+        out.writeInt32(11, leg.agencyTimeZoneOffset);
+        writeString(out, 12, leg.routeColor);
+        if (leg.routeType != null) {
+            out.writeInt32(13, leg.routeType);
+        }
+        writeString(out, 14, leg.routeId);
+        writeString(out, 15, leg.routeTextColor);
+        writeBool(out, 16, leg.interlineWithPreviousLeg);
+        writeString(out, 17, leg.tripShortName);
+        writeString(out, 18, leg.tripBlockId);
+        writeString(out, 19, leg.headsign);
+        writeString(out, 20, leg.agencyId);
+        writeString(out, 21, leg.tripId);
+        writeString(out, 22, leg.serviceDate);
+        writePlace(out, 23, leg.from);
+        writePlace(out, 24, leg.to);
+        if (leg.stop != null) {
+            for (Place place : leg.stop) {
+                writePlace(out, 25, place);
+            }
+        }
+        if (leg.legGeometry != null) {
+            writeString(out, 26, leg.legGeometry.getPoints());
+        }
+        if (leg.walkSteps != null) {
+            for (WalkStep step : leg.walkSteps) {
+                encodeWalkStep(step).writeTo(out, 27);
+            }
+        }
+        if (leg.notes != null) {
+            for (Note note : leg.notes) {
+                writeString(out, 28, note.text);
+            }
+        }
+        writeString(out, 29, leg.routeShortName);
+        writeString(out, 30, leg.routeLongName);
+        writeString(out, 31, leg.boardRule);
+        writeString(out, 32, leg.alightRule);
+        writeBool(out, 33, leg.rentedBike);
+        return message;
+    }
+
+    private static Message encodeWalkStep(WalkStep step) throws IOException {
+        Message message = new Message();
+        CodedOutputStream out = message.out;
+        out.writeDouble(1, step.distance);
+        if (step.relativeDirection != null) {
+            out.writeEnum(2, step.relativeDirection.ordinal());
+        }
+        writeString(out, 3, step.streetName);
+        if (step.absoluteDirection != null) {
+            out.writeEnum(4, step.absoluteDirection.ordinal());
+        }
+        writeString(out, 5, step.exit);
+        writeBool(out, 6, step.stayOn);
+        writeBool(out, 7, step.area);
+        writeBool(out, 8, step.bogusName);
+        out.writeDouble(9, step.lon);
+        out.writeDouble(10, step.lat);
+        List<P2<Double>> elevation = step.elevation;
+        if (elevation != null && !elevation.isEmpty()) {
+            // packed, alternating distance and elevation
+            out.writeTag(11, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            out.writeRawVarint32(elevation.size() * 2 * 8);
+            for (P2<Double> point : elevation) {
+                out.writeDoubleNoTag(point.getFirst());
+                out.writeDoubleNoTag(point.getSecond());
+            }
+        }
+        return message;
+    }
+
+    private static void writePlace(CodedOutputStream parent, int field, Place place)
+            throws IOException {
+        if (place == null)
+            return;
+        Message message = new Message();
+        CodedOutputStream out = message.out;
+        writeString(out, 1, place.name);
+        if (place.stopId != null) {
+            writeString(out, 2, place.stopId.getAgencyId());
+            writeString(out, 3, place.stopId.getId());
+        }
+        writeString(out, 4, place.stopCode);
+        writeString(out, 5, place.platformCode);
+        writeDouble(out, 6, place.lon);
+        writeDouble(out, 7, place.lat);
+        writeTime(out, 8, place.arrival);
+        writeTime(out, 9, place.departure);
+        writeString(out, 10, place.orig);
+        writeString(out, 11, place.zoneId);
+        if (place.stopIndex != null) {
+            out.writeInt32(12, place.stopIndex);
+        }
+        message.writeTo(parent, field);
+    }
+
+    private static void writeFares(CodedOutputStream parent, int field, Fare fare)
+            throws IOException {
+        if (fare == null || fare.fare == null)
+            return;
+        for (Map.Entry<FareType, Money> entry : fare.fare.entrySet()) {
+            Message message = new Message();
+            Money money = entry.getValue();
+            message.out.writeString(1, entry.getKey().name());
+            if (money.getCurrency() != null) {
+                writeString(message.out, 2, money.getCurrency().getCurrencyCode());
+            }
+            message.out.writeInt32(3, money.getCents());
+            message.writeTo(parent, field);
+        }
+    }
+
+    private static void writeTime(CodedOutputStream out, int field, Calendar time)
+            throws IOException {
+        if (time != null) {
+            out.writeInt64(field, time.getTimeInMillis());
+        }
+    }
+
+    private static void writeString(CodedOutputStream out, int field, String value)
+            throws IOException {
+        if (value != null) {
+            out.writeString(field, value);
+        }
+    }
+
+    private static void writeBool(CodedOutputStream out, int field, Boolean value)
+            throws IOException {
+        if (value != null) {
+            out.writeBool(field, value);
+        }
+    }
+
+    private static void writeDouble(CodedOutputStream out, int field, Double value)
+            throws IOException {
+        if (value != null) {
+            out.writeDouble(field, value);
+        }
+    }
+
+    /** A nested message, encoded into a buffer so that its length is known. */
+    private static class Message {
+
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        final CodedOutputStream out = CodedOutputStream.newInstance(buffer);
+
+        void writeTo(CodedOutputStream parent, int field) throws IOException {
+            out.flush();
+            parent.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            parent.writeRawVarint32(buffer.size());
+            buffer.writeTo(new CodedOutputStreamAdapter(parent));
+        }
+    }
+
+    /** Lets a buffer be copied into a CodedOutputStream without copying it to an array first. */
+    private static class CodedOutputStreamAdapter extends OutputStream {
+
+        private final CodedOutputStream out;
+
+        CodedOutputStreamAdapter(CodedOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.writeRawByte(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.writeRawBytes(b, off, len);
+        }
+    }
+}
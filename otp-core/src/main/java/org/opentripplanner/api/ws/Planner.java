@@ -27,6 +27,8 @@ import org.opentripplanner.api.common.RoutingResource;
 import org.opentripplanner.api.model.TripPlan;
 import org.opentripplanner.api.model.error.PlannerError;
 import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.util.monitoring.RequestTrace;
+import org.opentripplanner.util.monitoring.RequestTracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,8 +45,9 @@ import com.sun.jersey.api.spring.Autowire;
  * Some parameters may not be honored by the trip planner for some or all itineraries. For
  * example, maxWalkDistance may be relaxed if the alternative is to not provide a route.
  * 
- * @return Returns either an XML or a JSON document, depending on the HTTP Accept header of the
- *         client making the request.
+ * @return Returns either an XML or a JSON document, or a protocol buffer message (see
+ *         {@link PlanProtobufWriter}), depending on the HTTP Accept header of the client making
+ *         the request.
  * 
  * @throws JSONException
  */
@@ -80,6 +83,8 @@ public class Planner extends RoutingResource {
         // create response object, containing a copy of all request parameters
         Response response = new Response(uriInfo);
         RoutingRequest request = null;
+        RequestTrace trace = RequestTracer.getInstance().startTrace("plan");
+        RequestTrace.setCurrent(trace);
         try {
             // fill in request from query parameters via shared superclass method
             request = super.buildRequest();
@@ -90,16 +95,20 @@ public class Planner extends RoutingResource {
             e.printStackTrace();
             response.setError(error);
         } finally {
+            RequestTrace.setCurrent(null);
             if (request != null) {
                 response.debug = request.rctx.debug;
+                request.rctx.counters.recordTo(trace);
                 request.cleanup(); // TODO verify that this is being done on Analyst web services
             }       
+            RequestTracer.getInstance().finish(trace);
         }
         return response;
     }
 
     @GET
-    @Produces( { MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_XML })
+    @Produces( { MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_XML,
+            PlanProtobufWriter.MEDIA_TYPE })
     public Response getItineraries() throws JSONException {
         return wrapGenerate(new OneArgFunc<TripPlan, RoutingRequest>() {
             public TripPlan call(RoutingRequest request) {
@@ -109,7 +118,8 @@ public class Planner extends RoutingResource {
 
     @GET
     @Path("/first")
-    @Produces( { MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_XML })
+    @Produces( { MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_XML,
+            PlanProtobufWriter.MEDIA_TYPE })
     public Response getFirstTrip() throws JSONException {
 
         return wrapGenerate(new OneArgFunc<TripPlan, RoutingRequest>() {
@@ -120,7 +130,8 @@ public class Planner extends RoutingResource {
 
     @GET
     @Path("/last")
-    @Produces( { MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_XML })
+    @Produces( { MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_XML,
+            PlanProtobufWriter.MEDIA_TYPE })
     public Response getLastTrip() throws JSONException {
 
         return wrapGenerate(new OneArgFunc<TripPlan, RoutingRequest>() {
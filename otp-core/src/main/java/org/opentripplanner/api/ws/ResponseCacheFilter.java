@@ -0,0 +1,283 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.api.ws;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+
+import lombok.Setter;
+
+import org.opentripplanner.routing.edgetype.TimetableResolver;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.services.GraphService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+import com.sun.jersey.spi.container.ContainerResponseWriter;
+
+/**
+ * Caches the serialized responses of the GET endpoints whose output only depends on the graph:
+ * the transit index listings, the metadata and the routers. The cache is keyed by endpoint,
+ * router id, query parameters and Accept header, and each entry is valid for one version of its
+ * graph. The version changes when a graph is loaded or reloaded (which makes a new Graph object)
+ * and when the realtime timetable snapshot of the graph is committed.
+ *
+ * Responses carry an ETag made from the version and the key, so a client sending If-None-Match
+ * with the current ETag gets a 304 without the endpoint being called at all.
+ *
+ * This is both a request filter (answering from the cache) and a response filter (filling the
+ * cache), and must be registered as both, on the same singleton instance, after the JSONP filter:
+ * the cached body does not include the JSONP padding.
+ */
+@Component
+public class ResponseCacheFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResponseCacheFilter.class);
+
+    /** The endpoints of the transit index whose responses are cached. */
+    private static final List<String> TRANSIT_ENDPOINTS = Arrays.asList("agencyIds", "routes",
+            "routeData", "routesForStop", "stopData", "stopsInRectangle", "variantForTrip",
+            "modes", "calendar");
+
+    /** Query parameters which do not change the response body. */
+    private static final List<String> IGNORED_PARAMETERS = Arrays.asList("callback", "_");
+
+    private static final String KEY_PROPERTY = ResponseCacheFilter.class.getName() + ".key";
+
+    @Autowired @Setter
+    private GraphService graphService;
+
+    @Setter
+    private int maxEntries = 2000;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    private final Map<Graph, GraphVersion> graphVersions = new WeakHashMap<Graph, GraphVersion>();
+
+    /* start from the clock so that ETags from before a restart are not reused */
+    private long nextVersion = System.currentTimeMillis();
+
+    @Override
+    public ContainerRequest filter(ContainerRequest request) {
+        if (graphService == null || !"GET".equals(request.getMethod()))
+            return request;
+        String version;
+        String key;
+        try {
+            String path = request.getPath(true);
+            String routerId = request.getQueryParameters().getFirst("routerId");
+            if (path.startsWith("ws/"))
+                path = path.substring(3);
+            if (path.endsWith("/"))
+                path = path.substring(0, path.length() - 1);
+            if (path.equals("routers")) {
+                version = getRoutersVersion();
+            } else if (path.startsWith("routers/") && path.indexOf('/', 8) < 0) {
+                version = getVersion(path.substring(8));
+            } else if (path.equals("metadata") || (path.startsWith("transit/")
+                    && TRANSIT_ENDPOINTS.contains(path.substring(8)))) {
+                version = getVersion(routerId);
+            } else {
+                return request;
+            }
+            key = makeKey(path, request.getQueryParameters(),
+                    request.getHeaderValue(HttpHeaders.ACCEPT));
+        } catch (RuntimeException e) {
+            // no such graph: let the endpoint report it
+            return request;
+        }
+        EntityTag etag = new EntityTag(version + "-" + Integer.toHexString(key.hashCode()));
+        String ifNoneMatch = request.getHeaderValue(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && ifNoneMatch.contains(etag.toString())) {
+            throw new WebApplicationException(Response.notModified(etag).build());
+        }
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null && entry.version.equals(version)) {
+            throw new WebApplicationException(Response
+                    .ok(entry.body, entry.contentType.toString()).tag(etag).build());
+        }
+        request.getProperties().put(KEY_PROPERTY, new Entry(key, version, etag));
+        return request;
+    }
+
+    @Override
+    public ContainerResponse filter(ContainerRequest request, ContainerResponse response) {
+        Entry entry = (Entry) request.getProperties().get(KEY_PROPERTY);
+        if (entry == null || response.getStatus() != Response.Status.OK.getStatusCode()
+                || response.getEntity() == null)
+            return response;
+        response.getHttpHeaders().putSingle(HttpHeaders.ETAG, entry.etag);
+        response.setContainerResponseWriter(new CachingResponseWriter(
+                response.getContainerResponseWriter(), entry));
+        return response;
+    }
+
+    /**
+     * @return the key of a request: the endpoint, the query parameters except those that do not
+     *         change the response, sorted, and the Accept header.
+     */
+    static String makeKey(String path, MultivaluedMap<String, String> parameters, String accept) {
+        List<String> names = new ArrayList<String>(parameters.keySet());
+        Collections.sort(names);
+        StringBuilder sb = new StringBuilder(path);
+        char separator = '?';
+        for (String name : names) {
+            if (IGNORED_PARAMETERS.contains(name))
+                continue;
+            for (String value : parameters.get(name)) {
+                sb.append(separator).append(name).append('=').append(value);
+                separator = '&';
+            }
+        }
+        sb.append(' ').append(accept == null ? "" : accept);
+        return sb.toString();
+    }
+
+    /** @return the version of the graph with the given router id, which changes on each reload. */
+    private String getVersion(String routerId) {
+        Graph graph = graphService.getGraph(routerId);
+        TimetableResolver snapshot = null;
+        if (graph.getTimetableSnapshotSource() != null)
+            snapshot = graph.getTimetableSnapshotSource().getTimetableSnapshot();
+        synchronized (graphVersions) {
+            GraphVersion graphVersion = graphVersions.get(graph);
+            if (graphVersion == null) {
+                graphVersion = new GraphVersion();
+                graphVersions.put(graph, graphVersion);
+            } else if (graphVersion.snapshot.get() == snapshot) {
+                return graphVersion.version;
+            }
+            graphVersion.version = Long.toHexString(nextVersion++);
+            graphVersion.snapshot = new WeakReference<TimetableResolver>(snapshot);
+            LOG.debug("responses for router '{}' are now version {}", routerId,
+                    graphVersion.version);
+            return graphVersion.version;
+        }
+    }
+
+    /** @return a version of the list of routers, which changes when any router changes. */
+    private String getRoutersVersion() {
+        StringBuilder sb = new StringBuilder();
+        for (String routerId : graphService.getRouterIds()) {
+            sb.append(routerId).append(':').append(getVersion(routerId)).append(' ');
+        }
+        return Integer.toHexString(sb.toString().hashCode());
+    }
+
+    private static class GraphVersion {
+
+        String version;
+
+        WeakReference<TimetableResolver> snapshot;
+    }
+
+    /** A cached response, or the key of a response to be cached. */
+    private static class Entry {
+
+        final String key;
+
+        final String version;
+
+        final EntityTag etag;
+
+        Object contentType;
+
+        byte[] body;
+
+        Entry(String key, String version, EntityTag etag) {
+            this.key = key;
+            this.version = version;
+            this.etag = etag;
+        }
+    }
+
+    /** Copies the response body into the cache as it is written. */
+    private class CachingResponseWriter implements ContainerResponseWriter {
+
+        private final ContainerResponseWriter writer;
+
+        private final Entry entry;
+
+        private ByteArrayOutputStream buffer;
+
+        CachingResponseWriter(ContainerResponseWriter writer, Entry entry) {
+            this.writer = writer;
+            this.entry = entry;
+        }
+
+        @Override
+        public OutputStream writeStatusAndHeaders(long contentLength, ContainerResponse response)
+                throws IOException {
+            entry.contentType = response.getHttpHeaders().getFirst(HttpHeaders.CONTENT_TYPE);
+            final OutputStream os = writer.writeStatusAndHeaders(contentLength, response);
+            buffer = new ByteArrayOutputStream();
+            return new FilterOutputStream(os) {
+                @Override
+                public void write(int b) throws IOException {
+                    os.write(b);
+                    buffer.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    os.write(b, off, len);
+                    buffer.write(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.finish();
+            if (buffer == null || entry.contentType == null)
+                return;
+            entry.body = buffer.toByteArray();
+            synchronized (entries) {
+                entries.put(entry.key, entry);
+            }
+        }
+    }
+}
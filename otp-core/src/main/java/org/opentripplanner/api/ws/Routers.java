@@ -151,11 +151,23 @@ public class Routers {
 
     /** 
      * Reload the graphs for all registered routerIds from disk.
+     * @param background reload the graphs one after the other on a background thread, each one
+     * replacing the old graph once it is loaded and warmed up, and return at once. Routing stays
+     * available on the old graphs in the meantime; preEvict is ignored. The graph services which
+     * cannot load graphs in the background answer with status 501.
      */
     @Secured({ "ROLE_ROUTERS" })
     @PUT @Produces({ MediaType.APPLICATION_JSON })
     public Response reloadGraphs(@QueryParam("path") String path, 
-            @QueryParam("preEvict") @DefaultValue("true") boolean preEvict) {
+            @QueryParam("preEvict") @DefaultValue("true") boolean preEvict,
+            @QueryParam("background") @DefaultValue("false") boolean background) {
+        if (background) {
+            if (!(graphService instanceof GraphServiceImpl)) {
+                return backgroundNotSupported();
+            }
+            ((GraphServiceImpl) graphService).reloadGraphsInBackground();
+            return Response.status(Status.ACCEPTED).build();
+        }
         graphService.reloadGraphs(preEvict);
         return Response.status(Status.OK).build();
     }
@@ -166,12 +178,23 @@ public class Routers {
      * memory usage from increasing during the reload, but routing will be unavailable on this 
      * routerId for the duration of the operation.
      * @param upload read the graph from the PUT data stream instead of from disk.
+     * @param background load the graph on a background thread, and return at once. The new graph
+     * replaces the old one once it is loaded and warmed up; preEvict is ignored. The graph
+     * services which cannot load graphs in the background answer with status 501.
      */
     @Secured({ "ROLE_ROUTERS" })
     @PUT @Path("{routerId}") @Produces({ MediaType.TEXT_PLAIN })
     public Response putGraphId(
             @PathParam("routerId") String routerId, 
-            @QueryParam("preEvict") @DefaultValue("true") boolean preEvict) {
+            @QueryParam("preEvict") @DefaultValue("true") boolean preEvict,
+            @QueryParam("background") @DefaultValue("false") boolean background) {
+        if (background) {
+            if (!(graphService instanceof GraphServiceImpl)) {
+                return backgroundNotSupported();
+            }
+            ((GraphServiceImpl) graphService).registerGraphInBackground(routerId);
+            return Response.status(Status.ACCEPTED).entity("graph loading.").build();
+        }
         if (preEvict) {
             LOG.debug("pre-evicting graph");
             graphService.evictGraph(routerId);
@@ -184,6 +207,11 @@ public class Routers {
             return Response.status(404).entity("graph not found or other error.").build();
     }
 
+    private Response backgroundNotSupported() {
+        return Response.status(501).entity("this graph service cannot load graphs in the "
+                + "background.").type(MediaType.TEXT_PLAIN).build();
+    }
+
     /** 
      * Deserialize a graph sent with the HTTP request as POST data, associating it with the given 
      * routerId.
@@ -16,7 +16,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -62,12 +61,15 @@ import org.opentripplanner.routing.core.StateEditor;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.edgetype.PatternHop;
 import org.opentripplanner.routing.edgetype.TableTripPattern;
+import org.opentripplanner.routing.edgetype.TimetableResolver;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.services.GraphService;
 import org.opentripplanner.routing.services.StreetVertexIndexService;
 import org.opentripplanner.routing.services.TransitIndexService;
+import org.opentripplanner.routing.transit_index.DepartureBoardIndex;
+import org.opentripplanner.routing.transit_index.DepartureBoardIndex.BoardTime;
 import org.opentripplanner.routing.transit_index.RouteSegment;
 import org.opentripplanner.routing.transit_index.RouteVariant;
 import org.opentripplanner.routing.transit_index.adapters.RouteType;
@@ -359,8 +361,15 @@ public class TransitIndex {
                     "No transit index found.  Add TransitIndexBuilder to your graph builder configuration and rebuild your graph.");
         }
 
+        Graph graph = getGraph(routerId);
+        DepartureBoardIndex boards = transitIndexService.getDepartureBoardIndex();
+        TimetableResolver snapshot = null;
+        if (graph.getTimetableSnapshotSource() != null) {
+            snapshot = graph.getTimetableSnapshotSource().getTimetableSnapshot();
+        }
+
         // add all departures
-        HashSet<TripType> trips = new HashSet<TripType>();
+        Set<AgencyAndId> trips = new HashSet<AgencyAndId>();
         StopTimeList result = new StopTimeList();
         result.stopTimes = new ArrayList<StopTime>();
 
@@ -375,56 +384,58 @@ public class TransitIndex {
             if (preBoardEdge == null)
                 continue;
             Vertex boarding = preBoardEdge.getToVertex();
+            List<ServiceDay> serviceDays = getServiceDays(graph, startTime, stopAgencyId);
 
-            RoutingRequest options = makeTraverseOptions(startTime, routerId);
-
-            HashMap<Long, Edge> seen = new HashMap<Long, Edge>();
-            //OUTER:
+            // the scheduled trips are in the departure boards; only the others, such as
+            // frequency-based trips, are found by traversing their board edges
+            List<BoardTime> departures = boards.getDepartures(stop, startTime, endTime,
+                    serviceDays, snapshot);
+            RoutingRequest options = null;
             for (Edge e : boarding.getOutgoing()) {
-                // each of these edges boards a separate set of trips
-                for (StopTime st : getStopTimesForBoardEdge(startTime, endTime, options, e,
-                        extended)) {
-                    // different parameters
-                    st.phase = "departure";
-                    if (extended != null && extended.equals(true)) {
-                        if (routeId != null && !routeId.equals("")
-                                && !st.trip.getRoute().getId().getId().equals(routeId))
-                            continue;
-                        if (references != null && references.equals(true))
-                            result.routes.add(st.trip.getRoute());
-                        result.stopTimes.add(st);
-                    } else
-                        result.stopTimes.add(st);
-                    trips.add(st.trip);
-                    if (seen.containsKey(st.time)) {
-                        Edge old = seen.get(st.time);
-                        System.out.println("DUP: " + old);
-                        getStopTimesForBoardEdge(startTime, endTime, options, e, extended);
-                        // break OUTER;
-                    }
-                    seen.put(st.time, e);
+                if (DepartureBoardIndex.isIndexed(e))
+                    continue;
+                if (options == null)
+                    options = makeTraverseOptions(startTime, routerId);
+                departures = new ArrayList<BoardTime>(departures);
+                departures.addAll(getStopTimesForBoardEdge(startTime, endTime, options, e));
+            }
+            for (BoardTime departure : departures) {
+                Trip trip = departure.trip;
+                if (extended != null && extended.equals(true)) {
+                    if (routeId != null && !routeId.equals("")
+                            && !trip.getRoute().getId().getId().equals(routeId))
+                        continue;
+                    if (references != null && references.equals(true))
+                        result.routes.add(trip.getRoute());
                 }
+                result.stopTimes.add(makeStopTime(departure, "departure", extended));
+                trips.add(trip.getId());
             }
 
             // add the arriving stop times for cases where there are no departures
+            List<BoardTime> arrivals = boards.getArrivals(stop, startTime, endTime, serviceDays,
+                    snapshot);
             Edge preAlightEdge = transitIndexService.getPreAlightEdge(stop);
             Vertex alighting = preAlightEdge.getFromVertex();
             for (Edge e : alighting.getIncoming()) {
-                for (StopTime st : getStopTimesForAlightEdge(startTime, endTime, options, e,
-                        extended)) {
-                    if (!trips.contains(st.trip)) {
-                        // diffrent parameters
-                        st.phase = "arrival";
-                        if (extended != null && extended.equals(true)) {
-                            if (references != null && references.equals(true))
-                                result.routes.add(st.trip.getRoute());
-                            if (routeId != null && !routeId.equals("")
-                                    && !st.trip.getRoute().getId().getId().equals(routeId))
-                                continue;
-                            result.stopTimes.add(st);
-                        } else
-                            result.stopTimes.add(st);
+                if (DepartureBoardIndex.isIndexed(e))
+                    continue;
+                if (options == null)
+                    options = makeTraverseOptions(startTime, routerId);
+                arrivals = new ArrayList<BoardTime>(arrivals);
+                arrivals.addAll(getStopTimesForAlightEdge(startTime, endTime, options, e));
+            }
+            for (BoardTime arrival : arrivals) {
+                Trip trip = arrival.trip;
+                if (!trips.contains(trip.getId())) {
+                    if (extended != null && extended.equals(true)) {
+                        if (references != null && references.equals(true))
+                            result.routes.add(trip.getRoute());
+                        if (routeId != null && !routeId.equals("")
+                                && !trip.getRoute().getId().getId().equals(routeId))
+                            continue;
                     }
+                    result.stopTimes.add(makeStopTime(arrival, "arrival", extended));
                 }
             }
 
@@ -445,6 +456,14 @@ public class TransitIndex {
         return result;
     }
 
+    private StopTime makeStopTime(BoardTime boardTime, String phase, Boolean extended) {
+        StopTime stopTime = new StopTime();
+        stopTime.time = boardTime.time;
+        stopTime.trip = new TripType(boardTime.trip, extended);
+        stopTime.phase = phase;
+        return stopTime;
+    }
+
     private RoutingRequest makeTraverseOptions(long startTime, String routerId) {
         RoutingRequest options = new RoutingRequest();
         // if (graphService.getCalendarService() != null) {
@@ -604,9 +623,9 @@ public class TransitIndex {
         return result;
     }
 
-    private List<StopTime> getStopTimesForBoardEdge(long startTime, long endTime,
-            RoutingRequest options, Edge e, Boolean extended) {
-        List<StopTime> out = new ArrayList<StopTime>();
+    private List<BoardTime> getStopTimesForBoardEdge(long startTime, long endTime,
+            RoutingRequest options, Edge e) {
+        List<BoardTime> out = new ArrayList<BoardTime>();
         State result;
         long time = startTime;
         do {
@@ -618,19 +637,16 @@ public class TransitIndex {
             time = result.getTimeSeconds();
             if (time > endTime)
                 break;
-            StopTime stopTime = new StopTime();
-            stopTime.time = time;
-            stopTime.trip = new TripType(result.getBackTrip(), extended);
-            out.add(stopTime);
+            out.add(new BoardTime(result.getBackTrip(), time));
 
             time += 1; // move to the next board time
         } while (true);
         return out;
     }
 
-    private List<StopTime> getStopTimesForAlightEdge(long startTime, long endTime,
-            RoutingRequest options, Edge e, Boolean extended) {
-        List<StopTime> out = new ArrayList<StopTime>();
+    private List<BoardTime> getStopTimesForAlightEdge(long startTime, long endTime,
+            RoutingRequest options, Edge e) {
+        List<BoardTime> out = new ArrayList<BoardTime>();
         State result;
         long time = endTime;
         options = options.reversedClone();
@@ -643,10 +659,7 @@ public class TransitIndex {
             time = result.getTimeSeconds();
             if (time < startTime)
                 break;
-            StopTime stopTime = new StopTime();
-            stopTime.time = time;
-            stopTime.trip = new TripType(result.getBackTrip(), extended);
-            out.add(stopTime);
+            out.add(new BoardTime(result.getBackTrip(), time));
             time -= 1; // move to the previous alight time
         } while (true);
         return out;
@@ -0,0 +1,54 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.api.ws.internals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.opentripplanner.util.monitoring.MetricsRegistry;
+import org.springframework.security.access.annotation.Secured;
+
+import com.sun.jersey.spi.resource.Singleton;
+
+/**
+ * Exposes the request latencies and search counters of the server in the Prometheus text format,
+ * for monitoring systems to scrape. Like the other internals, it needs an authenticated user, so
+ * the scraper must be configured with its credentials.
+ */
+@Path("/metrics")
+@Singleton
+public class Metrics {
+
+    @Secured({ "ROLE_USER" })
+    @GET
+    @Produces(MetricsRegistry.CONTENT_TYPE)
+    public StreamingOutput getMetrics() {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                Writer writer = new OutputStreamWriter(output, "UTF-8");
+                MetricsRegistry.getInstance().write(writer);
+                writer.flush();
+            }
+        };
+    }
+}
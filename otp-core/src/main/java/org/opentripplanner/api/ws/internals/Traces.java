@@ -0,0 +1,97 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.api.ws.internals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.FormParam;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.opentripplanner.util.monitoring.RequestTracer;
+import org.springframework.security.access.annotation.Secured;
+
+import com.sun.jersey.spi.resource.Singleton;
+
+/**
+ * Control the sampling of trip plan requests for tracing, and get the traces of the last sampled
+ * requests, either as timelines or as folded stacks for flame graph tools such as flamegraph.pl.
+ */
+@Path("/traces")
+@Singleton
+public class Traces {
+
+    private static RequestTracer tracer = RequestTracer.getInstance();
+
+    /** Get the timelines of the traces kept, oldest first. */
+    @Secured({ "ROLE_USER" })
+    @GET
+    @Produces({ MediaType.TEXT_PLAIN })
+    public StreamingOutput getTimelines() {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                Writer writer = new OutputStreamWriter(output, "UTF-8");
+                tracer.writeTimelines(writer);
+                writer.flush();
+            }
+        };
+    }
+
+    /** Get the time spent in each phase over the traces kept, as folded stacks. */
+    @Secured({ "ROLE_USER" })
+    @GET
+    @Path("/folded")
+    @Produces({ MediaType.TEXT_PLAIN })
+    public StreamingOutput getFolded() {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                Writer writer = new OutputStreamWriter(output, "UTF-8");
+                tracer.writeFolded(writer);
+                writer.flush();
+            }
+        };
+    }
+
+    /**
+     * Trace one request in every given number of requests, or none if it is not positive.
+     */
+    @Secured({ "ROLE_USER" })
+    @POST
+    @Path("/sampling")
+    @Produces({ MediaType.APPLICATION_JSON })
+    public Object setSampling(@FormParam("every") int every) {
+        tracer.setSampleEvery(every);
+        return "OK";
+    }
+
+    /** Forget the traces kept. */
+    @Secured({ "ROLE_USER" })
+    @DELETE
+    @Produces({ MediaType.APPLICATION_JSON })
+    public Object clear() {
+        tracer.clear();
+        return "OK";
+    }
+}
@@ -0,0 +1,64 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common;
+
+/**
+ * Union-find over the ints from 0 to size - 1, such as vertex indices, with union by size and
+ * path halving. Like {@link DisjointSet}, but stored in a single int array, without boxing or a
+ * map from elements to sets, so it can hold every vertex of a large graph.
+ */
+public class IntDisjointSet {
+
+    /* the parent of each element, or minus the size of its set for the root of a set */
+    private final int[] sets;
+
+    public IntDisjointSet(int size) {
+        sets = new int[size];
+        for (int i = 0; i < size; i++)
+            sets[i] = -1;
+    }
+
+    /** @return the root of the merged set */
+    public int union(int element1, int element2) {
+        int p1 = find(element1);
+        int p2 = find(element2);
+        if (p1 == p2)
+            return p1;
+        if (sets[p1] > sets[p2]) {
+            // p2 has the larger set
+            int tmp = p1;
+            p1 = p2;
+            p2 = tmp;
+        }
+        sets[p1] += sets[p2];
+        sets[p2] = p1;
+        return p1;
+    }
+
+    /** @return the root of the set containing the element */
+    public int find(int element) {
+        while (sets[element] >= 0) {
+            int parent = sets[element];
+            if (sets[parent] >= 0)
+                sets[element] = sets[parent];
+            element = sets[element];
+        }
+        return element;
+    }
+
+    /** @return the size of the set containing the element */
+    public int size(int element) {
+        return -sets[find(element)];
+    }
+}
@@ -17,11 +17,10 @@ import java.io.File;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 
 import org.opentripplanner.common.geometry.Subgraph;
 import org.opentripplanner.gbannotation.GraphConnectivity;
@@ -38,6 +37,7 @@ import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.opentripplanner.routing.vertextype.TransitVertex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,8 +64,14 @@ public class StreetUtils {
         if (islandLog != null) {
             islandLog.printf("%s\t%s\t%s\t%s\t%s\n","id","stopCount", "streetCount","wkt" ,"hadRemoved");
         }
-        Map<Vertex, Subgraph> subgraphs = new HashMap<Vertex, Subgraph>();
-        Map<Vertex, ArrayList<Vertex>> neighborsForVertex = new HashMap<Vertex, ArrayList<Vertex>>();
+        /* union the two ends of every street edge that can be walked, over vertex indices */
+        int nIndices = 0;
+        for (Vertex gv : graph.getVertices()) {
+            nIndices = Math.max(nIndices, gv.getIndex() + 1);
+        }
+        IntDisjointSet components = new IntDisjointSet(nIndices);
+        /* the vertices that have at least one walkable edge */
+        boolean[] connected = new boolean[nIndices];
 
 //        RoutingRequest options = new RoutingRequest(new TraverseModeSet(TraverseMode.WALK, TraverseMode.TRANSIT));
         RoutingRequest options = new RoutingRequest(new TraverseModeSet(TraverseMode.WALK));
@@ -86,48 +92,54 @@ public class StreetUtils {
                     continue;
                 }
                 Vertex out = s1.getVertex();
-
-                ArrayList<Vertex> vertexList = neighborsForVertex.get(in);
-                if (vertexList == null) {
-                    vertexList = new ArrayList<Vertex>();
-                    neighborsForVertex.put(in, vertexList);
-                }
-                vertexList.add(out);
-
-                vertexList = neighborsForVertex.get(out);
-                if (vertexList == null) {
-                    vertexList = new ArrayList<Vertex>();
-                    neighborsForVertex.put(out, vertexList);
-                }
-                vertexList.add(in);
+                components.union(in.getIndex(), out.getIndex());
+                connected[in.getIndex()] = true;
+                connected[out.getIndex()] = true;
             }
         }
 
-        ArrayList<Subgraph> islands = new ArrayList<Subgraph>();
-        /* associate each node with a subgraph */
+        /* count the street and stop vertices of each sub graph, indexed by its root */
+        int[] streetCount = new int[nIndices];
+        int[] stopCount = new int[nIndices];
+        List<Integer> roots = new ArrayList<Integer>();
         for (Vertex gv : graph.getVertices()) {
-            if (!(gv instanceof StreetVertex)) {
+            if (!connected[gv.getIndex()]) {
                 continue;
             }
-            Vertex vertex = gv;
-            if (subgraphs.containsKey(vertex)) {
-                continue;
+            int root = components.find(gv.getIndex());
+            if (streetCount[root] == 0 && stopCount[root] == 0) {
+                roots.add(root);
             }
-            if (!neighborsForVertex.containsKey(vertex)) {
-                continue;
+            if (gv instanceof TransitVertex) {
+                stopCount[root] += 1;
+            } else {
+                streetCount[root] += 1;
             }
-            Subgraph subgraph = computeConnectedSubgraph(neighborsForVertex, vertex);
-            if (subgraph != null){
-                for (Iterator<Vertex> vIter = subgraph.streetIterator(); vIter.hasNext();) {
-                    Vertex subnode = vIter.next();
-                    subgraphs.put(subnode, subgraph);
+        }
+        LOG.info(roots.size() + " sub graphs found");
+
+        /* 
+         * Only make Subgraphs of the islands to remove, or of all islands when they are logged:
+         * the largest sub graphs hold nearly all vertices of the graph.
+         */
+        Map<Integer, Subgraph> islands = new LinkedHashMap<Integer, Subgraph>();
+        for (int root : roots) {
+            int maxSize = stopCount[root] > 0 ? islandWithStopMaxSize : maxIslandSize;
+            if (islandLog != null || streetCount[root] < maxSize) {
+                islands.put(root, new Subgraph());
+            }
+        }
+        for (Vertex gv : graph.getVertices()) {
+            if (connected[gv.getIndex()]) {
+                Subgraph island = islands.get(components.find(gv.getIndex()));
+                if (island != null) {
+                    island.addVertex(gv);
                 }
-                islands.add(subgraph);
             }
         }
-        LOG.info(islands.size() + " sub graphs found");
+
         /* remove all tiny subgraphs and large subgraphs without stops */
-        for (Subgraph island : islands) {
+        for (Subgraph island : islands.values()) {
             boolean hadRemoved = false;
             if(island.stopSize() > 0){
             //for islands with stops
@@ -191,25 +203,6 @@ public class StreetUtils {
         LOG.debug(graph.addBuilderAnnotation(new GraphConnectivity(island.getRepresentativeVertex(), island.streetSize())));
     }
 
-    private static Subgraph computeConnectedSubgraph(
-            Map<Vertex, ArrayList<Vertex>> neighborsForVertex, Vertex startVertex) {
-        Subgraph subgraph = new Subgraph();
-        Queue<Vertex> q = new LinkedList<Vertex>();
-        q.add(startVertex);
-        while (!q.isEmpty()) {
-            Vertex vertex = q.poll();
-            for (Vertex neighbor : neighborsForVertex.get(vertex)) {
-                if (!subgraph.contains(neighbor)) {
-                    subgraph.addVertex(neighbor);
-                    q.add(neighbor);
-                }
-            }
-        }
-        return subgraph;
-//        if(subgraph.size()>1) return subgraph;
-//        return null;
-    }
-
     private static void WriteNodesInSubGraph(Subgraph subgraph, PrintWriter islandLog, boolean hadRemoved){
         Geometry convexHullGeom = subgraph.getConvexHull();
         if (convexHullGeom != null && !(convexHullGeom instanceof Polygon)) {
@@ -0,0 +1,134 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common.geometry;
+
+import java.util.Arrays;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.LineString;
+
+/**
+ * Compact storage for the geometries of street edges. The coordinates are rounded to 1e-7 degrees
+ * (about 1 cm), and each coordinate is stored as the difference from the previous one, as a
+ * variable-length integer. Most street geometries take 2 to 6 bytes per coordinate this way,
+ * instead of 16 in a PackedCoordinateSequence.
+ *
+ * A geometry and its reverse are encoded the same way, in the order that starts at the smaller of
+ * their two ends, so that the two edges of a street can share one encoded array.
+ */
+public class CompactLineString {
+
+    private static final double FIXED_FACTOR = 1e7;
+
+    /* rounded coordinates must fit in an int */
+    private static final double MAX_ORDINATE = 180;
+
+    /** @return true if the coordinates of the geometry are in degrees, and can be encoded. */
+    public static boolean canEncode(LineString geometry) {
+        CoordinateSequence coordinates = geometry.getCoordinateSequence();
+        if (coordinates.size() == 0)
+            return false;
+        for (int i = 0; i < coordinates.size(); i++) {
+            if (!(Math.abs(coordinates.getX(i)) <= MAX_ORDINATE)
+                    || !(Math.abs(coordinates.getY(i)) <= MAX_ORDINATE))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the geometry is encoded from its end to its start, which is the case when its
+     *         end is the smaller of its two ends.
+     */
+    public static boolean isEncodedReversed(LineString geometry) {
+        CoordinateSequence coordinates = geometry.getCoordinateSequence();
+        int last = coordinates.size() - 1;
+        long x0 = toFixed(coordinates.getX(0)), x1 = toFixed(coordinates.getX(last));
+        if (x0 != x1)
+            return x1 < x0;
+        return toFixed(coordinates.getY(last)) < toFixed(coordinates.getY(0));
+    }
+
+    /** Encode a geometry, which must satisfy canEncode, in the order given by isEncodedReversed. */
+    public static byte[] encode(LineString geometry) {
+        CoordinateSequence coordinates = geometry.getCoordinateSequence();
+        int n = coordinates.size();
+        boolean reversed = isEncodedReversed(geometry);
+        // at most 5 bytes per int
+        byte[] buffer = new byte[5 + n * 10];
+        int pos = writeVarInt(buffer, 0, n);
+        long lastX = 0, lastY = 0;
+        for (int i = 0; i < n; i++) {
+            int index = reversed ? n - 1 - i : i;
+            long x = toFixed(coordinates.getX(index));
+            long y = toFixed(coordinates.getY(index));
+            pos = writeVarInt(buffer, pos, zigzag(x - lastX));
+            pos = writeVarInt(buffer, pos, zigzag(y - lastY));
+            lastX = x;
+            lastY = y;
+        }
+        return Arrays.copyOf(buffer, pos);
+    }
+
+    /**
+     * Decode a geometry.
+     * @param reversed true to return the geometry from the end to the start of the encoding
+     */
+    public static LineString decode(byte[] encoded, boolean reversed) {
+        int[] pos = new int[] { 0 };
+        int n = (int) readVarInt(encoded, pos);
+        Coordinate[] coordinates = new Coordinate[n];
+        long x = 0, y = 0;
+        for (int i = 0; i < n; i++) {
+            x += unzigzag(readVarInt(encoded, pos));
+            y += unzigzag(readVarInt(encoded, pos));
+            coordinates[reversed ? n - 1 - i : i] = new Coordinate(x / FIXED_FACTOR, y / FIXED_FACTOR);
+        }
+        return GeometryUtils.getGeometryFactory().createLineString(coordinates);
+    }
+
+    private static long toFixed(double ordinate) {
+        return Math.round(ordinate * FIXED_FACTOR);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int writeVarInt(byte[] buffer, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static long readVarInt(byte[] buffer, int[] pos) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buffer[pos[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+            shift += 7;
+        }
+    }
+}
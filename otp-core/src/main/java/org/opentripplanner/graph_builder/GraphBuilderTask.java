@@ -67,7 +67,7 @@ public class GraphBuilderTask implements Runnable {
         try {
             graph = Graph.load(new File(baseGraph), LoadLevel.FULL);
         } catch (Exception e) {
-            throw new RuntimeException("error loading base graph");
+            throw new RuntimeException("error loading base graph", e);
         }
     }
 
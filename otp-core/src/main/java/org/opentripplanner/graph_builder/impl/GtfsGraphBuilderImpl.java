@@ -21,8 +21,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import lombok.Setter;
 
@@ -30,26 +32,41 @@ import org.onebusaway.csv_entities.EntityHandler;
 import org.onebusaway.gtfs.impl.GtfsRelationalDaoImpl;
 import org.onebusaway.gtfs.impl.calendar.CalendarServiceDataFactoryImpl;
 import org.onebusaway.gtfs.model.Agency;
+import org.onebusaway.gtfs.model.AgencyAndId;
 import org.onebusaway.gtfs.model.IdentityBean;
 import org.onebusaway.gtfs.model.ShapePoint;
+import org.onebusaway.gtfs.model.StopTime;
 import org.onebusaway.gtfs.model.Trip;
 import org.onebusaway.gtfs.model.calendar.CalendarServiceData;
+import org.onebusaway.gtfs.model.calendar.LocalizedServiceId;
 import org.onebusaway.gtfs.serialization.GtfsReader;
 import org.onebusaway.gtfs.services.GenericMutableDao;
 import org.onebusaway.gtfs.services.GtfsMutableRelationalDao;
 import org.opentripplanner.calendar.impl.MultiCalendarServiceImpl;
+import org.opentripplanner.common.IterableLibrary;
 import org.opentripplanner.gbannotation.AgencyNameCollision;
 import org.opentripplanner.graph_builder.model.GtfsBundle;
 import org.opentripplanner.graph_builder.model.GtfsBundles;
+import org.opentripplanner.graph_builder.model.GtfsFeedFingerprints;
+import org.opentripplanner.graph_builder.model.ReloadedStops;
 import org.opentripplanner.graph_builder.services.EntityReplacementStrategy;
 import org.opentripplanner.graph_builder.services.GraphBuilder;
 import org.opentripplanner.graph_builder.services.GraphBuilderWithGtfsDao;
+import org.opentripplanner.gtfs.ExternalStopTimeSorter;
 import org.opentripplanner.gtfs.GtfsContext;
 import org.opentripplanner.gtfs.GtfsLibrary;
+import org.opentripplanner.routing.core.ServiceIdToNumberService;
+import org.opentripplanner.routing.core.StopTransferMatrix;
 import org.opentripplanner.routing.edgetype.factory.GTFSPatternHopFactory;
 import org.opentripplanner.routing.edgetype.factory.GtfsStopContext;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.services.FareService;
 import org.opentripplanner.routing.services.FareServiceFactory;
+import org.opentripplanner.routing.services.TransitIndexService;
+import org.opentripplanner.routing.transit_index.TransitIndexServiceImpl;
+import org.opentripplanner.routing.vertextype.TransitStop;
+import org.opentripplanner.routing.vertextype.TransitVertex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -71,6 +88,9 @@ public class GtfsGraphBuilderImpl implements GraphBuilder {
 
     private static final Logger LOG = LoggerFactory.getLogger(GtfsGraphBuilderImpl.class);
 
+    /** The number of stop times sorted in memory at a time when streaming stop times. */
+    private static final int STOP_TIMES_PER_RUN = 500000;
+
     private GtfsBundles _gtfsBundles;
 
     private EntityReplacementStrategy _entityReplacementStrategy = new EntityReplacementStrategyImpl();
@@ -91,6 +111,19 @@ public class GtfsGraphBuilderImpl implements GraphBuilder {
 
     private boolean generateFeedIds = false;
 
+    /**
+     * If true, the graph already contains transit from an earlier build: the transit of the
+     * agencies of each loaded feed is removed from the graph before the feed is loaded again, and
+     * the calendars and fares of the other agencies are kept.
+     */
+    @Setter private boolean incremental = false;
+
+    /** The file names of feeds that the graph was built from but that are no longer used. */
+    @Setter private List<String> removedFeeds = Collections.emptyList();
+
+    /** The number of threads matching the trip patterns to their shapes. */
+    @Setter private int threads = Runtime.getRuntime().availableProcessors();
+
     /** 
      * Construct and set bundles all at once. 
      * TODO why is there a wrapper class around a list of GTFS files?
@@ -145,7 +178,28 @@ public class GtfsGraphBuilderImpl implements GraphBuilder {
 
         MultiCalendarServiceImpl service = new MultiCalendarServiceImpl();
         GtfsStopContext stopContext = new GtfsStopContext();
-        
+        GtfsFeedFingerprints fingerprints = graph.getService(GtfsFeedFingerprints.class, true);
+
+        /* agencies loaded by this build, and agencies whose earlier transit has been removed */
+        Set<String> loadedAgencyIds = new HashSet<String>();
+        Set<String> removedAgencyIds = new HashSet<String>();
+        CalendarServiceData previousCalendarData = null;
+        FareService previousFareService = null;
+        if (incremental) {
+            previousCalendarData = graph.getService(CalendarServiceData.class);
+            previousFareService = graph.getService(FareService.class);
+            ServiceIdToNumberService serviceIds = graph.getService(ServiceIdToNumberService.class);
+            if (serviceIds != null) {
+                // keep the numbers of the service ids of the trips already in the graph
+                stopContext.serviceIds = serviceIds.getNumbers();
+            }
+            for (String feedName : removedFeeds) {
+                LOG.info("removing transit of feed {}", feedName);
+                removeTransit(graph, fingerprints.getAgencyIds(feedName), removedAgencyIds);
+                fingerprints.remove(feedName);
+            }
+        }
+
         try {
             int bundleIndex = 0;
             for (GtfsBundle gtfsBundle : _gtfsBundles.getBundles()) {
@@ -161,20 +215,55 @@ public class GtfsGraphBuilderImpl implements GraphBuilder {
                 hf.setStopContext(stopContext);
                 hf.setFareServiceFactory(_fareServiceFactory);
                 hf.setMaxStopToShapeSnapDistance(gtfsBundle.getMaxStopToShapeSnapDistance());
+                hf.setThreads(threads);
 
                 if (generateFeedIds && gtfsBundle.getDefaultAgencyId() == null) {
                     gtfsBundle.setDefaultAgencyId("FEED#" + bundleIndex);
                 }
 
-                loadBundle(gtfsBundle, graph, dao);
+                ExternalStopTimeSorter sortedStopTimes = null;
+                if (gtfsBundle.isStreamStopTimes()) {
+                    sortedStopTimes = new ExternalStopTimeSorter(gtfsBundle.getCacheDirectory(),
+                            STOP_TIMES_PER_RUN);
+                }
 
-                CalendarServiceDataFactoryImpl csfactory = new CalendarServiceDataFactoryImpl();
-                csfactory.setGtfsDao(dao);
-                CalendarServiceData data = csfactory.createData();
-                service.addData(data, dao);
+                try {
+                    loadBundle(gtfsBundle, graph, dao, sortedStopTimes);
 
-                hf.setDefaultStreetToStopTime(gtfsBundle.getDefaultStreetToStopTime());
-                hf.run(graph);
+                    Set<String> agencyIds = new HashSet<String>();
+                    for (Agency agency : dao.getAllAgencies()) {
+                        agencyIds.add(agency.getId());
+                    }
+                    if (gtfsBundle.getDefaultAgencyId() != null) {
+                        agencyIds.add(gtfsBundle.getDefaultAgencyId());
+                    }
+                    if (incremental) {
+                        Set<String> toRemove = new HashSet<String>(agencyIds);
+                        if (gtfsBundle.getPath() != null) {
+                            toRemove.addAll(fingerprints.getAgencyIds(gtfsBundle.getPath().getName()));
+                        }
+                        // do not remove what an earlier bundle of this build has just loaded
+                        toRemove.removeAll(loadedAgencyIds);
+                        removeTransit(graph, toRemove, removedAgencyIds);
+                    }
+                    loadedAgencyIds.addAll(agencyIds);
+
+                    CalendarServiceDataFactoryImpl csfactory = new CalendarServiceDataFactoryImpl();
+                    csfactory.setGtfsDao(dao);
+                    CalendarServiceData data = csfactory.createData();
+                    service.addData(data, dao);
+
+                    hf.setDefaultStreetToStopTime(gtfsBundle.getDefaultStreetToStopTime());
+                    if (sortedStopTimes != null) {
+                        sortedStopTimes.finish(dao);
+                        hf.setSortedStopTimes(sortedStopTimes);
+                    }
+                    hf.run(graph);
+                } finally {
+                    if (sortedStopTimes != null) {
+                        sortedStopTimes.close();
+                    }
+                }
 
                 if (gtfsBundle.doesTransfersTxtDefineStationPaths()) {
                     hf.createTransfersTxtTransfers();
@@ -193,11 +282,38 @@ public class GtfsGraphBuilderImpl implements GraphBuilder {
                         builder.setDao(null); // clean up
                     }
                 }
+                if (gtfsBundle.getPath() != null) {
+                    fingerprints.put(gtfsBundle.getPath(), agencyIds);
+                }
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
+        if (incremental) {
+            ReloadedStops reloadedStops = new ReloadedStops();
+            for (TransitStop stop : IterableLibrary.filter(graph.getVertices(), TransitStop.class)) {
+                if (loadedAgencyIds.contains(stop.getStopId().getAgencyId())) {
+                    reloadedStops.add(stop);
+                }
+            }
+            extra.put(ReloadedStops.class, reloadedStops);
+            if (graph.removeService(StopTransferMatrix.class) != null) {
+                // its stop indexes no longer match the stops, the transfer matrix builder makes
+                // a new one if it is part of this build
+                LOG.info("Incremental build: dropping the stop transfer matrix of the earlier build");
+            }
+            if (previousCalendarData != null) {
+                keepCalendarData(service.getData(), previousCalendarData, removedAgencyIds);
+            }
+            if (previousFareService != null) {
+                // fare rules cannot be merged per feed, so the fares of the rebuilt feeds are
+                // the ones of the earlier build
+                LOG.warn("Incremental build: keeping the fares of the earlier build, a full build is needed to change fares");
+                graph.putService(FareService.class, previousFareService);
+            }
+        }
+
         // We need to save the calendar service data so we can use it later
         CalendarServiceData data = service.getData();
         graph.putService(CalendarServiceData.class, data);
@@ -209,10 +325,68 @@ public class GtfsGraphBuilderImpl implements GraphBuilder {
      * Private Methods
      ****/
 
-    private void loadBundle(GtfsBundle gtfsBundle, Graph graph, GtfsMutableRelationalDao dao)
-            throws IOException {
+    /**
+     * Remove the stops, patterns and transfers of the given agencies from the graph, and their
+     * entries in the transit index and transfer table, so that their feed can be loaded again.
+     */
+    private void removeTransit(Graph graph, Set<String> agencyIds, Set<String> removedAgencyIds) {
+        if (agencyIds.isEmpty())
+            return;
+        int nRemoved = 0;
+        for (Vertex v : new ArrayList<Vertex>(graph.getVertices())) {
+            if (v instanceof TransitVertex
+                    && agencyIds.contains(((TransitVertex) v).getStopId().getAgencyId())) {
+                graph.removeVertexAndEdges(v);
+                nRemoved += 1;
+            }
+        }
+        Iterator<Agency> agencies = graph.getAgencies().iterator();
+        while (agencies.hasNext()) {
+            if (agencyIds.contains(agencies.next().getId())) {
+                agencies.remove();
+            }
+        }
+        graph.getAgencyIds().removeAll(agencyIds);
+        graph.getTransferTable().removeAgencies(agencyIds);
+        TransitIndexService transitIndex = graph.getService(TransitIndexService.class);
+        if (transitIndex instanceof TransitIndexServiceImpl) {
+            ((TransitIndexServiceImpl) transitIndex).removeAgencies(agencyIds);
+        }
+        removedAgencyIds.addAll(agencyIds);
+        LOG.info("removed {} transit vertices of agencies {}", nRemoved, agencyIds);
+    }
+
+    /** Copy the calendars of the agencies that were not rebuilt from the earlier build. */
+    private void keepCalendarData(CalendarServiceData data, CalendarServiceData previous,
+            Set<String> removedAgencyIds) {
+        for (String agencyId : previous.getAgencyIds()) {
+            if (!removedAgencyIds.contains(agencyId)
+                    && data.getTimeZoneForAgencyId(agencyId) == null) {
+                data.putTimeZoneForAgencyId(agencyId, previous.getTimeZoneForAgencyId(agencyId));
+            }
+        }
+        for (LocalizedServiceId id : previous.getLocalizedServiceIds()) {
+            if (!removedAgencyIds.contains(id.getId().getAgencyId())
+                    && data.getDatesForLocalizedServiceId(id) == null) {
+                data.putDatesForLocalizedServiceId(id, previous.getDatesForLocalizedServiceId(id));
+            }
+        }
+        for (AgencyAndId serviceId : previous.getServiceIds()) {
+            if (!removedAgencyIds.contains(serviceId.getAgencyId())
+                    && data.getServiceDatesForServiceId(serviceId) == null) {
+                data.putServiceDatesForServiceId(serviceId,
+                        previous.getServiceDatesForServiceId(serviceId));
+            }
+        }
+    }
+
+    /**
+     * @param sortedStopTimes if not null, the stop times are added to it instead of to the DAO
+     */
+    private void loadBundle(GtfsBundle gtfsBundle, Graph graph, GtfsMutableRelationalDao dao,
+            ExternalStopTimeSorter sortedStopTimes) throws IOException {
 
-        StoreImpl store = new StoreImpl(dao);
+        StoreImpl store = new StoreImpl(dao, sortedStopTimes);
         store.open();
         LOG.info("reading {}", gtfsBundle.toString());
 
@@ -266,8 +440,11 @@ public class GtfsGraphBuilderImpl implements GraphBuilder {
 
         private GtfsMutableRelationalDao dao;
 
-        StoreImpl(GtfsMutableRelationalDao dao) {
+        private ExternalStopTimeSorter sortedStopTimes;
+
+        StoreImpl(GtfsMutableRelationalDao dao, ExternalStopTimeSorter sortedStopTimes) {
             this.dao = dao;
+            this.sortedStopTimes = sortedStopTimes;
         }
 
         @Override
@@ -295,6 +472,15 @@ public class GtfsGraphBuilderImpl implements GraphBuilder {
                     return;
             }
 
+            if (sortedStopTimes != null && entity instanceof StopTime) {
+                try {
+                    sortedStopTimes.add((StopTime) entity);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                return;
+            }
+
             dao.saveEntity(entity);
         }
 
@@ -388,6 +574,12 @@ public class GtfsGraphBuilderImpl implements GraphBuilder {
     public void checkInputs() {
         for (GtfsBundle bundle : _gtfsBundles.getBundles()) {
             bundle.checkInputs();
+            // e.g. the transit index is built from the stop times in the DAO
+            if (bundle.isStreamStopTimes() && gtfsGraphBuilders != null
+                    && !gtfsGraphBuilders.isEmpty()) {
+                throw new RuntimeException("Cannot stream the stop times of " + bundle
+                        + ", they are read from the GTFS DAO by " + gtfsGraphBuilders);
+            }
         }
     }
 
@@ -22,6 +22,7 @@ import lombok.Setter;
 import org.opentripplanner.common.IterableLibrary;
 import org.opentripplanner.common.geometry.DistanceLibrary;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.graph_builder.model.ReloadedStops;
 import org.opentripplanner.graph_builder.services.GraphBuilder;
 import org.opentripplanner.routing.edgetype.SimpleTransfer;
 import org.opentripplanner.routing.graph.Graph;
@@ -57,8 +58,13 @@ public class StreetlessStopLinker implements GraphBuilder {
     @Override
     public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
         StreetVertexIndexService index = new StreetVertexIndexServiceImpl(graph);
+        // in an incremental build, the stops of the base graph are already linked to each other
+        ReloadedStops reloadedStops = (ReloadedStops) extra.get(ReloadedStops.class);
         
         for (TransitStop ts : IterableLibrary.filter(graph.getVertices(), TransitStop.class)) {
+            if (reloadedStops != null && !reloadedStops.contains(ts)) {
+                continue;
+            }
             Coordinate c = ts.getCoordinate();
             LOG.trace("linking stop {}", ts);
             int n = 0;
@@ -66,6 +72,9 @@ public class StreetlessStopLinker implements GraphBuilder {
                 double distance = distanceLibrary.distance(c, other.getCoordinate());
                 LOG.trace("  to stop: {} ({}m)", other, distance);
                 new SimpleTransfer(ts, other, distance);
+                if (reloadedStops != null && !reloadedStops.contains(other)) {
+                    new SimpleTransfer(other, ts, distance);
+                }
                 n += 1;
             }
             LOG.trace("linked to {} others.", n);
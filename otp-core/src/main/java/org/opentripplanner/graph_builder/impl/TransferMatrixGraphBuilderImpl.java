@@ -0,0 +1,259 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import lombok.Setter;
+
+import org.opentripplanner.common.IterableLibrary;
+import org.opentripplanner.graph_builder.model.ReloadedStops;
+import org.opentripplanner.graph_builder.services.GraphBuilder;
+import org.opentripplanner.routing.algorithm.GenericDijkstra;
+import org.opentripplanner.routing.algorithm.strategies.SkipEdgeStrategy;
+import org.opentripplanner.routing.algorithm.strategies.SkipTraverseResultStrategy;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.core.StopTransferMatrix;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.edgetype.SimpleTransfer;
+import org.opentripplanner.routing.edgetype.TransferEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.vertextype.TransitStop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link GraphBuilder} plugin that computes street-network transfers between all pairs of transit
+ * stops closer than a given radius, and stores them as a {@link StopTransferMatrix} graph service.
+ * One radius-limited street search is made from every stop; the searches are independent and run
+ * in parallel on a fixed thread pool. Optionally SimpleTransfer edges are created from the walking
+ * transfers, so that the LongDistancePathService transfers over the street network distances
+ * instead of the straight-line distances used by the StreetlessStopLinker.
+ * 
+ * A RaptorDataBuilder which is set to use the transfer matrix reads its stop-to-stop walk times
+ * from it, provided that the radius is at least
+ * {@link org.opentripplanner.graph_builder.impl.raptor.RaptorDataBuilder#MAX_DISTANCE}.
+ */
+public class TransferMatrixGraphBuilderImpl implements GraphBuilder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransferMatrixGraphBuilderImpl.class);
+
+    /** The maximum street distance of a transfer, in meters. */
+    @Setter
+    private double radius = 1000;
+
+    /** Also compute bicycle transfers, in addition to walking transfers. */
+    @Setter
+    private boolean bikeTransfers = false;
+
+    /** Create SimpleTransfer edges for the walking transfers. */
+    @Setter
+    private boolean createSimpleTransfers = false;
+
+    /** The walking speed of the transfer durations, in m/s. */
+    @Setter
+    private double walkSpeed = 1.33;
+
+    @Setter
+    private int nThreads = Runtime.getRuntime().availableProcessors();
+
+    public List<String> provides() {
+        return Arrays.asList("transferMatrix");
+    }
+
+    public List<String> getPrerequisites() {
+        return Arrays.asList("streets", "linking");
+    }
+
+    @Override
+    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+        List<TransitStop> stops = new ArrayList<TransitStop>();
+        for (TransitStop ts : IterableLibrary.filter(graph.getVertices(), TransitStop.class)) {
+            stops.add(ts);
+        }
+        StopTransferMatrix matrix = new StopTransferMatrix(stops, radius, walkSpeed);
+        LOG.info("Computing transfers between {} stops within {}m using {} threads", stops.size(),
+                radius, nThreads);
+        matrix.setTransfers(TraverseMode.WALK, computeTransfers(matrix, TraverseMode.WALK));
+        if (bikeTransfers) {
+            matrix.setTransfers(TraverseMode.BICYCLE, computeTransfers(matrix, TraverseMode.BICYCLE));
+        }
+        graph.putService(StopTransferMatrix.class, matrix);
+
+        if (createSimpleTransfers) {
+            // in an incremental build, the stops of the base graph already have the transfers
+            // between them, only the ones from or to a reloaded stop are created
+            ReloadedStops reloadedStops = (ReloadedStops) extra.get(ReloadedStops.class);
+            StopTransferMatrix.Transfers walk = matrix.getTransfers(TraverseMode.WALK);
+            int n = 0;
+            for (int from = 0; from < matrix.getStopCount(); ++from) {
+                TransitStop fromStop = matrix.getStop(from);
+                for (int i = walk.begin(from); i < walk.end(from); ++i) {
+                    TransitStop toStop = matrix.getStop(walk.getTarget(i));
+                    if (reloadedStops != null && !reloadedStops.contains(fromStop)
+                            && !reloadedStops.contains(toStop)) {
+                        continue;
+                    }
+                    new SimpleTransfer(fromStop, toStop, walk.getDistance(i));
+                    n += 1;
+                }
+            }
+            LOG.info("Created {} simple transfers.", n);
+        }
+    }
+
+    private StopTransferMatrix.Transfers computeTransfers(StopTransferMatrix matrix,
+            TraverseMode mode) {
+        RoutingRequest options = new RoutingRequest(mode);
+        options.setWalkSpeed(walkSpeed);
+        options.setMaxWalkDistance(radius);
+        int nStops = matrix.getStopCount();
+
+        ExecutorService threadPool = Executors.newFixedThreadPool(nThreads);
+        List<Future<StopResult>> futures = new ArrayList<Future<StopResult>>(nStops);
+        for (int i = 0; i < nStops; ++i) {
+            futures.add(threadPool.submit(new StopSearch(matrix, options, i)));
+        }
+
+        // assemble the rows in stop order so that the result does not depend on scheduling
+        int[] offsets = new int[nStops + 1];
+        StopResult[] results = new StopResult[nStops];
+        try {
+            for (int i = 0; i < nStops; ++i) {
+                results[i] = futures.get(i).get();
+                offsets[i + 1] = offsets[i] + results[i].targets.length;
+                if (i % 5000 == 0) {
+                    LOG.info("{} transfers: {} / {} stops", mode, i, nStops);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            threadPool.shutdown();
+        }
+
+        int total = offsets[nStops];
+        int[] targets = new int[total];
+        float[] distances = new float[total];
+        int[] durations = new int[total];
+        for (int i = 0; i < nStops; ++i) {
+            StopResult result = results[i];
+            System.arraycopy(result.targets, 0, targets, offsets[i], result.targets.length);
+            System.arraycopy(result.distances, 0, distances, offsets[i], result.distances.length);
+            System.arraycopy(result.durations, 0, durations, offsets[i], result.durations.length);
+        }
+        LOG.info("Found {} {} transfers.", total, mode);
+        return new StopTransferMatrix.Transfers(offsets, targets, distances, durations);
+    }
+
+    @Override
+    public void checkInputs() {
+        //no inputs
+    }
+
+    /** The transfers leaving a single stop, sorted by target stop index. */
+    private static class StopResult {
+        int[] targets;
+
+        float[] distances;
+
+        int[] durations;
+    }
+
+    /** A radius-limited street search from a single stop. */
+    private class StopSearch implements Callable<StopResult> {
+
+        private final StopTransferMatrix matrix;
+
+        private final RoutingRequest options;
+
+        private final int origin;
+
+        StopSearch(StopTransferMatrix matrix, RoutingRequest options, int origin) {
+            this.matrix = matrix;
+            this.options = options;
+            this.origin = origin;
+        }
+
+        @Override
+        public StopResult call() {
+            final TransitStop originStop = matrix.getStop(origin);
+            GenericDijkstra dijkstra = new GenericDijkstra(options);
+            dijkstra.setSkipEdgeStrategy(new SkipEdgeStrategy() {
+                @Override
+                public boolean shouldSkipEdge(Vertex origin, Vertex target, State current,
+                        Edge edge, ShortestPathTree spt, RoutingRequest traverseOptions) {
+                    // do not chain transfers through other stops or existing transfer edges
+                    if (current.getVertex() instanceof TransitStop && current.getVertex() != originStop)
+                        return true;
+                    return edge instanceof SimpleTransfer || edge instanceof TransferEdge;
+                }
+            });
+            dijkstra.setSkipTraverseResultStrategy(new SkipTraverseResultStrategy() {
+                @Override
+                public boolean shouldSkipTraversalResult(Vertex origin, Vertex target,
+                        State parent, State current, ShortestPathTree spt,
+                        RoutingRequest traverseOptions) {
+                    return current.getWalkDistance() > radius;
+                }
+            });
+            ShortestPathTree spt = dijkstra.getShortestPathTree(new State(originStop, options));
+
+            // keep the shortest transfer to each reached stop
+            HashMap<Integer, State> best = new HashMap<Integer, State>();
+            for (State state : spt.getAllStates()) {
+                Vertex v = state.getVertex();
+                if (v == originStop || !(v instanceof TransitStop))
+                    continue;
+                int target = matrix.getStopIndex((TransitStop) v);
+                if (target < 0)
+                    continue;
+                State previous = best.get(target);
+                if (previous == null || state.getWalkDistance() < previous.getWalkDistance()) {
+                    best.put(target, state);
+                }
+            }
+            int[] targets = new int[best.size()];
+            int n = 0;
+            for (Integer target : best.keySet()) {
+                targets[n++] = target;
+            }
+            Arrays.sort(targets);
+            StopResult result = new StopResult();
+            result.targets = targets;
+            result.distances = new float[targets.length];
+            result.durations = new int[targets.length];
+            for (int i = 0; i < targets.length; ++i) {
+                State state = best.get(targets[i]);
+                result.distances[i] = (float) state.getWalkDistance();
+                result.durations[i] = (int) state.getElapsedTimeSeconds();
+            }
+            return result;
+        }
+    }
+}
@@ -17,6 +17,8 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
+import lombok.Setter;
+
 import org.opentripplanner.graph_builder.services.GraphBuilder;
 import org.opentripplanner.routing.edgetype.loader.NetworkLinker;
 import org.opentripplanner.routing.graph.Graph;
@@ -31,6 +33,10 @@ public class TransitToStreetNetworkGraphBuilderImpl implements GraphBuilder {
 
     private static final Logger LOG = LoggerFactory.getLogger(TransitToStreetNetworkGraphBuilderImpl.class);
 
+    /** The number of threads looking up the streets near the stops. */
+    @Setter
+    private int threads = Runtime.getRuntime().availableProcessors();
+
     public List<String> provides() {
         return Arrays.asList("linking");
     }
@@ -43,6 +49,7 @@ public class TransitToStreetNetworkGraphBuilderImpl implements GraphBuilder {
     public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
         LOG.info("Linking transit stops to streets...");
         NetworkLinker linker = new NetworkLinker(graph, extra);
+        linker.setThreads(threads);
         linker.createLinkage();
     }
 
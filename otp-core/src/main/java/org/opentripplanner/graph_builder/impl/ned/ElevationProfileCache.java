@@ -0,0 +1,193 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.impl.ned;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.opentripplanner.common.geometry.PackedCoordinateSequence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * An on-disk cache of the elevation profiles sampled by the {@link NEDGraphBuilderImpl}, keyed by
+ * a hash of the edge geometry. When a graph is rebuilt from mostly unchanged OSM data, the streets
+ * that did not move get their profiles from the cache instead of being sampled again.
+ * 
+ * The profiles read from the file are only looked up, and the profiles of the current build are
+ * collected separately and replace the file when it is saved, so entries for streets that no
+ * longer exist do not accumulate. The cache is discarded if it was made with another sample
+ * distance, or from other elevation data: the names, sizes and modification times of the source
+ * files are saved with the profiles.
+ */
+public class ElevationProfileCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ElevationProfileCache.class);
+
+    private static final int MAGIC = 0x4e454432; // "NED2"
+
+    private final File file;
+
+    private final double distanceBetweenSamplesM;
+
+    private final long sourceSignature;
+
+    /* read-only once loaded, so that it can be read from the sampling threads */
+    private final Map<Long, double[]> loaded = new HashMap<Long, double[]>();
+
+    private final Map<Long, double[]> current = new HashMap<Long, double[]>();
+
+    /**
+     * @param sourceFiles the files of the elevation data the profiles are sampled from
+     */
+    public ElevationProfileCache(File file, double distanceBetweenSamplesM,
+            List<File> sourceFiles) {
+        this.file = file;
+        this.distanceBetweenSamplesM = distanceBetweenSamplesM;
+        this.sourceSignature = signature(sourceFiles);
+    }
+
+    /** Read the profiles saved by a previous build, if any. Unreadable caches are ignored. */
+    public void load() {
+        if (!file.exists())
+            return;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+                    new FileInputStream(file))));
+            if (in.readInt() != MAGIC || in.readDouble() != distanceBetweenSamplesM) {
+                LOG.info("Ignoring elevation profile cache {} made with other settings", file);
+                return;
+            }
+            if (in.readLong() != sourceSignature) {
+                LOG.info("Ignoring elevation profile cache {} made from other elevation data",
+                        file);
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long key = in.readLong();
+                double[] profile = new double[in.readInt() * 2];
+                for (int j = 0; j < profile.length; j++) {
+                    profile[j] = in.readDouble();
+                }
+                loaded.put(key, profile);
+            }
+            LOG.info("Loaded {} cached elevation profiles from {}", count, file);
+        } catch (IOException e) {
+            LOG.warn("Could not read elevation profile cache " + file, e);
+            loaded.clear();
+        } finally {
+            close(in);
+        }
+    }
+
+    /** @return the cached profile of an edge with the given geometry hash, or null. */
+    public PackedCoordinateSequence get(long key) {
+        double[] profile = loaded.get(key);
+        if (profile == null)
+            return null;
+        return new PackedCoordinateSequence.Double(profile, 2);
+    }
+
+    /** Record the profile of an edge of the current build. Not thread-safe. */
+    public void put(long key, PackedCoordinateSequence profile) {
+        double[] packed = new double[profile.size() * 2];
+        for (int i = 0; i < profile.size(); i++) {
+            packed[i * 2] = profile.getOrdinate(i, 0);
+            packed[i * 2 + 1] = profile.getOrdinate(i, 1);
+        }
+        current.put(key, packed);
+    }
+
+    /** Replace the file with the profiles of the current build. */
+    public void save() {
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(
+                    new FileOutputStream(tmp))));
+            out.writeInt(MAGIC);
+            out.writeDouble(distanceBetweenSamplesM);
+            out.writeLong(sourceSignature);
+            out.writeInt(current.size());
+            for (Map.Entry<Long, double[]> entry : current.entrySet()) {
+                double[] profile = entry.getValue();
+                out.writeLong(entry.getKey());
+                out.writeInt(profile.length / 2);
+                for (double ordinate : profile) {
+                    out.writeDouble(ordinate);
+                }
+            }
+            out.close();
+            out = null;
+            if (!(tmp.renameTo(file) || (file.delete() && tmp.renameTo(file)))) {
+                throw new IOException("could not replace " + file);
+            }
+            LOG.info("Saved {} elevation profiles to {}", current.size(), file);
+        } catch (IOException e) {
+            LOG.warn("Could not write elevation profile cache " + file, e);
+        } finally {
+            close(out);
+        }
+    }
+
+    /** A 64 bit hash of the coordinates of a geometry (FNV-1a over their bits). */
+    public static long hash(Geometry geometry) {
+        long hash = 0xcbf29ce484222325L;
+        for (Coordinate c : geometry.getCoordinates()) {
+            hash = (hash ^ Double.doubleToLongBits(c.x)) * 0x100000001b3L;
+            hash = (hash ^ Double.doubleToLongBits(c.y)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /** A 64 bit hash of the names, sizes and modification times of the given files. */
+    static long signature(List<File> files) {
+        long hash = 0xcbf29ce484222325L;
+        for (File file : files) {
+            for (char c : file.getName().toCharArray()) {
+                hash = (hash ^ c) * 0x100000001b3L;
+            }
+            hash = (hash ^ file.length()) * 0x100000001b3L;
+            hash = (hash ^ file.lastModified()) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static void close(Closeable stream) {
+        if (stream == null)
+            return;
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // nothing more to do
+        }
+    }
+}
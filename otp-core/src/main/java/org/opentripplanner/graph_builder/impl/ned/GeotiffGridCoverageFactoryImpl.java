@@ -15,6 +15,8 @@ package org.opentripplanner.graph_builder.impl.ned;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.gce.geotiff.GeoTiffFormat;
@@ -48,6 +50,13 @@ public class GeotiffGridCoverageFactoryImpl implements NEDGridCoverageFactory {
 
     @Override
     public GridCoverage2D getGridCoverage() {
+        coverage = readGridCoverage();
+        return coverage;
+    }
+
+    /** Each call opens the file with a new reader. */
+    @Override
+    public GridCoverage2D readGridCoverage() {
         GeoTiffFormat format = new GeoTiffFormat();
         GeoTiffReader reader = null;
 
@@ -56,12 +65,15 @@ public class GeotiffGridCoverageFactoryImpl implements NEDGridCoverageFactory {
                 throw new RuntimeException("Path not set");
             }
             reader = format.getReader(path);
-            coverage = reader.read(null);
+            return reader.read(null);
         } catch (IOException e) {
             throw new RuntimeException("Error getting coverage automatically. ", e);
         }
+    }
 
-        return coverage;
+    @Override
+    public List<File> getSourceFiles() {
+        return Collections.singletonList(path);
     }
 
     @Override
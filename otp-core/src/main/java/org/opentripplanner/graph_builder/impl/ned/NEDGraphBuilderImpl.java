@@ -13,12 +13,19 @@
 
 package org.opentripplanner.graph_builder.impl.ned;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.media.jai.InterpolationBilinear;
 
@@ -34,6 +41,7 @@ import org.opentripplanner.gbannotation.ElevationFlattened;
 import org.opentripplanner.graph_builder.impl.extra_elevation_data.ElevationPoint;
 import org.opentripplanner.graph_builder.services.GraphBuilder;
 import org.opentripplanner.graph_builder.services.ned.NEDGridCoverageFactory;
+import org.opentripplanner.routing.core.MortonVertexComparator;
 import org.opentripplanner.routing.edgetype.EdgeWithElevation;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
@@ -52,6 +60,11 @@ import com.vividsolutions.jts.geom.Geometry;
  * measured from the start, and the y-coord representing the sampled elevation at that point (both
  * in meters).
  * 
+ * The edges are sampled in batches on several threads, each reading its own copy of the
+ * coverage, since nothing guarantees that the GeoTools rasters and readers can be shared.
+ * The edges are ordered along a Morton curve so that each batch covers a compact area, and the
+ * profiles can be kept in an {@link ElevationProfileCache} between builds.
+ * 
  * @author demory, novalis (missing elevation interp)
  * 
  */
@@ -60,7 +73,19 @@ public class NEDGraphBuilderImpl implements GraphBuilder {
 
     private NEDGridCoverageFactory gridCoverageFactory;
 
-    private Coverage coverage;
+    private static final int BATCH_SIZE = 1000;
+
+    /* each sampling thread evaluates its own copy of the coverage */
+    private final ThreadLocal<Coverage> threadCoverages = new ThreadLocal<Coverage>() {
+        @Override
+        protected Coverage initialValue() {
+            return interpolate(gridCoverageFactory.readGridCoverage());
+        }
+    };
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private File profileCacheFile;
 
     /**
      * The distance between samples in meters. Defaults to 10m, the approximate resolution of 1/3
@@ -92,33 +117,76 @@ public class NEDGraphBuilderImpl implements GraphBuilder {
         distanceBetweenSamplesM = distance;
     }
 
+    /** The number of threads sampling elevations. */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Keep the sampled elevation profiles in this file, and reuse them for the edges whose
+     * geometry did not change when the graph is rebuilt from the same elevation data. No cache
+     * is used if this is not set.
+     */
+    public void setProfileCacheFile(File profileCacheFile) {
+        this.profileCacheFile = profileCacheFile;
+    }
+
     @Override
     public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
         gridCoverageFactory.setGraph(graph);
-        Coverage gridCov = gridCoverageFactory.getGridCoverage();
+        // fetches the elevation data, which the sampling threads then read their coverages from
+        gridCoverageFactory.getGridCoverage();
+
+        ElevationProfileCache cache = null;
+        if (profileCacheFile != null) {
+            cache = new ElevationProfileCache(profileCacheFile, distanceBetweenSamplesM,
+                    gridCoverageFactory.getSourceFiles());
+            cache.load();
+        }
 
-        // If gridCov is a GridCoverage2D, apply a bilinear interpolator. Otherwise, just use the
-        // coverage as is (note: UnifiedGridCoverages created by NEDGridCoverageFactoryImpl handle
-        // interpolation internally)
-        coverage = (gridCov instanceof GridCoverage2D) ? Interpolator2D.create(
-                (GridCoverage2D) gridCov, new InterpolationBilinear()) : gridCov;
         log.info("setting street elevation profiles from NED data...");
         List<EdgeWithElevation> edgesWithElevation = new ArrayList<EdgeWithElevation>();
-        int nProcessed = 0;
-        int nTotal = graph.countEdges();
-        for (Vertex gv : graph.getVertices()) {
-            for (Edge ee : gv.getOutgoing()) {
-                if (ee instanceof EdgeWithElevation) {
-                    EdgeWithElevation edgeWithElevation = (EdgeWithElevation) ee;
-                    processEdge(graph, edgeWithElevation);
-                    if (edgeWithElevation.getElevationProfile() != null && !edgeWithElevation.isElevationFlattened()) {
-                        edgesWithElevation.add(edgeWithElevation);
+        List<EdgeWithElevation> edges = getEdgesInMortonOrder(graph);
+        ExecutorService threadPool = Executors.newFixedThreadPool(threads);
+        try {
+            // batches are contiguous in Morton order, so each thread samples a compact area and
+            // reuses the raster tiles it has already loaded
+            List<Future<PackedCoordinateSequence[]>> batches = new ArrayList<Future<PackedCoordinateSequence[]>>();
+            for (int start = 0; start < edges.size(); start += BATCH_SIZE) {
+                List<EdgeWithElevation> batch = edges.subList(start,
+                        Math.min(start + BATCH_SIZE, edges.size()));
+                batches.add(threadPool.submit(new SampleTask(batch, cache)));
+            }
+            int nProcessed = 0;
+            for (int b = 0; b < batches.size(); b++) {
+                PackedCoordinateSequence[] profiles = batches.get(b).get();
+                for (int i = 0; i < profiles.length; i++) {
+                    EdgeWithElevation edge = edges.get(b * BATCH_SIZE + i);
+                    if (profiles[i] != null) {
+                        if (edge.setElevationProfile(profiles[i], false)) {
+                            log.trace(graph.addBuilderAnnotation(new ElevationFlattened(edge)));
+                        }
+                        if (cache != null) {
+                            cache.put(ElevationProfileCache.hash(edge.getGeometry()), profiles[i]);
+                        }
+                    }
+                    if (edge.getElevationProfile() != null && !edge.isElevationFlattened()) {
+                        edgesWithElevation.add(edge);
                     }
                     nProcessed += 1;
                     if (nProcessed % 50000 == 0)
-                        log.info("set elevation on {}/{} edges", nProcessed, nTotal);
+                        log.info("set elevation on {}/{} edges", nProcessed, edges.size());
                 }
             }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            threadPool.shutdownNow();
+        }
+        if (cache != null) {
+            cache.save();
         }
 
         @SuppressWarnings("unchecked")
@@ -126,6 +194,68 @@ public class NEDGraphBuilderImpl implements GraphBuilder {
         assignMissingElevations(graph, edgesWithElevation, extraElevation);
     }
 
+    /**
+     * The edges with elevation, ordered by the Morton code of their from vertex, so that edges
+     * that are close in the list are close on the ground.
+     */
+    private List<EdgeWithElevation> getEdgesInMortonOrder(Graph graph) {
+        List<Vertex> vertices = new ArrayList<Vertex>(graph.getVertices());
+        if (!vertices.isEmpty()) {
+            Collections.sort(vertices, new MortonVertexComparator(vertices));
+        }
+        List<EdgeWithElevation> edges = new ArrayList<EdgeWithElevation>();
+        for (Vertex gv : vertices) {
+            for (Edge ee : gv.getOutgoing()) {
+                if (ee instanceof EdgeWithElevation) {
+                    edges.add((EdgeWithElevation) ee);
+                }
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * If the coverage is a GridCoverage2D, apply a bilinear interpolator. Otherwise, just use the
+     * coverage as is (note: UnifiedGridCoverages created by NEDGridCoverageFactoryImpl handle
+     * interpolation internally)
+     */
+    private static Coverage interpolate(Coverage gridCov) {
+        return (gridCov instanceof GridCoverage2D) ? Interpolator2D.create(
+                (GridCoverage2D) gridCov, new InterpolationBilinear()) : gridCov;
+    }
+
+    /** Samples the elevation profiles of a batch of edges, with the coverage of its thread. */
+    private class SampleTask implements Callable<PackedCoordinateSequence[]> {
+
+        private final List<EdgeWithElevation> edges;
+
+        private final ElevationProfileCache cache;
+
+        SampleTask(List<EdgeWithElevation> edges, ElevationProfileCache cache) {
+            this.edges = edges;
+            this.cache = cache;
+        }
+
+        @Override
+        public PackedCoordinateSequence[] call() {
+            Coverage threadCoverage = threadCoverages.get();
+            PackedCoordinateSequence[] profiles = new PackedCoordinateSequence[edges.size()];
+            for (int i = 0; i < profiles.length; i++) {
+                EdgeWithElevation edge = edges.get(i);
+                if (edge.getElevationProfile() != null) {
+                    continue; /* already set up */
+                }
+                if (cache != null) {
+                    profiles[i] = cache.get(ElevationProfileCache.hash(edge.getGeometry()));
+                }
+                if (profiles[i] == null) {
+                    profiles[i] = sampleProfile(edge.getGeometry(), threadCoverage);
+                }
+            }
+            return profiles;
+        }
+    }
+
     class ElevationRepairState {
         /* This uses an intuitionist approach to elevation inspection */
         public EdgeWithElevation backEdge;
@@ -321,16 +451,12 @@ public class NEDGraphBuilderImpl implements GraphBuilder {
     }
 
     /**
-     * Processes a single {@link Street} edge, creating and assigning the elevation profile.
+     * Samples the elevation profile of a single {@link Street} edge.
      * 
-     * @param ee the street edge
-     * @param graph the graph (used only for error handling)
+     * @param g the geometry of the street edge
+     * @param coverage the coverage to sample, which must not be used by other threads
      */
-    private void processEdge(Graph graph, EdgeWithElevation ee) {
-        if (ee.getElevationProfile() != null) {
-            return; /* already set up */
-        }
-        Geometry g = ee.getGeometry();
+    private PackedCoordinateSequence sampleProfile(Geometry g, Coverage coverage) {
         Coordinate[] coords = g.getCoordinates();
 
         List<Coordinate> coordList = new LinkedList<Coordinate>();
@@ -343,7 +469,7 @@ public class NEDGraphBuilderImpl implements GraphBuilder {
         }
 
         // initial sample (x = 0)
-        coordList.add(new Coordinate(0, getElevation(coords[0])));
+        coordList.add(new Coordinate(0, getElevation(coverage, coords[0])));
 
         // loop for edge-internal samples
         for (double x = distanceBetweenSamplesM; x < edgeLenM; x += distanceBetweenSamplesM) {
@@ -353,20 +479,15 @@ public class NEDGraphBuilderImpl implements GraphBuilder {
             }
 
             Coordinate internal = getPointAlongEdge(coords, edgeLenM, x / edgeLenM);
-            coordList.add(new Coordinate(x, getElevation(internal)));
+            coordList.add(new Coordinate(x, getElevation(coverage, internal)));
         }
 
         // final sample (x = edge length)
-        coordList.add(new Coordinate(edgeLenM, getElevation(coords[coords.length - 1])));
+        coordList.add(new Coordinate(edgeLenM, getElevation(coverage, coords[coords.length - 1])));
 
         // construct the PCS
         Coordinate coordArr[] = new Coordinate[coordList.size()];
-        PackedCoordinateSequence elevPCS = new PackedCoordinateSequence.Double(
-                coordList.toArray(coordArr));
-
-        if(ee.setElevationProfile(elevPCS, false)) {
-            log.trace(graph.addBuilderAnnotation(new ElevationFlattened(ee)));
-        }
+        return new PackedCoordinateSequence.Double(coordList.toArray(coordArr));
     }
 
     /**
@@ -420,8 +541,8 @@ public class NEDGraphBuilderImpl implements GraphBuilder {
      * @param c the coordinate (NAD83)
      * @return elevation in meters
      */
-    private double getElevation(Coordinate c) {
-        return getElevation(c.x, c.y);
+    private double getElevation(Coverage coverage, Coordinate c) {
+        return getElevation(coverage, c.x, c.y);
     }
 
     /**
@@ -431,7 +552,7 @@ public class NEDGraphBuilderImpl implements GraphBuilder {
      * @param y the query latitude (NAD83)
      * @return elevation in meters
      */
-    private double getElevation(double x, double y) {
+    private double getElevation(Coverage coverage, double x, double y) {
         double values[] = new double[1];
         try {
             coverage.evaluate(new DirectPosition2D(x, y), values);
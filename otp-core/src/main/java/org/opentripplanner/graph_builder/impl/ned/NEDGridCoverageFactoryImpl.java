@@ -34,6 +34,8 @@ import org.springframework.beans.factory.annotation.Autowired;
  */
 public class NEDGridCoverageFactoryImpl implements NEDGridCoverageFactory {
 
+    private static final String[] DATUM_FILENAMES = {"g2012a00.gtx","g2012g00.gtx","g2012h00.gtx","g2012p00.gtx","g2012s00.gtx","g2012u00.gtx"};
+
     private Graph graph;
 
     UnifiedGridCoverage coverage = null;
@@ -44,6 +46,8 @@ public class NEDGridCoverageFactoryImpl implements NEDGridCoverageFactory {
 
     private List<VerticalDatum> datums;
 
+    private List<File> tilePaths;
+
     public NEDGridCoverageFactoryImpl () { }
     
     public NEDGridCoverageFactoryImpl(File cacheDirectory) {
@@ -63,9 +67,8 @@ public class NEDGridCoverageFactoryImpl implements NEDGridCoverageFactory {
     private void loadVerticalDatum () {
         if (datums == null) {
             datums = new ArrayList<VerticalDatum>();
-            String[] datumFilenames = {"g2012a00.gtx","g2012g00.gtx","g2012h00.gtx","g2012p00.gtx","g2012s00.gtx","g2012u00.gtx"};
             try {
-                for (String filename : datumFilenames) {
+                for (String filename : DATUM_FILENAMES) {
                     File datumFile = new File(cacheDirectory, filename);
                     VerticalDatum datum = VerticalDatum.fromGTX(new FileInputStream(datumFile)); 
                     datums.add(datum);
@@ -81,22 +84,40 @@ public class NEDGridCoverageFactoryImpl implements NEDGridCoverageFactory {
             loadVerticalDatum();
             tileSource.setGraph(graph);
             tileSource.setCacheDirectory(cacheDirectory);
-            List<File> paths = tileSource.getNEDTiles();
-            for (File path : paths) {
-                GeotiffGridCoverageFactoryImpl factory = new GeotiffGridCoverageFactoryImpl();
-                factory.setPath(path);
-                GridCoverage2D regionCoverage = Interpolator2D.create(factory.getGridCoverage(),
-                        new InterpolationBilinear());
-                if (coverage == null) {
-                    coverage = new UnifiedGridCoverage("unified", regionCoverage, datums);
-                } else {
-                    coverage.add(regionCoverage);
-                }
-            }
+            tilePaths = tileSource.getNEDTiles();
+            coverage = readGridCoverage();
         }
         return coverage;
     }
 
+    /** Reads the tiles again, sharing only the vertical datums, which are read-only. */
+    @Override
+    public UnifiedGridCoverage readGridCoverage() {
+        UnifiedGridCoverage unified = null;
+        for (File path : tilePaths) {
+            GeotiffGridCoverageFactoryImpl factory = new GeotiffGridCoverageFactoryImpl();
+            factory.setPath(path);
+            GridCoverage2D regionCoverage = Interpolator2D.create(factory.readGridCoverage(),
+                    new InterpolationBilinear());
+            if (unified == null) {
+                unified = new UnifiedGridCoverage("unified", regionCoverage, datums);
+            } else {
+                unified.add(regionCoverage);
+            }
+        }
+        return unified;
+    }
+
+    /** The NED tiles, and the vertical datum files which are added to their elevations. */
+    @Override
+    public List<File> getSourceFiles() {
+        List<File> files = new ArrayList<File>(tilePaths);
+        for (String filename : DATUM_FILENAMES) {
+            files.add(new File(cacheDirectory, filename));
+        }
+        return files;
+    }
+
     @Override
     public void checkInputs() {
         /* This is actually checking before we call tileSource.setCacheDirectory, which creates the dirs */
@@ -0,0 +1,126 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.impl.osm;
+
+import java.util.Arrays;
+
+import org.opentripplanner.common.LongHashSet;
+import org.opentripplanner.openstreetmap.model.OSMNode;
+
+/**
+ * The OSM nodes kept during graph building, indexed by id in an open-addressing hash table of
+ * primitive arrays. Most nodes have no tags, so only their coordinates are stored when they are
+ * loaded (about 28 bytes per node, instead of about 130 for an OSMNode in a HashMap<Long, OSMNode>).
+ * Nodes with tags are kept as they are. An OSMNode object is made for an untagged node the first
+ * time it is requested and is then kept, so that every request for a node returns the same object.
+ */
+class OSMNodeStore {
+
+    private static final long FREE = Long.MIN_VALUE;
+
+    private static final double MAX_LOAD = 0.6;
+
+    private long[] ids;
+
+    private double[] lats;
+
+    private double[] lons;
+
+    private OSMNode[] nodes;
+
+    private int size = 0;
+
+    private int resizeAt;
+
+    public OSMNodeStore() {
+        allocate(1024);
+    }
+
+    /** @return false if a node with the same id was already stored. */
+    public boolean put(OSMNode node) {
+        long id = node.getId();
+        if (id == FREE)
+            throw new IllegalArgumentException("Unsupported OSM node id " + id);
+        int slot = slot(id);
+        if (ids[slot] == id)
+            return false;
+        ids[slot] = id;
+        lats[slot] = node.getLat();
+        lons[slot] = node.getLon();
+        if (node.hasTags())
+            nodes[slot] = node;
+        if (++size >= resizeAt)
+            rehash(ids.length * 2);
+        return true;
+    }
+
+    /** @return the node with the given id, or null if it was not stored. */
+    public OSMNode get(long id) {
+        int slot = slot(id);
+        if (ids[slot] != id || id == FREE)
+            return null;
+        OSMNode node = nodes[slot];
+        if (node == null) {
+            node = new OSMNode();
+            node.setId(id);
+            node.setLat(lats[slot]);
+            node.setLon(lons[slot]);
+            nodes[slot] = node;
+        }
+        return node;
+    }
+
+    public boolean contains(long id) {
+        return id != FREE && ids[slot(id)] == id;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** @return the slot holding the given id, or the free slot where it would be stored. */
+    private int slot(long id) {
+        int mask = ids.length - 1;
+        int slot = LongHashSet.hash(id) & mask;
+        while (ids[slot] != FREE && ids[slot] != id)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        ids = new long[capacity];
+        Arrays.fill(ids, FREE);
+        lats = new double[capacity];
+        lons = new double[capacity];
+        nodes = new OSMNode[capacity];
+        resizeAt = (int) (capacity * MAX_LOAD);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldIds = ids;
+        double[] oldLats = lats;
+        double[] oldLons = lons;
+        OSMNode[] oldNodes = nodes;
+        allocate(capacity);
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] == FREE)
+                continue;
+            int slot = slot(oldIds[i]);
+            ids[slot] = oldIds[i];
+            lats[slot] = oldLats[i];
+            lons[slot] = oldLons[i];
+            nodes[slot] = oldNodes[i];
+        }
+    }
+}
@@ -23,6 +23,8 @@ import org.opentripplanner.openstreetmap.model.OSMWithTags;
 public class OSMSpecifier {
     public List<P2<String>> kvpairs;
 
+    private volatile CompiledPairs compiled;
+
     public OSMSpecifier() {
         kvpairs = new ArrayList<P2<String>>();
     }
@@ -38,6 +40,7 @@ public class OSMSpecifier {
             String[] kv = pair.split("=");
             kvpairs.add(new P2<String>(kv[0], kv[1]));
         }
+        compiled = null;
     }
 
     /**
@@ -47,15 +50,13 @@ public class OSMSpecifier {
      * @return
      */
     public P2<Integer> matchScores(OSMWithTags match) {
+        CompiledPairs compiled = getCompiled();
         int leftScore = 0, rightScore = 0;
         int leftMatches = 0, rightMatches = 0;
-        for (P2<String> pair : kvpairs) {
-            String tag = pair.getFirst().toLowerCase();
-            String value = pair.getSecond().toLowerCase();
-
-            String leftMatchValue = match.getTag(tag + ":left");
-            String rightMatchValue = match.getTag(tag + ":right");
-            String matchValue = match.getTag(tag);
+        for (int i = 0; i < compiled.size; i++) {
+            String matchValue = match.getTag(compiled.keys[i]);
+            String leftMatchValue = match.getTag(compiled.leftKeys[i]);
+            String rightMatchValue = match.getTag(compiled.rightKeys[i]);
             if (leftMatchValue == null) {
                 leftMatchValue = matchValue;
             }
@@ -63,67 +64,58 @@ public class OSMSpecifier {
                 rightMatchValue = matchValue;
             }
 
-            int leftTagScore = getTagScore(value, leftMatchValue);
+            int leftTagScore = compiled.getTagScore(i, leftMatchValue);
             leftScore += leftTagScore;
             if (leftTagScore > 0) {
                 leftMatches ++;
             }
-            int rightTagScore = getTagScore(value, rightMatchValue);
+            int rightTagScore = compiled.getTagScore(i, rightMatchValue);
             rightScore += rightTagScore;
             if (rightTagScore > 0) {
                 rightMatches ++;
             }
         }
-        int allMatchLeftBonus = (leftMatches == kvpairs.size()) ? 10 : 0;
+        int allMatchLeftBonus = (leftMatches == compiled.size) ? 10 : 0;
         leftScore += allMatchLeftBonus;
-        int allMatchRightBonus = (rightMatches == kvpairs.size()) ? 10 : 0;
+        int allMatchRightBonus = (rightMatches == compiled.size) ? 10 : 0;
         rightScore += allMatchRightBonus;
         P2<Integer> score = new P2<Integer>(leftScore, rightScore);
         return score;
     }
 
     public int matchScore(OSMWithTags match) {
+        CompiledPairs compiled = getCompiled();
         int score = 0;
         int matches = 0;
-        for (P2<String> pair : kvpairs) {
-            String tag = pair.getFirst().toLowerCase();
-            String value = pair.getSecond().toLowerCase();
-
-            String matchValue = match.getTag(tag);
-            int tagScore = getTagScore(value, matchValue);
+        for (int i = 0; i < compiled.size; i++) {
+            String matchValue = match.getTag(compiled.keys[i]);
+            int tagScore = compiled.getTagScore(i, matchValue);
             score += tagScore;
             if (tagScore > 0) {
                 matches += 1;
             }
         }
-        score += matches == kvpairs.size() ? 10 : 0;
+        score += matches == compiled.size ? 10 : 0;
         return score;
     }
 
-    private int getTagScore(String value, String matchValue) {
-        // either this matches on a wildcard, or it matches exactly
-        if (value.equals("*") && matchValue != null) {
-            return 1; // wildcard matches are basically tiebreakers
-        } else if (value.equals(matchValue)) {
-            return 100;
-        } else {
-            if (value.contains(":")) {
-                // treat cases like cobblestone:flattened as cobblestone if a more-specific match
-                // does not apply
-                value = value.split(":", 2)[0];
-                if (value.equals(matchValue)) {
-                    return 75;
-                } else {
-                    return 0;
-                }
-            } else {
-                return 0;
-            }
+    /*
+     * kvpairs is public and may be changed after construction, so the compiled form is rebuilt
+     * when the number of pairs changes. Specifiers are only edited while the way property set is
+     * being built, before any matching.
+     */
+    private CompiledPairs getCompiled() {
+        CompiledPairs compiled = this.compiled;
+        if (compiled == null || compiled.size != kvpairs.size()) {
+            compiled = new CompiledPairs(kvpairs);
+            this.compiled = compiled;
         }
+        return compiled;
     }
 
     public void addTag(String key, String value) {
         kvpairs.add(new P2<String>(key, value));
+        compiled = null;
     }
 
     public String toString() {
@@ -137,4 +129,58 @@ public class OSMSpecifier {
         builder.deleteCharAt(builder.length() - 1); // remove trailing semicolon
         return builder.toString();
     }
+
+    /**
+     * The key-value pairs in the form they are matched in, so that matching a way does no
+     * lower-casing, concatenation or splitting of strings. The keys are interned like those of
+     * the OSMTagDictionary, so that looking them up in a parsed way compares references.
+     */
+    private static class CompiledPairs {
+        final int size;
+
+        final String[] keys, leftKeys, rightKeys;
+
+        /* the value, and the part of the value before a colon, or null if there is no colon */
+        final String[] values, valuePrefixes;
+
+        final boolean[] wildcards;
+
+        CompiledPairs(List<P2<String>> kvpairs) {
+            size = kvpairs.size();
+            keys = new String[size];
+            leftKeys = new String[size];
+            rightKeys = new String[size];
+            values = new String[size];
+            valuePrefixes = new String[size];
+            wildcards = new boolean[size];
+            for (int i = 0; i < size; i++) {
+                String tag = kvpairs.get(i).getFirst().toLowerCase();
+                String value = kvpairs.get(i).getSecond().toLowerCase();
+                keys[i] = tag.intern();
+                leftKeys[i] = (tag + ":left").intern();
+                rightKeys[i] = (tag + ":right").intern();
+                values[i] = value;
+                valuePrefixes[i] = value.contains(":") ? value.split(":", 2)[0] : null;
+                wildcards[i] = value.equals("*");
+            }
+        }
+
+        int getTagScore(int i, String matchValue) {
+            if (matchValue == null) {
+                return 0;
+            }
+            // either this matches on a wildcard, or it matches exactly
+            if (wildcards[i]) {
+                return 1; // wildcard matches are basically tiebreakers
+            } else if (values[i].equals(matchValue)) {
+                return 100;
+            } else if (matchValue.equals(valuePrefixes[i])) {
+                // treat cases like cobblestone:flattened as cobblestone if a more-specific match
+                // does not apply
+                return 75;
+            } else {
+                return 0;
+            }
+        }
+    }
 }
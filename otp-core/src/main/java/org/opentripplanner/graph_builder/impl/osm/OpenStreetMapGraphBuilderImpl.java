@@ -27,6 +27,7 @@ import java.util.Set;
 import lombok.Setter;
 
 import org.opentripplanner.common.DisjointSet;
+import org.opentripplanner.common.LongHashSet;
 import org.opentripplanner.common.RepeatingTimePeriod;
 import org.opentripplanner.common.TurnRestriction;
 import org.opentripplanner.common.TurnRestrictionType;
@@ -258,7 +259,7 @@ public class OpenStreetMapGraphBuilderImpl implements GraphBuilder {
         
         private static final String levelnodeLabelFormat = nodeLabelFormat + ":level:%s";
 
-        private Map<Long, OSMNode> _nodes = new HashMap<Long, OSMNode>();
+        private OSMNodeStore _nodes = new OSMNodeStore();
 
         private Map<Long, OSMWay> _ways = new HashMap<Long, OSMWay>();
 
@@ -276,9 +277,9 @@ public class OpenStreetMapGraphBuilderImpl implements GraphBuilder {
 
         private Set<OSMWithTags> _processedAreas = new HashSet<OSMWithTags>();
 
-        private Set<Long> _nodesWithNeighbors = new HashSet<Long>();
+        private LongHashSet _nodesWithNeighbors = new LongHashSet();
 
-        private Set<Long> _areaNodes = new HashSet<Long>();
+        private LongHashSet _areaNodes = new LongHashSet();
 
         private Map<Long, List<TurnRestrictionTag>> turnRestrictionsByFromWay = new HashMap<Long, List<TurnRestrictionTag>>();
 
@@ -735,11 +736,6 @@ public class OpenStreetMapGraphBuilderImpl implements GraphBuilder {
                 processBikeRentalNodes();
             }
 
-            // Remove all simple islands
-            HashSet<Long> _keep = new HashSet<Long>(_nodesWithNeighbors);
-            _keep.addAll(_areaNodes);
-            _nodes.keySet().retainAll(_keep);
-
             // figure out which nodes that are actually intersections
             initIntersectionNodes();
 
@@ -1143,6 +1139,7 @@ public class OpenStreetMapGraphBuilderImpl implements GraphBuilder {
                         areaPermissions, true, carSpeed, edgeList);
 
                 backStreet.setStreetClass(cls);
+                backStreet.shareGeometry(street);
                 edges.add(backStreet);
 
                 WayProperties wayData = wayPropertySet.getDataForWay(areaEntity);
@@ -1726,7 +1723,7 @@ public class OpenStreetMapGraphBuilderImpl implements GraphBuilder {
         }
 
         private void initIntersectionNodes() {
-            Set<Long> possibleIntersectionNodes = new HashSet<Long>();
+            LongHashSet possibleIntersectionNodes = new LongHashSet();
             for (OSMWay way : _ways.values()) {
                 List<Long> nodes = way.getNodeRefs();
                 for (long node : nodes) {
@@ -1822,11 +1819,9 @@ public class OpenStreetMapGraphBuilderImpl implements GraphBuilder {
             if (!(_nodesWithNeighbors.contains(node.getId()) || _areaNodes.contains(node.getId())))
                 return;
 
-            if (_nodes.containsKey(node.getId()))
+            if (!_nodes.put(node))
                 return;
 
-            _nodes.put(node.getId(), node);
-
             if (_nodes.size() % 100000 == 0)
                 LOG.debug("nodes=" + _nodes.size());
         }
@@ -1976,7 +1971,7 @@ public class OpenStreetMapGraphBuilderImpl implements GraphBuilder {
                     continue;
                 }
                 for (Long nodeRef : way.getNodeRefs()) {
-                    if (!_nodes.containsKey(nodeRef)) {
+                    if (!_nodes.contains(nodeRef)) {
                         continue AREA;
                     }
                 }
@@ -1997,7 +1992,7 @@ public class OpenStreetMapGraphBuilderImpl implements GraphBuilder {
 
         }
 
-        private void markNodesForKeeping(Collection<OSMWay> osmWays, Set<Long> nodeSet) {
+        private void markNodesForKeeping(Collection<OSMWay> osmWays, LongHashSet nodeSet) {
             for (Iterator<OSMWay> it = osmWays.iterator(); it.hasNext();) {
                 OSMWay way = it.next();
                 // Since the way is kept, update nodes-with-neighbors
@@ -2032,7 +2027,7 @@ public class OpenStreetMapGraphBuilderImpl implements GraphBuilder {
                         continue RELATION;
                     }
                     for (Long nodeId : way.getNodeRefs()) {
-                        if (!_nodes.containsKey(nodeId)) {
+                        if (!_nodes.contains(nodeId)) {
                             // this area is missing some nodes, perhaps because it is on
                             // the edge of the region, so we will simply not route on it.
                             continue RELATION;
@@ -2306,6 +2301,10 @@ public class OpenStreetMapGraphBuilderImpl implements GraphBuilder {
                         permissionsBack, backGeometry, true);
             }
 
+            if (street != null && backStreet != null) {
+                backStreet.shareGeometry(street);
+            }
+
             /* mark edges that are on roundabouts */
             if (way.isRoundabout()) {
                 if (street != null)
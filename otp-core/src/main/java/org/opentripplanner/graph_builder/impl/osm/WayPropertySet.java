@@ -129,7 +129,7 @@ public class WayPropertySet {
             applyMixins(result, rightMixins, true);
         }
         if ((bestLeftScore == 0 || bestRightScore == 0)
-                && (leftMixins.size() == 0 || rightMixins.size() == 0)) {
+                && (leftMixins.size() == 0 || rightMixins.size() == 0) && LOG.isDebugEnabled()) {
             String all_tags = dumpTags(way);
             LOG.debug("Used default permissions: " + all_tags);
         }
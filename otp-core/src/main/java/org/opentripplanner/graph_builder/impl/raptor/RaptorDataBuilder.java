@@ -27,6 +27,8 @@ import java.util.Map.Entry;
 import java.util.Random;
 import java.util.TimeZone;
 
+import lombok.Setter;
+
 import org.onebusaway.gtfs.model.AgencyAndId;
 import org.onebusaway.gtfs.model.Stop;
 import org.onebusaway.gtfs.model.Trip;
@@ -40,6 +42,7 @@ import org.opentripplanner.routing.algorithm.GenericDijkstra;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.ServiceDay;
 import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.core.StopTransferMatrix;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.edgetype.InterlineDwellData;
 import org.opentripplanner.routing.edgetype.PatternHop;
@@ -84,7 +87,8 @@ public class RaptorDataBuilder implements GraphBuilder {
 
     private static final double MIN_SPEED = 1.33;
 
-    private static final double MAX_DISTANCE = 3218;
+    /** The maximum walking distance between two stops, in meters. */
+    public static final double MAX_DISTANCE = 3218;
 
     private static final int N_REGIONS = 100;
 
@@ -92,6 +96,14 @@ public class RaptorDataBuilder implements GraphBuilder {
 
     private int MAX_TRANSFERS = 7;
 
+    /**
+     * Read the stop-to-stop walk times from the StopTransferMatrix of a previous
+     * TransferMatrixGraphBuilderImpl stage instead of searching the streets again. The matrix must
+     * have been built with a radius of at least {@link #MAX_DISTANCE}.
+     */
+    @Setter
+    private boolean useTransferMatrix = false;
+
     @SuppressWarnings("unchecked")
     public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
         RaptorData data = new RaptorData();
@@ -270,7 +282,8 @@ public class RaptorDataBuilder implements GraphBuilder {
 
         // compute stop-to-stop walk times
         HashMap<Vertex, T2<Integer, Double>>[] stopToStopWalkTimes = computeStopToStopWalkTimes(
-                vertices, MIN_SPEED, MAX_DISTANCE, routesForVertex );
+                vertices, MIN_SPEED, MAX_DISTANCE, routesForVertex,
+                useTransferMatrix ? graph.getService(StopTransferMatrix.class) : null);
         regions.minSpeed = MIN_SPEED;
         regions.maxDistance = MAX_DISTANCE;
 
@@ -331,12 +344,27 @@ public class RaptorDataBuilder implements GraphBuilder {
         return regions;
     }
 
-    private HashMap<Vertex, T2<Integer, Double>>[] computeStopToStopWalkTimes(
+    /**
+     * @param transferMatrix the precomputed transfers to read the walk times from, or null to
+     *        search the streets from every stop.
+     */
+    HashMap<Vertex, T2<Integer, Double>>[] computeStopToStopWalkTimes(
             ArrayList<Vertex> vertices, double minSpeed, double maxDistance,
-            HashMap<Vertex, List<RaptorRoute>> routesForVertex) {
+            HashMap<Vertex, List<RaptorRoute>> routesForVertex, StopTransferMatrix transferMatrix) {
         log.debug("Finding stop-to-stop walk times");
         @SuppressWarnings("unchecked")
         HashMap<Vertex, T2<Integer, Double>>[] times = new HashMap[AbstractVertex.getMaxIndex()];
+        if (transferMatrix != null) {
+            if (transferMatrix.getRadius() >= maxDistance
+                    && transferMatrix.getTransfers(TraverseMode.WALK) != null) {
+                log.debug("Using precomputed stop transfer matrix");
+                fillStopToStopWalkTimes(times, vertices, minSpeed, maxDistance, routesForVertex,
+                        transferMatrix);
+                return times;
+            }
+            log.warn("The stop transfer matrix has a radius of " + transferMatrix.getRadius()
+                    + "m, less than " + maxDistance + "m; searching the streets instead.");
+        }
         RoutingRequest walkOptions = new RoutingRequest(TraverseMode.WALK);
         walkOptions.setWalkSpeed(minSpeed);
         walkOptions.setArriveBy(true);
@@ -370,6 +398,43 @@ public class RaptorDataBuilder implements GraphBuilder {
         return times;
     }
 
+    /**
+     * Same as the street searches in computeStopToStopWalkTimes, but reading the walking times
+     * and distances from the transfer matrix. The transfers are stored by origin stop, so each
+     * one is added to the times of its target stop.
+     */
+    private void fillStopToStopWalkTimes(HashMap<Vertex, T2<Integer, Double>>[] times,
+            ArrayList<Vertex> vertices, double minSpeed, double maxDistance,
+            HashMap<Vertex, List<RaptorRoute>> routesForVertex, StopTransferMatrix transferMatrix) {
+        for (Vertex destination : vertices) {
+            times[destination.getIndex()] = new HashMap<Vertex, T2<Integer, Double>>();
+        }
+        StopTransferMatrix.Transfers walk = transferMatrix.getTransfers(TraverseMode.WALK);
+        for (int from = 0; from < transferMatrix.getStopCount(); ++from) {
+            TransitStop vertex = transferMatrix.getStop(from);
+            final List<RaptorRoute> vertexRoutes = routesForVertex.get(vertex);
+            if (vertexRoutes == null) {
+                //this stop is not visited by any routes.
+                continue;
+            }
+            for (int i = walk.begin(from); i < walk.end(from); ++i) {
+                double distance = walk.getDistance(i);
+                if (distance > maxDistance)
+                    continue;
+                TransitStop destination = transferMatrix.getStop(walk.getTarget(i));
+                HashMap<Vertex, T2<Integer, Double>> timesByDestination = times[destination.getIndex()];
+                if (timesByDestination == null)
+                    continue;
+                List<RaptorRoute> destinationRoutes = routesForVertex.get(destination);
+                if (destinationRoutes != null && isSubsetOf(vertexRoutes, destinationRoutes))
+                    continue;
+                // the durations are street walk times at the speed of the matrix
+                int time = (int) (walk.getDuration(i) * transferMatrix.getWalkSpeed() / minSpeed);
+                timesByDestination.put(vertex, new T2<Integer, Double>(time, distance));
+            }
+        }
+    }
+
     private static <T> boolean isSubsetOf(Collection<T> c1, Collection<T> c2) {
 
         for (T a : c1) {
@@ -848,6 +913,9 @@ public class RaptorDataBuilder implements GraphBuilder {
 
     @Override
     public List<String> getPrerequisites() {
+        if (useTransferMatrix) {
+            return Arrays.asList("transitIndex", "transferMatrix");
+        }
         return Arrays.asList("transitIndex");
     }
 
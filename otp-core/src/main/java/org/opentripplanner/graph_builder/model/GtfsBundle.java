@@ -61,6 +61,14 @@ public class GtfsBundle {
     @Getter @Setter
     private boolean linkStopsToParentStations = false;
 
+    /**
+     * Sort the stop times on disk instead of keeping them in memory, and build the trip patterns
+     * one trip at a time. The stop times are then not available to the builders that need the DAO,
+     * so this cannot be combined with them (e.g. the transit index builder).
+     */
+    @Getter @Setter
+    private boolean streamStopTimes = false;
+
     private Map<String, String> agencyIdMappings = new HashMap<String, String>();
 
     private int defaultStreetToStopTime;
@@ -84,6 +92,10 @@ public class GtfsBundle {
         this.path = path;
     }
 
+    public File getPath() {
+        return path;
+    }
+
     public void setUrl(URL url) {
         this.url = url;
     }
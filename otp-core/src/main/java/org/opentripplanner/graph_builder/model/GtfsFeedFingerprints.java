@@ -0,0 +1,91 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.model;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * A graph service recording which GTFS feed files the transit of a graph was built from: a
+ * checksum of each file and the agency ids it defined. An incremental build uses it to find the
+ * feeds that changed or disappeared since the graph was built, and the agencies whose transit
+ * must be removed before their feeds are loaded again.
+ * 
+ * Feeds are identified by their file name, so a build directory can be moved or copied.
+ */
+public class GtfsFeedFingerprints implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, Long> checksums = new HashMap<String, Long>();
+
+    private final Map<String, Set<String>> agencyIds = new HashMap<String, Set<String>>();
+
+    /** @return true if the graph was built from a file with the same name and content. */
+    public boolean isUnchanged(File feed) throws IOException {
+        Long checksum = checksums.get(feed.getName());
+        return checksum != null && checksum == checksum(feed);
+    }
+
+    /** Record that the graph contains the transit of the given agencies from the given feed. */
+    public void put(File feed, Collection<String> feedAgencyIds) throws IOException {
+        checksums.put(feed.getName(), checksum(feed));
+        agencyIds.put(feed.getName(), new HashSet<String>(feedAgencyIds));
+    }
+
+    /** @return the agency ids recorded for a feed, or an empty set if the feed is unknown. */
+    public Set<String> getAgencyIds(String feedName) {
+        Set<String> ids = agencyIds.get(feedName);
+        if (ids == null)
+            return Collections.emptySet();
+        return ids;
+    }
+
+    /** Forget a feed that is no longer part of the graph. */
+    public void remove(String feedName) {
+        checksums.remove(feedName);
+        agencyIds.remove(feedName);
+    }
+
+    /** @return the names of the feed files the graph was built from. */
+    public Set<String> getFeedNames() {
+        return Collections.unmodifiableSet(checksums.keySet());
+    }
+
+    public static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
+}
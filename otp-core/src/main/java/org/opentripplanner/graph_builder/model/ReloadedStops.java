@@ -0,0 +1,41 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.model;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.opentripplanner.routing.vertextype.TransitStop;
+
+/**
+ * The transit stops loaded by an incremental build. The GTFS graph builder puts it in the extra
+ * map shared by the graph builders, so that the stages that link stops to each other only create
+ * the links of these stops, instead of linking again the stops of the base graph.
+ */
+public class ReloadedStops {
+
+    private final Set<TransitStop> stops = new HashSet<TransitStop>();
+
+    public void add(TransitStop stop) {
+        stops.add(stop);
+    }
+
+    public boolean contains(TransitStop stop) {
+        return stops.contains(stop);
+    }
+
+    public int size() {
+        return stops.size();
+    }
+}
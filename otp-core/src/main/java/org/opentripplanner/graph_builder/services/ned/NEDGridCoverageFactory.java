@@ -13,6 +13,9 @@
 
 package org.opentripplanner.graph_builder.services.ned;
 
+import java.io.File;
+import java.util.List;
+
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.opengis.coverage.Coverage;
 import org.opentripplanner.routing.graph.Graph;
@@ -28,6 +31,19 @@ import org.opentripplanner.routing.graph.Graph;
 public interface NEDGridCoverageFactory {
     public Coverage getGridCoverage();
 
+    /**
+     * Read the elevation data again, into a coverage that shares no rasters or readers with the
+     * one returned by getGridCoverage(), so that it can be evaluated on another thread. Must be
+     * called after getGridCoverage().
+     */
+    public Coverage readGridCoverage();
+
+    /**
+     * The files the elevation data is read from, which identify it. Must be called after
+     * getGridCoverage().
+     */
+    public List<File> getSourceFiles();
+
     /** @see GraphBuilder.checkInputs() */
     public void checkInputs();
 
@@ -0,0 +1,285 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.gtfs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.StopTime;
+import org.onebusaway.gtfs.model.Trip;
+import org.onebusaway.gtfs.services.GtfsRelationalDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sorts the stop times of a GTFS feed by trip and stop sequence on disk, so that a feed with tens
+ * of millions of stop times can be turned into trip patterns one trip at a time, without keeping
+ * every StopTime object of the feed in memory.
+ *
+ * The stop times are added as they are read, kept in a compact form and written to a sorted run
+ * file whenever the buffer is full. Once all stop times have been added, the runs are merged and
+ * the stop times of each trip are returned together, as new StopTime objects whose trip and stop
+ * are looked up in the DAO the feed was loaded into.
+ */
+public class ExternalStopTimeSorter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExternalStopTimeSorter.class);
+
+    private final File tempDirectory;
+
+    private final int runSize;
+
+    private List<Record> buffer = new ArrayList<Record>();
+
+    private final List<File> runs = new ArrayList<File>();
+
+    private GtfsRelationalDao dao;
+
+    private PriorityQueue<RunReader> merge;
+
+    private int nStopTimes = 0;
+
+    /**
+     * @param tempDirectory where the sorted runs are written, or null for the system default
+     * @param runSize the number of stop times sorted in memory at a time
+     */
+    public ExternalStopTimeSorter(File tempDirectory, int runSize) {
+        this.tempDirectory = tempDirectory;
+        this.runSize = runSize;
+    }
+
+    public void add(StopTime stopTime) throws IOException {
+        buffer.add(new Record(stopTime));
+        nStopTimes += 1;
+        if (buffer.size() >= runSize) {
+            writeRun();
+        }
+    }
+
+    /** Start returning the stop times by trip; the trips and stops are looked up in the DAO. */
+    public void finish(GtfsRelationalDao dao) throws IOException {
+        this.dao = dao;
+        if (!buffer.isEmpty()) {
+            writeRun();
+        }
+        buffer = null;
+        LOG.info("sorted {} stop times in {} runs", nStopTimes, runs.size());
+        merge = new PriorityQueue<RunReader>(Math.max(runs.size(), 1));
+        for (File run : runs) {
+            RunReader reader = new RunReader(run);
+            if (reader.advance()) {
+                merge.add(reader);
+            }
+        }
+    }
+
+    /**
+     * @return the stop times of the next trip, in stop sequence order, or null when all trips
+     *         have been returned.
+     */
+    public List<StopTime> nextTrip() throws IOException {
+        if (merge.isEmpty()) {
+            return null;
+        }
+        Record first = merge.peek().current;
+        Trip trip = dao.getTripForId(new AgencyAndId(first.tripAgencyId, first.tripId));
+        List<StopTime> stopTimes = new ArrayList<StopTime>();
+        while (!merge.isEmpty() && merge.peek().current.sameTrip(first)) {
+            RunReader reader = merge.poll();
+            stopTimes.add(reader.current.toStopTime(trip, dao));
+            if (reader.advance()) {
+                merge.add(reader);
+            }
+        }
+        return stopTimes;
+    }
+
+    /** Delete the run files. */
+    public void close() {
+        if (merge != null) {
+            for (RunReader reader : merge) {
+                reader.close();
+            }
+        }
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+    }
+
+    private void writeRun() throws IOException {
+        Collections.sort(buffer);
+        File run = File.createTempFile("stop_times", ".run", tempDirectory);
+        run.deleteOnExit();
+        runs.add(run);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(run)));
+        try {
+            for (Record record : buffer) {
+                record.write(out);
+            }
+        } finally {
+            out.close();
+        }
+        buffer.clear();
+    }
+
+    /** The fields of a stop time used by the graph builder. */
+    private static class Record implements Comparable<Record> {
+
+        String tripAgencyId, tripId, stopAgencyId, stopId, stopHeadsign, routeShortName;
+
+        int stopSequence, arrivalTime, departureTime, pickupType, dropOffType;
+
+        double shapeDistTraveled;
+
+        Record() {
+        }
+
+        Record(StopTime st) {
+            tripAgencyId = st.getTrip().getId().getAgencyId();
+            tripId = st.getTrip().getId().getId();
+            stopAgencyId = st.getStop().getId().getAgencyId();
+            stopId = st.getStop().getId().getId();
+            stopHeadsign = st.getStopHeadsign();
+            routeShortName = st.getRouteShortName();
+            stopSequence = st.getStopSequence();
+            arrivalTime = st.getArrivalTime();
+            departureTime = st.getDepartureTime();
+            pickupType = st.getPickupType();
+            dropOffType = st.getDropOffType();
+            shapeDistTraveled = st.getShapeDistTraveled();
+        }
+
+        boolean sameTrip(Record other) {
+            return tripId.equals(other.tripId) && tripAgencyId.equals(other.tripAgencyId);
+        }
+
+        @Override
+        public int compareTo(Record other) {
+            int c = tripAgencyId.compareTo(other.tripAgencyId);
+            if (c == 0)
+                c = tripId.compareTo(other.tripId);
+            if (c == 0)
+                c = stopSequence < other.stopSequence ? -1 : (stopSequence == other.stopSequence ? 0 : 1);
+            return c;
+        }
+
+        StopTime toStopTime(Trip trip, GtfsRelationalDao dao) {
+            StopTime st = new StopTime();
+            st.setTrip(trip);
+            st.setStop(dao.getStopForId(new AgencyAndId(stopAgencyId, stopId)));
+            st.setStopHeadsign(stopHeadsign);
+            st.setRouteShortName(routeShortName);
+            st.setStopSequence(stopSequence);
+            st.setArrivalTime(arrivalTime);
+            st.setDepartureTime(departureTime);
+            st.setPickupType(pickupType);
+            st.setDropOffType(dropOffType);
+            st.setShapeDistTraveled(shapeDistTraveled);
+            return st;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(tripAgencyId);
+            out.writeUTF(tripId);
+            out.writeUTF(stopAgencyId);
+            out.writeUTF(stopId);
+            writeNullable(out, stopHeadsign);
+            writeNullable(out, routeShortName);
+            out.writeInt(stopSequence);
+            out.writeInt(arrivalTime);
+            out.writeInt(departureTime);
+            out.writeInt(pickupType);
+            out.writeInt(dropOffType);
+            out.writeDouble(shapeDistTraveled);
+        }
+
+        static Record read(DataInputStream in) throws IOException {
+            Record record = new Record();
+            record.tripAgencyId = in.readUTF();
+            record.tripId = in.readUTF();
+            record.stopAgencyId = in.readUTF();
+            record.stopId = in.readUTF();
+            record.stopHeadsign = readNullable(in);
+            record.routeShortName = readNullable(in);
+            record.stopSequence = in.readInt();
+            record.arrivalTime = in.readInt();
+            record.departureTime = in.readInt();
+            record.pickupType = in.readInt();
+            record.dropOffType = in.readInt();
+            record.shapeDistTraveled = in.readDouble();
+            return record;
+        }
+
+        private static void writeNullable(DataOutputStream out, String s) throws IOException {
+            out.writeBoolean(s != null);
+            if (s != null)
+                out.writeUTF(s);
+        }
+
+        private static String readNullable(DataInputStream in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+    }
+
+    /** Reads one sorted run; ordered by its current record, for merging. */
+    private static class RunReader implements Comparable<RunReader> {
+
+        private final DataInputStream in;
+
+        Record current;
+
+        RunReader(File run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run)));
+        }
+
+        /** @return false, and close the run, when there are no more records. */
+        boolean advance() throws IOException {
+            try {
+                current = Record.read(in);
+                return true;
+            } catch (EOFException e) {
+                current = null;
+                close();
+                return false;
+            }
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing more to do
+            }
+        }
+
+        @Override
+        public int compareTo(RunReader other) {
+            return current.compareTo(other.current);
+        }
+    }
+}
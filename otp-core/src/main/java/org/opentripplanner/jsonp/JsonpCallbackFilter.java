@@ -22,6 +22,10 @@ package org.opentripplanner.jsonp;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
 
 import javax.servlet.Filter;
@@ -31,6 +35,7 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.logging.Log;
@@ -58,7 +63,8 @@ public class JsonpCallbackFilter implements Filter {
 
             GenericResponseWrapper wrapper = new GenericResponseWrapper(httpResponse);
 
-            chain.doFilter(request, wrapper);
+            // the body is wrapped after the servlet has written it, so it must not be compressed
+            chain.doFilter(new IdentityEncodingRequest(httpRequest), wrapper);
 
             out.write(new String(parms.get("callback")[0] + "(").getBytes());
             out.write(wrapper.getData());
@@ -73,4 +79,44 @@ public class JsonpCallbackFilter implements Filter {
     }
 
     public void destroy() {}
+
+    /** Hides the Accept-Encoding header of a request, so that its response is not compressed. */
+    private static class IdentityEncodingRequest extends HttpServletRequestWrapper {
+
+        private static final String ACCEPT_ENCODING = "Accept-Encoding";
+
+        public IdentityEncodingRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if (ACCEPT_ENCODING.equalsIgnoreCase(name))
+                return null;
+            return super.getHeader(name);
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public Enumeration getHeaders(String name) {
+            if (ACCEPT_ENCODING.equalsIgnoreCase(name))
+                return Collections.enumeration(Collections.emptyList());
+            return super.getHeaders(name);
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public Enumeration getHeaderNames() {
+            Enumeration names = super.getHeaderNames();
+            if (names == null)
+                return null;
+            List<String> result = new ArrayList<String>();
+            while (names.hasMoreElements()) {
+                String name = (String) names.nextElement();
+                if (!ACCEPT_ENCODING.equalsIgnoreCase(name))
+                    result.add(name);
+            }
+            return Collections.enumeration(result);
+        }
+    }
 }
@@ -17,13 +17,12 @@ import org.opentripplanner.openstreetmap.services.OpenStreetMapContentHandler;
 import org.opentripplanner.openstreetmap.services.OpenStreetMapProvider;
 
 import java.io.File;
-import java.io.FileInputStream;
-
-import crosby.binary.file.BlockInputStream;
 
 /**
  * Parser for the OpenStreetMap PBF format. Parses files in three passes:
  * First the relations, then the ways, then the nodes are also loaded.
+ * The blocks of the file are decoded in parallel, and each pass after the first only reads the
+ * blocks containing the entities it needs.
  *
  * @see http://wiki.openstreetmap.org/wiki/PBF_Format
  * @see org.opentripplanner.openstreetmap.services.graph_builder.services.osm.OpenStreetMapContentHandler#biPhase
@@ -33,28 +32,20 @@ public class BinaryFileBasedOpenStreetMapProviderImpl implements OpenStreetMapPr
 
     private File _path;
 
+    private int _threads = Runtime.getRuntime().availableProcessors();
+
     public void readOSM(OpenStreetMapContentHandler handler) {
         try {
-            BinaryOpenStreetMapParser parser = new BinaryOpenStreetMapParser(handler);
-
-            FileInputStream input = new FileInputStream(_path);
-            parser.setParseNodes(false);
-            parser.setParseWays(false);
-            (new BlockInputStream(input, parser)).process();
+            BinaryOpenStreetMapBlockReader reader = new BinaryOpenStreetMapBlockReader(_path,
+                    _threads);
 
+            reader.read(handler, false, false, true);
             handler.doneRelations();
 
-            input = new FileInputStream(_path);
-            parser.setParseRelations(false);
-            parser.setParseWays(true);
-            (new BlockInputStream(input, parser)).process();
-
+            reader.read(handler, false, true, false);
             handler.secondPhase();
 
-            input = new FileInputStream(_path);
-            parser.setParseNodes(true);
-            parser.setParseWays(false);
-            (new BlockInputStream(input, parser)).process();
+            reader.read(handler, true, false, false);
             handler.nodesLoaded();
         } catch (Exception ex) {
             throw new IllegalStateException("error loading OSM from path " + _path, ex);        }
@@ -64,6 +55,11 @@ public class BinaryFileBasedOpenStreetMapProviderImpl implements OpenStreetMapPr
         _path = path;
     }
 
+    /** The number of threads decoding blocks of the file. */
+    public void setThreads(int threads) {
+        _threads = threads;
+    }
+
     public String toString() {
         return "BinaryFileBasedOpenStreetMapProviderImpl(" + _path + ")";
     }
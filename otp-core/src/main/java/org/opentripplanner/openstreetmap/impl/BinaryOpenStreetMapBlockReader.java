@@ -0,0 +1,281 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.openstreetmap.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.opentripplanner.openstreetmap.model.OSMNode;
+import org.opentripplanner.openstreetmap.model.OSMRelation;
+import org.opentripplanner.openstreetmap.model.OSMTagDictionary;
+import org.opentripplanner.openstreetmap.model.OSMWay;
+import org.opentripplanner.openstreetmap.model.OSMWithTags;
+import org.opentripplanner.openstreetmap.services.OpenStreetMapContentHandler;
+
+import crosby.binary.Fileformat;
+import crosby.binary.Osmformat;
+
+/**
+ * Reads the blocks of a PBF file, decompressing and decoding them on a pool of worker threads.
+ * The blocks of a PBF file are independent, so they can be decoded in any order; the entities
+ * are still delivered to the content handler in file order, by the calling thread. At most a
+ * few blocks per thread are decoded ahead of the handler, which bounds the memory used.
+ *
+ * The first pass over the file records which entity types each block contains. Later passes
+ * (the file is read once per loading phase) skip the blocks without any of the requested entity
+ * types without reading them: the ways pass skips the node blocks, which are most of the file,
+ * and the nodes pass skips the way and relation blocks.
+ *
+ * @see http://wiki.openstreetmap.org/wiki/PBF_Format
+ */
+public class BinaryOpenStreetMapBlockReader {
+
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    private final File path;
+
+    private final int nThreads;
+
+    /** The data blocks found by the first pass, in file order; null before the first pass. */
+    private List<Block> blocks;
+
+    private final ConcurrentMap<String, String> stringTable = new ConcurrentHashMap<String, String>();
+
+    private final OSMTagDictionary dictionary = new OSMTagDictionary();
+
+    public BinaryOpenStreetMapBlockReader(File path, int nThreads) {
+        this.path = path;
+        this.nThreads = nThreads;
+    }
+
+    /** Deliver the entities of the requested types in the file to the handler, in file order. */
+    public void read(OpenStreetMapContentHandler handler, boolean nodes, boolean ways,
+            boolean relations) throws IOException {
+        ExecutorService threadPool = Executors.newFixedThreadPool(nThreads);
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            LinkedList<Future<List<OSMWithTags>>> pending = new LinkedList<Future<List<OSMWithTags>>>();
+            for (Block block : blocksToRead(file, handler, nodes, ways, relations)) {
+                byte[] blob = new byte[block.size];
+                file.seek(block.offset);
+                file.readFully(blob);
+                pending.add(threadPool.submit(new DecodeTask(block, blob, nodes, ways, relations)));
+                if (pending.size() >= nThreads * 2) {
+                    deliver(pending.removeFirst(), handler);
+                }
+            }
+            while (!pending.isEmpty()) {
+                deliver(pending.removeFirst(), handler);
+            }
+        } finally {
+            threadPool.shutdownNow();
+            file.close();
+        }
+    }
+
+    /**
+     * Return the blocks that may contain entities of the requested types. On the first pass, this
+     * scans the block headers of the whole file and checks the file header.
+     */
+    private List<Block> blocksToRead(RandomAccessFile file, OpenStreetMapContentHandler handler,
+            boolean nodes, boolean ways, boolean relations) throws IOException {
+        if (blocks == null) {
+            // the entity types of the blocks are only known once they have been decoded
+            blocks = new ArrayList<Block>();
+            long length = file.length();
+            while (file.getFilePointer() < length) {
+                int headerSize = file.readInt();
+                if (headerSize < 0 || headerSize > MAX_HEADER_SIZE)
+                    throw new IOException("Invalid PBF block header size " + headerSize);
+                byte[] header = new byte[headerSize];
+                file.readFully(header);
+                Fileformat.BlobHeader blobHeader = Fileformat.BlobHeader.parseFrom(header);
+                int size = blobHeader.getDatasize();
+                if (size < 0 || size > MAX_BLOB_SIZE)
+                    throw new IOException("Invalid PBF blob size " + size);
+                long offset = file.getFilePointer();
+                if (blobHeader.getType().equals("OSMHeader")) {
+                    byte[] blob = new byte[size];
+                    file.readFully(blob);
+                    new BinaryOpenStreetMapParser(handler).parse(Osmformat.HeaderBlock
+                            .parseFrom(inflate(blob)));
+                } else if (blobHeader.getType().equals("OSMData")) {
+                    blocks.add(new Block(offset, size));
+                }
+                // unknown block types are skipped, as required by the format
+                file.seek(offset + size);
+            }
+            return blocks;
+        }
+        List<Block> toRead = new ArrayList<Block>();
+        for (Block block : blocks) {
+            if ((nodes && block.hasNodes) || (ways && block.hasWays)
+                    || (relations && block.hasRelations)) {
+                toRead.add(block);
+            }
+        }
+        return toRead;
+    }
+
+    private void deliver(Future<List<OSMWithTags>> future, OpenStreetMapContentHandler handler)
+            throws IOException {
+        List<OSMWithTags> entities;
+        try {
+            entities = future.get();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+        for (OSMWithTags entity : entities) {
+            if (entity instanceof OSMNode) {
+                handler.addNode((OSMNode) entity);
+            } else if (entity instanceof OSMWay) {
+                handler.addWay((OSMWay) entity);
+            } else {
+                handler.addRelation((OSMRelation) entity);
+            }
+        }
+    }
+
+    /** Decompress a blob, which is either stored raw or zlib-compressed. */
+    private static byte[] inflate(byte[] bytes) throws IOException {
+        Fileformat.Blob blob = Fileformat.Blob.parseFrom(bytes);
+        if (blob.hasRaw()) {
+            return blob.getRaw().toByteArray();
+        }
+        if (!blob.hasZlibData()) {
+            throw new IOException("Unsupported PBF blob compression");
+        }
+        byte[] data = new byte[blob.getRawSize()];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(blob.getZlibData().toByteArray());
+            inflater.inflate(data);
+            if (!inflater.finished())
+                throw new IOException("Truncated PBF blob");
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt PBF blob: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return data;
+    }
+
+    /** The position of a data block in the file, and the entity types it contains. */
+    private static class Block {
+        final long offset;
+
+        final int size;
+
+        /* all true until the block is decoded for the first time */
+        volatile boolean hasNodes = true, hasWays = true, hasRelations = true;
+
+        Block(long offset, int size) {
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    /** Decodes one block into a list of entities of the requested types. */
+    private class DecodeTask implements Callable<List<OSMWithTags>> {
+
+        private final Block block;
+
+        private final byte[] blob;
+
+        private final boolean nodes, ways, relations;
+
+        DecodeTask(Block block, byte[] blob, boolean nodes, boolean ways, boolean relations) {
+            this.block = block;
+            this.blob = blob;
+            this.nodes = nodes;
+            this.ways = ways;
+            this.relations = relations;
+        }
+
+        @Override
+        public List<OSMWithTags> call() throws IOException {
+            Osmformat.PrimitiveBlock primitiveBlock = Osmformat.PrimitiveBlock.parseFrom(inflate(blob));
+            boolean hasNodes = false, hasWays = false, hasRelations = false;
+            for (Osmformat.PrimitiveGroup group : primitiveBlock.getPrimitivegroupList()) {
+                hasNodes |= group.getNodesCount() > 0 || group.hasDense();
+                hasWays |= group.getWaysCount() > 0;
+                hasRelations |= group.getRelationsCount() > 0;
+            }
+            block.hasNodes = hasNodes;
+            block.hasWays = hasWays;
+            block.hasRelations = hasRelations;
+
+            EntityBuffer buffer = new EntityBuffer();
+            BinaryOpenStreetMapParser parser = new BinaryOpenStreetMapParser(buffer, stringTable,
+                    dictionary);
+            parser.setParseNodes(nodes);
+            parser.setParseWays(ways);
+            parser.setParseRelations(relations);
+            parser.parse(primitiveBlock);
+            return buffer.entities;
+        }
+    }
+
+    /** Collects the entities of one block, so that they can be delivered in file order. */
+    private static class EntityBuffer implements OpenStreetMapContentHandler {
+
+        final List<OSMWithTags> entities = new ArrayList<OSMWithTags>();
+
+        @Override
+        public void addNode(OSMNode node) {
+            entities.add(node);
+        }
+
+        @Override
+        public void addWay(OSMWay way) {
+            entities.add(way);
+        }
+
+        @Override
+        public void addRelation(OSMRelation relation) {
+            entities.add(relation);
+        }
+
+        @Override
+        public void secondPhase() {
+        }
+
+        @Override
+        public void doneRelations() {
+        }
+
+        @Override
+        public void nodesLoaded() {
+        }
+    }
+}
@@ -16,9 +16,9 @@ package org.opentripplanner.openstreetmap.impl;
 import org.opentripplanner.openstreetmap.services.OpenStreetMapContentHandler;
 import org.opentripplanner.openstreetmap.model.*;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import crosby.binary.BinaryParser;
 import crosby.binary.Osmformat;
@@ -33,20 +33,32 @@ public class BinaryOpenStreetMapParser extends BinaryParser {
     private boolean _parseWays = true;
     private boolean _parseRelations = true;
     private boolean _parseNodes = true;
-    private Map<String, String> stringTable = new HashMap<String, String>();
+    private ConcurrentMap<String, String> stringTable;
+    private OSMTagDictionary dictionary;
 
     public BinaryOpenStreetMapParser(OpenStreetMapContentHandler handler) {
+        this(handler, new ConcurrentHashMap<String, String>(), new OSMTagDictionary());
+    }
+
+    /**
+     * Make a parser that shares its string table and tag dictionary with other parsers, so that
+     * parsers decoding different blocks of the same file in parallel still return a single copy
+     * of each string.
+     */
+    public BinaryOpenStreetMapParser(OpenStreetMapContentHandler handler,
+            ConcurrentMap<String, String> stringTable, OSMTagDictionary dictionary) {
         _handler = handler;
+        this.stringTable = stringTable;
+        this.dictionary = dictionary;
     }
 
     // The strings are already being pulled from a string table in the PBF file,
     // but there appears to be a separate string table per 8k-entry PBF file block.
     // String.intern grinds to a halt on large PBF files (as it did on GTFS import), so 
-    // we implement our own. 
+    // we implement our own. Tag keys and values go through the OSMTagDictionary instead.
     public String internalize(String s) {
-        String fromTable = stringTable.get(s);
+        String fromTable = stringTable.putIfAbsent(s, s);
         if (fromTable == null) {
-            stringTable.put(s, s);
             return s;
         } 
         return fromTable;
@@ -69,9 +81,9 @@ public class BinaryOpenStreetMapParser extends BinaryParser {
             tmp.setLon(parseLon(i.getLon()));
 
             for (int j = 0; j < i.getKeysCount(); j++) {
-                String key = internalize(getStringById(i.getKeys(j)));
+                String key = dictionary.getKey(getStringById(i.getKeys(j)));
                 // if _handler.retain_tag(key) // TODO: filter tags
-                String value = internalize(getStringById(i.getVals(j)));
+                String value = dictionary.getValue(getStringById(i.getVals(j)));
                 OSMTag tag = new OSMTag();
                 tag.setK(key);
                 tag.setV(value);
@@ -113,8 +125,8 @@ public class BinaryOpenStreetMapParser extends BinaryParser {
                     int valid = nodes.getKeysVals(j++);
 
                     OSMTag tag = new OSMTag();
-                    String key = internalize(getStringById(keyid));
-                    String value = internalize(getStringById(valid));
+                    String key = dictionary.getKey(getStringById(keyid));
+                    String value = dictionary.getValue(getStringById(valid));
                     tag.setK(key);
                     tag.setV(value);
                     tmp.addTag(tag);
@@ -138,8 +150,8 @@ public class BinaryOpenStreetMapParser extends BinaryParser {
 
             for (int j = 0; j < i.getKeysCount(); j++) {
                 OSMTag tag = new OSMTag();
-                String key = internalize(getStringById(i.getKeys(j)));
-                String value = internalize(getStringById(i.getVals(j)));
+                String key = dictionary.getKey(getStringById(i.getKeys(j)));
+                String value = dictionary.getValue(getStringById(i.getVals(j)));
                 tag.setK(key);
                 tag.setV(value);
                 tmp.addTag(tag);
@@ -170,8 +182,8 @@ public class BinaryOpenStreetMapParser extends BinaryParser {
 
             for (int j = 0; j < i.getKeysCount(); j++) {
                 OSMTag tag = new OSMTag();
-                String key = internalize(getStringById(i.getKeys(j)));
-                String value = internalize(getStringById(i.getVals(j)));
+                String key = dictionary.getKey(getStringById(i.getKeys(j)));
+                String value = dictionary.getValue(getStringById(i.getVals(j)));
                 tag.setK(key);
                 tag.setV(value);
                 tmp.addTag(tag);
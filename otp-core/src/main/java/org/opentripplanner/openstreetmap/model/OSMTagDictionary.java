@@ -0,0 +1,55 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.openstreetmap.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps a single copy of each tag key and value read from an OSM file, as the string table of the
+ * PBF parser used to. Each reader (or set of parsers decoding the same file) has its own
+ * dictionary, which is dropped with it when the build ends.
+ *
+ * Keys are also interned in the JVM. OSM data only uses a few thousand distinct keys, and an
+ * interned key is the same instance as the key literals in the code and in the compiled way
+ * specifiers, so that most key comparisons succeed on identity without comparing characters.
+ */
+public class OSMTagDictionary {
+
+    private final ConcurrentMap<String, String> keys = new ConcurrentHashMap<String, String>();
+
+    private final ConcurrentMap<String, String> values = new ConcurrentHashMap<String, String>();
+
+    /** @return the single, JVM interned copy of the given key, in lower case. */
+    public String getKey(String key) {
+        String fromTable = keys.get(key);
+        if (fromTable == null) {
+            fromTable = key.toLowerCase().intern();
+            keys.putIfAbsent(key, fromTable);
+        }
+        return fromTable;
+    }
+
+    /** @return the single copy of the given value. */
+    public String getValue(String value) {
+        String fromTable = values.putIfAbsent(value, value);
+        return fromTable == null ? value : fromTable;
+    }
+
+    /** @return the number of distinct keys and values seen. */
+    public int size() {
+        return keys.size() + values.size();
+    }
+}
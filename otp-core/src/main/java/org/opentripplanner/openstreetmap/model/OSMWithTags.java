@@ -15,6 +15,7 @@
 
 package org.opentripplanner.openstreetmap.model;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -24,8 +25,14 @@ import java.util.Map;
 
 public class OSMWithTags {
 
-    /* To save memory this is only created when an entity actually has tags. */
-    private Map<String, String> _tags;
+    /*
+     * To save memory this is only created when an entity actually has tags. The tags are stored
+     * as pairs of lower case key and value: an array takes a few bytes per tag where a HashMap
+     * takes about fifty, and entities have few enough tags that a linear scan is faster than
+     * hashing. The parsers take the strings from an OSMTagDictionary, so that each key and value
+     * is only kept once and the keys are the same instances as the key literals of the callers.
+     */
+    private String[] _tags;
 
     protected long id;
 
@@ -47,10 +54,7 @@ public class OSMWithTags {
      * Adds a tag.
      */
     public void addTag(OSMTag tag) {
-        if (_tags == null)
-            _tags = new HashMap<String, String>();
-
-        _tags.put(tag.getK().toLowerCase(), tag.getV());
+        putTag(tag.getK().toLowerCase(), tag.getV());
     }
 
     /**
@@ -60,32 +64,77 @@ public class OSMWithTags {
         if (key == null || value == null)
             return;
 
-        if (_tags == null)
-            _tags = new HashMap<String, String>();
+        putTag(key.toLowerCase(), value);
+    }
 
-        _tags.put(key.toLowerCase(), value);
+    private void putTag(String key, String value) {
+        if (_tags == null) {
+            _tags = new String[] { key, value };
+            return;
+        }
+        for (int i = 0; i < _tags.length; i += 2) {
+            if (_tags[i].equals(key)) {
+                _tags[i + 1] = value;
+                return;
+            }
+        }
+        _tags = Arrays.copyOf(_tags, _tags.length + 2);
+        _tags[_tags.length - 2] = key;
+        _tags[_tags.length - 1] = value;
     }
 
     /**
-     * The tags of an entity.
+     * The tags of an entity, as a new map, or null if it has no tags.
      */
     public Map<String, String> getTags() {
-        return _tags;
+        if (_tags == null)
+            return null;
+        Map<String, String> tags = new HashMap<String, String>();
+        for (int i = 0; i < _tags.length; i += 2) {
+            tags.put(_tags[i], _tags[i + 1]);
+        }
+        return tags;
+    }
+
+    /**
+     * Does this entity have any tags?
+     */
+    public boolean hasTags() {
+        return _tags != null;
+    }
+
+    /* return the position of the given key in _tags, or -1 */
+    private int indexOfTag(String tag) {
+        if (_tags == null)
+            return -1;
+        // the keys are stored in lower case, which the callers almost always ask for
+        String key = hasUpperCase(tag) ? tag.toLowerCase() : tag;
+        for (int i = 0; i < _tags.length; i += 2) {
+            if (_tags[i].equals(key))
+                return i;
+        }
+        return -1;
+    }
+
+    private static boolean hasUpperCase(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.isUpperCase(s.charAt(i)))
+                return true;
+        }
+        return false;
     }
 
     /**
      * Is the tag defined?
      */
     public boolean hasTag(String tag) {
-        tag = tag.toLowerCase();
-        return _tags != null && _tags.containsKey(tag);
+        return indexOfTag(tag) >= 0;
     }
 
     /**
      * Determines if a tag contains a false value. 'no', 'false', and '0' are considered false.
      */
     public boolean isTagFalse(String tag) {
-        tag = tag.toLowerCase();
         if (_tags == null)
             return false;
 
@@ -96,7 +145,6 @@ public class OSMWithTags {
      * Determines if a tag contains a true value. 'yes', 'true', and '1' are considered true.
      */
     public boolean isTagTrue(String tag) {
-        tag = tag.toLowerCase();
         if (_tags == null)
             return false;
 
@@ -110,7 +158,6 @@ public class OSMWithTags {
         if (isTagTrue(tag)) {
             return true;
         }
-        tag = tag.toLowerCase();
         String value = getTag(tag);
         return ("designated".equals(value) || "official".equals(value)
                 || "permissive".equals(value) || "unknown".equals(value));
@@ -120,22 +167,21 @@ public class OSMWithTags {
      * Gets a tag's value.
      */
     public String getTag(String tag) {
-        tag = tag.toLowerCase();
-        if (_tags != null && _tags.containsKey(tag))
-            return _tags.get(tag);
+        int i = indexOfTag(tag);
+        if (i < 0)
+            return null;
 
-        return null;
+        return _tags[i + 1];
     }
 
     /**
      * Checks is a tag contains the specified value.
      */
     public Boolean isTag(String tag, String value) {
-        tag = tag.toLowerCase();
-        if (_tags != null && _tags.containsKey(tag) && value != null)
-            return value.equals(_tags.get(tag));
+        if (value == null)
+            return false;
 
-        return false;
+        return value.equals(getTag(tag));
     }
 
     /**
@@ -143,30 +189,30 @@ public class OSMWithTags {
      * {@link org.opentripplanner.graph_builder.impl.osm.OpenStreetMapGraphBuilderImpl#processRelations processRelations}
      */
     public String getAssumedName() {
-        if (_tags.containsKey("name"))
-            return _tags.get("name");
+        if (hasTag("name"))
+            return getTag("name");
 
-        if (_tags.containsKey("otp:route_name"))
-            return _tags.get("otp:route_name");
+        if (hasTag("otp:route_name"))
+            return getTag("otp:route_name");
 
-        if (_tags.containsKey("otp:gen_name"))
-            return _tags.get("otp:gen_name");
+        if (hasTag("otp:gen_name"))
+            return getTag("otp:gen_name");
 
-        if (_tags.containsKey("otp:route_ref"))
-            return _tags.get("otp:route_ref");
+        if (hasTag("otp:route_ref"))
+            return getTag("otp:route_ref");
 
-        if (_tags.containsKey("ref"))
-            return _tags.get("ref");
+        if (hasTag("ref"))
+            return getTag("ref");
 
         return null;
     }
 
     public Map<String, String> getTagsByPrefix(String prefix) {
         Map<String, String> out = new HashMap<String, String>();
-        for (Map.Entry<String, String> entry : _tags.entrySet()) {
-            String k = entry.getKey();
+        for (int i = 0; i < _tags.length; i += 2) {
+            String k = _tags[i];
             if (k.equals(prefix) || k.startsWith(prefix + ":")) {
-                out.put(k, entry.getValue());
+                out.put(k, _tags[i + 1]);
             }
         }
 
@@ -19,6 +19,7 @@ import org.opentripplanner.common.pqueue.BinHeap;
 import org.opentripplanner.common.pqueue.OTPPriorityQueue;
 import org.opentripplanner.routing.algorithm.strategies.SearchTerminationStrategy;
 import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.SearchDeadline;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Vertex;
@@ -74,26 +75,51 @@ public class EarliestArrivalSPTService implements SPTService {
         OTPPriorityQueue<State> pq = new BinHeap<State>();
         pq.insert(initialState, 0);
 
+        SearchDeadline deadline = options.rctx == null ? new SearchDeadline(relTimeout)
+                : options.rctx.deadline.limitTo(relTimeout);
+        int nIterations = 0;
+        long nVisited = 0;
+        long nStates = 1;
+        long nRelaxed = 0;
+        long nInserts = 1;
         while (!pq.empty()) {
+            if (++nIterations % SearchDeadline.CHECK_INTERVAL == 0 && deadline.isExpired()) {
+                addSearch(options, nVisited, nStates, nRelaxed, nInserts);
+                // like the other SPT services, a search which did not finish returns null
+                return null;
+            }
             State u = pq.extract_min();
             Vertex u_vertex = u.getVertex();
             if (!spt.visit(u))
                 continue;
+            nVisited += 1;
             Collection<Edge> edges = options.isArriveBy() ? u_vertex.getIncoming() : u_vertex.getOutgoing();
             for (Edge edge : edges) {
+                nRelaxed += 1;
                 for (State v = edge.traverse(u); v != null; v = v.getNextResult()) {
+                    nStates += 1;
                     if (isWorstTimeExceeded(v, options)) {
                         continue;
                     }
                     if (spt.add(v)) {
                         pq.insert(v, v.getActiveTime()); // activeTime?
+                        nInserts += 1;
                     } 
                 }
             }
         }
+        addSearch(options, nVisited, nStates, nRelaxed, nInserts);
         return spt;
     }
 
+    /** Add the counts of a search to those of its request, if it has a routing context. */
+    private static void addSearch(RoutingRequest options, long nVisited, long nStates,
+            long nRelaxed, long nInserts) {
+        if (options.rctx != null) {
+            options.rctx.counters.addSearch(nVisited, nStates, nRelaxed, nInserts);
+        }
+    }
+
     // Move this into State
     private boolean isWorstTimeExceeded(State v, RoutingRequest opt) {
         if (opt.isArriveBy())
@@ -27,6 +27,7 @@ import org.opentripplanner.routing.algorithm.strategies.SkipTraverseResultStrate
 import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
 import org.opentripplanner.routing.core.RoutingContext;
 import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.SearchDeadline;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Vertex;
@@ -34,9 +35,9 @@ import org.opentripplanner.routing.services.SPTService;
 import org.opentripplanner.routing.spt.DefaultShortestPathTreeFactory;
 import org.opentripplanner.routing.spt.ShortestPathTree;
 import org.opentripplanner.routing.spt.ShortestPathTreeFactory;
-import org.opentripplanner.util.DateUtils;
 import org.opentripplanner.util.monitoring.MonitoringStore;
 import org.opentripplanner.util.monitoring.MonitoringStoreFactory;
+import org.opentripplanner.util.monitoring.RequestTrace.Span;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -97,7 +98,7 @@ public class GenericAStar implements SPTService { // maybe this should be wrappe
             SearchTerminationStrategy terminationStrategy) {
 
         RoutingContext rctx = options.getRoutingContext();
-        long abortTime = DateUtils.absoluteTimeout(relTimeout);
+        SearchDeadline deadline = rctx.deadline.limitTo(relTimeout);
 
         // null checks on origin and destination vertices are already performed in setRoutingContext
         // options.rctx.check();
@@ -109,7 +110,11 @@ public class GenericAStar implements SPTService { // maybe this should be wrappe
 
         // heuristic calc could actually be done when states are constructed, inside state
         State initialState = new State(options);
+        long heuristicStartNanos = System.nanoTime();
+        Span heuristicSpan = rctx.trace.start("heuristic");
         heuristic.initialize(initialState, rctx.target);
+        heuristicSpan.end();
+        rctx.counters.getHeuristicInitNanos().addAndGet(System.nanoTime() - heuristicStartNanos);
         options.rctx.debug.finishedPrecalculating();
         spt.add(initialState);
 
@@ -131,6 +136,12 @@ public class GenericAStar implements SPTService { // maybe this should be wrappe
 //        options.setMaxWalkDistance(Math.max(options.getMaxWalkDistance(), rctx.getMinWalkDistance()));
 
         int nVisited = 0;
+        int nIterations = 0;
+        long nStates = 1;
+        long nRelaxed = 0;
+        long nInserts = 1;
+        long startNanos = System.nanoTime();
+        Span searchSpan = rctx.trace.start("search");
 
         /* the core of the A* algorithm */
         List<State> targetAcceptedStates = Lists.newArrayList();
@@ -144,13 +155,19 @@ public class GenericAStar implements SPTService { // maybe this should be wrappe
             /**
              * Terminate the search prematurely if we've hit our computation wall.
              */
-            if (abortTime < Long.MAX_VALUE  && System.currentTimeMillis() > abortTime) {
-                LOG.warn("Search timeout. origin={} target={}", rctx.origin, rctx.target);
+            if (++nIterations % SearchDeadline.CHECK_INTERVAL == 0 && deadline.isExpired()) {
+                if (deadline.isCancelled()) {
+                    LOG.info("Search cancelled. origin={} target={}", rctx.origin, rctx.target);
+                } else {
+                    LOG.warn("Search timeout. origin={} target={}", rctx.origin, rctx.target);
+                }
                 // Returning null indicates something went wrong and search should be aborted.
                 // This is distinct from the empty list of paths which implies that a result may still
                 // be found by retrying with altered options (e.g. max walk distance)
                 options.rctx.debug.timedOut = true;
-                storeMemory();
+                rctx.counters.addSearch(nVisited, nStates, nRelaxed, nInserts);
+                searchSpan.end();
+                storeMemory(nStates, startNanos);
                 return null; // throw timeout exception
             }
 
@@ -192,7 +209,9 @@ public class GenericAStar implements SPTService { // maybe this should be wrappe
                 options.rctx.debug.foundPath();
                 if (targetAcceptedStates.size() >= nPaths) {
                     LOG.debug("total vertices visited {}", nVisited);
-                    storeMemory();
+                    rctx.counters.addSearch(nVisited, nStates, nRelaxed, nInserts);
+                    searchSpan.end();
+                    storeMemory(nStates, startNanos);
                     return spt;
                 } else continue;
             }
@@ -202,11 +221,13 @@ public class GenericAStar implements SPTService { // maybe this should be wrappe
             nVisited += 1;
 
             for (Edge edge : edges) {
+                nRelaxed += 1;
 
                 // Iterate over traversal results. When an edge leads nowhere (as indicated by
                 // returning NULL), the iteration is over. TODO Use this to board multiple trips.
                 for (State v = edge.traverse(u); v != null; v = v.getNextResult()) {
                     // Could be: for (State v : traverseEdge...)
+                    nStates += 1;
 
                     if (traverseVisitor != null) {
                         traverseVisitor.visitEdge(edge, v);
@@ -256,18 +277,29 @@ public class GenericAStar implements SPTService { // maybe this should be wrappe
                             if (traverseVisitor != null)
                                 traverseVisitor.visitEnqueue(v);
                             pq.insert(v, estimate);
+                            nInserts += 1;
                         } 
                     }
                 }
             }
         }
-        storeMemory();
+        rctx.counters.addSearch(nVisited, nStates, nRelaxed, nInserts);
+        searchSpan.end();
+        storeMemory(nStates, startNanos);
         return spt;
     }
 
-    private void storeMemory() {
+    /**
+     * Record the memory used and the state throughput of a search when they are monitored. The
+     * memory used is the heap in use when the search ends, garbage included: collecting it here
+     * would stop every other request.
+     */
+    private void storeMemory(long nStates, long startNanos) {
+        if (store.isMonitoring("statesPerSecond")) {
+            long elapsedNanos = Math.max(System.nanoTime() - startNanos, 1);
+            store.setLong("statesPerSecond", nStates * 1000000000L / elapsedNanos);
+        }
         if (store.isMonitoring("memoryUsed")) {
-            System.gc();
             long memoryUsed = Runtime.getRuntime().totalMemory() -
                     Runtime.getRuntime().freeMemory();
             store.setLongMax("memoryUsed", memoryUsed);
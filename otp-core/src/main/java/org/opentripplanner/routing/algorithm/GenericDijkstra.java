@@ -18,6 +18,7 @@ import org.opentripplanner.routing.algorithm.strategies.SearchTerminationStrateg
 import org.opentripplanner.routing.algorithm.strategies.SkipEdgeStrategy;
 import org.opentripplanner.routing.algorithm.strategies.SkipTraverseResultStrategy;
 import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
+import org.opentripplanner.routing.core.SearchDeadline;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.graph.Edge;
@@ -85,7 +86,17 @@ public class GenericDijkstra {
         spt.add(initialState);
         queue.insert(initialState, initialState.getWeight());
 
+        SearchDeadline deadline = options.rctx == null ? null : options.rctx.deadline;
+        int nIterations = 0;
+        long nVisited = 0;
+        long nStates = 1;
+        long nRelaxed = 0;
+        long nInserts = 1;
         while (!queue.empty()) { // Until the priority queue is empty:
+            if (deadline != null && ++nIterations % SearchDeadline.CHECK_INTERVAL == 0
+                    && deadline.isExpired()) {
+                break;
+            }
             State u = queue.extract_min();
             Vertex u_vertex = u.getVertex();
 
@@ -103,6 +114,7 @@ public class GenericDijkstra {
                     null, u, spt, options))
                         break;
 
+            nVisited += 1;
             for (Edge edge : options.isArriveBy() ? u_vertex.getIncoming() : u_vertex.getOutgoing()) {
 
                 if (_skipEdgeStrategy != null
@@ -110,9 +122,11 @@ public class GenericDijkstra {
                                 options))
                     continue;
 
+                nRelaxed += 1;
                 // Iterate over traversal results. When an edge leads nowhere (as indicated by
                 // returning NULL), the iteration is over.
                 for (State v = edge.traverse(u); v != null; v = v.getNextResult()) {
+                    nStates += 1;
 
                     if (_skipTraverseResultStrategy != null
                             && _skipTraverseResultStrategy.shouldSkipTraversalResult(initialState.getVertex(),
@@ -129,12 +143,16 @@ public class GenericDijkstra {
                     if (spt.add(v)) {
                         double estimate = heuristic.computeForwardWeight(v, target);
                         queue.insert(v, v.getWeight() + estimate);
+                        nInserts += 1;
                     }
 
                 }
             }
             spt.postVisit(u);
         }
+        if (options.rctx != null) {
+            options.rctx.counters.addSearch(nVisited, nStates, nRelaxed, nInserts);
+        }
         return spt;
     }
 
@@ -175,6 +175,11 @@ public class DFA extends NFA {
         return this.accepts(state);
     }
 
+    /** @return the number of states in this DFA, which are numbered from 0. */
+    public int getStateCount() {
+        return states.size();
+    }
+
     /** this method will not catch reject states; the caller must do so. */
     public int transition(int initState, int terminal) {
         return table[initState][terminal];
@@ -14,13 +14,10 @@
 package org.opentripplanner.routing.core;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
 import org.onebusaway.gtfs.model.AgencyAndId;
-import org.onebusaway.gtfs.model.calendar.ServiceDate;
 import org.onebusaway.gtfs.services.calendar.CalendarService;
 import org.opentripplanner.api.ws.Debug;
 import org.opentripplanner.common.geometry.DistanceLibrary;
@@ -46,6 +43,9 @@ import org.opentripplanner.routing.services.RemainingWeightHeuristicFactory;
 import org.opentripplanner.routing.services.TransitIndexService;
 import org.opentripplanner.routing.vertextype.StreetVertex;
 import org.opentripplanner.routing.vertextype.TransitStop;
+import org.opentripplanner.util.monitoring.RequestTrace;
+import org.opentripplanner.util.monitoring.RequestTrace.Span;
+import org.opentripplanner.util.monitoring.SearchCounters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -91,8 +91,6 @@ public class RoutingContext implements Cloneable {
     // public final Calendar calendar;
     public final CalendarService calendarService;
 
-    public final Map<AgencyAndId, Set<ServiceDate>> serviceDatesByServiceId = new HashMap<AgencyAndId, Set<ServiceDate>>();
-
     public RemainingWeightHeuristic remainingWeightHeuristic;
 
     public final TransferTable transferTable;
@@ -108,12 +106,11 @@ public class RoutingContext implements Cloneable {
     public ArrayList<ServiceDay> serviceDays;
 
     /**
-     * The search will be aborted if it is still running after this time (in milliseconds since the epoch). A negative or zero value implies no limit.
-     * This provides an absolute timeout, whereas the maxComputationTime is relative to the beginning of an individual search. While the two might
-     * seem equivalent, we trigger search retries in various places where it is difficult to update relative timeout value. The earlier of the two
-     * timeouts is applied.
+     * The deadline of the request, shared by all its searches (including retries and the forks of
+     * this context), which is cancelled when the client disconnects. The relative timeouts of
+     * individual searches are applied on top of it with {@link SearchDeadline#limitTo}.
      */
-    public long searchAbortTime = 0;
+    public SearchDeadline deadline = SearchDeadline.getCurrent();
 
     public PathParser[] pathParsers = new PathParser[] {};
 
@@ -122,6 +119,12 @@ public class RoutingContext implements Cloneable {
     /** An object that accumulates profiling and debugging info for inclusion in the response. */
     public Debug debug = new Debug();
 
+    /** The work done by the searches of the request, shared with the forks of this context. */
+    public SearchCounters counters = new SearchCounters();
+
+    /** The trace of the request if it is sampled, in which the searches mark their phases. */
+    public RequestTrace trace = RequestTrace.getCurrent();
+
 
     /* CONSTRUCTORS */
 
@@ -217,101 +220,126 @@ public class RoutingContext implements Cloneable {
         this.opt = routingRequest;
         this.graph = graph;
         this.debug.startedCalculating();
-
-        // the graph's snapshot may be frequently updated.
-        // Grab a reference to ensure a coherent view of the timetables throughout this search.
-        if (routingRequest.isIgnoreRealtimeUpdates() == false
-                && graph.getTimetableSnapshotSource() != null) {
-            timetableSnapshot = graph.getTimetableSnapshotSource().getTimetableSnapshot();
-        }
-        else {
-            timetableSnapshot = null;
-        }
-        calendarService = graph.getCalendarService();
-        setServiceDays();
-
-        Edge fromBackEdge = null;
-        Edge toBackEdge = null;
-        if (findPlaces) {
-            // normal mode, search for vertices based RoutingRequest
-            if (!opt.batch || opt.arriveBy) {
-                // non-batch mode, or arriveBy batch mode: we need a to vertex
-                toVertex = graph.streetIndex.getVertexForLocation(opt.getTo(), opt);
-                if (opt.getTo().hasEdgeId()) {
-                    toBackEdge = graph.getEdgeById(opt.getTo().getEdgeId());
+        Span span = trace.start("routingContext");
+        try {
+            // the graph's snapshot may be frequently updated.
+            // Grab a reference to ensure a coherent view of the timetables throughout this search.
+            Span snapshotSpan = trace.start("timetableSnapshot");
+            try {
+                if (routingRequest.isIgnoreRealtimeUpdates() == false
+                        && graph.getTimetableSnapshotSource() != null) {
+                    timetableSnapshot = graph.getTimetableSnapshotSource().getTimetableSnapshot();
                 }
-            } else {
-                toVertex = null;
-            }
-            if (opt.getStartingTransitTripId() != null && !opt.arriveBy) {
-                // Depart on-board mode: set the from vertex to "on-board" state
-                OnBoardDepartService onBoardDepartService = graph.getService(OnBoardDepartService.class);
-                if (onBoardDepartService == null)
-                    throw new UnsupportedOperationException("Missing OnBoardDepartService");
-                fromVertex = onBoardDepartService.setupDepartOnBoard(this);
-            } else if (!opt.batch || !opt.arriveBy) {
-                // non-batch mode, or depart-after batch mode: we need a from vertex
-                fromVertex = graph.streetIndex.getVertexForLocation(opt.getFrom(), opt, toVertex);
-                if (opt.getFrom().hasEdgeId()) {
-                    fromBackEdge = graph.getEdgeById(opt.getFrom().getEdgeId());
+                else {
+                    timetableSnapshot = null;
                 }
-            } else {
-                fromVertex = null;
+            } finally {
+                snapshotSpan.end();
             }
-            if (opt.intermediatePlaces != null) {
-                for (GenericLocation intermediate : opt.intermediatePlaces) {
-                    Vertex vertex = graph.streetIndex.getVertexForLocation(intermediate, opt);
-                    intermediateVertices.add(vertex);
-                }
+            calendarService = graph.getCalendarService();
+            Span serviceDaysSpan = trace.start("serviceDays");
+            try {
+                setServiceDays();
+            } finally {
+                serviceDaysSpan.end();
             }
-        } else {
-            // debug mode, force endpoint vertices to those specified rather than searching
-            fromVertex = from;
-            toVertex = to;
-        }
 
-        // If the from and to vertices are generated and lie on some of the same edges, we need to wire them
-        // up along those edges so that we don't get odd circuitous routes for really short trips.
-        // TODO(flamholz): seems like this might be the wrong place for this code? Can't find a better one.
-        if (fromVertex instanceof StreetLocation && toVertex instanceof StreetLocation) {
-            StreetVertex fromStreetVertex = (StreetVertex) fromVertex;
-            StreetVertex toStreetVertex = (StreetVertex) toVertex;
-            Set<PlainStreetEdge> overlap = overlappingPlainStreetEdges(fromStreetVertex,
-                    toStreetVertex);
-
-            for (PlainStreetEdge pse : overlap) {
-                makePartialEdgeAlong(pse, fromStreetVertex, toStreetVertex);
-            }
-        }
+            Edge fromBackEdge = null;
+            Edge toBackEdge = null;
+            Span linkSpan = trace.start("linkVertices");
+            try {
+                if (findPlaces) {
+                    // normal mode, search for vertices based RoutingRequest
+                    if (!opt.batch || opt.arriveBy) {
+                        // non-batch mode, or arriveBy batch mode: we need a to vertex
+                        toVertex = graph.streetIndex.getVertexForLocation(opt.getTo(), opt);
+                        counters.getStreetIndexQueries().incrementAndGet();
+                        if (opt.getTo().hasEdgeId()) {
+                            toBackEdge = graph.getEdgeById(opt.getTo().getEdgeId());
+                        }
+                    } else {
+                        toVertex = null;
+                    }
+                    if (opt.getStartingTransitTripId() != null && !opt.arriveBy) {
+                        // Depart on-board mode: set the from vertex to "on-board" state
+                        OnBoardDepartService onBoardDepartService = graph.getService(OnBoardDepartService.class);
+                        if (onBoardDepartService == null)
+                            throw new UnsupportedOperationException("Missing OnBoardDepartService");
+                        fromVertex = onBoardDepartService.setupDepartOnBoard(this);
+                    } else if (!opt.batch || !opt.arriveBy) {
+                        // non-batch mode, or depart-after batch mode: we need a from vertex
+                        fromVertex = graph.streetIndex.getVertexForLocation(opt.getFrom(), opt,
+                                toVertex);
+                        counters.getStreetIndexQueries().incrementAndGet();
+                        if (opt.getFrom().hasEdgeId()) {
+                            fromBackEdge = graph.getEdgeById(opt.getFrom().getEdgeId());
+                        }
+                    } else {
+                        fromVertex = null;
+                    }
+                    if (opt.intermediatePlaces != null) {
+                        for (GenericLocation intermediate : opt.intermediatePlaces) {
+                            Vertex vertex = graph.streetIndex.getVertexForLocation(intermediate,
+                                    opt);
+                            counters.getStreetIndexQueries().incrementAndGet();
+                            intermediateVertices.add(vertex);
+                        }
+                    }
+                } else {
+                    // debug mode, force endpoint vertices to those specified rather than searching
+                    fromVertex = from;
+                    toVertex = to;
+                }
+
+                // If the from and to vertices are generated and lie on some of the same edges, we need to wire them
+                // up along those edges so that we don't get odd circuitous routes for really short trips.
+                // TODO(flamholz): seems like this might be the wrong place for this code? Can't find a better one.
+                if (fromVertex instanceof StreetLocation && toVertex instanceof StreetLocation) {
+                    StreetVertex fromStreetVertex = (StreetVertex) fromVertex;
+                    StreetVertex toStreetVertex = (StreetVertex) toVertex;
+                    Set<PlainStreetEdge> overlap = overlappingPlainStreetEdges(fromStreetVertex,
+                            toStreetVertex);
+
+                    for (PlainStreetEdge pse : overlap) {
+                        makePartialEdgeAlong(pse, fromStreetVertex, toStreetVertex);
+                    }
+                }
         
-        if (opt.getStartingTransitStopId() != null) {
-            TransitIndexService tis = graph.getService(TransitIndexService.class);
-            if (tis == null) {
-                throw new RuntimeException("Next/Previous/First/Last trip "
-                        + "functionality depends on the transit index. Rebuild "
-                        + "the graph with TransitIndexBuilder");
+                if (opt.getStartingTransitStopId() != null) {
+                    TransitIndexService tis = graph.getService(TransitIndexService.class);
+                    if (tis == null) {
+                        throw new RuntimeException("Next/Previous/First/Last trip "
+                                + "functionality depends on the transit index. Rebuild "
+                                + "the graph with TransitIndexBuilder");
+                    }
+                    AgencyAndId stopId = opt.getStartingTransitStopId();
+                    startingStop = tis.getPreBoardEdge(stopId).getToVertex();
+                }
+            } finally {
+                linkSpan.end();
             }
-            AgencyAndId stopId = opt.getStartingTransitStopId();
-            startingStop = tis.getPreBoardEdge(stopId).getToVertex();
-        }
-        origin = opt.arriveBy ? toVertex : fromVertex;
-        originBackEdge = opt.arriveBy ? toBackEdge : fromBackEdge;
-        target = opt.arriveBy ? fromVertex : toVertex;
-        transferTable = graph.getTransferTable();
-        if (opt.batch)
-            remainingWeightHeuristic = new TrivialRemainingWeightHeuristic();
-        else
-            remainingWeightHeuristic = heuristicFactory.getInstanceForSearch(opt);
-
-        if (this.origin != null) {
-            LOG.debug("Origin vertex inbound edges {}", this.origin.getIncoming());
-            LOG.debug("Origin vertex outbound edges {}", this.origin.getOutgoing());
-        }
-        // target is where search will terminate, can be origin or destination depending on arriveBy
-        LOG.debug("Target vertex {}", this.target);
-        if (this.target != null) {
-            LOG.debug("Destination vertex inbound edges {}", this.target.getIncoming());
-            LOG.debug("Destination vertex outbound edges {}", this.target.getOutgoing());
+            origin = opt.arriveBy ? toVertex : fromVertex;
+            originBackEdge = opt.arriveBy ? toBackEdge : fromBackEdge;
+            target = opt.arriveBy ? fromVertex : toVertex;
+            transferTable = graph.getTransferTable();
+            if (opt.batch)
+                remainingWeightHeuristic = new TrivialRemainingWeightHeuristic();
+            else
+                remainingWeightHeuristic = heuristicFactory.getInstanceForSearch(opt);
+
+            if (this.origin != null) {
+                LOG.debug("Origin vertex inbound edges {}", this.origin.getIncoming());
+                LOG.debug("Origin vertex outbound edges {}", this.origin.getOutgoing());
+            }
+            // target is where search will terminate, can be origin or destination depending on
+            // arriveBy
+            LOG.debug("Target vertex {}", this.target);
+            if (this.target != null) {
+                LOG.debug("Destination vertex inbound edges {}", this.target.getIncoming());
+                LOG.debug("Destination vertex outbound edges {}", this.target.getOutgoing());
+            }
+        } finally {
+            span.end();
         }
     }
 
@@ -348,7 +376,8 @@ public class RoutingContext implements Cloneable {
     /**
      * Cache ServiceDay objects representing which services are running yesterday, today, and tomorrow relative to the search time. This information
      * is very heavily used (at every transit boarding) and Date operations were identified as a performance bottleneck. Must be called after the
-     * TraverseOptions already has a CalendarService set.
+     * TraverseOptions already has a CalendarService set. The services running on each day are looked up in the
+     * {@link ServiceCalendarIndex} of the graph, so this does not query the CalendarService.
      */
     private void setServiceDays() {
         final long SEC_IN_DAY = 60 * 60 * 24;
@@ -397,6 +426,28 @@ public class RoutingContext implements Cloneable {
         return true;
     }
 
+    /**
+     * Make a shallow copy of this routing context for a search that runs concurrently with other
+     * searches on this context, such as the retries of a single trip plan. The copy shares the
+     * endpoints, temporary edges, service days and debug output, but has its own remaining weight
+     * heuristic, since heuristics keep per-search state. Only the original context should be
+     * destroyed.
+     */
+    public RoutingContext forkForSearch(RoutingRequest request) {
+        RoutingContext fork;
+        try {
+            fork = (RoutingContext) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("This is not happening");
+        }
+        fork.opt = request;
+        if (request.batch)
+            fork.remainingWeightHeuristic = new TrivialRemainingWeightHeuristic();
+        else
+            fork.remainingWeightHeuristic = heuristicFactory.getInstanceForSearch(request);
+        return fork;
+    }
+
     /**
      * Tear down this routing context, removing any temporary edges.
      * 
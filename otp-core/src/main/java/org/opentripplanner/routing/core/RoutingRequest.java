@@ -24,6 +24,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -216,9 +217,16 @@ public class RoutingRequest implements Cloneable, Serializable {
     /** Do not use certain named agencies */
     public HashSet<String> bannedAgencies = new HashSet<String>();
 
-    /** Do not use certain trips */
+    /**
+     * Do not use certain trips. This map is shared between a request and its clones until one of
+     * them bans another trip, so it must only be modified through banTrip().
+     */
     public HashMap<AgencyAndId, BannedStopSet> bannedTrips = new HashMap<AgencyAndId, BannedStopSet>();
 
+    /** True if bannedTrips may be shared with a clone of this request. */
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    private boolean bannedTripsShared = false;
+
     /** Do not use certain stops. See for more information the bannedStops property in the RoutingResource class. */
     private StopMatcher bannedStops = StopMatcher.emptyMatcher(); 
     
@@ -285,9 +293,16 @@ public class RoutingRequest implements Cloneable, Serializable {
     /** For the bike triangle, how important safety is */
     public double triangleSafetyFactor;
 
-    /** Options specifically for the case that you are walking a bicycle. */
+    /**
+     * Options specifically for the case that you are walking a bicycle. These are shared between a
+     * request and its clones until one of them changes a setting that is propagated to them.
+     */
     public RoutingRequest bikeWalkingOptions;
 
+    /** True if bikeWalkingOptions may be shared with a clone of this request. */
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    private boolean bikeWalkingOptionsShared = false;
+
     /** This is true when a GraphPath is being traversed in reverse for optimization purposes. */
     public boolean reverseOptimizing = false;
 
@@ -407,7 +422,7 @@ public class RoutingRequest implements Cloneable, Serializable {
 
     public void setArriveBy(boolean arriveBy) {
         this.arriveBy = arriveBy;
-        bikeWalkingOptions.arriveBy = arriveBy;
+        ownBikeWalkingOptions().arriveBy = arriveBy;
         if (worstTime == Long.MAX_VALUE || worstTime == 0)
             worstTime = arriveBy ? 0 : Long.MAX_VALUE;
     }
@@ -419,6 +434,7 @@ public class RoutingRequest implements Cloneable, Serializable {
     public void setModes(TraverseModeSet modes) {
         this.modes = modes;
         if (modes.getBicycle()) {
+            bikeWalkingOptionsShared = false;
             bikeWalkingOptions = new RoutingRequest();
             bikeWalkingOptions.setArriveBy(this.isArriveBy());
             bikeWalkingOptions.maxWalkDistance = maxWalkDistance;
@@ -430,6 +446,7 @@ public class RoutingRequest implements Cloneable, Serializable {
             bikeWalkingOptions.modes.setWalk(true);
             bikeWalkingOptions.walkingBike = true;
         } else if (modes.getDriving()) {
+            bikeWalkingOptionsShared = false;
             bikeWalkingOptions = new RoutingRequest();
             bikeWalkingOptions.setArriveBy(this.isArriveBy());
             bikeWalkingOptions.maxWalkDistance = maxWalkDistance;
@@ -441,7 +458,7 @@ public class RoutingRequest implements Cloneable, Serializable {
 
     public void setOptimize(OptimizeType optimize) {
         this.optimize = optimize;
-        bikeWalkingOptions.optimize = optimize;
+        ownBikeWalkingOptions().optimize = optimize;
     }
 
     public void setWheelchairAccessible(boolean wheelchairAccessible) {
@@ -452,6 +469,7 @@ public class RoutingRequest implements Cloneable, Serializable {
      * only allow traversal by the specified mode; don't allow walking bikes. This is used during contraction to reduce the number of possible paths.
      */
     public void freezeTraverseMode() {
+        bikeWalkingOptionsShared = false;
         bikeWalkingOptions = clone();
         bikeWalkingOptions.bikeWalkingOptions = new RoutingRequest(new TraverseModeSet());
     }
@@ -710,17 +728,17 @@ public class RoutingRequest implements Cloneable, Serializable {
 
     public void setTriangleSafetyFactor(double triangleSafetyFactor) {
         this.triangleSafetyFactor = triangleSafetyFactor;
-        bikeWalkingOptions.triangleSafetyFactor = triangleSafetyFactor;
+        ownBikeWalkingOptions().triangleSafetyFactor = triangleSafetyFactor;
     }
 
     public void setTriangleSlopeFactor(double triangleSlopeFactor) {
         this.triangleSlopeFactor = triangleSlopeFactor;
-        bikeWalkingOptions.triangleSlopeFactor = triangleSlopeFactor;
+        ownBikeWalkingOptions().triangleSlopeFactor = triangleSlopeFactor;
     }
 
     public void setTriangleTimeFactor(double triangleTimeFactor) {
         this.triangleTimeFactor = triangleTimeFactor;
-        bikeWalkingOptions.triangleTimeFactor = triangleTimeFactor;
+        ownBikeWalkingOptions().triangleTimeFactor = triangleTimeFactor;
     }
 
     public void setMaxTransfers(int maxTransfers) {
@@ -740,19 +758,23 @@ public class RoutingRequest implements Cloneable, Serializable {
 
     /* INSTANCE METHODS */
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Makes a copy of this request. The route and stop matchers are immutable and the banned trips
+     * and bike walking options are copied on write, so a clone is cheap: either request copies
+     * these sub-objects only when it is about to modify them.
+     */
     @Override
     public RoutingRequest clone() {
         try {
             RoutingRequest clone = (RoutingRequest) super.clone();
-            clone.bannedRoutes = bannedRoutes.clone();
-            clone.bannedTrips = (HashMap<AgencyAndId, BannedStopSet>) bannedTrips.clone();
-            clone.bannedStops = bannedStops.clone();
-            clone.bannedStopsHard = bannedStopsHard.clone();
-            if (this.bikeWalkingOptions != this)
-                clone.bikeWalkingOptions = this.bikeWalkingOptions.clone();
-            else
+            this.bannedTripsShared = true;
+            clone.bannedTripsShared = true;
+            if (this.bikeWalkingOptions != this) {
+                this.bikeWalkingOptionsShared = true;
+                clone.bikeWalkingOptionsShared = true;
+            } else {
                 clone.bikeWalkingOptions = clone;
+            }
             return clone;
         } catch (CloneNotSupportedException e) {
             /* this will never happen since our super is the cloneable object */
@@ -1038,7 +1060,7 @@ public class RoutingRequest implements Cloneable, Serializable {
     public void setMaxWalkDistance(double maxWalkDistance) {
         if (maxWalkDistance > 0) {
             this.maxWalkDistance = maxWalkDistance;
-            bikeWalkingOptions.maxWalkDistance = maxWalkDistance;
+            ownBikeWalkingOptions().maxWalkDistance = maxWalkDistance;
         }
     }
 
@@ -1050,8 +1072,29 @@ public class RoutingRequest implements Cloneable, Serializable {
     }
 
     public void banTrip(AgencyAndId trip) {
+        if (bannedTripsShared) {
+            bannedTrips = new HashMap<AgencyAndId, BannedStopSet>(bannedTrips);
+            bannedTripsShared = false;
+        }
         bannedTrips.put(trip, BannedStopSet.ALL);
     }
+
+    public void setBannedTrips(HashMap<AgencyAndId, BannedStopSet> bannedTrips) {
+        this.bannedTrips = bannedTrips;
+        bannedTripsShared = false;
+    }
+
+    /**
+     * Returns the bike walking options after making sure they are not shared with another request,
+     * so that they can be modified.
+     */
+    private RoutingRequest ownBikeWalkingOptions() {
+        if (bikeWalkingOptionsShared) {
+            bikeWalkingOptions = bikeWalkingOptions.clone();
+            bikeWalkingOptionsShared = false;
+        }
+        return bikeWalkingOptions;
+    }
     
     /** 
      * tripIsBanned is a misnomer: this checks whether the agency or route are banned.
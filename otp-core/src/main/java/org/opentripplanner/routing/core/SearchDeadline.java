@@ -0,0 +1,108 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.core;
+
+/**
+ * The deadline of the searches made for one request, which can also be cancelled, for instance
+ * when the client of the request has disconnected. A RoutingContext carries the deadline of its
+ * request, and the search loops check it every {@link #CHECK_INTERVAL} iterations, which costs
+ * one System.nanoTime call.
+ *
+ * A search with its own time limit uses a child deadline made by {@link #limitTo}, which expires
+ * at that limit or with its parent, whichever comes first.
+ *
+ * The server sets the deadline of the request handled by a thread with {@link #setCurrent}, and
+ * the routing contexts created on that thread pick it up.
+ */
+public class SearchDeadline {
+
+    /** The number of iterations of a search loop between two checks of the deadline. */
+    public static final int CHECK_INTERVAL = 100;
+
+    private static final ThreadLocal<SearchDeadline> CURRENT = new ThreadLocal<SearchDeadline>();
+
+    private final SearchDeadline parent;
+
+    private final boolean hasDeadline;
+
+    private final long deadlineNanos;
+
+    private volatile boolean cancelled = false;
+
+    /** A deadline which never expires unless it is cancelled. */
+    public SearchDeadline() {
+        this(null, 0);
+    }
+
+    /** A deadline which expires after the given time, or never if it is not positive. */
+    public SearchDeadline(double timeoutSeconds) {
+        this(null, timeoutSeconds);
+    }
+
+    private SearchDeadline(SearchDeadline parent, double timeoutSeconds) {
+        this.parent = parent;
+        this.hasDeadline = timeoutSeconds > 0;
+        this.deadlineNanos = hasDeadline ? System.nanoTime() + (long) (timeoutSeconds * 1e9) : 0;
+    }
+
+    /**
+     * @return a deadline which expires after the given time or with this one, whichever comes
+     *         first; this deadline itself if the time is not positive.
+     */
+    public SearchDeadline limitTo(double timeoutSeconds) {
+        if (timeoutSeconds <= 0) {
+            return this;
+        }
+        return new SearchDeadline(this, timeoutSeconds);
+    }
+
+    /** Stop the searches using this deadline, or any deadline made from it. */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /** @return true if this deadline, or one it was made from, has been cancelled. */
+    public boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+
+    /** @return true if the searches using this deadline should stop. */
+    public boolean isExpired() {
+        if (cancelled) {
+            return true;
+        }
+        if (hasDeadline && System.nanoTime() - deadlineNanos > 0) {
+            return true;
+        }
+        return parent != null && parent.isExpired();
+    }
+
+    /**
+     * @return the deadline of the request handled by the current thread, or a new deadline which
+     *         never expires if there is none.
+     */
+    public static SearchDeadline getCurrent() {
+        SearchDeadline deadline = CURRENT.get();
+        return deadline == null ? new SearchDeadline() : deadline;
+    }
+
+    /** Set the deadline of the request handled by the current thread, or clear it with null. */
+    public static void setCurrent(SearchDeadline deadline) {
+        if (deadline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.core;
+
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.calendar.ServiceDate;
+import org.onebusaway.gtfs.services.calendar.CalendarService;
+
+/**
+ * The services running on each day of the calendar of a graph, as a set of service numbers (see
+ * {@link ServiceIdToNumberService}) per day from the first to the last service date of the feeds.
+ * This is computed once per graph, so that the service days of a routing context are a lookup
+ * rather than a query of the CalendarService for each agency and day.
+ *
+ * The sets are shared by all the service days on the same date, and must not be modified.
+ */
+public class ServiceCalendarIndex {
+
+    private static final BitSet NO_SERVICES = new BitSet();
+
+    private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+
+    private static final long MILLIS_IN_DAY = 24 * 60 * 60 * 1000;
+
+    /** The day number of the first service date. */
+    private final int firstDay;
+
+    private final BitSet[] servicesByDay;
+
+    public ServiceCalendarIndex(CalendarService calendarService,
+            ServiceIdToNumberService serviceNumbers) {
+        Set<AgencyAndId> serviceIds = calendarService.getServiceIds();
+        int first = Integer.MAX_VALUE;
+        int last = Integer.MIN_VALUE;
+        for (AgencyAndId serviceId : serviceIds) {
+            Set<ServiceDate> dates = calendarService.getServiceDatesForServiceId(serviceId);
+            if (dates == null)
+                continue;
+            for (ServiceDate date : dates) {
+                int day = getDayNumber(date);
+                first = Math.min(first, day);
+                last = Math.max(last, day);
+            }
+        }
+        if (first > last) {
+            firstDay = 0;
+            servicesByDay = new BitSet[0];
+            return;
+        }
+        firstDay = first;
+        servicesByDay = new BitSet[last - first + 1];
+        for (AgencyAndId serviceId : serviceIds) {
+            int n = serviceNumbers.getNumber(serviceId);
+            Set<ServiceDate> dates = calendarService.getServiceDatesForServiceId(serviceId);
+            if (n < 0 || dates == null)
+                continue;
+            for (ServiceDate date : dates) {
+                int i = getDayNumber(date) - firstDay;
+                if (servicesByDay[i] == null) {
+                    servicesByDay[i] = new BitSet();
+                }
+                servicesByDay[i].set(n);
+            }
+        }
+    }
+
+    /** @return the numbers of the services running on a date, which must not be modified. */
+    public BitSet getServicesRunning(ServiceDate date) {
+        int i = getDayNumber(date) - firstDay;
+        if (i < 0 || i >= servicesByDay.length || servicesByDay[i] == null) {
+            return NO_SERVICES;
+        }
+        return servicesByDay[i];
+    }
+
+    /** @return the number of days from 1970-01-01 to a date. */
+    static int getDayNumber(ServiceDate date) {
+        Calendar calendar = new GregorianCalendar(GMT);
+        calendar.clear();
+        calendar.set(date.getYear(), date.getMonth() - 1, date.getDay());
+        return (int) (calendar.getTimeInMillis() / MILLIS_IN_DAY);
+    }
+}
@@ -51,6 +51,11 @@ public class ServiceDay implements Serializable {
         serviceDate = new ServiceDate(calendar);
         Date d = serviceDate.getAsDate(timeZone);
         this.midnight = d.getTime() / 1000;
+        if (cs == graph.getCalendarService() && graph.getServiceCalendarIndex() != null) {
+            // shared with the other service days on the same date, so never modified
+            serviceIdsRunning = graph.getServiceCalendarIndex().getServicesRunning(serviceDate);
+            return;
+        }
         serviceIdsRunning = new BitSet(cs.getServiceIds().size());
         
         ServiceIdToNumberService service = graph.getService(ServiceIdToNumberService.class);
@@ -29,6 +29,11 @@ public class ServiceIdToNumberService implements Serializable {
     }
 
 
+    /** @return a copy of the numbers of all service ids, to number more service ids from. */
+    public HashMap<AgencyAndId, Integer> getNumbers() {
+        return new HashMap<AgencyAndId, Integer>(numberForServiceId);
+    }
+
     public int getNumber(AgencyAndId serviceId) {
         Integer number = numberForServiceId.get(serviceId);
         if (number == null) {
@@ -64,8 +64,19 @@ public class State implements Cloneable {
     // we should DEFINITELY rename this variable and the associated methods.
     protected double walkDistance;
 
-    // track the states of all path parsers -- probably changes frequently
-    protected int[] pathParserStates;
+    /*
+     * Track the states of all path parsers -- probably changes frequently. The usual parsers have
+     * DFAs with only a few states, so their states are packed into a single int, eight bits per
+     * parser. This saves allocating a new int array at most traversals. When the parsers do not
+     * fit, the states are kept in an array in StateData instead and this field is unused.
+     */
+    protected int pathParserStates;
+
+    static final int PARSER_STATE_BITS = 8;
+
+    static final int PARSER_STATE_MASK = (1 << PARSER_STATE_BITS) - 1;
+
+    static final int MAX_PACKED_PARSERS = Integer.SIZE / PARSER_STATE_BITS;
     
     private static final Logger LOG = LoggerFactory.getLogger(State.class);
 
@@ -115,9 +126,10 @@ public class State implements Cloneable {
         this.stateData.usingRentedBike = false;
         this.walkDistance = 0;
         this.time = timeSeconds * 1000;
-        if (options.rctx != null) {
-            this.pathParserStates = new int[options.rctx.pathParsers.length];
-            Arrays.fill(this.pathParserStates, AutomatonState.START);
+        // all packed parser states start at zero, which is AutomatonState.START
+        if (options.rctx != null && !canPackParserStates(options.rctx.pathParsers)) {
+            this.stateData.pathParserStates = new int[options.rctx.pathParsers.length];
+            Arrays.fill(this.stateData.pathParserStates, AutomatonState.START);
         }
         stateData.routeSequence = new AgencyAndId[0];
     }
@@ -551,7 +563,7 @@ public class State implements Cloneable {
     public boolean allPathParsersAccept() {
     	PathParser[] parsers = this.stateData.opt.rctx.pathParsers;
     	for (int i = 0; i < parsers.length; i++)
-    		if ( ! parsers[i].accepts(pathParserStates[i]))
+    		if ( ! parsers[i].accepts(getPathParserState(i)))
     			return false;
     	return true;
 	}
@@ -559,12 +571,33 @@ public class State implements Cloneable {
 	public String getPathParserStates() {
 		StringBuilder sb = new StringBuilder();
 		sb.append("( ");
-		for (int i : pathParserStates)
-			sb.append(String.format("%02d ", i));
+		for (int i = 0; i < stateData.opt.rctx.pathParsers.length; i++)
+			sb.append(String.format("%02d ", getPathParserState(i)));
 		sb.append(")");
 		return sb.toString();
 	}
 
+    /** @return the state of the path parser at the given index in the routing context. */
+    public int getPathParserState(int parser) {
+        int[] unpacked = stateData.pathParserStates;
+        if (unpacked != null)
+            return unpacked[parser];
+        return (pathParserStates >>> (parser * PARSER_STATE_BITS)) & PARSER_STATE_MASK;
+    }
+
+    /**
+     * @return true if the states of the given path parsers can be packed into a single int, which
+     *         is the case when there are few parsers and each of their DFAs has few states.
+     */
+    static boolean canPackParserStates(PathParser[] parsers) {
+        if (parsers.length > MAX_PACKED_PARSERS)
+            return false;
+        for (PathParser parser : parsers)
+            if (parser.getStateCount() > PARSER_STATE_MASK + 1)
+                return false;
+        return true;
+    }
+
     /** @return the last TripPattern used in this path (which is set when leaving the vehicle). */
     public TripPattern getLastPattern() {
         return stateData.lastPattern;
@@ -102,6 +102,12 @@ public class StateData implements Cloneable {
 
     public Set<String> bikeRentalNetworks;
 
+    /**
+     * The path parser states, only used when they cannot be packed into State.pathParserStates.
+     * Null otherwise.
+     */
+    protected int[] pathParserStates;
+
     public StateData(RoutingRequest options) {
         TraverseModeSet modes = options.getModes();
         if (modes.getCar())
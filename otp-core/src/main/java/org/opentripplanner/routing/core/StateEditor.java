@@ -531,7 +531,22 @@ public class StateEditor {
         if (state.stateData.opt.rctx == null)
             return true; // a lot of tests don't set a routing context
         PathParser[] parsers = state.stateData.opt.rctx.pathParsers;
-        int[] parserStates = state.pathParserStates;
+        int[] parserStates = state.stateData.pathParserStates;
+        if (parserStates == null) {
+            // the parser states are packed into a single int, which is copied with the state
+            int packed = state.pathParserStates;
+            for (int i = 0; i < parsers.length; i++) {
+                int shift = i * State.PARSER_STATE_BITS;
+                int terminal = parsers[i].terminalFor(state);
+                int oldState = (packed >>> shift) & State.PARSER_STATE_MASK;
+                int newState = parsers[i].transition(oldState, terminal);
+                if (newState == AutomatonState.REJECT)
+                    return false;
+                packed = (packed & ~(State.PARSER_STATE_MASK << shift)) | (newState << shift);
+            }
+            state.pathParserStates = packed;
+            return true;
+        }
         boolean accept = true;
         boolean modified = false;
         int i = 0;
@@ -551,8 +566,11 @@ public class StateEditor {
             }
             i++;
         }
-        if (modified)
-            state.pathParserStates = parserStates;
+        if (modified) {
+            if (state.backState != null && state.stateData == state.backState.stateData)
+                state.stateData = state.stateData.clone();
+            state.stateData.pathParserStates = parserStates;
+        }
 
         return accept;
     }
@@ -0,0 +1,146 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.core;
+
+import java.io.Serializable;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.opentripplanner.common.MavenVersion;
+import org.opentripplanner.routing.vertextype.TransitStop;
+
+/**
+ * Street-network transfers between all pairs of transit stops within a given radius, stored per
+ * traverse mode in compressed sparse row form: the transfers leaving stop i are found at
+ * positions offsets[i] (inclusive) to offsets[i + 1] (exclusive) of the target, distance and
+ * duration arrays. Built once by the TransferMatrixGraphBuilderImpl and registered as a graph
+ * service.
+ */
+public class StopTransferMatrix implements Serializable {
+
+    private static final long serialVersionUID = MavenVersion.VERSION.getUID();
+
+    private final TransitStop[] stops;
+
+    private final IdentityHashMap<TransitStop, Integer> indexForStop;
+
+    private final double radius;
+
+    private final double walkSpeed;
+
+    private final EnumMap<TraverseMode, Transfers> transfers = new EnumMap<TraverseMode, Transfers>(
+            TraverseMode.class);
+
+    /**
+     * @param radius the maximum distance of the transfers, in meters
+     * @param walkSpeed the walking speed of the durations of the walking transfers, in m/s
+     */
+    public StopTransferMatrix(List<TransitStop> stops, double radius, double walkSpeed) {
+        this.stops = stops.toArray(new TransitStop[stops.size()]);
+        this.radius = radius;
+        this.walkSpeed = walkSpeed;
+        this.indexForStop = new IdentityHashMap<TransitStop, Integer>(stops.size());
+        for (int i = 0; i < this.stops.length; ++i) {
+            indexForStop.put(this.stops[i], i);
+        }
+    }
+
+    /** The maximum distance of the transfers in this matrix, in meters. */
+    public double getRadius() {
+        return radius;
+    }
+
+    /** The walking speed of the durations of the walking transfers, in m/s. */
+    public double getWalkSpeed() {
+        return walkSpeed;
+    }
+
+    public int getStopCount() {
+        return stops.length;
+    }
+
+    public TransitStop getStop(int index) {
+        return stops[index];
+    }
+
+    /** Returns the index of the given stop in this matrix, or -1 if it is not included. */
+    public int getStopIndex(TransitStop stop) {
+        Integer index = indexForStop.get(stop);
+        return index == null ? -1 : index;
+    }
+
+    public void setTransfers(TraverseMode mode, Transfers modeTransfers) {
+        if (modeTransfers.offsets.length != stops.length + 1) {
+            throw new IllegalArgumentException("transfer table does not match the stop count");
+        }
+        transfers.put(mode, modeTransfers);
+    }
+
+    /** Returns the transfers for the given mode, or null if they were not computed. */
+    public Transfers getTransfers(TraverseMode mode) {
+        return transfers.get(mode);
+    }
+
+    /**
+     * The transfers for a single traverse mode. Durations are in seconds at the speed used when
+     * the matrix was built; distances are the street network distances in meters.
+     */
+    public static class Transfers implements Serializable {
+
+        private static final long serialVersionUID = MavenVersion.VERSION.getUID();
+
+        private final int[] offsets;
+
+        private final int[] targets;
+
+        private final float[] distances;
+
+        private final int[] durations;
+
+        public Transfers(int[] offsets, int[] targets, float[] distances, int[] durations) {
+            this.offsets = offsets;
+            this.targets = targets;
+            this.distances = distances;
+            this.durations = durations;
+        }
+
+        /** The position of the first transfer leaving the given stop. */
+        public int begin(int stop) {
+            return offsets[stop];
+        }
+
+        /** The position after the last transfer leaving the given stop. */
+        public int end(int stop) {
+            return offsets[stop + 1];
+        }
+
+        public int getTarget(int position) {
+            return targets[position];
+        }
+
+        public float getDistance(int position) {
+            return distances[position];
+        }
+
+        public int getDuration(int position) {
+            return durations[position];
+        }
+
+        /** The total number of transfers in this table. */
+        public int size() {
+            return targets.length;
+        }
+    }
+}
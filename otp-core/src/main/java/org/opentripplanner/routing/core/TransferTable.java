@@ -18,7 +18,9 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.onebusaway.gtfs.model.AgencyAndId;
 import org.onebusaway.gtfs.model.Route;
@@ -185,6 +187,21 @@ public class TransferTable implements Serializable {
         stopTransfer.addSpecificTransfer(specificTransfer);
     }
     
+    /**
+     * Remove the transfers from and to the stops of the given agencies, e.g. before their feed
+     * is loaded again by an incremental build.
+     */
+    public void removeAgencies(Set<String> agencyIds) {
+        Iterator<P2<AgencyAndId>> stopIdPairs = table.keySet().iterator();
+        while (stopIdPairs.hasNext()) {
+            P2<AgencyAndId> stopIdPair = stopIdPairs.next();
+            if (agencyIds.contains(stopIdPair.getFirst().getAgencyId())
+                    || agencyIds.contains(stopIdPair.getSecond().getAgencyId())) {
+                stopIdPairs.remove();
+            }
+        }
+    }
+
     /**
      * Determines the transfer penalty given a transfer time and a penalty for non-preferred
      * transfers. 
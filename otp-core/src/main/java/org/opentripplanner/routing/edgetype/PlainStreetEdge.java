@@ -15,7 +15,9 @@ package org.opentripplanner.routing.edgetype;
 
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -25,6 +27,7 @@ import lombok.Setter;
 
 import org.opentripplanner.common.TurnRestriction;
 import org.opentripplanner.common.TurnRestrictionType;
+import org.opentripplanner.common.geometry.CompactLineString;
 import org.opentripplanner.common.geometry.DirectionUtils;
 import org.opentripplanner.common.geometry.PackedCoordinateSequence;
 import org.opentripplanner.routing.core.RoutingRequest;
@@ -56,15 +59,35 @@ public class PlainStreetEdge extends StreetEdge implements Cloneable {
 
     private static final long serialVersionUID = 1L;
 
-    private static final double GREENWAY_SAFETY_FACTOR = 0.1;
-
     private ElevationProfileSegment elevationProfileSegment;
 
+    /**
+     * The precomputed cost table this edge has a row in, or null if its costs must be computed
+     * on the fly. Rebuilt whenever the graph is indexed.
+     */
+    private transient StreetCostTable costTable;
+
+    private transient int costTableRow;
+
     @Getter
     private double length;
 
-    @Getter
-    private LineString geometry;
+    /*
+     * The geometry, encoded by CompactLineString, which may be the same array as the one of the
+     * reverse edge (see shareGeometry). Geometries that cannot be encoded are kept as they are.
+     */
+    private byte[] compactGeometry;
+
+    /* true if compactGeometry runs from the end of this edge to its start */
+    private boolean compactGeometryReversed;
+
+    private LineString uncompactedGeometry;
+
+    /*
+     * The decoded geometry, which the street index and the samplers ask for on each lookup. It is
+     * kept as long as memory allows, and decoded again once it has been collected.
+     */
+    private transient SoftReference<LineString> decodedGeometry;
     
     @Getter @Setter
     private String name;
@@ -151,7 +174,12 @@ public class PlainStreetEdge extends StreetEdge implements Cloneable {
             String name, double length,
             StreetTraversalPermission permission, boolean back, float carSpeed) {
         super(v1, v2);
-        this.geometry = geometry;
+        if (geometry != null && CompactLineString.canEncode(geometry)) {
+            this.compactGeometry = CompactLineString.encode(geometry);
+            this.compactGeometryReversed = CompactLineString.isEncodedReversed(geometry);
+        } else {
+            this.uncompactedGeometry = geometry;
+        }
         this.length = length;
         this.elevationProfileSegment = new ElevationProfileSegment(length);
         this.name = name;
@@ -218,6 +246,7 @@ public class PlainStreetEdge extends StreetEdge implements Cloneable {
 
     @Override
     public boolean setElevationProfile(PackedCoordinateSequence elev, boolean computed) {
+        costTable = null;
         return elevationProfileSegment.setElevationProfile(elev, computed, permission.allows(StreetTraversalPermission.CAR));
     }
 
@@ -272,7 +301,25 @@ public class PlainStreetEdge extends StreetEdge implements Cloneable {
         double time = length / speed;
         double weight;
         // TODO(flamholz): factor out this bike, wheelchair and walking specific logic to somewhere central.
-        if (options.wheelchairAccessible) {
+        StreetCostTable table = costTable;
+        if (table != null) {
+            // same computation as below, reading the precomputed factors from the cost table
+            if (options.wheelchairAccessible) {
+                weight = table.getSlopeSpeedEffectiveLength(costTableRow) / speed;
+            } else if (traverseMode.equals(TraverseMode.BICYCLE)) {
+                time = table.getSlopeSpeedEffectiveLength(costTableRow) / speed;
+                weight = table.getBicycleWeight(costTableRow, options, length, speed);
+            } else {
+                if (walkingBike) {
+                    time = table.getSlopeSpeedEffectiveLength(costTableRow) / speed;
+                }
+                weight = time;
+                if (traverseMode.equals(TraverseMode.WALK)) {
+                    weight = table.getWalkWeight(costTableRow, speed);
+                    time = weight;
+                }
+            }
+        } else if (options.wheelchairAccessible) {
             weight = elevationProfileSegment.getSlopeSpeedEffectiveLength() / speed;
         } else if (traverseMode.equals(TraverseMode.BICYCLE)) {
             time = elevationProfileSegment.getSlopeSpeedEffectiveLength() / speed;
@@ -282,9 +329,9 @@ public class PlainStreetEdge extends StreetEdge implements Cloneable {
                 break;
             case GREENWAYS:
                 weight = elevationProfileSegment.getBicycleSafetyEffectiveLength() / speed;
-                if (elevationProfileSegment.getBicycleSafetyEffectiveLength() / length <= GREENWAY_SAFETY_FACTOR) {
+                if (elevationProfileSegment.getBicycleSafetyEffectiveLength() / length <= StreetCostTable.GREENWAY_SAFETY_FACTOR) {
                     // greenways are treated as even safer than they really are
-                    weight *= 0.66;
+                    weight *= StreetCostTable.GREENWAY_BONUS;
                 }
                 break;
             case FLAT:
@@ -317,8 +364,7 @@ public class PlainStreetEdge extends StreetEdge implements Cloneable {
                 double costs = ElevationUtils.getWalkCostsForSlope(length, elevationProfileSegment.getMaxSlope());
                 // as the cost walkspeed is assumed to be for 4.8km/h (= 1.333 m/sec) we need to adjust
                 // for the walkspeed set by the user
-                double elevationUtilsSpeed = 4.0 / 3.0;
-                weight = costs * (elevationUtilsSpeed / speed);
+                weight = costs * (StreetCostTable.ELEVATION_UTILS_WALK_SPEED / speed);
                 time = weight; //treat cost as time, as in the current model it actually is the same (this can be checked for maxSlope == 0)
                 /*
                 // debug code
@@ -447,6 +493,7 @@ public class PlainStreetEdge extends StreetEdge implements Cloneable {
     }
 
     public void setSlopeSpeedEffectiveLength(double slopeSpeedEffectiveLength) {
+        costTable = null;
         elevationProfileSegment.setSlopeSpeedEffectiveLength(slopeSpeedEffectiveLength);
     }
 
@@ -455,6 +502,7 @@ public class PlainStreetEdge extends StreetEdge implements Cloneable {
     }
 
     public void setSlopeWorkCost(double slopeWorkCost) {
+        costTable = null;
         elevationProfileSegment.setSlopeWorkCost(slopeWorkCost);
     }
 
@@ -463,6 +511,7 @@ public class PlainStreetEdge extends StreetEdge implements Cloneable {
     }
 
     public void setBicycleSafetyEffectiveLength(double bicycleSafetyEffectiveLength) {
+        costTable = null;
         elevationProfileSegment.setBicycleSafetyEffectiveLength(bicycleSafetyEffectiveLength);
     }
 
@@ -470,6 +519,49 @@ public class PlainStreetEdge extends StreetEdge implements Cloneable {
         return elevationProfileSegment.getBicycleSafetyEffectiveLength();
     }
 
+    /**
+     * Attaches this edge to a row of a precomputed cost table; only called by StreetCostTable.
+     */
+    void setCostTableRow(StreetCostTable costTable, int row) {
+        this.costTable = costTable;
+        this.costTableRow = row;
+    }
+
+    /** Returns true if this edge's traversal costs are read from a precomputed cost table. */
+    public boolean hasCostTableRow() {
+        return costTable != null;
+    }
+
+    /** @return the geometry of this edge, decoded on the first call after it was collected */
+    @Override
+    public LineString getGeometry() {
+        if (compactGeometry == null)
+            return uncompactedGeometry;
+        SoftReference<LineString> reference = decodedGeometry;
+        LineString geometry = reference == null ? null : reference.get();
+        if (geometry == null) {
+            geometry = CompactLineString.decode(compactGeometry, compactGeometryReversed);
+            decodedGeometry = new SoftReference<LineString>(geometry);
+        }
+        return geometry;
+    }
+
+    /**
+     * Use the same encoded geometry as the given edge, if it has the same geometry (forward or
+     * reversed), so that the two edges of a street only store their geometry once.
+     */
+    public void shareGeometry(PlainStreetEdge other) {
+        if (compactGeometry != null && other.compactGeometry != null
+                && Arrays.equals(compactGeometry, other.compactGeometry)) {
+            compactGeometry = other.compactGeometry;
+        }
+    }
+
+    /** @return the encoded geometry, or null if the geometry could not be encoded. */
+    byte[] getCompactGeometry() {
+        return compactGeometry;
+    }
+
     private void writeObject(ObjectOutputStream out) throws IOException {
         out.defaultWriteObject();
     }
@@ -0,0 +1,146 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.edgetype;
+
+import java.util.Collection;
+
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.util.ElevationProfileSegment;
+import org.opentripplanner.routing.util.ElevationUtils;
+
+/**
+ * A packed table of the request-independent parts of street traversal costs, built once per
+ * graph when it is indexed. PlainStreetEdge.doTraverse reads its row in this table instead of
+ * walking over to its ElevationProfileSegment and recomputing slope costs on every traversal.
+ *
+ * All street costs are linear in 1/speed, so a row holds the speed-independent factors for every
+ * (mode, optimize) profile and the division by the requested speed happens at traversal time.
+ * The arithmetic is kept identical to the non-tabled code path so that results do not change.
+ *
+ * Edges created or modified after the table was built (split edges, edges whose elevation
+ * profile is set later) simply drop out of the table and use the non-tabled path.
+ */
+public class StreetCostTable {
+
+    /** Slope-adjusted length used for bicycle time, bicycle QUICK and wheelchair weight */
+    private static final int SLOPE_SPEED_LENGTH = 0;
+
+    /** Bicycle safety effective length used for SAFE, GREENWAYS and TRIANGLE */
+    private static final int SAFETY_LENGTH = 1;
+
+    /** 1.0, or the greenway bonus multiplier when this street is a greenway */
+    private static final int GREENWAY_FACTOR = 2;
+
+    /** Slope work cost used for FLAT and TRIANGLE */
+    private static final int WORK_COST = 3;
+
+    /** Walking cost for slope from ElevationUtils.getWalkCostsForSlope */
+    private static final int WALK_COST = 4;
+
+    private static final int STRIDE = 5;
+
+    static final double GREENWAY_SAFETY_FACTOR = 0.1;
+
+    static final double GREENWAY_BONUS = 0.66;
+
+    /**
+     * As the walk cost is computed for a walk speed of 4.8km/h (= 1.333 m/sec) it is scaled by
+     * this speed over the requested speed.
+     */
+    static final double ELEVATION_UTILS_WALK_SPEED = 4.0 / 3.0;
+
+    private final double[] costs;
+
+    private final int size;
+
+    /**
+     * Builds the table for all PlainStreetEdges in the given collection and attaches each edge
+     * to its row. Edges of other types are ignored.
+     */
+    public StreetCostTable(Collection<? extends Edge> edges) {
+        int n = 0;
+        for (Edge e : edges) {
+            if (e instanceof PlainStreetEdge) {
+                n++;
+            }
+        }
+        size = n;
+        costs = new double[n * STRIDE];
+        int row = 0;
+        for (Edge e : edges) {
+            if (e instanceof PlainStreetEdge) {
+                PlainStreetEdge pse = (PlainStreetEdge) e;
+                fillRow(row, pse);
+                pse.setCostTableRow(this, row);
+                row++;
+            }
+        }
+    }
+
+    private void fillRow(int row, PlainStreetEdge edge) {
+        ElevationProfileSegment eps = edge.getElevationProfileSegment();
+        double length = edge.getLength();
+        double safety = eps.getBicycleSafetyEffectiveLength();
+        int offset = row * STRIDE;
+        costs[offset + SLOPE_SPEED_LENGTH] = eps.getSlopeSpeedEffectiveLength();
+        costs[offset + SAFETY_LENGTH] = safety;
+        costs[offset + GREENWAY_FACTOR] = safety / length <= GREENWAY_SAFETY_FACTOR ? GREENWAY_BONUS
+                : 1.0;
+        costs[offset + WORK_COST] = eps.getSlopeWorkCost();
+        costs[offset + WALK_COST] = ElevationUtils.getWalkCostsForSlope(length, eps.getMaxSlope());
+    }
+
+    /** The number of edges in this table. */
+    public int size() {
+        return size;
+    }
+
+    public double getSlopeSpeedEffectiveLength(int row) {
+        return costs[row * STRIDE + SLOPE_SPEED_LENGTH];
+    }
+
+    /**
+     * Returns the walking weight (before reluctance) of the edge at the given row, which is also
+     * its walking time.
+     */
+    public double getWalkWeight(int row, double speed) {
+        return costs[row * STRIDE + WALK_COST] * (ELEVATION_UTILS_WALK_SPEED / speed);
+    }
+
+    /**
+     * Returns the bicycling weight (before reluctance) of the edge at the given row for the
+     * optimization type of the given request.
+     */
+    public double getBicycleWeight(int row, RoutingRequest options, double length, double speed) {
+        int offset = row * STRIDE;
+        switch (options.optimize) {
+        case SAFE:
+            return costs[offset + SAFETY_LENGTH] / speed;
+        case GREENWAYS:
+            return costs[offset + SAFETY_LENGTH] / speed * costs[offset + GREENWAY_FACTOR];
+        case FLAT:
+            return length / speed + costs[offset + WORK_COST];
+        case QUICK:
+            return costs[offset + SLOPE_SPEED_LENGTH] / speed;
+        case TRIANGLE:
+            double weight = costs[offset + SLOPE_SPEED_LENGTH] * options.getTriangleTimeFactor()
+                    + costs[offset + WORK_COST] * options.getTriangleSlopeFactor()
+                    + costs[offset + SAFETY_LENGTH] * options.getTriangleSafetyFactor();
+            return weight / speed;
+        default:
+            return length / speed;
+        }
+    }
+}
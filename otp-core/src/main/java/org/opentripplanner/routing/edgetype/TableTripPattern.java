@@ -218,6 +218,11 @@ public class TableTripPattern implements TripPattern, Serializable {
         return trips.size();
     }
     
+    /** @return the timetable of the scheduled stop times, without any realtime updates */
+    public Timetable getScheduledTimetable() {
+        return scheduledTimetable;
+    }
+
     // TODO: Lombokize all boilerplate... but lombok does not generate javadoc :/ 
     public int getServiceId() { 
         return serviceId;
@@ -333,6 +333,11 @@ public class Timetable implements Serializable {
         return -1;
     }
     
+    /** @return the number of TripTimes in this Timetable, including any unscheduled trips */
+    public int getNumTrips() {
+        return tripTimes.size();
+    }
+
     /** 
      * Not private because it's used when traversing interline dwells, which refer to order
      * in the scheduled trip pattern. 
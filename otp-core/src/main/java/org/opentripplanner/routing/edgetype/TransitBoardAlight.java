@@ -233,6 +233,7 @@ public class TransitBoardAlight extends TablePatternEdge implements OnboardEdge
                 int secondsSinceMidnight = sd.secondsSinceMidnight(current_time);
                 if (sd.serviceIdRunning(serviceId)) {
                     // getNextTrip will find next or prev departure depending on final boolean parameter
+                    rctx.counters.getTimetableLookups().incrementAndGet();
                     tripTimes = getPattern().getNextTrip(stopIndex, secondsSinceMidnight, 
                             state0, sd, mode == TraverseMode.BICYCLE, boarding);
                     if (tripTimes != null) {
@@ -13,16 +13,25 @@
 
 package org.opentripplanner.routing.edgetype.factory;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.math3.util.FastMath;
 import org.onebusaway.gtfs.model.Agency;
@@ -53,6 +62,7 @@ import org.opentripplanner.gbannotation.NegativeHopTime;
 import org.opentripplanner.gbannotation.StopAtEntrance;
 import org.opentripplanner.gbannotation.TripDegenerate;
 import org.opentripplanner.gbannotation.TripUndefinedService;
+import org.opentripplanner.gtfs.ExternalStopTimeSorter;
 import org.opentripplanner.gtfs.GtfsContext;
 import org.opentripplanner.gtfs.GtfsLibrary;
 import org.opentripplanner.routing.core.ServiceIdToNumberService;
@@ -298,6 +308,19 @@ class IndexedLineSegmentComparator implements Comparator<IndexedLineSegment> {
     }
 }
 
+/** The hops of a new pattern, whose geometry is to be made from the shape of its first trip. */
+class PendingGeometry<T extends Edge & HopEdge> {
+    final Trip trip;
+    final List<StopTime> stopTimes;
+    final List<T> hops;
+
+    PendingGeometry(Trip trip, List<StopTime> stopTimes, List<T> hops) {
+        this.trip = trip;
+        this.stopTimes = stopTimes;
+        this.hops = hops;
+    }
+}
+
 /**
  * Generates a set of edges from GTFS.
  */
@@ -311,11 +334,18 @@ public class GTFSPatternHopFactory {
 
     private CalendarService _calendarService;
     
-    private Map<ShapeSegmentKey, LineString> _geometriesByShapeSegmentKey = new HashMap<ShapeSegmentKey, LineString>();
+    /* The geometry caches are shared by the threads matching the patterns to their shapes. */
+    private ConcurrentMap<ShapeSegmentKey, LineString> _geometriesByShapeSegmentKey = new ConcurrentHashMap<ShapeSegmentKey, LineString>();
+
+    private ConcurrentMap<AgencyAndId, LineString> _geometriesByShapeId = new ConcurrentHashMap<AgencyAndId, LineString>();
 
-    private Map<AgencyAndId, LineString> _geometriesByShapeId = new HashMap<AgencyAndId, LineString>();
+    /* only contains the shapes that have distances */
+    private ConcurrentMap<AgencyAndId, double[]> _distancesByShapeId = new ConcurrentHashMap<AgencyAndId, double[]>();
 
-    private Map<AgencyAndId, double[]> _distancesByShapeId = new HashMap<AgencyAndId, double[]>();
+    /** The hops whose geometry is still to be made, grouped by the shape of their trip. */
+    private Map<AgencyAndId, List<PendingGeometry<?>>> pendingGeometries = new HashMap<AgencyAndId, List<PendingGeometry<?>>>();
+
+    private int threads = Runtime.getRuntime().availableProcessors();
     
     private boolean _deleteUselessDwells = true;
 
@@ -337,6 +367,12 @@ public class GTFSPatternHopFactory {
 
     private double maxStopToShapeSnapDistance = 150;
 
+    /**
+     * If set, the stop times of the trips are read from this sorter, one trip at a time, instead
+     * of from the DAO (which then does not contain any stop times).
+     */
+    private ExternalStopTimeSorter sortedStopTimes;
+
     public GTFSPatternHopFactory(GtfsContext context) {
         this._dao = context.getDao();
         this._calendarService = context.getCalendarService();
@@ -428,7 +464,27 @@ public class GTFSPatternHopFactory {
         }
 
         /* then loop over all trips handling each one as a frequency-based or scheduled trip */
-        TRIP : for (Trip trip : trips) {
+        Iterator<Trip> tripIterator = trips.iterator();
+        Set<Trip> tripsWithStopTimes = new HashSet<Trip>();
+        TRIP : while (true) {
+            Trip trip;
+            List<StopTime> stopTimes;
+            if (sortedStopTimes == null) {
+                if (!tripIterator.hasNext())
+                    break;
+                trip = tripIterator.next();
+                stopTimes = _dao.getStopTimesForTrip(trip);
+            } else {
+                stopTimes = nextSortedTrip();
+                if (stopTimes == null)
+                    break;
+                trip = stopTimes.get(0).getTrip();
+                if (trip == null) {
+                    LOG.warn("stop times refer to an unknown trip, skipping them");
+                    continue TRIP;
+                }
+                tripsWithStopTimes.add(trip);
+            }
 
             tripCount++;
             if (tripCount % 100000 == 0)
@@ -440,7 +496,7 @@ public class GTFSPatternHopFactory {
 
 
             /* GTFS stop times frequently contain duplicate, missing, or incorrect entries */
-            List<StopTime> stopTimes = getNonduplicateStopTimesForTrip(trip); // duplicate stopIds
+            stopTimes = removeDuplicateStops(stopTimes); // duplicate stopIds
             filterStopTimes(stopTimes, graph); // duplicate times (0-time), negative, fast or slow hops
             interpolateStopTimes(stopTimes); // interpolate between timepoints
             if (stopTimes.size() < 2) {
@@ -470,7 +526,7 @@ public class GTFSPatternHopFactory {
                     FrequencyBasedTripPattern frequencyPattern = patternAndHops.getFirst();
                     if (frequencyPattern != null) 
                         frequencyPattern.createRanges(frequencies);
-                    createGeometry(graph, trip, stopTimes, hops);
+                    addPendingGeometry(trip, stopTimes, hops);
                     continue TRIP;
                 } // else fall through and treat this as a normal trip
             }
@@ -486,6 +542,17 @@ public class GTFSPatternHopFactory {
             }
         } // END for loop over trips
 
+        createPendingGeometries(graph);
+
+        if (sortedStopTimes != null) {
+            /* trips without any stop times were not seen in the loop above */
+            for (Trip trip : trips) {
+                if (!tripsWithStopTimes.contains(trip)) {
+                    LOG.warn(graph.addBuilderAnnotation(new TripDegenerate(trip)));
+                }
+            }
+        }
+
         /* link up interlined trips (where a vehicle continues on to another logical trip) */
         for (List<InterliningTrip> blockTrips : tripsForBlock.values()) {
 
@@ -556,7 +623,7 @@ public class GTFSPatternHopFactory {
             // it's the first time we are encountering this stops+pickups+serviceId combination
             T2<TableTripPattern, List<PatternHop>> patternAndHops = makePatternVerticesAndEdges(graph, trip, stopPattern, stopTimes);
             List<PatternHop> hops = patternAndHops.getSecond();
-            createGeometry(graph, trip, stopTimes, hops);
+            addPendingGeometry(trip, stopTimes, hops);
             tripPattern = patternAndHops.getFirst();
             patterns.put(stopPattern, tripPattern);
         } 
@@ -564,15 +631,68 @@ public class GTFSPatternHopFactory {
         return tripPattern;
     }
 
-    static int cg = 0;
-    private <T extends Edge & HopEdge> void createGeometry(Graph graph, Trip trip,
+    /**
+     * Record that the geometry of the given hops is to be made from the shape of the trip, once
+     * all the patterns have been made. Hops of trips without a shape keep a null geometry.
+     */
+    private <T extends Edge & HopEdge> void addPendingGeometry(Trip trip,
             List<StopTime> stopTimes, List<T> hops) {
-
-        cg += 1;
         AgencyAndId shapeId = trip.getShapeId();
         if (shapeId == null || shapeId.getId() == null || shapeId.getId().equals(""))
             return; // this trip has no associated shape_id, bail out
         // TODO: is this right? don't we want to use the straight-line logic below?
+        List<PendingGeometry<?>> pending = pendingGeometries.get(shapeId);
+        if (pending == null) {
+            pending = new ArrayList<PendingGeometry<?>>();
+            pendingGeometries.put(shapeId, pending);
+        }
+        pending.add(new PendingGeometry<T>(trip, stopTimes, hops));
+    }
+
+    /**
+     * Match the patterns to their shapes. Each shape is matched on one thread, so the patterns that
+     * follow the same segments of a shape share the geometry found by the first of them.
+     */
+    private void createPendingGeometries(final Graph graph) {
+        if (pendingGeometries.isEmpty())
+            return;
+        LOG.info("creating the geometries of the patterns of {} shapes", pendingGeometries.size());
+        ExecutorService threadPool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (final List<PendingGeometry<?>> pendingForShape : pendingGeometries.values()) {
+                futures.add(threadPool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (PendingGeometry<?> pending : pendingForShape) {
+                            createGeometry(graph, pending);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            threadPool.shutdownNow();
+        }
+        pendingGeometries.clear();
+    }
+
+    private <T extends Edge & HopEdge> void createGeometry(Graph graph, PendingGeometry<T> pending) {
+        createGeometry(graph, pending.trip, pending.stopTimes, pending.hops);
+    }
+
+    private <T extends Edge & HopEdge> void createGeometry(Graph graph, Trip trip,
+            List<StopTime> stopTimes, List<T> hops) {
+
+        AgencyAndId shapeId = trip.getShapeId();
         
         /* Detect presence or absence of shape_dist_traveled on a per-trip basis */
         StopTime st0 = stopTimes.get(0);
@@ -717,7 +837,7 @@ public class GTFSPatternHopFactory {
                 // Pack the resulting line string
                 CoordinateSequence sequence = new PackedCoordinateSequence.Double(geometry
                         .getCoordinates(), 2);
-                geometry = _geometryFactory.createLineString(sequence);
+                geometry = cacheSegmentGeometry(key, _geometryFactory.createLineString(sequence));
             }
             ((HopEdge)hop).setGeometry(geometry);
         }
@@ -1407,12 +1527,21 @@ public class GTFSPatternHopFactory {
                 //fall back to trivial geometry
                 geometry = createSimpleGeometry(st0.getStop(), st1.getStop());
             }
-            _geometriesByShapeSegmentKey.put(key, (LineString) geometry);
+            geometry = cacheSegmentGeometry(key, geometry);
         }
 
         return geometry;
     }
     
+    /**
+     * @return the geometry cached for the key, which is the given geometry unless another thread
+     *         cached one first.
+     */
+    private LineString cacheSegmentGeometry(ShapeSegmentKey key, LineString geometry) {
+        LineString existing = _geometriesByShapeSegmentKey.putIfAbsent(key, geometry);
+        return existing == null ? geometry : existing;
+    }
+
     /* 
      * If a shape appears in more than one feed, the shape points will be loaded several
      * times, and there will be duplicates in the DAO. Filter out duplicates and repeated
@@ -1421,7 +1550,11 @@ public class GTFSPatternHopFactory {
      * which we do not want.
      */
     private List<ShapePoint> getUniqueShapePointsForShapeId(AgencyAndId shapeId) {
-        List<ShapePoint> points = _dao.getShapePointsForShapeId(shapeId);
+        List<ShapePoint> points;
+        synchronized (_dao) {
+            // the DAO builds its indexes when they are first used, which is not thread-safe
+            points = _dao.getShapePointsForShapeId(shapeId);
+        }
         ArrayList<ShapePoint> filtered = new ArrayList<ShapePoint>(points.size());
         ShapePoint last = null;
         for (ShapePoint sp : points) {
@@ -1480,10 +1613,11 @@ public class GTFSPatternHopFactory {
 
         CoordinateSequence sequence = new PackedCoordinateSequence.Double(coordinates, 2);
         geometry = _geometryFactory.createLineString(sequence);
-        _geometriesByShapeId.put(shapeId, geometry);
-        _distancesByShapeId.put(shapeId, distances);
+        if (distances != null)
+            _distancesByShapeId.putIfAbsent(shapeId, distances);
+        LineString existing = _geometriesByShapeId.putIfAbsent(shapeId, geometry);
 
-        return geometry;
+        return existing == null ? geometry : existing;
     }
 
     private double[] getDistanceForShapeId(AgencyAndId shapeId) {
@@ -1510,8 +1644,7 @@ public class GTFSPatternHopFactory {
     }
 
     /** Filter out (erroneous) series of stop times that refer to the same stop */
-    private List<StopTime> getNonduplicateStopTimesForTrip(Trip trip) {
-        List<StopTime> unfiltered = _dao.getStopTimesForTrip(trip);
+    private List<StopTime> removeDuplicateStops(List<StopTime> unfiltered) {
         ArrayList<StopTime> filtered = new ArrayList<StopTime>(unfiltered.size());
         for (StopTime st : unfiltered) {
             if (filtered.size() > 0) {
@@ -1531,6 +1664,23 @@ public class GTFSPatternHopFactory {
         return filtered;
     }
 
+    private List<StopTime> nextSortedTrip() {
+        try {
+            return sortedStopTimes.nextTrip();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** The number of threads matching the patterns to their shapes. */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public void setSortedStopTimes(ExternalStopTimeSorter sortedStopTimes) {
+        this.sortedStopTimes = sortedStopTimes;
+    }
+
     public void setFareServiceFactory(FareServiceFactory fareServiceFactory) {
         this.fareServiceFactory = fareServiceFactory;
     }
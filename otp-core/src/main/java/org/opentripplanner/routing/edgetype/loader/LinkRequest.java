@@ -22,20 +22,15 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 
-import org.onebusaway.gtfs.model.AgencyAndId;
 import org.opentripplanner.common.geometry.DistanceLibrary;
 import org.opentripplanner.common.geometry.GeometryUtils;
-import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.common.model.P2;
-import org.opentripplanner.routing.core.RoutingRequest;
-import org.opentripplanner.routing.core.TraversalRequirements;
-import org.opentripplanner.routing.core.TraverseMode;
-import org.opentripplanner.routing.core.TraverseModeSet;
 import org.opentripplanner.routing.edgetype.AreaEdge;
 import org.opentripplanner.routing.edgetype.PlainStreetEdge;
 import org.opentripplanner.routing.edgetype.StreetBikeRentalLink;
 import org.opentripplanner.routing.edgetype.StreetEdge;
 import org.opentripplanner.routing.edgetype.StreetTransitLink;
+import org.opentripplanner.routing.edgetype.loader.NetworkLinkerLibrary.StreetLookup;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.impl.CandidateEdgeBundle;
@@ -78,7 +73,8 @@ public class LinkRequest {
      * Sets result to true if the links were successfully added, otherwise false
      */
     public void connectVertexToStreets(BikeRentalStationVertex v) {
-        Collection<StreetVertex> nearbyStreetVertices = getNearbyStreetVertices(v, null, null);
+        Collection<StreetVertex> nearbyStreetVertices = getNearbyStreetVertices(v,
+                linker.lookupStreets(v, null, null));
         if (nearbyStreetVertices == null) {
             result = false;
         } else {
@@ -107,7 +103,7 @@ public class LinkRequest {
      * Used by both the network linker and for adding temporary "extra" edges at the origin 
      * and destination of a search.
      */
-    private Collection<StreetVertex> getNearbyStreetVertices(Vertex v, Collection<Edge> nearbyRouteEdges, RoutingRequest options) {
+    private Collection<StreetVertex> getNearbyStreetVertices(Vertex v, StreetLookup lookup) {
         Collection<StreetVertex> existing = linker.splitVertices.get(v);
         if (existing != null)
             return existing;
@@ -120,9 +116,7 @@ public class LinkRequest {
         Coordinate coordinate = v.getCoordinate();
 
         /* is there a bundle of edges nearby to use or split? */
-        GenericLocation location = new GenericLocation(coordinate);
-        TraversalRequirements reqs = new TraversalRequirements(options);
-        CandidateEdgeBundle edges = linker.index.getClosestEdges(location, reqs, null, nearbyRouteEdges, true);
+        CandidateEdgeBundle edges = lookup.edges;
         if (edges == null || edges.size() < 1) {
             // no edges were found nearby, or a bidirectional/loop bundle of edges was not identified
             LOG.debug("found too few edges: {} {}", v.getName(), v.getCoordinate());
@@ -136,7 +130,7 @@ public class LinkRequest {
             return list;
         } else {
             /* is the stop right at an intersection? */
-            StreetVertex atIntersection = linker.index.getIntersectionAt(coordinate);
+            StreetVertex atIntersection = lookup.atIntersection;
             if (atIntersection != null) {
                 // if so, the stop can be linked directly to all vertices at the intersection
                 if (edges.getScore() > distanceLibrary.distance(atIntersection.getCoordinate(), coordinate))
@@ -344,20 +338,12 @@ public class LinkRequest {
     }
 
     public void connectVertexToStreets(TransitStop v, boolean wheelchairAccessible) {
-        List<Edge> nearbyEdges = null;
-        if (linker.edgesForRoute != null && linker.transitIndex != null) {
-            nearbyEdges = new ArrayList<Edge>();
-            for (AgencyAndId route : linker.transitIndex.getRoutesForStop(v.getStopId())) {
-                List<Edge> edges = linker.edgesForRoute.get(route);
-                if (edges != null) {
-                    nearbyEdges.addAll(edges);
-                }
-            }
+        // use the streets looked up ahead of linking, if any
+        StreetLookup lookup = linker.streetLookups.remove(v);
+        if (lookup == null) {
+            lookup = linker.lookupStreets(v);
         }
-        TraverseModeSet modes = v.getModes().clone();
-        modes.setMode(TraverseMode.WALK, true);
-        RoutingRequest request = new RoutingRequest(modes);
-        Collection<StreetVertex> nearbyStreetVertices = getNearbyStreetVertices(v, nearbyEdges, request);
+        Collection<StreetVertex> nearbyStreetVertices = getNearbyStreetVertices(v, lookup);
         if (nearbyStreetVertices == null) {
             result = false;
         } else {
@@ -17,6 +17,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 
 import org.opentripplanner.common.IterableLibrary;
 import org.opentripplanner.common.model.P2;
@@ -26,6 +27,7 @@ import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.edgetype.PlainStreetEdge;
 import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetBikeRentalLink;
 import org.opentripplanner.routing.edgetype.StreetTransitLink;
 import org.opentripplanner.routing.edgetype.factory.FindMaxWalkDistances;
 import org.opentripplanner.routing.graph.Edge;
@@ -44,6 +46,8 @@ public class NetworkLinker {
 
     private NetworkLinkerLibrary networkLinkerLibrary;
 
+    private int threads = Runtime.getRuntime().availableProcessors();
+
     public NetworkLinker(Graph graph, HashMap<Class<?>,Object> extra) {
         this.graph = graph;
         this.networkLinkerLibrary = new NetworkLinkerLibrary(graph, extra);
@@ -55,6 +59,11 @@ public class NetworkLinker {
         this(graph, new HashMap<Class<?>, Object>());
     }
 
+    /** The number of threads looking up the streets near the stops. */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     /**
      * Link the transit network to the street network. Connect each transit vertex to the nearest
      * Street edge with a StreetTransitLink.
@@ -68,6 +77,7 @@ public class NetworkLinker {
         ArrayList<Vertex> vertices = new ArrayList<Vertex>();
         vertices.addAll(graph.getVertices());
 
+        List<TransitStop> stopsToLink = new ArrayList<TransitStop>();
         for (TransitStop ts : IterableLibrary.filter(vertices, TransitStop.class)) {
             // if the street is already linked there is no need to linked it again,
             // could happened if using the prune isolated island
@@ -82,10 +92,20 @@ public class NetworkLinker {
             // only connect transit stops that (a) are entrances, or (b) have no associated
             // entrances
             if (ts.isEntrance() || !ts.hasEntrances()) {
-                boolean wheelchairAccessible = ts.hasWheelchairEntrance();
-                if (!networkLinkerLibrary.connectVertexToStreets(ts, wheelchairAccessible).getResult()) {
-                    LOG.warn(graph.addBuilderAnnotation(new StopUnlinked(ts)));
-                }
+                stopsToLink.add(ts);
+            }
+        }
+        // find the nearby streets of all stops in parallel, then split the edges in stop order;
+        // on a single thread, the streets are looked up as each stop is linked
+        if (threads > 1) {
+            LOG.debug("looking up the streets near {} stops on {} threads", stopsToLink.size(),
+                    threads);
+            networkLinkerLibrary.lookupStreets(stopsToLink, threads);
+        }
+        for (TransitStop ts : stopsToLink) {
+            boolean wheelchairAccessible = ts.hasWheelchairEntrance();
+            if (!networkLinkerLibrary.connectVertexToStreets(ts, wheelchairAccessible).getResult()) {
+                LOG.warn(graph.addBuilderAnnotation(new StopUnlinked(ts)));
             }
         }
         //remove replaced edges
@@ -118,6 +138,15 @@ public class NetworkLinker {
         LOG.debug("Linking bike rental stations...");
         for (BikeRentalStationVertex brsv : IterableLibrary.filter(vertices,
                 BikeRentalStationVertex.class)) {
+            // stations of a graph being rebuilt incrementally are already linked
+            boolean alreadyLinked = false;
+            for (Edge e : brsv.getOutgoing()) {
+                if (e instanceof StreetBikeRentalLink) {
+                    alreadyLinked = true;
+                    break;
+                }
+            }
+            if (alreadyLinked) continue;
             if (!networkLinkerLibrary.connectVertexToStreets(brsv).getResult()) {
                 LOG.warn(graph.addBuilderAnnotation(new BikeRentalStationUnlinked(brsv)));
             }
@@ -13,22 +13,38 @@
 
 package org.opentripplanner.routing.edgetype.loader;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.onebusaway.gtfs.model.AgencyAndId;
 
 import org.opentripplanner.common.geometry.DistanceLibrary;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.common.model.P2;
 import org.opentripplanner.extra_graph.EdgesForRoute;
 import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraversalRequirements;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
 import org.opentripplanner.routing.edgetype.PlainStreetEdge;
 import org.opentripplanner.routing.edgetype.StreetEdge;
 import org.opentripplanner.routing.edgetype.factory.LocalStopFinder;
+import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.CandidateEdgeBundle;
 import org.opentripplanner.routing.impl.StreetVertexIndexServiceImpl;
 import org.opentripplanner.routing.services.TransitIndexService;
 import org.opentripplanner.routing.vertextype.BikeRentalStationVertex;
@@ -37,6 +53,7 @@ import org.opentripplanner.routing.vertextype.TransitStop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.vividsolutions.jts.geom.Coordinate;
 
 public class NetworkLinkerLibrary {
 
@@ -51,6 +68,9 @@ public class NetworkLinkerLibrary {
     HashMap<Vertex, Collection<StreetVertex>> splitVertices = 
             new HashMap<Vertex, Collection<StreetVertex>> (); 
 
+    /* the streets near the stops, looked up ahead of linking by lookupStreets(List, int) */
+    Map<Vertex, StreetLookup> streetLookups = new ConcurrentHashMap<Vertex, StreetLookup>();
+
     /* by default traverse options allow walking only, which is what we want */
     RoutingRequest options = new RoutingRequest();
 
@@ -151,6 +171,88 @@ public class NetworkLinkerLibrary {
 //        }
 //    }
 
+    /**
+     * Look up the streets near each of the given stops on several threads, so that linking the
+     * stops only has to split the edges. The lookups only read the street index, which is not
+     * changed by linking (split edges are not added to it), so the stops are linked exactly as
+     * if their streets had been looked up one at a time.
+     */
+    public void lookupStreets(List<TransitStop> stops, int threads) {
+        int batchSize = Math.max(stops.size() / (threads * 4), 1);
+        ExecutorService threadPool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int start = 0; start < stops.size(); start += batchSize) {
+                final List<TransitStop> batch = stops.subList(start,
+                        Math.min(start + batchSize, stops.size()));
+                futures.add(threadPool.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        for (TransitStop stop : batch) {
+                            streetLookups.put(stop, lookupStreets(stop));
+                        }
+                        return batch.size();
+                    }
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            threadPool.shutdownNow();
+        }
+    }
+
+    /** Look up the streets a stop can be linked to, preferring the streets its routes use. */
+    StreetLookup lookupStreets(TransitStop v) {
+        List<Edge> nearbyEdges = null;
+        if (edgesForRoute != null && transitIndex != null) {
+            nearbyEdges = new ArrayList<Edge>();
+            for (AgencyAndId route : transitIndex.getRoutesForStop(v.getStopId())) {
+                List<Edge> edges = edgesForRoute.get(route);
+                if (edges != null) {
+                    nearbyEdges.addAll(edges);
+                }
+            }
+        }
+        TraverseModeSet modes = v.getModes().clone();
+        modes.setMode(TraverseMode.WALK, true);
+        return lookupStreets(v, nearbyEdges, new RoutingRequest(modes));
+    }
+
+    /** Look up the bundle of edges closest to a vertex, and the intersection at the vertex. */
+    StreetLookup lookupStreets(Vertex v, Collection<Edge> nearbyRouteEdges, RoutingRequest options) {
+        Coordinate coordinate = v.getCoordinate();
+        GenericLocation location = new GenericLocation(coordinate);
+        TraversalRequirements reqs = new TraversalRequirements(options);
+        CandidateEdgeBundle edges = index.getClosestEdges(location, reqs, null, nearbyRouteEdges, true);
+        StreetVertex atIntersection = null;
+        if (edges != null && edges.size() > 0 && !edges.endwise()) {
+            atIntersection = index.getIntersectionAt(coordinate);
+        }
+        return new StreetLookup(edges, atIntersection);
+    }
+
+    /** The streets found near a vertex to link. */
+    static class StreetLookup {
+
+        final CandidateEdgeBundle edges;
+
+        /* the intersection at the vertex, if any; only looked up if the edges are not endwise */
+        final StreetVertex atIntersection;
+
+        StreetLookup(CandidateEdgeBundle edges, StreetVertex atIntersection) {
+            this.edges = edges;
+            this.atIntersection = atIntersection;
+        }
+    }
+
     /****
      * Private Methods
      ****/
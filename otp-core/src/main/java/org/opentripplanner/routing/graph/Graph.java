@@ -56,12 +56,17 @@ import org.opentripplanner.gbannotation.GraphBuilderAnnotation;
 import org.opentripplanner.gbannotation.NoFutureDates;
 import org.opentripplanner.model.GraphBundle;
 import org.opentripplanner.routing.core.MortonVertexComparatorFactory;
+import org.opentripplanner.routing.core.ServiceCalendarIndex;
+import org.opentripplanner.routing.core.ServiceIdToNumberService;
 import org.opentripplanner.routing.core.TransferTable;
+import org.opentripplanner.routing.edgetype.PlainStreetEdge;
+import org.opentripplanner.routing.edgetype.StreetCostTable;
 import org.opentripplanner.routing.edgetype.StreetEdge;
 import org.opentripplanner.routing.edgetype.TableTripPattern;
 import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
 import org.opentripplanner.routing.services.StreetVertexIndexFactory;
 import org.opentripplanner.routing.services.StreetVertexIndexService;
+import org.opentripplanner.routing.services.TransitIndexService;
 import org.opentripplanner.routing.vertextype.PatternArriveVertex;
 import org.opentripplanner.updater.GraphUpdaterConfigurator;
 import org.opentripplanner.updater.GraphUpdaterManager;
@@ -102,6 +107,8 @@ public class Graph implements Serializable {
     
     private transient CalendarService calendarService;
 
+    private transient ServiceCalendarIndex serviceCalendarIndex;
+
     private boolean debugData = true;
 
     private transient Map<Integer, Vertex> vertexById;
@@ -254,9 +261,22 @@ public class Graph implements Serializable {
 
     @SuppressWarnings("unchecked")
     public <T> T putService(Class<T> serviceType, T service) {
+        if (serviceType == CalendarServiceData.class) {
+            // the calendar service is made from the calendar data, e.g. of an incremental build
+            calendarService = null;
+        }
+        if (serviceType == CalendarServiceData.class
+                || serviceType == ServiceIdToNumberService.class) {
+            serviceCalendarIndex = null;
+        }
         return (T) _services.put(serviceType, service);
     }
 
+    @SuppressWarnings("unchecked")
+    public <T> T removeService(Class<T> serviceType) {
+        return (T) _services.remove(serviceType);
+    }
+
     public boolean hasService(Class<?> serviceType) {
         return _services.containsKey(serviceType);
     }
@@ -422,8 +442,9 @@ public class Graph implements Serializable {
      * 
      * If the graphBuilderAnnotations field of this graph is null, the annotation is not actually saved, but the message is still returned. This
      * allows annotation registration to be turned off, saving memory and disk space when the user is not interested in annotations.
+     * Graph builders may add annotations from several threads.
      */
-    public String addBuilderAnnotation(GraphBuilderAnnotation gba) {
+    public synchronized String addBuilderAnnotation(GraphBuilderAnnotation gba) {
         String ret = gba.getMessage();
         if (this.graphBuilderAnnotations != null)
             this.graphBuilderAnnotations.add(gba);
@@ -486,6 +507,7 @@ public class Graph implements Serializable {
         LOG.debug("street index built.");
         LOG.debug("Rebuilding edge and vertex indices.");
         rebuildVertexAndEdgeIndices();
+        buildStreetCostTable();
         Set<TableTripPattern> tableTripPatterns = Sets.newHashSet();
         for (PatternArriveVertex pav : IterableLibrary.filter(this.getVertices(), PatternArriveVertex.class)) {
             tableTripPatterns.add(pav.getTripPattern());
@@ -493,8 +515,32 @@ public class Graph implements Serializable {
         for (TableTripPattern ttp : tableTripPatterns) {
             if (ttp != null) ttp.finish(); // skip frequency-based patterns with no table (null)
         }
+        TransitIndexService transitIndexService = getService(TransitIndexService.class);
+        if (transitIndexService != null) {
+            // build the departure boards now rather than on the first stop times request
+            transitIndexService.getDepartureBoardIndex();
+        }
+        // and the services running on each day, rather than on the first routing request
+        getServiceCalendarIndex();
     }
     
+    /**
+     * Precompute the request-independent street traversal costs into a packed table. Edges are
+     * added vertex by vertex so that the rows of edges leaving the same vertex are adjacent.
+     */
+    private void buildStreetCostTable() {
+        List<Edge> streetEdges = new ArrayList<Edge>();
+        for (Vertex v : getVertices()) {
+            for (Edge e : v.getOutgoing()) {
+                if (e instanceof PlainStreetEdge) {
+                    streetEdges.add(e);
+                }
+            }
+        }
+        StreetCostTable costTable = new StreetCostTable(streetEdges);
+        LOG.debug("street cost table built for {} edges.", costTable.size());
+    }
+
     /**
      * Loading which allows you to specify StreetVertexIndexFactory and inject other implementation.
      * @param in
@@ -656,6 +702,21 @@ public class Graph implements Serializable {
         return this.calendarService;
     }
 
+    /**
+     * @return the services running on each day of the calendar, made from the calendar service
+     *         when it is first needed, or null if there is no calendar.
+     */
+    public ServiceCalendarIndex getServiceCalendarIndex() {
+        if (serviceCalendarIndex == null) {
+            CalendarService cs = getCalendarService();
+            ServiceIdToNumberService numbers = getService(ServiceIdToNumberService.class);
+            if (cs != null && numbers != null) {
+                serviceCalendarIndex = new ServiceCalendarIndex(cs, numbers);
+            }
+        }
+        return serviceCalendarIndex;
+    }
+
     public int removeEdgelessVertices() {
         int removed = 0;
         List<Vertex> toRemove = new LinkedList<Vertex>();
@@ -23,7 +23,13 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.prefs.Preferences;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -38,6 +44,7 @@ import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Graph.LoadLevel;
 import org.opentripplanner.routing.services.GraphService;
 import org.opentripplanner.routing.services.StreetVertexIndexFactory;
+import org.opentripplanner.util.monitoring.MetricsRegistry;
 
 import com.google.common.io.ByteStreams;
 
@@ -51,6 +58,11 @@ import org.slf4j.LoggerFactory;
  * Note: Naming is not ideal, but this would have broke down the spring API widely used (namely, the
  * GraphServiceImpl class).
  * 
+ * Unless the old graph is evicted first, a new graph is loaded, warmed up with the recent requests
+ * of its router (see {@link GraphWarmer}) and only then swapped in. The requests still running on
+ * the old graph keep their reference to it and finish on it. The reloads can also be run in the
+ * background, one at a time so that at most two copies of a graph are in memory.
+ * 
  * @see GraphServiceImpl
  * @see GraphServiceAutoDiscoverImpl
  */
@@ -80,6 +92,15 @@ public class GraphServiceFileImpl implements GraphService {
     @Getter
     private String defaultRouterId = "";
 
+    /** Whether to replay the recent requests on a new graph before it replaces the old one. */
+    @Getter
+    private boolean warmup = true;
+
+    @Setter
+    private GraphWarmer warmer = GraphWarmer.getInstance();
+
+    private ExecutorService loader;
+
     /**
      * Router IDs may contain alphanumeric characters, underscores, and dashes only. This prevents
      * any confusion caused by the presence of special characters that might have a meaning for the
@@ -87,6 +108,17 @@ public class GraphServiceFileImpl implements GraphService {
      */
     public static final Pattern routerIdPattern = Pattern.compile("[\\p{Alnum}_-]*");
 
+    /**
+     * @param warmup whether to replay the recent requests on a new graph before it replaces the
+     *        old one; the warmer only records the requests when it is on.
+     */
+    public void setWarmup(boolean warmup) {
+        this.warmup = warmup;
+        if (warmer != null) {
+            warmer.setEnabled(warmup);
+        }
+    }
+
     public Graph getGraph() {
         return getGraph(null);
     }
@@ -206,18 +238,63 @@ public class GraphServiceFileImpl implements GraphService {
     @Override
     public boolean reloadGraphs(boolean preEvict) {
         boolean allSucceeded = true;
-        synchronized (graphs) {
-            for (String routerId : this.getRouterIds()) {
-                boolean success = registerGraph(routerId, preEvict);
-                allSucceeded &= success;
-            }
+        // the graphs are not locked while loading, so that routing goes on with the old ones
+        for (String routerId : this.getRouterIds()) {
+            boolean success = registerGraph(routerId, preEvict);
+            allSucceeded &= success;
         }
         return allSucceeded;
     }
 
+    /**
+     * Reload all registered graphs on a background thread, without evicting them first.
+     * 
+     * @return the result of the reload of each graph, in the order of the router ids.
+     */
+    public List<Future<Boolean>> reloadGraphsInBackground() {
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (String routerId : this.getRouterIds()) {
+            results.add(registerGraphInBackground(routerId));
+        }
+        return results;
+    }
+
+    /**
+     * Load, warm up and register the graph of a router on a background thread. The current graph
+     * of the router, if any, stays in use until the new one is ready. Graphs are loaded one at a
+     * time.
+     * 
+     * @return whether the graph was registered.
+     */
+    public Future<Boolean> registerGraphInBackground(final String routerId) {
+        return getLoader().submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return registerGraph(routerId, false);
+            }
+        });
+    }
+
+    private synchronized ExecutorService getLoader() {
+        if (loader == null) {
+            loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "graph-loader");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return loader;
+    }
+
     @Override
     public Collection<String> getRouterIds() {
-        return new ArrayList<String>(graphs.keySet());
+        synchronized (graphs) {
+            return new ArrayList<String>(graphs.keySet());
+        }
     }
 
     @Override
@@ -225,25 +302,50 @@ public class GraphServiceFileImpl implements GraphService {
         if (preEvict)
             evictGraph(routerId);
         LOG.info("registering routerId '{}'", routerId);
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        long startNanos = System.nanoTime();
         Graph graph = this.loadGraph(routerId);
-        if (graph != null) {
-            synchronized (graphs) {
-                if (!preEvict)
-                    evictGraph(routerId);
-                graphs.put(routerId, graph);
-            }
+        if (graph == null) {
+            LOG.info("routerId '{}' was not registered (graph was null).", routerId);
+            return false;
+        }
+        long loadNanos = System.nanoTime() - startNanos;
+        metrics.getHistogram("otp_graph_load_seconds", "Time to load and index a graph.",
+                "router", routerId).recordNanos(loadNanos);
+        LOG.info("graph for routerId '{}' loaded in {} s", routerId, loadNanos / 1000000000);
+        // warming up is only worth it if the old graph is still serving requests
+        if (warmup && warmer != null && !preEvict && getRouterIds().contains(routerId)) {
+            startNanos = System.nanoTime();
+            int replayed = routerId.equals(defaultRouterId) ? warmer.warm(graph, routerId, "")
+                    : warmer.warm(graph, routerId);
+            long warmupNanos = System.nanoTime() - startNanos;
+            metrics.getHistogram("otp_graph_warmup_seconds",
+                    "Time to replay recent requests on a new graph.", "router", routerId)
+                    .recordNanos(warmupNanos);
+            LOG.info("graph for routerId '{}' warmed up with {} requests in {} ms", routerId,
+                    replayed, warmupNanos / 1000000);
+        }
+        Graph existing;
+        synchronized (graphs) {
+            existing = graphs.put(routerId, graph);
             levels.put(routerId, loadLevel);
-            return true;
         }
-        LOG.info("routerId '{}' was not registered (graph was null).", routerId);
-        return false;
+        if (existing != null) {
+            metrics.getCounter("otp_graph_swaps_total", "Graphs registered in place of another.",
+                    "router", routerId).incrementAndGet();
+            // requests running on the old graph finish on it, without real-time updates
+            decorator.shutdownGraph(existing);
+        }
+        return true;
     }
 
     @Override
     public boolean registerGraph(String routerId, Graph graph) {
-        Graph existing = graphs.put(routerId, graph);
-        return existing == null;
-     }
+        synchronized (graphs) {
+            Graph existing = graphs.put(routerId, graph);
+            return existing == null;
+        }
+    }
 
     @Override
     public boolean evictGraph(String routerId) {
@@ -264,7 +366,7 @@ public class GraphServiceFileImpl implements GraphService {
         int n;
         synchronized (graphs) {
             n = graphs.size();
-            for (String routerId : graphs.keySet()) {
+            for (String routerId : getRouterIds()) {
                 evictGraph(routerId);
             }
         }
@@ -16,6 +16,7 @@ package org.opentripplanner.routing.impl;
 import java.io.InputStream;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import javax.annotation.PostConstruct;
 
@@ -67,6 +68,14 @@ public class GraphServiceImpl implements GraphService {
         decorated.setDefaultRouterId(defaultRouterId);
     }
 
+    /**
+     * @param warmup whether to replay the recent requests on a new graph before it replaces the
+     *        old one
+     */
+    public void setWarmup(boolean warmup) {
+        decorated.setWarmup(warmup);
+    }
+
     /**
      * Sets a base path for graph loading from the filesystem. Serialized graph files will be
      * retrieved from sub-directories immediately below this directory. The routerId of a graph is
@@ -127,6 +136,16 @@ public class GraphServiceImpl implements GraphService {
         return decorated.reloadGraphs(preEvict);
     }
 
+    /** @see GraphServiceFileImpl#reloadGraphsInBackground() */
+    public List<Future<Boolean>> reloadGraphsInBackground() {
+        return decorated.reloadGraphsInBackground();
+    }
+
+    /** @see GraphServiceFileImpl#registerGraphInBackground(String) */
+    public Future<Boolean> registerGraphInBackground(String routerId) {
+        return decorated.registerGraphInBackground(routerId);
+    }
+
     @Override
     public Collection<String> getRouterIds() {
         return decorated.getRouterIds();
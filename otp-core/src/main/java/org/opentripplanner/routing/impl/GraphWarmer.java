@@ -0,0 +1,140 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import org.opentripplanner.routing.algorithm.GenericAStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.services.SPTService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the last few trip plan requests of each router, and replays them on a newly loaded graph
+ * before it replaces the graph in use. This compiles the search code for the new graph's data and
+ * fills its lazily built caches, so that the first users of the new graph do not pay for them.
+ *
+ * The replayed requests are plain A* searches: they exercise the traversal code which takes most
+ * of the time of a plan, without the retries and itinerary building of a path service.
+ */
+public class GraphWarmer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GraphWarmer.class);
+
+    private static final GraphWarmer INSTANCE = new GraphWarmer();
+
+    /**
+     * Whether the requests are recorded. It is turned off when the graphs are not warmed up, so
+     * that the requests are not copied for nothing.
+     */
+    @Getter
+    @Setter
+    private volatile boolean enabled = true;
+
+    /** The number of recent requests kept for each router. */
+    @Getter
+    @Setter
+    private int maxRequests = 20;
+
+    /** The time limit of each replayed search, in seconds. */
+    @Getter
+    @Setter
+    private double timeoutSeconds = 5;
+
+    private final Map<String, LinkedList<RoutingRequest>> recent =
+            new HashMap<String, LinkedList<RoutingRequest>>();
+
+    public static GraphWarmer getInstance() {
+        return INSTANCE;
+    }
+
+    /** Keep a copy of a request, without its routing context, for the next warmup. */
+    public void record(RoutingRequest request) {
+        if (!enabled || maxRequests <= 0) {
+            return;
+        }
+        RoutingRequest copy = request.clone();
+        copy.rctx = null;
+        String routerId = request.routerId == null ? "" : request.routerId;
+        synchronized (recent) {
+            LinkedList<RoutingRequest> requests = recent.get(routerId);
+            if (requests == null) {
+                requests = new LinkedList<RoutingRequest>();
+                recent.put(routerId, requests);
+            }
+            requests.addLast(copy);
+            while (requests.size() > maxRequests) {
+                requests.removeFirst();
+            }
+        }
+    }
+
+    /** @return copies of the requests recently made to a router. */
+    public List<RoutingRequest> getRequests(String routerId) {
+        synchronized (recent) {
+            List<RoutingRequest> requests = recent.get(routerId);
+            if (requests == null) {
+                return new ArrayList<RoutingRequest>();
+            }
+            return new ArrayList<RoutingRequest>(requests);
+        }
+    }
+
+    /** Forget the recorded requests. */
+    public void clear() {
+        synchronized (recent) {
+            recent.clear();
+        }
+    }
+
+    /**
+     * Replay the requests recently made to a router on a graph. A request which fails on the new
+     * graph, for instance because its origin is no longer in it, is skipped.
+     * 
+     * @param routerIds the router ids under which the requests were recorded; the requests of the
+     *        default router were recorded with an empty router id.
+     * @return the number of requests which were replayed without error.
+     */
+    public int warm(Graph graph, String... routerIds) {
+        SPTService sptService = new GenericAStar();
+        int replayed = 0;
+        for (String routerId : routerIds) {
+            for (RoutingRequest recorded : getRequests(routerId)) {
+                RoutingRequest request = recorded.clone();
+                try {
+                    request.setRoutingContext(graph);
+                    sptService.getShortestPathTree(request, timeoutSeconds);
+                    replayed++;
+                } catch (RuntimeException e) {
+                    LOG.debug("request {} failed during the warmup: {}", request, e);
+                } finally {
+                    if (request.rctx != null) {
+                        request.cleanup();
+                    }
+                }
+            }
+        }
+        return replayed;
+    }
+}
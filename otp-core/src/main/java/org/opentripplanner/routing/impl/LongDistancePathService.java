@@ -54,7 +54,8 @@ import org.springframework.beans.factory.annotation.Autowired;
  * This PathService is intended to provide faster response times when routing over longer
  * distances (e.g. across the entire Netherlands). It only uses the street network at the first
  * and last legs of the trip, and all other transfers between transit vehicles will occur via
- * SimpleTransfer edges which must be created by the graph builder.
+ * SimpleTransfer edges which must be created by the graph builder (StreetlessStopLinker, or
+ * TransferMatrixGraphBuilderImpl when street data is available).
  * 
  * More information is available on the OTP wiki at:
  * https://github.com/openplans/OpenTripPlanner/wiki/LargeGraphs 
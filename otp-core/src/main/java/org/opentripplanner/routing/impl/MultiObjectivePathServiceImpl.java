@@ -26,6 +26,7 @@ import org.opentripplanner.routing.algorithm.strategies.DefaultRemainingWeightHe
 import org.opentripplanner.routing.algorithm.strategies.InterleavedBidirectionalHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
 import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.SearchDeadline;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Vertex;
@@ -130,6 +131,11 @@ public class MultiObjectivePathServiceImpl implements PathService {
         
         Vertex originVertex = options.rctx.origin;
         Vertex targetVertex = options.rctx.target;
+
+        long nVisited = 0;
+        long nStates = 0;
+        long nRelaxed = 0;
+        long nInserts = 0;
         
         // increase maxWalk repeatedly in case hard limiting is in use 
         WALK: for (double maxWalk = options.getMaxWalkDistance(); returnStates.isEmpty(); maxWalk *= 2) {
@@ -162,19 +168,18 @@ public class MultiObjectivePathServiceImpl implements PathService {
             HashMap<Vertex, List<State>> states = new HashMap<Vertex, List<State>>();
             pq.reset();
             pq.insert(origin, 0);
+            nStates += 1;
+            nInserts += 1;
             long startTime = System.currentTimeMillis();
-            long endTime = startTime + (int)(_timeouts[0] * 1000);
-            LOG.debug("starttime {} endtime {}", startTime, endTime); 
+            SearchDeadline deadline = options.rctx.deadline.limitTo(Math.max(_timeouts[0],
+                    Double.MIN_VALUE));
+            LOG.debug("starttime {} timeout {}", startTime, _timeouts[0]);
+            int nIterations = 0;
             QUEUE: while ( ! pq.empty()) {
                 
-                if (System.currentTimeMillis() > endTime) {
+                if (++nIterations % SearchDeadline.CHECK_INTERVAL == 0 && deadline.isExpired()) {
                     LOG.debug("timeout at {} msec", System.currentTimeMillis() - startTime);
-                    if (returnStates.isEmpty())
-                        break WALK; // disable walk distance increases
-                    else {
-                        storeMemory();
-                        break WALK;
-                    }
+                    break WALK; // disable walk distance increases
                 }
     
 //                if (pq.peek_min_key() > options.maxWeight) {
@@ -205,16 +210,22 @@ public class MultiObjectivePathServiceImpl implements PathService {
                     if (returnStates.size() >= _maxPaths)
                         break QUEUE;
                     if (returnStates.size() < _timeouts.length) {
-                        endTime = startTime + (int)(_timeouts[returnStates.size()] * 1000);
+                        // the timeouts are relative to the start of the search
+                        double elapsed = (System.currentTimeMillis() - startTime) / 1000.0;
+                        deadline = options.rctx.deadline.limitTo(Math.max(
+                                _timeouts[returnStates.size()] - elapsed, Double.MIN_VALUE));
                         LOG.debug("{} path, set timeout to {}", 
                                   returnStates.size(), 
                                   _timeouts[returnStates.size()] * 1000);
                     }
                     continue QUEUE;
                 }
-                
+
+                nVisited += 1;
                 for (Edge e : options.isArriveBy() ? u.getIncoming() : u.getOutgoing()) {
+                    nRelaxed += 1;
                     STATE: for (State new_sv = e.traverse(su); new_sv != null; new_sv = new_sv.getNextResult()) {
+                        nStates += 1;
                         if (traverseVisitor != null) {
                             traverseVisitor.visitEdge(e, new_sv);
                         }
@@ -250,10 +261,12 @@ public class MultiObjectivePathServiceImpl implements PathService {
     
                         old_states.add(new_sv);
                         pq.insert(new_sv, new_sv.getWeight() + h);
+                        nInserts += 1;
                     }
                 }
             }
         }
+        options.rctx.counters.addSearch(nVisited, nStates, nRelaxed, nInserts);
         storeMemory();
 
         // Make the states into paths and return them
@@ -267,9 +280,9 @@ public class MultiObjectivePathServiceImpl implements PathService {
         return paths;
     }
 
+    /** Record the heap in use, garbage included, when it is monitored. */
     private void storeMemory() {
         if (store.isMonitoring("memoryUsed")) {
-            System.gc();
             long memoryUsed = Runtime.getRuntime().totalMemory() -
                     Runtime.getRuntime().freeMemory();
             store.setLongMax("memoryUsed", memoryUsed);
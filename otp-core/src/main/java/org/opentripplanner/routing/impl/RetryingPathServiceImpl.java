@@ -18,9 +18,17 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 
 import org.onebusaway.gtfs.model.AgencyAndId;
 import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseModeSet;
 import org.opentripplanner.routing.pathparser.BasicPathParser;
 import org.opentripplanner.routing.pathparser.NoThruTrafficPathParser;
 import org.opentripplanner.routing.pathparser.PathParser;
@@ -49,6 +57,21 @@ public class RetryingPathServiceImpl implements PathService {
 
     private double firstPathTimeout = 0; // seconds
     private double multiPathTimeout = 0; // seconds
+
+    private int searchParallelism = 1;
+
+    private int maxConcurrentSearches = Runtime.getRuntime().availableProcessors();
+
+    /* Created on first use, so that services which search sequentially do not start threads. */
+    private ExecutorService searchPool;
+
+    private Semaphore searchBudget;
+
+    private int departureTimeAlternatives = 0;
+
+    private int departureTimeSpacing = 15 * 60; // seconds
+
+    private boolean streetOnlyAlternative = false;
     
     /** Give up on searching for itineraries after this many seconds have elapsed. */
     public void setTimeout (double seconds) {
@@ -76,11 +99,54 @@ public class RetryingPathServiceImpl implements PathService {
         multiPathTimeout = seconds;
     }
 
+    /**
+     * The maximum number of searches for a single request that may run at the same time. Each
+     * alternative of a request (see {@link #setDepartureTimeAlternatives} and
+     * {@link #setStreetOnlyAlternative}) is searched for independently of the others, so they can
+     * run in parallel. The retries of one alternative depend on each other's results and always
+     * run one after another. The default of 1 searches the alternatives one after another.
+     */
+    public void setSearchParallelism (int searchParallelism) {
+        this.searchParallelism = searchParallelism;
+    }
+
+    /**
+     * The maximum number of extra searches running in parallel over all requests handled by this
+     * service, on top of the request threads themselves. When this budget is used up, the
+     * remaining alternatives of a request are searched in the request thread, so a busy server
+     * degrades to the sequential behavior instead of queueing requests behind each other.
+     */
+    public synchronized void setMaxConcurrentSearches (int maxConcurrentSearches) {
+        if (searchPool != null)
+            throw new IllegalStateException("The search pool is already running.");
+        this.maxConcurrentSearches = maxConcurrentSearches;
+    }
+
+    /**
+     * Also search for the best itinerary leaving this many times later (or arriving this many
+     * times earlier, for arrive-by requests) than requested, at intervals of
+     * {@link #setDepartureTimeSpacing}. The default of 0 only searches at the requested time.
+     */
+    public void setDepartureTimeAlternatives (int departureTimeAlternatives) {
+        this.departureTimeAlternatives = departureTimeAlternatives;
+    }
+
+    /**
+     * The time between two departure time alternatives, in seconds. All the alternatives use the
+     * service days of the requested time, so they should stay within a few hours of it.
+     */
+    public void setDepartureTimeSpacing (int departureTimeSpacing) {
+        this.departureTimeSpacing = departureTimeSpacing;
+    }
+
+    /** Also search for the best itinerary without transit, for requests which allow transit. */
+    public void setStreetOnlyAlternative (boolean streetOnlyAlternative) {
+        this.streetOnlyAlternative = streetOnlyAlternative;
+    }
+
     @Override
     public List<GraphPath> getPaths(RoutingRequest options) {
 
-        ArrayList<GraphPath> paths = new ArrayList<GraphPath>();
-
         // make sure the options has a routing context *before* cloning it (otherwise you get
         // orphan RoutingContexts leaving temporary edges in the graph until GC)
         if (options.rctx == null) {
@@ -90,7 +156,116 @@ public class RetryingPathServiceImpl implements PathService {
         }
 
         long searchBeginTime = System.currentTimeMillis();
-        
+
+        List<RoutingRequest> alternatives = makeAlternatives(options);
+        List<List<GraphPath>> results = searchAlternatives(options, alternatives,
+                searchBeginTime);
+        if (results.get(0) == null) {
+            // if there is no path at the requested time, the alternatives are not searched for
+            return null;
+        }
+        ArrayList<GraphPath> paths = new ArrayList<GraphPath>();
+        for (List<GraphPath> alternativePaths : results) {
+            if (alternativePaths == null)
+                continue;
+            for (GraphPath path : alternativePaths) {
+                if (!paths.contains(path))
+                    paths.add(path);
+            }
+        }
+        if (paths.size() == 0) {
+            return null;
+        }
+        // We order the list of returned paths by the time of arrival or departure (not path duration)
+        Collections.sort(paths, new PathComparator(options.isArriveBy()));
+        return paths;
+    }
+
+    /**
+     * @return the requests for the best itinerary at other departure times or with other modes,
+     *         each with its own fork of the routing context of the given request.
+     */
+    List<RoutingRequest> makeAlternatives(RoutingRequest options) {
+        List<RoutingRequest> alternatives = new ArrayList<RoutingRequest>();
+        for (int i = 1; i <= departureTimeAlternatives; i++) {
+            RoutingRequest alternative = options.clone();
+            long shift = (long) i * departureTimeSpacing;
+            alternative.dateTime += options.isArriveBy() ? -shift : shift;
+            alternatives.add(alternative);
+        }
+        if (streetOnlyAlternative && options.getModes().isTransit()) {
+            TraverseModeSet streetModes = options.getModes().getNonTransitSet();
+            if (streetModes.getWalk() || streetModes.getBicycle() || streetModes.getDriving()) {
+                RoutingRequest alternative = options.clone();
+                alternative.setModes(streetModes);
+                alternatives.add(alternative);
+            }
+        }
+        for (RoutingRequest alternative : alternatives) {
+            alternative.numItineraries = 1;
+            alternative.rctx = options.rctx.forkForSearch(alternative);
+        }
+        return alternatives;
+    }
+
+    /**
+     * Search for the itineraries of a request and of each of its alternatives. The request itself
+     * is searched for in the calling thread, and the alternatives on the shared search pool as
+     * long as the per-request parallelism and the global search budget allow; the others are
+     * searched for in the calling thread. The searches do not depend on each other, so the
+     * results are the same whichever thread makes them.
+     * 
+     * @return the itineraries of the request then of each alternative, null where none were found.
+     */
+    private List<List<GraphPath>> searchAlternatives(RoutingRequest options,
+            List<RoutingRequest> alternatives, final long searchBeginTime) {
+        List<Future<List<GraphPath>>> futures = new ArrayList<Future<List<GraphPath>>>();
+        if (searchParallelism > 1 && !alternatives.isEmpty()) {
+            ExecutorService pool = getSearchPool();
+            for (int a = 0; a < alternatives.size() && futures.size() < searchParallelism - 1
+                    && searchBudget.tryAcquire(); a++) {
+                final RoutingRequest alternative = alternatives.get(a);
+                futures.add(pool.submit(new Callable<List<GraphPath>>() {
+                    @Override
+                    public List<GraphPath> call() {
+                        try {
+                            return searchItineraries(alternative, searchBeginTime);
+                        } finally {
+                            searchBudget.release();
+                        }
+                    }
+                }));
+            }
+        }
+        List<List<GraphPath>> results = new ArrayList<List<GraphPath>>();
+        results.add(searchItineraries(options, searchBeginTime));
+        try {
+            for (Future<List<GraphPath>> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+        for (int a = futures.size(); a < alternatives.size(); a++) {
+            results.add(searchItineraries(alternatives.get(a), searchBeginTime));
+        }
+        return results;
+    }
+
+    /**
+     * Search for up to numItineraries itineraries of a request, one after another: each search
+     * bans the trips of the itineraries found before, and may lengthen the walk limit.
+     * 
+     * @return the itineraries found, or null if there are none.
+     */
+    private List<GraphPath> searchItineraries(RoutingRequest options, long searchBeginTime) {
+
+        ArrayList<GraphPath> paths = new ArrayList<GraphPath>();
+
         // The list of options specifying various modes, banned routes, etc to try for multiple
         // itineraries
         Queue<RoutingRequest> optionQueue = new LinkedList<RoutingRequest>();
@@ -102,6 +277,10 @@ public class RetryingPathServiceImpl implements PathService {
         long maxTime = options.isArriveBy() ? 0 : Long.MAX_VALUE;
         RoutingRequest currOptions;
         while (paths.size() < options.numItineraries) {
+            if (options.rctx.deadline.isExpired()) {
+                LOG.debug("Request deadline reached. {} paths found.", paths.size());
+                break;
+            }
             currOptions = optionQueue.poll();
             if (currOptions == null) {
                 LOG.debug("Ran out of options to try.");
@@ -114,16 +293,10 @@ public class RetryingPathServiceImpl implements PathService {
             
             // options.worstTime = maxTime;
             //options.maxWeight = maxWeight;
-            long subsearchBeginTime = System.currentTimeMillis();
-            
-            LOG.debug("BEGIN SUBSEARCH");
-            ShortestPathTree spt = sptService.getShortestPathTree(currOptions, timeout);
+            ShortestPathTree spt = getShortestPathTree(currOptions, timeout, searchBeginTime);
             if (spt == null) // timeout or other fail
                 break;
             List<GraphPath> somePaths = spt.getPaths();
-            LOG.debug("END SUBSEARCH ({} msec of {} msec total)", 
-                    System.currentTimeMillis() - subsearchBeginTime,
-                    System.currentTimeMillis() - searchBeginTime);
             if (somePaths == null) {
                 // search failed, likely due to timeout
                 // this could be signaled with an exception
@@ -184,11 +357,36 @@ public class RetryingPathServiceImpl implements PathService {
         if (paths.size() == 0) {
             return null;
         }
-        // We order the list of returned paths by the time of arrival or departure (not path duration)
-        Collections.sort(paths, new PathComparator(options.isArriveBy()));
         return paths;
     }
 
+    private ShortestPathTree getShortestPathTree(RoutingRequest currOptions, double timeout,
+            long searchBeginTime) {
+        long subsearchBeginTime = System.currentTimeMillis();
+        LOG.debug("BEGIN SUBSEARCH");
+        ShortestPathTree spt = sptService.getShortestPathTree(currOptions, timeout);
+        LOG.debug("END SUBSEARCH ({} msec of {} msec total)", 
+                System.currentTimeMillis() - subsearchBeginTime,
+                System.currentTimeMillis() - searchBeginTime);
+        return spt;
+    }
+
+    private synchronized ExecutorService getSearchPool() {
+        if (searchPool == null) {
+            searchBudget = new Semaphore(maxConcurrentSearches);
+            searchPool = Executors.newFixedThreadPool(maxConcurrentSearches, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    // do not keep the JVM alive for idle search threads
+                    Thread thread = new Thread(r, "path-search");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return searchPool;
+    }
+
     public GraphService getGraphService() {
         return graphService;
     }
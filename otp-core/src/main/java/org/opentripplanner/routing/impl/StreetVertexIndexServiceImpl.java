@@ -148,6 +148,8 @@ public class StreetVertexIndexServiceImpl implements StreetVertexIndexService {
             }
         }
         transitStopTree.build();
+        // build now rather than on the first query, so that the index can be queried concurrently
+        intersectionTree.build();
     }
 
     /**
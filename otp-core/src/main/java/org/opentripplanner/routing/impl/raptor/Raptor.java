@@ -29,6 +29,7 @@ import org.onebusaway.gtfs.model.Stop;
 import org.opentripplanner.common.geometry.DistanceLibrary;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.SearchDeadline;
 import org.opentripplanner.routing.core.ServiceDay;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.TraverseModeSet;
@@ -171,7 +172,8 @@ public class Raptor implements PathService {
 
         int rushAheadRound = preliminaryRaptorSearch(data, options, walkOptions, search);
 
-        long searchBeginTime = System.currentTimeMillis();
+        SearchDeadline deadline = options.rctx.deadline;
+        SearchDeadline multiPathDeadline = deadline.limitTo(multiPathTimeout);
 
         double expectedWorstTime = 1.5 * distanceLibrary.distance(options.rctx.origin.getCoordinate(),
                 options.rctx.target.getCoordinate()) / options.getWalkSpeed();
@@ -188,9 +190,11 @@ public class Raptor implements PathService {
                     if (!round(data, options, walkOptions, search, round))
                         break;
 
-                    long elapsed = System.currentTimeMillis() - searchBeginTime;
-                    if (elapsed > multiPathTimeout * 1000 && multiPathTimeout > 0
-                            && targetStates.size() > 0)
+                    if (deadline.isExpired()) {
+                        log.info("RAPTOR search stopped at the request deadline");
+                        break RETRY;
+                    }
+                    if (multiPathDeadline.isExpired() && targetStates.size() > 0)
                         break RETRY;
 
                     ArrayList<RaptorState> toRemove = new ArrayList<RaptorState>();
@@ -265,7 +269,7 @@ public class Raptor implements PathService {
             targetStates.addAll(search.getTargetStates());
             search = new RaptorSearch(data, options);
 
-        } while (targetStates.size() < options.getNumItineraries());
+        } while (targetStates.size() < options.getNumItineraries() && !deadline.isExpired());
 
         collectRoutesUsed(data, options, targetStates);
 
@@ -733,7 +737,7 @@ public class Raptor implements PathService {
         RaptorSearch search = new RaptorSearch(data, options);
 
         for (int i = 0; i < options.getMaxTransfers() + 2; ++i) {
-            if (!round(data, options, walkOptions, search, i))
+            if (!round(data, options, walkOptions, search, i) || options.rctx.deadline.isExpired())
                 break;
         }
         RaptorStateSet result = new RaptorStateSet();
@@ -133,6 +133,12 @@ public class RaptorSearch {
 
         List<RaptorState> createdStates = new ArrayList<RaptorState>();
 
+        // a stop scanned on a route counts as settled, and riding a trip to it as a relaxed edge
+        long nVisited = 0;
+        long nStates = 0;
+        long nRelaxed = 0;
+        long nLookups = 0;
+
         int boardSlack;
         if (options.isArriveBy()) {
             boardSlack = nBoardings == 1 ? options.getAlightSlack()
@@ -180,6 +186,7 @@ public class RaptorSearch {
                 if (options.getBannedStopsHard().matches(stop.stopVertex.getStop())) {
                     continue;
                 }
+                nVisited += 1;
                 
                 List<RaptorState> states = statesByStop[stop.index];
                 List<RaptorState> newStates = new ArrayList<RaptorState>();
@@ -199,6 +206,8 @@ public class RaptorSearch {
                     }
 
                     RaptorState newState = new RaptorState(boardState.getParent());
+                    nRelaxed += 1;
+                    nStates += 1;
 
                     ServiceDay sd = boardState.serviceDay;
 
@@ -288,6 +297,7 @@ public class RaptorSearch {
 
                         RaptorBoardSpec boardSpec;
                         int waitTime;
+                        nLookups += 1;
                         if (options.isArriveBy()) {
                             int arrivalTime = oldState.arrivalTime - boardSlack;
                             boardSpec = route.getTripIndexReverse(options, arrivalTime, stopNo);
@@ -303,6 +313,7 @@ public class RaptorSearch {
                         }
 
                         RaptorState boardState = new RaptorState(oldState);
+                        nStates += 1;
                         if (nBoardings == 1) {
                             //do not count initial wait time, since it will be optimized away later
                             boardState.initialWaitTime = waitTime;
@@ -341,6 +352,8 @@ public class RaptorSearch {
             }
         }
         visitedLastRound = visitedThisRound;
+        options.rctx.counters.addSearch(nVisited, nStates, nRelaxed, 0);
+        options.rctx.counters.getTimetableLookups().addAndGet(nLookups);
         return createdStates;
     }
 
@@ -26,6 +26,11 @@ public abstract class PathParser {
 		return this.getDFA().accepts(parseState);
 	}
 
+	/** The number of states of this parser's DFA, which are numbered from 0. */
+	public int getStateCount() {
+		return this.getDFA().getStateCount();
+	}
+
 	/** 
 	 * Concrete PathParsers implement this method to convert OTP States 
 	 * (and their backEdges) into terminals in the language they define.
@@ -27,6 +27,7 @@ import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.edgetype.PreAlightEdge;
 import org.opentripplanner.routing.edgetype.PreBoardEdge;
 import org.opentripplanner.routing.edgetype.TableTripPattern;
+import org.opentripplanner.routing.transit_index.DepartureBoardIndex;
 import org.opentripplanner.routing.transit_index.RouteVariant;
 
 import com.vividsolutions.jts.geom.Coordinate;
@@ -89,4 +90,9 @@ public interface TransitIndexService {
      * 
      */
     int getOvernightBreak();
+
+    /**
+     * @return the sorted scheduled departures and arrivals at each stop, built on first use.
+     */
+    public DepartureBoardIndex getDepartureBoardIndex();
 }
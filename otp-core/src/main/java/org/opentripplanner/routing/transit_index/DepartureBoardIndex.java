@@ -0,0 +1,243 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.transit_index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.Trip;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.edgetype.PreAlightEdge;
+import org.opentripplanner.routing.edgetype.PreBoardEdge;
+import org.opentripplanner.routing.edgetype.TableTripPattern;
+import org.opentripplanner.routing.edgetype.Timetable;
+import org.opentripplanner.routing.edgetype.TimetableResolver;
+import org.opentripplanner.routing.edgetype.TransitBoardAlight;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.trippattern.TripTimes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The scheduled departures and arrivals at each stop, sorted by time, for departure boards. A
+ * board query is a binary search in the times of the stop, for each service day, and a scan up to
+ * the end of the requested interval, instead of a series of board edge traversals.
+ *
+ * The times are the scheduled times of the TableTripPatterns, in seconds since midnight. Patterns
+ * which have an updated timetable in the realtime snapshot for a service day are skipped in the
+ * scan for that day, and their trips are read from the updated timetable instead.
+ */
+public class DepartureBoardIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DepartureBoardIndex.class);
+
+    private final Map<AgencyAndId, Board> departures = new HashMap<AgencyAndId, Board>();
+
+    private final Map<AgencyAndId, Board> arrivals = new HashMap<AgencyAndId, Board>();
+
+    public DepartureBoardIndex(Map<AgencyAndId, PreBoardEdge> preBoardEdges,
+            Map<AgencyAndId, PreAlightEdge> preAlightEdges) {
+        int nDepartures = 0;
+        for (Map.Entry<AgencyAndId, PreBoardEdge> entry : preBoardEdges.entrySet()) {
+            Board board = new Board(true, entry.getValue().getToVertex().getOutgoing());
+            departures.put(entry.getKey(), board);
+            nDepartures += board.times.length;
+        }
+        int nArrivals = 0;
+        for (Map.Entry<AgencyAndId, PreAlightEdge> entry : preAlightEdges.entrySet()) {
+            Board board = new Board(false, entry.getValue().getFromVertex().getIncoming());
+            arrivals.put(entry.getKey(), board);
+            nArrivals += board.times.length;
+        }
+        LOG.info("departure boards indexed {} departures and {} arrivals at {} stops",
+                nDepartures, nArrivals, departures.size());
+    }
+
+    /**
+     * @return the departures from the stop between the start and end times (in seconds since the
+     *         epoch, inclusive) on the given service days, sorted by time.
+     * @param snapshot the realtime timetables, or null to use the scheduled times only
+     */
+    public List<BoardTime> getDepartures(AgencyAndId stop, long startTime, long endTime,
+            List<ServiceDay> serviceDays, TimetableResolver snapshot) {
+        return find(departures.get(stop), startTime, endTime, serviceDays, snapshot);
+    }
+
+    /** @return the arrivals at the stop, like {@link #getDepartures}. */
+    public List<BoardTime> getArrivals(AgencyAndId stop, long startTime, long endTime,
+            List<ServiceDay> serviceDays, TimetableResolver snapshot) {
+        return find(arrivals.get(stop), startTime, endTime, serviceDays, snapshot);
+    }
+
+    /** @return true if the edge is one whose trips are in the departure or arrival boards. */
+    public static boolean isIndexed(Edge e) {
+        return e instanceof TransitBoardAlight;
+    }
+
+    private List<BoardTime> find(Board board, long startTime, long endTime,
+            List<ServiceDay> serviceDays, TimetableResolver snapshot) {
+        if (board == null) {
+            return Collections.emptyList();
+        }
+        List<BoardTime> out = new ArrayList<BoardTime>();
+        boolean[] updated = new boolean[board.patterns.length];
+        for (ServiceDay sd : serviceDays) {
+            boolean anyUpdated = false;
+            for (int slot = 0; slot < board.patterns.length; slot++) {
+                TableTripPattern pattern = board.patterns[slot];
+                updated[slot] = snapshot != null && sd.serviceIdRunning(pattern.getServiceId())
+                        && snapshot.resolve(pattern, sd.getServiceDate()) != pattern
+                                .getScheduledTimetable();
+                anyUpdated |= updated[slot];
+            }
+            int start = sd.secondsSinceMidnight(startTime);
+            int end = sd.secondsSinceMidnight(endTime);
+            for (int i = firstAtOrAfter(board.times, start); i < board.times.length
+                    && board.times[i] <= end; i++) {
+                int slot = board.slots[i];
+                if (updated[slot] || !sd.serviceIdRunning(board.patterns[slot].getServiceId()))
+                    continue;
+                out.add(new BoardTime(board.patterns[slot].getTrip(board.trips[i]),
+                        sd.time(board.times[i])));
+            }
+            if (anyUpdated) {
+                for (int slot = 0; slot < board.patterns.length; slot++) {
+                    if (updated[slot]) {
+                        addUpdatedTimes(board, slot, snapshot.resolve(board.patterns[slot],
+                                sd.getServiceDate()), sd, start, end, out);
+                    }
+                }
+            }
+        }
+        Collections.sort(out);
+        return out;
+    }
+
+    /** Scan the updated timetable of one pattern; there are few of these at any stop. */
+    private void addUpdatedTimes(Board board, int slot, Timetable timetable, ServiceDay sd,
+            int start, int end, List<BoardTime> out) {
+        int stopIndex = board.stopIndexes[slot];
+        for (int t = 0; t < timetable.getNumTrips(); t++) {
+            TripTimes tt = timetable.getTripTimes(t);
+            int time = board.departures ? tt.getDepartureTime(stopIndex) : tt
+                    .getArrivalTime(stopIndex - 1);
+            // canceled and passed trips have negative times
+            if (time >= 0 && time >= start && time <= end) {
+                out.add(new BoardTime(tt.getTrip(), sd.time(time)));
+            }
+        }
+    }
+
+    private static int firstAtOrAfter(int[] times, int time) {
+        int i = Arrays.binarySearch(times, time);
+        if (i < 0)
+            return -i - 1;
+        // there may be several entries at the same time
+        while (i > 0 && times[i - 1] == time)
+            i--;
+        return i;
+    }
+
+    /** A trip departing or arriving at a stop, in seconds since the epoch. */
+    public static class BoardTime implements Comparable<BoardTime> {
+
+        public final Trip trip;
+
+        public final long time;
+
+        public BoardTime(Trip trip, long time) {
+            this.trip = trip;
+            this.time = time;
+        }
+
+        @Override
+        public int compareTo(BoardTime other) {
+            return time < other.time ? -1 : (time == other.time ? 0 : 1);
+        }
+    }
+
+    /**
+     * The scheduled times of one stop, in parallel arrays sorted by time. Each time refers to a
+     * trip index in a slot, which is a pattern and the index of the stop in that pattern.
+     */
+    private static class Board {
+
+        final boolean departures;
+
+        final TableTripPattern[] patterns;
+
+        final int[] stopIndexes;
+
+        final int[] times;
+
+        final int[] slots;
+
+        final int[] trips;
+
+        Board(boolean departures, Iterable<Edge> edges) {
+            this.departures = departures;
+            List<TableTripPattern> patternList = new ArrayList<TableTripPattern>();
+            List<Integer> stopIndexList = new ArrayList<Integer>();
+            int n = 0;
+            for (Edge e : edges) {
+                if (!isIndexed(e))
+                    continue;
+                TransitBoardAlight tba = (TransitBoardAlight) e;
+                if (tba.isBoarding() != departures)
+                    continue;
+                TableTripPattern pattern = tba.getPattern();
+                int stopIndex = tba.getStopIndex();
+                if (departures ? !pattern.canBoard(stopIndex) : !pattern.canAlight(stopIndex))
+                    continue;
+                patternList.add(pattern);
+                stopIndexList.add(stopIndex);
+                n += pattern.getNumScheduledTrips();
+            }
+            patterns = patternList.toArray(new TableTripPattern[patternList.size()]);
+            stopIndexes = new int[patterns.length];
+            // sort by time, keeping the entry number in the low bits
+            long[] keys = new long[n];
+            int[] entrySlots = new int[n];
+            int[] entryTrips = new int[n];
+            int entry = 0;
+            for (int slot = 0; slot < patterns.length; slot++) {
+                int stopIndex = stopIndexList.get(slot);
+                stopIndexes[slot] = stopIndex;
+                for (int trip = 0; trip < patterns[slot].getNumScheduledTrips(); trip++) {
+                    int time = departures ? patterns[slot].getDepartureTime(stopIndex, trip)
+                            : patterns[slot].getArrivalTime(stopIndex - 1, trip);
+                    keys[entry] = ((long) time << 32) | entry;
+                    entrySlots[entry] = slot;
+                    entryTrips[entry] = trip;
+                    entry++;
+                }
+            }
+            Arrays.sort(keys);
+            times = new int[n];
+            slots = new int[n];
+            trips = new int[n];
+            for (int i = 0; i < n; i++) {
+                int e = (int) keys[i];
+                times[i] = (int) (keys[i] >> 32);
+                slots[i] = entrySlots[e];
+                trips[i] = entryTrips[e];
+            }
+        }
+    }
+}
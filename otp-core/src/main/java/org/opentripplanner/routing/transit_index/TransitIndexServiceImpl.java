@@ -19,6 +19,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -78,6 +79,8 @@ public class TransitIndexServiceImpl implements TransitIndexService, Serializabl
 
     private int overnightBreak;
 
+    private transient DepartureBoardIndex departureBoardIndex;
+
     public TransitIndexServiceImpl(HashMap<String, List<RouteVariant>> variantsByAgency,
             HashMap<AgencyAndId, List<RouteVariant>> variantsByRoute,
             HashMap<AgencyAndId, RouteVariant> variantsByTrip,
@@ -114,6 +117,7 @@ public class TransitIndexServiceImpl implements TransitIndexService, Serializabl
             HashMap<AgencyAndId, Stop> stops,
             List<TraverseMode> modes) {
 
+        departureBoardIndex = null;
         MapUtils.mergeInUnique(this.variantsByAgency, variantsByAgency);
         MapUtils.mergeInUnique(this.variantsByRoute, variantsByRoute);
         this.variantsByTrip.putAll(variantsByTrip);
@@ -131,6 +135,38 @@ public class TransitIndexServiceImpl implements TransitIndexService, Serializabl
         }
     }
 
+    /**
+     * Remove everything indexed for the given agencies, before their feed is loaded again by an
+     * incremental graph build.
+     */
+    public void removeAgencies(Collection<String> agencyIds) {
+        departureBoardIndex = null;
+        for (String agencyId : agencyIds) {
+            variantsByAgency.remove(agencyId);
+            calendarsByAgency.remove(agencyId);
+            calendarDatesByAgency.remove(agencyId);
+            agencies.remove(agencyId);
+        }
+        removeAgencyKeys(variantsByRoute, agencyIds);
+        removeAgencyKeys(variantsByTrip, agencyIds);
+        removeAgencyKeys(preBoardEdges, agencyIds);
+        removeAgencyKeys(preAlightEdges, agencyIds);
+        removeAgencyKeys(tableTripPatternsByTrip, agencyIds);
+        removeAgencyKeys(directionsForRoute, agencyIds);
+        removeAgencyKeys(stopsForRoute, agencyIds);
+        removeAgencyKeys(routes, agencyIds);
+        removeAgencyKeys(stops, agencyIds);
+    }
+
+    private static void removeAgencyKeys(Map<AgencyAndId, ?> map, Collection<String> agencyIds) {
+        Iterator<AgencyAndId> it = map.keySet().iterator();
+        while (it.hasNext()) {
+            if (agencyIds.contains(it.next().getAgencyId())) {
+                it.remove();
+            }
+        }
+    }
+
     @Override
     public List<RouteVariant> getVariantsForAgency(String agency) {
         List<RouteVariant> variants = variantsByAgency.get(agency);
@@ -274,4 +310,12 @@ public class TransitIndexServiceImpl implements TransitIndexService, Serializabl
     public Collection<Stop> getStopsForRoute(AgencyAndId route) {
         return stopsForRoute.get(route);
     }
+
+    @Override
+    public synchronized DepartureBoardIndex getDepartureBoardIndex() {
+        if (departureBoardIndex == null) {
+            departureBoardIndex = new DepartureBoardIndex(preBoardEdges, preAlightEdges);
+        }
+        return departureBoardIndex;
+    }
 }
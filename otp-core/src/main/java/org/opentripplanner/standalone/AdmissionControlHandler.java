@@ -0,0 +1,321 @@
+package org.opentripplanner.standalone;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.opentripplanner.routing.core.SearchDeadline;
+import org.opentripplanner.routing.services.GraphService;
+import org.opentripplanner.util.monitoring.Histogram;
+import org.opentripplanner.util.monitoring.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the expensive API requests on a bounded thread pool and queue per class of endpoint, so
+ * that a burst of trip plans or analyst tiles cannot take all the Grizzly worker threads and
+ * delay the cheap requests. The other requests are handled on the worker thread as before.
+ *
+ * A request is refused at once with a 503 and a Retry-After header when the queue of its class is
+ * full, or when its registered router already has the maximum number of requests queued or
+ * running. The numbers of admitted and refused requests and the time they waited for a thread are
+ * exported as metrics, labelled with the endpoint class.
+ *
+ * Each admitted request gets a {@link SearchDeadline}, which is cancelled when the client closes
+ * its connection, so that the searches of a request nobody is waiting for stop early.
+ */
+public class AdmissionControlHandler extends HttpHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdmissionControlHandler.class);
+
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    public static enum EndpointClass {
+        PLAN, ANALYST, TRANSIT_INDEX
+    }
+
+    private final HttpHandler handler;
+
+    private final GraphService graphService;
+
+    private final Map<EndpointClass, Pool> pools = new EnumMap<EndpointClass, Pool>(
+            EndpointClass.class);
+
+    private final ConcurrentMap<String, Semaphore> routerPermits =
+            new ConcurrentHashMap<String, Semaphore>();
+
+    private final int maxRouterRequests;
+
+    /**
+     * @param handler the handler of the API requests
+     * @param graphService the graph service, whose routers are limited
+     * @param threads the number of threads for each class of endpoint
+     * @param queueSize the number of requests of each class which can wait for a thread
+     * @param maxRouterRequests the number of requests which can be queued or running for each
+     *        router, or 0 for no limit
+     */
+    public AdmissionControlHandler(HttpHandler handler, GraphService graphService, int threads,
+            int queueSize, int maxRouterRequests) {
+        this(handler, graphService, threads, queueSize, maxRouterRequests,
+                MetricsRegistry.getInstance());
+    }
+
+    AdmissionControlHandler(HttpHandler handler, GraphService graphService, int threads,
+            int queueSize, int maxRouterRequests, MetricsRegistry metrics) {
+        this.handler = handler;
+        this.graphService = graphService;
+        this.maxRouterRequests = maxRouterRequests;
+        for (EndpointClass endpointClass : EndpointClass.values()) {
+            pools.put(endpointClass, new Pool(endpointClass, threads, queueSize, metrics));
+        }
+        LOG.info("{} threads and {} queued requests per endpoint class, {} requests per router",
+                threads, queueSize, maxRouterRequests > 0 ? maxRouterRequests : "any");
+    }
+
+    @Override
+    public void start() {
+        handler.start();
+    }
+
+    @Override
+    public void destroy() {
+        for (Pool pool : pools.values()) {
+            pool.executor.shutdownNow();
+        }
+        handler.destroy();
+    }
+
+    @Override
+    public void service(final Request request, final Response response) throws Exception {
+        EndpointClass endpointClass = classify(request.getRequestURI());
+        if (endpointClass == null) {
+            handler.service(request, response);
+            return;
+        }
+        final Pool pool = pools.get(endpointClass);
+        final Semaphore permits = getRouterPermits(getRouterId(request.getQueryString()));
+        if (permits != null && !permits.tryAcquire()) {
+            pool.rejected.incrementAndGet();
+            reject(response);
+            return;
+        }
+        final long queuedTime = System.nanoTime();
+        final SearchDeadline deadline = new SearchDeadline();
+        final Connection<?> connection = request.getContext().getConnection();
+        final Connection.CloseListener closeListener = new Connection.CloseListener() {
+            @Override
+            public void onClosed(Connection connection, Connection.CloseType type)
+                    throws IOException {
+                deadline.cancel();
+            }
+        };
+        connection.addCloseListener(closeListener);
+        response.suspend();
+        try {
+            pool.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    pool.recordQueueTime(System.nanoTime() - queuedTime);
+                    SearchDeadline.setCurrent(deadline);
+                    try {
+                        handler.service(request, response);
+                    } catch (Exception e) {
+                        LOG.error("error handling " + request.getRequestURI(), e);
+                        if (!response.isCommitted()) {
+                            fail(response);
+                        }
+                    } finally {
+                        SearchDeadline.setCurrent(null);
+                        connection.removeCloseListener(closeListener);
+                        if (permits != null) {
+                            permits.release();
+                        }
+                        response.resume();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            connection.removeCloseListener(closeListener);
+            if (permits != null) {
+                permits.release();
+            }
+            pool.rejected.incrementAndGet();
+            reject(response);
+            response.resume();
+        }
+    }
+
+    /** @return the statistics of the requests of one endpoint class. */
+    public Pool getPool(EndpointClass endpointClass) {
+        return pools.get(endpointClass);
+    }
+
+    private void reject(Response response) {
+        response.setStatus(503);
+        response.setHeader("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+        response.setContentLength(0);
+    }
+
+    private void fail(Response response) {
+        response.reset();
+        response.setStatus(500);
+        response.setContentType("text/plain");
+        try {
+            Writer writer = response.getWriter();
+            writer.write("Internal server error\n");
+        } catch (IOException e) {
+            LOG.debug("cannot write the error response: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return the permits of a router, or null when it is not limited. Only the default and the
+     *         registered routers get permits, so that made-up router ids do not add entries; the
+     *         requests for them fail as soon as they are run.
+     */
+    Semaphore getRouterPermits(String routerId) {
+        if (maxRouterRequests <= 0) {
+            return null;
+        }
+        Semaphore permits = routerPermits.get(routerId);
+        if (permits == null) {
+            if (!routerId.isEmpty() && !graphService.getRouterIds().contains(routerId)) {
+                return null;
+            }
+            permits = new Semaphore(maxRouterRequests);
+            Semaphore existing = routerPermits.putIfAbsent(routerId, permits);
+            if (existing != null) {
+                permits = existing;
+            }
+        }
+        return permits;
+    }
+
+    /**
+     * @return the class of the endpoint of a request URI, or null for the requests which are not
+     *         admission controlled.
+     */
+    static EndpointClass classify(String uri) {
+        if (uri == null) {
+            return null;
+        }
+        int start = uri.indexOf("/otp-rest-servlet/");
+        if (start < 0) {
+            return null;
+        }
+        start += "/otp-rest-servlet/".length();
+        if (uri.startsWith("ws/", start)) {
+            start += 3;
+        }
+        int end = uri.indexOf('/', start);
+        String resource = uri.substring(start, end < 0 ? uri.length() : end);
+        if (resource.equals("plan")) {
+            return EndpointClass.PLAN;
+        }
+        if (resource.equals("transit")) {
+            return EndpointClass.TRANSIT_INDEX;
+        }
+        if (resource.equals("tile") || resource.equals("wms") || resource.equals("raster")
+                || resource.equals("iso") || resource.startsWith("legend.")) {
+            return EndpointClass.ANALYST;
+        }
+        return null;
+    }
+
+    /** @return the routerId parameter of a query string, or an empty string for the default. */
+    static String getRouterId(String query) {
+        if (query == null) {
+            return "";
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith("routerId=")) {
+                try {
+                    return URLDecoder.decode(parameter.substring(9), "UTF-8");
+                } catch (UnsupportedEncodingException e) {
+                    throw new RuntimeException(e);
+                } catch (IllegalArgumentException e) {
+                    // malformed escape: the endpoint will report it
+                    return parameter.substring(9);
+                }
+            }
+        }
+        return "";
+    }
+
+    /** The threads, queue and statistics of one endpoint class. */
+    public static class Pool {
+
+        private final ThreadPoolExecutor executor;
+
+        /** The number of requests that were run. */
+        @Getter
+        private final AtomicLong admitted;
+
+        /** The number of requests that were refused. */
+        @Getter
+        private final AtomicLong rejected;
+
+        /** The times the admitted requests waited for a thread. */
+        @Getter
+        private final Histogram queueTime;
+
+        /** The longest time a request waited for a thread, in nanoseconds. */
+        @Getter
+        private final AtomicLong maxQueueNanos;
+
+        Pool(EndpointClass endpointClass, int threads, int queueSize, MetricsRegistry metrics) {
+            String label = endpointClass.name().toLowerCase();
+            admitted = metrics.getCounter("otp_admission_admitted_total",
+                    "Requests admitted to the pool of their endpoint class.", "endpoint", label);
+            rejected = metrics.getCounter("otp_admission_rejected_total",
+                    "Requests refused because their queue or router was full.", "endpoint", label);
+            queueTime = metrics.getHistogram("otp_admission_queue_seconds",
+                    "Time the admitted requests waited for a thread.", "endpoint", label);
+            maxQueueNanos = metrics.getGauge("otp_admission_queue_max_nanoseconds",
+                    "Longest time a request waited for a thread.", "endpoint", label);
+            final String name = "api-" + label;
+            executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, name);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+
+        /** @return the number of requests waiting for a thread. */
+        public int getQueueLength() {
+            return executor.getQueue().size();
+        }
+
+        void recordQueueTime(long nanos) {
+            admitted.incrementAndGet();
+            queueTime.recordNanos(nanos);
+            long max = maxQueueNanos.get();
+            while (nanos > max && !maxQueueNanos.compareAndSet(max, nanos)) {
+                max = maxQueueNanos.get();
+            }
+        }
+    }
+}
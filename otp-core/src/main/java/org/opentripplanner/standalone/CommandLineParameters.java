@@ -94,6 +94,18 @@ public class CommandLineParameters {
     description = "build a transit index for GTFS data")
     boolean transitIndex;
 
+    @Parameter(names = {"--incremental"},
+    description = "only rebuild the transit of the GTFS feeds that changed since the graph in the build directory was built")
+    boolean incremental;
+
+    @Parameter(names = {"--streamStopTimes"},
+    description = "sort the GTFS stop times on disk and build the trip patterns one trip at a time, to build large feeds with less memory (not compatible with --transitIndex)")
+    boolean streamStopTimes;
+
+    @Parameter(names = {"--buildThreads"}, validateWith = PositiveInteger.class,
+    description = "number of threads used by the parallel graph build stages (shape matching, stop linking, transfers, elevation)")
+    Integer buildThreads;
+
     /* Options for the server sub-task. */
 
     @Parameter( names = { "-a", "--analyst"}, 
@@ -128,6 +140,38 @@ public class CommandLineParameters {
     description = "open a debugging graph visualizer")
     boolean visualize;
 
+    @Parameter( names = { "--searchThreads"}, validateWith = PositiveInteger.class,
+    description = "maximum number of parallel searches for a single trip plan request, one per alternative")
+    int searchThreads = 1;
+
+    @Parameter( names = { "--departureAlternatives"}, validateWith = PositiveInteger.class,
+    description = "also search for the best itinerary at this many later departure times, 15 minutes apart")
+    Integer departureAlternatives;
+
+    @Parameter( names = { "--streetOnlyAlternative"},
+    description = "also search for the best itinerary without transit")
+    boolean streetOnlyAlternative;
+
+    @Parameter( names = { "--requestThreads"}, validateWith = PositiveInteger.class,
+    description = "number of threads for each class of expensive API requests (trip plans, analyst, transit index)")
+    Integer requestThreads;
+
+    @Parameter( names = { "--requestQueue"}, validateWith = PositiveInteger.class,
+    description = "number of expensive API requests of each class which can wait for a thread before requests are refused")
+    int requestQueue = 100;
+
+    @Parameter( names = { "--routerRequests"}, validateWith = PositiveInteger.class,
+    description = "maximum number of expensive API requests waiting or running for each router")
+    Integer routerRequests;
+
+    @Parameter( names = { "--traceEvery"}, validateWith = PositiveInteger.class,
+    description = "trace one trip plan request in this many, for the /traces admin endpoint")
+    Integer traceEvery;
+
+    @Parameter( names = { "--noWarmup"},
+    description = "do not replay recent requests on a reloaded graph before it replaces the old one")
+    boolean noWarmup;
+
     @Parameter( validateWith = ReadableFile.class, // the remaining parameters in one array
     description = "files") 
     List<File> files = new ArrayList<File>();
@@ -139,10 +183,16 @@ public class CommandLineParameters {
         if (routerIds == null) routerIds = Arrays.asList(DEFAULT_ROUTER_ID);
         if (staticDirectory == null) staticDirectory = DEFAULT_STATIC_DIRECTORY;        
         if (cacheDirectory == null)  cacheDirectory  = DEFAULT_CACHE_DIRECTORY;        
+        if (requestThreads == null) requestThreads = Runtime.getRuntime().availableProcessors();
+        if (buildThreads == null) buildThreads = Runtime.getRuntime().availableProcessors();
         if (server && port == null) {
             port = DEFAULT_PORT;
             new AvailablePort().validate(port);
         }
+        if (streamStopTimes && transitIndex) {
+            throw new ParameterException("--streamStopTimes cannot be used with --transitIndex, "
+                    + "which reads all the stop times from memory");
+        }
     }
     
     public static class ReadableFile implements IParameterValidator {
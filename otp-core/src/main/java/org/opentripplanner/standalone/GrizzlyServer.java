@@ -13,6 +13,10 @@ import org.glassfish.grizzly.http.server.HttpServer;
 import org.glassfish.grizzly.http.server.NetworkListener;
 import org.glassfish.grizzly.http.server.StaticHttpHandler;
 import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
+import org.opentripplanner.api.ws.MetricsFilter;
+import org.opentripplanner.api.ws.ResponseCacheFilter;
+import org.opentripplanner.routing.services.GraphService;
+import org.opentripplanner.util.monitoring.RequestTracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.bridge.SLF4JBridgeHandler;
@@ -20,6 +24,7 @@ import org.slf4j.bridge.SLF4JBridgeHandler;
 import com.google.common.io.Files;
 import com.google.common.io.InputSupplier;
 import com.sun.jersey.api.container.ContainerFactory;
+import com.sun.jersey.api.container.filter.GZIPContentEncodingFilter;
 import com.sun.jersey.api.core.PackagesResourceConfig;
 import com.sun.jersey.api.core.ResourceConfig;
 import com.sun.jersey.core.spi.component.ioc.IoCComponentProviderFactory;
@@ -41,10 +46,18 @@ public class GrizzlyServer {
     /** The command line parameters, including things like port number and content directories. */
     private CommandLineParameters params;
 
-    /** Construct a Grizzly server with the given IoC injector and command line parameters. */
-    public GrizzlyServer (OTPComponentProviderFactory cpf, CommandLineParameters params) {
+    /** The graph service, whose routers the admission control limits. */
+    private GraphService graphService;
+
+    /**
+     * Construct a Grizzly server with the given IoC injector, command line parameters and graph
+     * service.
+     */
+    public GrizzlyServer (OTPComponentProviderFactory cpf, CommandLineParameters params,
+            GraphService graphService) {
         this.iocFactory = cpf;
         this.params = params;
+        this.graphService = graphService;
     }
 
     public static final String CLIENT_WAR_FILENAME = "client.war";
@@ -115,18 +128,31 @@ public class GrizzlyServer {
         ResourceConfig rc = new PackagesResourceConfig("org.opentripplanner");
         /* DelegatingFilterProxy.class.getName() does not seem to work out of the box.
            Register a custom authentication filter, a filter that removes the /ws/ from OTP
-           REST API calls, and a filter that wraps JSON in method calls as needed. */
+           REST API calls, a filter that wraps JSON in method calls as needed, and the response
+           cache, which is bound as a singleton and must come after the JSONP filter. Responses
+           are gzipped for clients that accept it; the gzip filter must come first so that it
+           compresses the JSONP padding too. The metrics filter times the whole request. */
         rc.getProperties().put(ResourceConfig.PROPERTY_CONTAINER_REQUEST_FILTERS, 
-                new String[] { AuthFilter.class.getName(), RewriteFilter.class.getName() });
+                new String[] { MetricsFilter.class.getName(), AuthFilter.class.getName(),
+                        RewriteFilter.class.getName(), GZIPContentEncodingFilter.class.getName(),
+                        ResponseCacheFilter.class.getName() });
         rc.getProperties().put(ResourceConfig.PROPERTY_CONTAINER_RESPONSE_FILTERS, 
-                new String[] { JsonpFilter.class.getName() });
+                new String[] { MetricsFilter.class.getName(),
+                        GZIPContentEncodingFilter.class.getName(), JsonpFilter.class.getName(),
+                        ResponseCacheFilter.class.getName() });
 
         /* ADD A COUPLE OF HANDLERS (~= SERVLETS) */
         /* 1. A Grizzly wrapper around the Jersey WebApplication. 
               We cannot set the context path to /otp-rest-servlet/ws
               https://java.net/jira/browse/GRIZZLY-1481?focusedCommentId=360385&page=com.atlassian.jira.plugin.system.issuetabpanels%3Acomment-tabpanel#action_360385 */
         HttpHandler handler = ContainerFactory.createContainer(HttpHandler.class, rc, iocFactory);
+        /* Run the expensive requests on bounded pools, refusing them when they are saturated. */
+        handler = new AdmissionControlHandler(handler, graphService, params.requestThreads,
+                params.requestQueue, params.routerRequests == null ? 0 : params.routerRequests);
         httpServer.getServerConfiguration().addHttpHandler(handler, "/otp-rest-servlet/");
+        if (params.traceEvery != null) {
+            RequestTracer.getInstance().setSampleEvery(params.traceEvery);
+        }
         /* 2. A static content server for the client JS apps etc.
               This is a filesystem path, not classpath. Files are relative to the project dir, so
               from ./ we can reach e.g. target/classes/data-sources.xml */
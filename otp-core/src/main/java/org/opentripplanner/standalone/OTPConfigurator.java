@@ -1,6 +1,7 @@
 package org.opentripplanner.standalone;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -13,12 +14,14 @@ import org.opentripplanner.analyst.request.SPTCache;
 import org.opentripplanner.analyst.request.SampleFactory;
 import org.opentripplanner.analyst.request.TileCache;
 import org.opentripplanner.api.ws.PlanGenerator;
+import org.opentripplanner.api.ws.ResponseCacheFilter;
 import org.opentripplanner.api.ws.services.MetadataService;
 import org.opentripplanner.graph_builder.GraphBuilderTask;
 import org.opentripplanner.graph_builder.impl.EmbeddedConfigGraphBuilderImpl;
 import org.opentripplanner.graph_builder.impl.GtfsGraphBuilderImpl;
 import org.opentripplanner.graph_builder.impl.PruneFloatingIslands;
 import org.opentripplanner.graph_builder.impl.StreetlessStopLinker;
+import org.opentripplanner.graph_builder.impl.TransferMatrixGraphBuilderImpl;
 import org.opentripplanner.graph_builder.impl.TransitToStreetNetworkGraphBuilderImpl;
 import org.opentripplanner.graph_builder.impl.ned.NEDGraphBuilderImpl;
 import org.opentripplanner.graph_builder.impl.ned.NEDGridCoverageFactoryImpl;
@@ -26,6 +29,7 @@ import org.opentripplanner.graph_builder.impl.osm.DefaultWayPropertySetSource;
 import org.opentripplanner.graph_builder.impl.osm.OpenStreetMapGraphBuilderImpl;
 import org.opentripplanner.graph_builder.impl.transit_index.TransitIndexBuilder;
 import org.opentripplanner.graph_builder.model.GtfsBundle;
+import org.opentripplanner.graph_builder.model.GtfsFeedFingerprints;
 import org.opentripplanner.graph_builder.services.GraphBuilder;
 import org.opentripplanner.graph_builder.services.GraphBuilderWithGtfsDao;
 import org.opentripplanner.graph_builder.services.ned.NEDGridCoverageFactory;
@@ -38,6 +42,7 @@ import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.impl.DefaultRemainingWeightHeuristicFactoryImpl;
 import org.opentripplanner.routing.impl.GraphServiceBeanImpl;
 import org.opentripplanner.routing.impl.GraphServiceImpl;
+import org.opentripplanner.routing.impl.GraphWarmer;
 import org.opentripplanner.routing.impl.RetryingPathServiceImpl;
 import org.opentripplanner.routing.impl.LongDistancePathService;
 import org.opentripplanner.routing.services.GraphService;
@@ -86,6 +91,7 @@ public class OTPConfigurator {
         cpf.bind(RoutingRequest.class);
         cpf.bind(PlanGenerator.class);
         cpf.bind(MetadataService.class);
+        cpf.bind(ResponseCacheFilter.class);
         cpf.bind(SPTService.class, new GenericAStar());
         
         // Choose a PathService to wrap the SPTService, depending on expected maximum path lengths
@@ -97,6 +103,11 @@ public class OTPConfigurator {
             RetryingPathServiceImpl pathService = new RetryingPathServiceImpl();
             pathService.setFirstPathTimeout(10.0);
             pathService.setMultiPathTimeout(1.0);
+            pathService.setSearchParallelism(params.searchThreads);
+            if (params.departureAlternatives != null) {
+                pathService.setDepartureTimeAlternatives(params.departureAlternatives);
+            }
+            pathService.setStreetOnlyAlternative(params.streetOnlyAlternative);
             cpf.bind(PathService.class, pathService);
             cpf.bind(RemainingWeightHeuristicFactory.class, 
                     new DefaultRemainingWeightHeuristicFactoryImpl()); 
@@ -124,6 +135,8 @@ public class OTPConfigurator {
         /* Hand off graph in memory to server in a single-graph in-memory GraphServiceImpl. */
         if (graph != null && params.inMemory) {
             this.graphService = new GraphServiceBeanImpl(graph);
+            // the graph built in memory is never reloaded, so there is nothing to warm up
+            GraphWarmer.getInstance().setEnabled(false);
         } else {
             /* Create a conventional GraphService that loads graphs from disk. */
             GraphServiceImpl graphService = new GraphServiceImpl();
@@ -134,6 +147,7 @@ public class OTPConfigurator {
                 graphService.setDefaultRouterId(params.routerIds.get(0));
                 graphService.setAutoRegister(params.routerIds);
             }
+            graphService.setWarmup(!params.noWarmup);
             this.graphService = graphService;
         }
     }
@@ -154,6 +168,7 @@ public class OTPConfigurator {
         List<File> gtfsFiles = Lists.newArrayList();
         List<File> osmFiles =  Lists.newArrayList();
         File configFile = null;
+        File graphDirectory = null;
         /* For now this is adding files from all directories listed, rather than building multiple graphs. */
         for (File dir : params.build) {
             LOG.info("Searching for graph builder input files in {}", dir);
@@ -162,6 +177,7 @@ public class OTPConfigurator {
                 continue;
             }
             graphBuilder.setPath(dir);
+            graphDirectory = dir;
             for (File file : dir.listFiles()) {
                 switch (InputFileType.forFile(file)) {
                 case GTFS:
@@ -189,7 +205,47 @@ public class OTPConfigurator {
             LOG.error("Found no input files from which to build a graph in {}", params.build.toString());
             return null;
         }
-        if ( hasOSM ) {
+        /* An incremental build starts from the existing graph and only reloads the changed feeds. */
+        boolean incremental = false;
+        List<String> removedFeeds = Lists.newArrayList();
+        if (params.incremental && graphDirectory != null) {
+            File baseGraph = new File(graphDirectory, "Graph.obj");
+            if ( ! baseGraph.exists()) {
+                LOG.warn("No graph to rebuild incrementally in {}, building a new graph.", graphDirectory);
+            } else {
+                graphBuilder.setBaseGraph(baseGraph.getPath());
+                incremental = true;
+                GtfsFeedFingerprints fingerprints = graphBuilder.getGraph().getService(
+                        GtfsFeedFingerprints.class, true);
+                List<String> feedNames = Lists.newArrayList();
+                List<File> changedFiles = Lists.newArrayList();
+                for (File gtfsFile : gtfsFiles) {
+                    feedNames.add(gtfsFile.getName());
+                    try {
+                        if (fingerprints.isUnchanged(gtfsFile)) {
+                            LOG.info("GTFS file {} is unchanged", gtfsFile);
+                            continue;
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                    changedFiles.add(gtfsFile);
+                }
+                for (String feedName : fingerprints.getFeedNames()) {
+                    if ( ! feedNames.contains(feedName)) {
+                        LOG.info("GTFS file {} has been removed", feedName);
+                        removedFeeds.add(feedName);
+                    }
+                }
+                if (changedFiles.isEmpty() && removedFeeds.isEmpty()) {
+                    LOG.info("No GTFS feed changed since {} was built.", baseGraph);
+                    return null;
+                }
+                gtfsFiles = changedFiles;
+                hasGTFS = ! params.noTransit;
+            }
+        }
+        if ( hasOSM && ! incremental ) {
             List<OpenStreetMapProvider> osmProviders = Lists.newArrayList();
             for (File osmFile : osmFiles) {
                 OpenStreetMapProvider osmProvider = new AnyFileBasedOpenStreetMapProviderImpl(osmFile);
@@ -210,20 +266,31 @@ public class OTPConfigurator {
                     gtfsBundle.setLinkStopsToParentStations(true);
                 }
                 gtfsBundle.setParentStationTransfers(params.parentStationTransfers);
+                gtfsBundle.setStreamStopTimes(params.streamStopTimes);
                 gtfsBundles.add(gtfsBundle);
             }
             GtfsGraphBuilderImpl gtfsBuilder = new GtfsGraphBuilderImpl(gtfsBundles);
+            gtfsBuilder.setIncremental(incremental);
+            gtfsBuilder.setRemovedFeeds(removedFeeds);
+            gtfsBuilder.setThreads(params.buildThreads);
             graphBuilder.addGraphBuilder(gtfsBuilder);
-            // When using the simplified path service, or when there is no street data,
-            // link stops to each other based on distance only, unless user has requested linking
-            // based on transfers.txt.
-            if ( ( ! hasOSM ) || params.longDistance ) {
-                if ( ! params.useTransfersTxt) {
-                    graphBuilder.addGraphBuilder(new StreetlessStopLinker());
-                }
+            // When there is no street data, link stops to each other based on distance only,
+            // unless user has requested linking based on transfers.txt.
+            if ( ( ! hasOSM ) && ! params.useTransfersTxt) {
+                graphBuilder.addGraphBuilder(new StreetlessStopLinker());
             } 
             if ( hasOSM ) {
-                graphBuilder.addGraphBuilder(new TransitToStreetNetworkGraphBuilderImpl());
+                TransitToStreetNetworkGraphBuilderImpl linkerBuilder = new TransitToStreetNetworkGraphBuilderImpl();
+                linkerBuilder.setThreads(params.buildThreads);
+                graphBuilder.addGraphBuilder(linkerBuilder);
+                // The simplified path service transfers over SimpleTransfer edges, which we
+                // derive from street network distances between stops.
+                if (params.longDistance && ! params.useTransfersTxt) {
+                    TransferMatrixGraphBuilderImpl transferMatrixBuilder = new TransferMatrixGraphBuilderImpl();
+                    transferMatrixBuilder.setCreateSimpleTransfers(true);
+                    transferMatrixBuilder.setNThreads(params.buildThreads);
+                    graphBuilder.addGraphBuilder(transferMatrixBuilder);
+                }
             }
             List<GraphBuilderWithGtfsDao> gtfsBuilders = new ArrayList<GraphBuilderWithGtfsDao>();
             if (params.transitIndex) {
@@ -237,10 +304,12 @@ public class OTPConfigurator {
             embeddedConfigBuilder.setPropertiesFile(configFile);
             graphBuilder.addGraphBuilder(embeddedConfigBuilder);
         }
-        if (params.elevation) {
+        if (params.elevation && ! incremental) {
             File cacheDirectory = new File(params.cacheDirectory, "ned");
             NEDGridCoverageFactory ngcf = new NEDGridCoverageFactoryImpl(cacheDirectory);
-            GraphBuilder nedBuilder = new NEDGraphBuilderImpl(ngcf);
+            NEDGraphBuilderImpl nedBuilder = new NEDGraphBuilderImpl(ngcf);
+            nedBuilder.setProfileCacheFile(new File(cacheDirectory, "profiles.dat.gz"));
+            nedBuilder.setThreads(params.buildThreads);
             graphBuilder.addGraphBuilder(nedBuilder);
         }
         graphBuilder.setSerializeGraph( ! params.inMemory);
@@ -250,7 +319,7 @@ public class OTPConfigurator {
     public GrizzlyServer serverFromParameters() {
         if (params.server) {
             OTPComponentProviderFactory cpf = getComponentProviderFactory();
-            GrizzlyServer server = new GrizzlyServer(cpf, params);
+            GrizzlyServer server = new GrizzlyServer(cpf, params, getGraphService());
             return server;
         } else return null;
     }
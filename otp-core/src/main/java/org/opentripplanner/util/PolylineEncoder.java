@@ -20,6 +20,7 @@ import java.util.List;
 import org.opentripplanner.util.model.EncodedPolylineBean;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.MultiLineString;
@@ -84,9 +85,10 @@ public class PolylineEncoder {
             plat = late5;
             plng = lnge5;
 
-            encodedPoints.append(encodeSignedNumber(dlat)).append(encodeSignedNumber(dlng));
+            appendSignedNumber(encodedPoints, dlat);
+            appendSignedNumber(encodedPoints, dlng);
             if (level >= 0)
-                encodedLevels.append(encodeNumber(level));
+                appendNumber(encodedLevels, level);
             count++;
         }
 
@@ -95,6 +97,39 @@ public class PolylineEncoder {
         return new EncodedPolylineBean(pointsString, levelsString, count);
     }
 
+    /**
+     * Encode geometries joined end to end, such as those of the edges of a leg, reading the
+     * coordinates straight from their coordinate sequences instead of copying them into a new
+     * geometry. The first point of each geometry after the first is skipped, as it is the last
+     * point of the previous one.
+     */
+    public static EncodedPolylineBean createJoinedEncodings(List<LineString> geometries) {
+
+        StringBuilder encodedPoints = new StringBuilder();
+
+        int plat = 0;
+        int plng = 0;
+        int count = 0;
+
+        for (LineString geometry : geometries) {
+            CoordinateSequence coordinates = geometry.getCoordinateSequence();
+            for (int i = count == 0 ? 0 : 1; i < coordinates.size(); i++) {
+
+                int late5 = floor1e5(coordinates.getY(i));
+                int lnge5 = floor1e5(coordinates.getX(i));
+
+                appendSignedNumber(encodedPoints, late5 - plat);
+                appendSignedNumber(encodedPoints, lnge5 - plng);
+
+                plat = late5;
+                plng = lnge5;
+                count++;
+            }
+        }
+
+        return new EncodedPolylineBean(encodedPoints.toString(), null, count);
+    }
+
     public static List<Coordinate> decode(EncodedPolylineBean polyline) {
 
         String pointString = polyline.getPoints();
@@ -154,18 +189,29 @@ public class PolylineEncoder {
 
     public static String encodeNumber(int num) {
 
-        StringBuffer encodeString = new StringBuffer();
+        StringBuilder encodeString = new StringBuilder();
+        appendNumber(encodeString, num);
+        return encodeString.toString();
+    }
+
+    private static void appendSignedNumber(StringBuilder sb, int num) {
+        int sgn_num = num << 1;
+        if (num < 0) {
+            sgn_num = ~(sgn_num);
+        }
+        appendNumber(sb, sgn_num);
+    }
+
+    private static void appendNumber(StringBuilder sb, int num) {
 
         while (num >= 0x20) {
             int nextValue = (0x20 | (num & 0x1f)) + 63;
-            encodeString.append((char) (nextValue));
+            sb.append((char) (nextValue));
             num >>= 5;
         }
 
         num += 63;
-        encodeString.append((char) (num));
-
-        return encodeString.toString();
+        sb.append((char) (num));
     }
 
     public static int decodeNumber(String value) {
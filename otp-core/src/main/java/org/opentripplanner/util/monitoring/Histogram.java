@@ -0,0 +1,109 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.util.monitoring;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations with fixed buckets, which can be updated by any number of threads
+ * without locking. Each recorded duration increments one bucket and the total.
+ */
+public class Histogram {
+
+    /** The default upper bounds of the buckets, in seconds. */
+    public static final double[] LATENCY_BUCKETS = { 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1,
+            0.25, 0.5, 1, 2.5, 5, 10, 30, 60 };
+
+    private final double[] bounds;
+
+    private final long[] boundNanos;
+
+    /* one count per bucket, and one for the durations above the last bound */
+    private final AtomicLongArray counts;
+
+    private final AtomicLong sumNanos = new AtomicLong();
+
+    public Histogram() {
+        this(LATENCY_BUCKETS);
+    }
+
+    /** @param bounds the upper bounds of the buckets, in seconds, in increasing order */
+    public Histogram(double[] bounds) {
+        this.bounds = bounds.clone();
+        boundNanos = new long[bounds.length];
+        for (int i = 0; i < bounds.length; i++) {
+            boundNanos[i] = (long) (bounds[i] * 1e9);
+        }
+        counts = new AtomicLongArray(bounds.length + 1);
+    }
+
+    /** Record a duration in nanoseconds. */
+    public void recordNanos(long nanos) {
+        int i = 0;
+        while (i < boundNanos.length && nanos > boundNanos[i]) {
+            i++;
+        }
+        counts.incrementAndGet(i);
+        sumNanos.addAndGet(nanos);
+    }
+
+    /** @return the upper bounds of the buckets, in seconds. */
+    public double[] getBounds() {
+        return bounds.clone();
+    }
+
+    /**
+     * @return the number of durations in each bucket, the last bucket holding those above the last
+     *         bound. The counts are read one by one, so they may include durations recorded while
+     *         they are read.
+     */
+    public long[] getCounts() {
+        long[] result = new long[counts.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = counts.get(i);
+        }
+        return result;
+    }
+
+    /** @return the sum of the recorded durations, in seconds. */
+    public double getSum() {
+        return sumNanos.get() / 1e9;
+    }
+
+    /**
+     * @return the upper bound, in seconds, of the bucket holding the given fraction of the
+     *         durations, infinity if it is the last bucket, or 0 if nothing was recorded.
+     */
+    public double getPercentile(double fraction) {
+        long[] counts = getCounts();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * total);
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= rank) {
+                return bounds[i];
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+}
@@ -0,0 +1,163 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.util.monitoring;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The counters, gauges and histograms of the server, by name and labels, which the /metrics
+ * endpoint writes in the Prometheus text exposition format (version 0.0.4). The metrics are made
+ * when they are first asked for and live as long as the server; a caller on a hot path should
+ * keep the metric rather than look it up each time.
+ *
+ * Labels are given as alternating names and values, and should only take a few values each.
+ */
+public class MetricsRegistry {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    private static enum Type {
+        COUNTER, GAUGE, HISTOGRAM
+    }
+
+    private final ConcurrentMap<String, Family> families =
+            new ConcurrentSkipListMap<String, Family>();
+
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /** @return the counter with the given name and labels, made if needed. */
+    public AtomicLong getCounter(String name, String help, String... labels) {
+        return (AtomicLong) getMetric(name, help, Type.COUNTER, labels);
+    }
+
+    /** @return the gauge with the given name and labels, made if needed. */
+    public AtomicLong getGauge(String name, String help, String... labels) {
+        return (AtomicLong) getMetric(name, help, Type.GAUGE, labels);
+    }
+
+    /** @return the histogram with the given name and labels, made if needed. */
+    public Histogram getHistogram(String name, String help, String... labels) {
+        return (Histogram) getMetric(name, help, Type.HISTOGRAM, labels);
+    }
+
+    private Object getMetric(String name, String help, Type type, String[] labels) {
+        Family family = families.get(name);
+        if (family == null) {
+            family = new Family(help, type);
+            Family existing = families.putIfAbsent(name, family);
+            if (existing != null) {
+                family = existing;
+            }
+        }
+        if (family.type != type) {
+            throw new IllegalArgumentException("metric " + name + " is a " + family.type);
+        }
+        String key = formatLabels(labels);
+        Object metric = family.metrics.get(key);
+        if (metric == null) {
+            metric = type == Type.HISTOGRAM ? new Histogram() : new AtomicLong();
+            Object existing = family.metrics.putIfAbsent(key, metric);
+            if (existing != null) {
+                metric = existing;
+            }
+        }
+        return metric;
+    }
+
+    /** Write all the metrics, sorted by name and labels. */
+    public void write(Writer out) throws IOException {
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.write("# HELP " + name + " " + family.help.replace("\\", "\\\\")
+                    .replace("\n", "\\n") + "\n");
+            out.write("# TYPE " + name + " " + family.type.name().toLowerCase() + "\n");
+            for (Map.Entry<String, Object> metric : family.metrics.entrySet()) {
+                String labels = metric.getKey();
+                if (family.type == Type.HISTOGRAM) {
+                    writeHistogram(out, name, labels, (Histogram) metric.getValue());
+                } else {
+                    writeSample(out, name, labels, ((AtomicLong) metric.getValue()).get());
+                }
+            }
+        }
+    }
+
+    private static void writeHistogram(Writer out, String name, String labels,
+            Histogram histogram) throws IOException {
+        double[] bounds = histogram.getBounds();
+        long[] counts = histogram.getCounts();
+        String prefix = labels.isEmpty() ? "le=\"" : labels + ",le=\"";
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += counts[i];
+            writeSample(out, name + "_bucket", prefix + bounds[i] + "\"", cumulative);
+        }
+        cumulative += counts[bounds.length];
+        writeSample(out, name + "_bucket", prefix + "+Inf\"", cumulative);
+        out.write(name + "_sum" + (labels.isEmpty() ? "" : "{" + labels + "}") + " "
+                + histogram.getSum() + "\n");
+        writeSample(out, name + "_count", labels, cumulative);
+    }
+
+    private static void writeSample(Writer out, String name, String labels, long value)
+            throws IOException {
+        out.write(name);
+        if (!labels.isEmpty()) {
+            out.write("{" + labels + "}");
+        }
+        out.write(" " + value + "\n");
+    }
+
+    /** @return the labels in the exposition format, without the braces. */
+    static String formatLabels(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("labels must be pairs of names and values");
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            String value = labels[i + 1] == null ? "" : labels[i + 1];
+            sb.append(labels[i]).append("=\"").append(value.replace("\\", "\\\\")
+                    .replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+        }
+        return sb.toString();
+    }
+
+    private static class Family {
+
+        final String help;
+
+        final Type type;
+
+        final ConcurrentMap<String, Object> metrics = new ConcurrentSkipListMap<String, Object>();
+
+        Family(String help, Type type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
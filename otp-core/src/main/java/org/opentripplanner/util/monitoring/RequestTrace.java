@@ -0,0 +1,206 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.util.monitoring;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * The timeline of one sampled request: the spans of its phases, each nested in the span that was
+ * open on the same thread when it started, and some statistics of its searches. A span started on
+ * a thread which has none open, such as a concurrent search, is nested in the innermost span open
+ * on the thread of the request.
+ *
+ * Requests which are not sampled use {@link #DISABLED}, whose spans do nothing, so that the phases
+ * can be marked without checking whether the request is traced. The trace of the request handled
+ * by a thread is set with {@link #setCurrent}, and the routing contexts made on that thread pick
+ * it up.
+ */
+public class RequestTrace {
+
+    /* before DISABLED, which uses it */
+    private static final Span NO_SPAN = new Span(null, null, null, 0);
+
+    /** The trace of the requests which are not sampled, which records nothing. */
+    public static final RequestTrace DISABLED = new RequestTrace();
+
+    private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<RequestTrace>();
+
+    private final boolean enabled;
+
+    @Getter
+    private final String name;
+
+    /** The time the request started, in milliseconds since the epoch. */
+    @Getter
+    private final long startTime;
+
+    private final long startNanos;
+
+    private final Thread thread;
+
+    private final Span root;
+
+    /* the spans and statistics are guarded by this trace */
+    private final List<Span> spans = new ArrayList<Span>();
+
+    private final Map<Thread, Span> open = new HashMap<Thread, Span>();
+
+    private final Map<String, Long> stats = new LinkedHashMap<String, Long>();
+
+    private RequestTrace() {
+        enabled = false;
+        name = null;
+        startTime = 0;
+        startNanos = 0;
+        thread = null;
+        root = NO_SPAN;
+    }
+
+    /** Start tracing a request on the current thread, in a root span with the given name. */
+    public RequestTrace(String name) {
+        enabled = true;
+        this.name = name;
+        startTime = System.currentTimeMillis();
+        startNanos = System.nanoTime();
+        thread = Thread.currentThread();
+        root = new Span(this, name, null, 0);
+        open.put(thread, root);
+    }
+
+    /** @return the trace of the request handled by the current thread, or {@link #DISABLED}. */
+    public static RequestTrace getCurrent() {
+        RequestTrace trace = CURRENT.get();
+        return trace == null ? DISABLED : trace;
+    }
+
+    /** Set the trace of the request handled by the current thread, or clear it with null. */
+    public static void setCurrent(RequestTrace trace) {
+        if (trace == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(trace);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Start a span on the current thread, which must be ended on the same thread. */
+    public Span start(String spanName) {
+        if (!enabled) {
+            return NO_SPAN;
+        }
+        Thread current = Thread.currentThread();
+        synchronized (this) {
+            Span parent = open.get(current);
+            if (parent == null) {
+                parent = open.get(thread);
+            }
+            Span span = new Span(this, spanName, parent, System.nanoTime() - startNanos);
+            open.put(current, span);
+            return span;
+        }
+    }
+
+    private synchronized void end(Span span) {
+        span.durationNanos = System.nanoTime() - startNanos - span.startNanos;
+        spans.add(span);
+        Thread current = Thread.currentThread();
+        if (span.parent != null && span.parent.thread == current) {
+            open.put(current, span.parent);
+        } else {
+            open.remove(current);
+        }
+    }
+
+    /** Add a statistic of the request, such as a count of the search work. */
+    public synchronized void addStat(String statName, long value) {
+        if (enabled) {
+            stats.put(statName, value);
+        }
+    }
+
+    /** End the root span. The spans which are still open are left out of the trace. */
+    public void finish() {
+        root.end();
+    }
+
+    /** @return the duration of the request in nanoseconds, or -1 if it has not finished. */
+    public long getDurationNanos() {
+        return root.durationNanos;
+    }
+
+    /** @return the ended spans, in the order they ended. */
+    public synchronized List<Span> getSpans() {
+        return new ArrayList<Span>(spans);
+    }
+
+    public synchronized Map<String, Long> getStats() {
+        return new LinkedHashMap<String, Long>(stats);
+    }
+
+    /** A phase of a request. */
+    public static class Span {
+
+        private final RequestTrace trace;
+
+        @Getter
+        private final String name;
+
+        @Getter
+        private final Span parent;
+
+        private final Thread thread;
+
+        /** The start of this span, in nanoseconds since the start of the request. */
+        @Getter
+        private final long startNanos;
+
+        /** The duration of this span in nanoseconds, or -1 if it has not ended. */
+        @Getter
+        private long durationNanos = -1;
+
+        private Span(RequestTrace trace, String name, Span parent, long startNanos) {
+            this.trace = trace;
+            this.name = name;
+            this.parent = parent;
+            this.thread = Thread.currentThread();
+            this.startNanos = startNanos;
+        }
+
+        public void end() {
+            if (trace != null) {
+                trace.end(this);
+            }
+        }
+
+        /** @return the name of the thread this span ran on. */
+        public String getThreadName() {
+            return thread.getName();
+        }
+
+        /** @return the names of the spans from the root to this one, separated by semicolons. */
+        public String getPath() {
+            return parent == null ? name : parent.getPath() + ";" + name;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.util.monitoring;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import org.opentripplanner.util.monitoring.RequestTrace.Span;
+
+/**
+ * Samples the requests to trace, one in every {@link #getSampleEvery} requests, and keeps the
+ * traces of the last sampled requests in a ring buffer. Sampling is off until it is set, so that
+ * requests which are not traced only cost an increment.
+ */
+public class RequestTracer {
+
+    private static final RequestTracer INSTANCE = new RequestTracer(200);
+
+    /** Trace one request in this many, or none if it is not positive. */
+    @Getter @Setter
+    private volatile int sampleEvery = 0;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicReferenceArray<RequestTrace> traces;
+
+    private final AtomicLong nextTrace = new AtomicLong();
+
+    /** @param capacity the number of traces kept */
+    public RequestTracer(int capacity) {
+        traces = new AtomicReferenceArray<RequestTrace>(capacity);
+    }
+
+    public static RequestTracer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return a new trace if this request is sampled, started on the current thread, or
+     *         {@link RequestTrace#DISABLED}.
+     */
+    public RequestTrace startTrace(String name) {
+        int every = sampleEvery;
+        if (every <= 0 || requests.incrementAndGet() % every != 0) {
+            return RequestTrace.DISABLED;
+        }
+        return new RequestTrace(name);
+    }
+
+    /** Finish a trace and keep it, replacing the oldest trace kept if the buffer is full. */
+    public void finish(RequestTrace trace) {
+        if (!trace.isEnabled()) {
+            return;
+        }
+        trace.finish();
+        traces.set((int) (nextTrace.getAndIncrement() % traces.length()), trace);
+    }
+
+    /** @return the traces kept, oldest first. */
+    public List<RequestTrace> getTraces() {
+        List<RequestTrace> result = new ArrayList<RequestTrace>();
+        long next = nextTrace.get();
+        for (long i = Math.max(0, next - traces.length()); i < next; i++) {
+            RequestTrace trace = traces.get((int) (i % traces.length()));
+            if (trace != null) {
+                result.add(trace);
+            }
+        }
+        return result;
+    }
+
+    /** Forget the traces kept. */
+    public void clear() {
+        for (int i = 0; i < traces.length(); i++) {
+            traces.set(i, null);
+        }
+    }
+
+    /**
+     * Write the timelines of the traces kept, one span per line with its start and duration in
+     * milliseconds, indented by depth.
+     */
+    public void writeTimelines(Writer out) throws IOException {
+        for (RequestTrace trace : getTraces()) {
+            out.write(String.format("# %s at %tFT%<tT.%<tL, %.3f ms", trace.getName(),
+                    trace.getStartTime(), trace.getDurationNanos() / 1e6));
+            for (Map.Entry<String, Long> stat : trace.getStats().entrySet()) {
+                out.write(" " + stat.getKey() + "=" + stat.getValue());
+            }
+            out.write("\n");
+            List<Span> spans = trace.getSpans();
+            // parents end after their children, so sort by start
+            Collections.sort(spans, new Comparator<Span>() {
+                @Override
+                public int compare(Span a, Span b) {
+                    return a.getStartNanos() < b.getStartNanos() ? -1
+                            : (a.getStartNanos() == b.getStartNanos() ? 0 : 1);
+                }
+            });
+            for (Span span : spans) {
+                int depth = 0;
+                for (Span parent = span.getParent(); parent != null; parent = parent.getParent())
+                    depth++;
+                out.write(String.format("%10.3f %10.3f %s%s [%s]\n", span.getStartNanos() / 1e6,
+                        span.getDurationNanos() / 1e6, indent(depth), span.getName(),
+                        span.getThreadName()));
+            }
+            out.write("\n");
+        }
+    }
+
+    /**
+     * Write the spans of the traces kept in the folded stack format of flame graph tools: one
+     * line per stack of span names, separated by semicolons, with the time spent in the last span
+     * of the stack and not in its children, in microseconds, summed over all the traces.
+     */
+    public void writeFolded(Writer out) throws IOException {
+        Map<String, Long> selfMicros = new TreeMap<String, Long>();
+        for (RequestTrace trace : getTraces()) {
+            List<Span> spans = trace.getSpans();
+            Map<Span, Long> childNanos = new HashMap<Span, Long>();
+            for (Span span : spans) {
+                if (span.getParent() != null) {
+                    Long sum = childNanos.get(span.getParent());
+                    childNanos.put(span.getParent(),
+                            (sum == null ? 0 : sum) + span.getDurationNanos());
+                }
+            }
+            for (Span span : spans) {
+                Long children = childNanos.get(span);
+                // concurrent children may add up to more than their parent
+                long self = Math.max(0, span.getDurationNanos()
+                        - (children == null ? 0 : children));
+                String path = span.getPath();
+                Long sum = selfMicros.get(path);
+                selfMicros.put(path, (sum == null ? 0 : sum) + self / 1000);
+            }
+        }
+        for (Map.Entry<String, Long> entry : selfMicros.entrySet()) {
+            out.write(entry.getKey() + " " + entry.getValue() + "\n");
+        }
+    }
+
+    private static String indent(int depth) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append("  ");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,102 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.util.monitoring;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+
+/**
+ * Counts the work done by the searches of one request. A RoutingContext and its forks share one
+ * instance, so the searches of a request may update it from several threads; the search loops
+ * count in local variables and add them up when they finish.
+ */
+public class SearchCounters {
+
+    /** The number of states taken from the queue which were not dominated. */
+    @Getter
+    private final AtomicLong verticesSettled = new AtomicLong();
+
+    /** The number of states made by traversing edges. */
+    @Getter
+    private final AtomicLong statesCreated = new AtomicLong();
+
+    /** The number of edges traversed. */
+    @Getter
+    private final AtomicLong edgesRelaxed = new AtomicLong();
+
+    /** The number of states inserted in the priority queue. */
+    @Getter
+    private final AtomicLong heapInserts = new AtomicLong();
+
+    /** The number of searches of a timetable for the next trip. */
+    @Getter
+    private final AtomicLong timetableLookups = new AtomicLong();
+
+    /** The number of searches of the street index for the vertex of a location. */
+    @Getter
+    private final AtomicLong streetIndexQueries = new AtomicLong();
+
+    /** The time spent initializing the remaining weight heuristics, in nanoseconds. */
+    @Getter
+    private final AtomicLong heuristicInitNanos = new AtomicLong();
+
+    /** Add the counts of a search which has finished. */
+    public void addSearch(long settled, long states, long relaxed, long inserts) {
+        verticesSettled.addAndGet(settled);
+        statesCreated.addAndGet(states);
+        edgesRelaxed.addAndGet(relaxed);
+        heapInserts.addAndGet(inserts);
+    }
+
+    /** Add these counts to the totals of a path service in the metrics. */
+    public void recordTo(MetricsRegistry metrics, String service) {
+        add(metrics, "otp_search_vertices_settled_total", "Vertices settled by the searches.",
+                service, verticesSettled);
+        add(metrics, "otp_search_states_created_total", "States created by the searches.",
+                service, statesCreated);
+        add(metrics, "otp_search_edges_relaxed_total", "Edges traversed by the searches.",
+                service, edgesRelaxed);
+        add(metrics, "otp_search_heap_inserts_total", "States inserted in the search queues.",
+                service, heapInserts);
+        add(metrics, "otp_search_timetable_lookups_total", "Timetable searches for a trip.",
+                service, timetableLookups);
+        add(metrics, "otp_search_street_index_queries_total",
+                "Street index searches for the vertex of a location.", service,
+                streetIndexQueries);
+        metrics.getHistogram("otp_search_heuristic_init_seconds",
+                "Time spent initializing the heuristics of a request.", "service", service)
+                .recordNanos(heuristicInitNanos.get());
+    }
+
+    /** Add these counts to the statistics of a trace. */
+    public void recordTo(RequestTrace trace) {
+        if (!trace.isEnabled()) {
+            return;
+        }
+        trace.addStat("verticesSettled", verticesSettled.get());
+        trace.addStat("statesCreated", statesCreated.get());
+        trace.addStat("edgesRelaxed", edgesRelaxed.get());
+        trace.addStat("heapInserts", heapInserts.get());
+        trace.addStat("timetableLookups", timetableLookups.get());
+        trace.addStat("streetIndexQueries", streetIndexQueries.get());
+        trace.addStat("heuristicInitMicros", heuristicInitNanos.get() / 1000);
+    }
+
+    private static void add(MetricsRegistry metrics, String name, String help, String service,
+            AtomicLong count) {
+        metrics.getCounter(name, help, "service", service).addAndGet(count.get());
+    }
+}
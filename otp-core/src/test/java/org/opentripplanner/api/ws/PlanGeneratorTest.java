@@ -88,6 +88,7 @@ import org.opentripplanner.routing.patch.AlertPatch;
 import org.opentripplanner.routing.services.FareService;
 import org.opentripplanner.routing.services.TransitIndexService;
 import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.transit_index.DepartureBoardIndex;
 import org.opentripplanner.routing.transit_index.RouteVariant;
 import org.opentripplanner.routing.trippattern.Update;
 import org.opentripplanner.routing.trippattern.Update.Status;
@@ -1811,6 +1812,11 @@ public class PlanGeneratorTest {
             return 0;
         }
 
+        @Override
+        public DepartureBoardIndex getDepartureBoardIndex() {
+            return null;
+        }
+
         @Override
         public Map<AgencyAndId, Route> getAllRoutes() {
             return null;
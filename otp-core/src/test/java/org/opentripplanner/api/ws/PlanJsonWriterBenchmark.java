@@ -0,0 +1,74 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.api.ws;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Compares the bytes allocated per planner response by the streaming JSON writer and by the
+ * ObjectMapper used by the generic JSON provider. This is not a unit test: run its main method,
+ * on a HotSpot JVM which can report per-thread allocations.
+ */
+public class PlanJsonWriterBenchmark {
+
+    private static final int ITERATIONS = 2000;
+
+    public static void main(String[] args) throws IOException {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        ObjectMapper mapper = PlanJsonWriter.getMapper();
+        OutputStream out = new NullOutputStream();
+        for (int nItineraries : new int[] { 1, 3, 10 }) {
+            Response response = TestPlanJsonWriter.makeResponse(nItineraries);
+            // warm up both
+            for (int i = 0; i < ITERATIONS; i++) {
+                mapper.writeValue(out, response);
+                PlanJsonWriter.write(response, out);
+            }
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < ITERATIONS; i++) {
+                mapper.writeValue(out, response);
+            }
+            long mapperBytes = (threads.getThreadAllocatedBytes(thread) - before) / ITERATIONS;
+            before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < ITERATIONS; i++) {
+                PlanJsonWriter.write(response, out);
+            }
+            long writerBytes = (threads.getThreadAllocatedBytes(thread) - before) / ITERATIONS;
+            System.out.printf("%d itineraries: object mapper %d bytes, streaming writer %d bytes%n",
+                    nItineraries, mapperBytes, writerBytes);
+        }
+    }
+
+    private static class NullOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+
+        @Override
+        public void close() {
+            // the object mapper closes the stream after each value
+        }
+    }
+}
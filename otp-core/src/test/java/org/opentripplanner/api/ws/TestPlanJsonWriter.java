@@ -0,0 +1,169 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.api.ws;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+import org.opentripplanner.api.common.Message;
+import org.opentripplanner.api.model.AbsoluteDirection;
+import org.opentripplanner.api.model.Itinerary;
+import org.opentripplanner.api.model.Leg;
+import org.opentripplanner.api.model.Place;
+import org.opentripplanner.api.model.RelativeDirection;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.api.model.WalkStep;
+import org.opentripplanner.api.model.error.PlannerError;
+import org.opentripplanner.common.model.P2;
+import org.opentripplanner.model.json_serialization.SerializerUtils;
+import org.opentripplanner.routing.patch.Alert;
+import org.opentripplanner.util.PolylineEncoder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vividsolutions.jts.geom.Coordinate;
+
+public class TestPlanJsonWriter extends TestCase {
+
+    public void testWritesPlan() throws Exception {
+        Response response = makeResponse(2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PlanJsonWriter.write(response, out);
+        JsonNode root = new ObjectMapper().readTree(out.toByteArray());
+
+        JsonNode plan = root.get("plan");
+        assertEquals(1000000000000L, plan.get("date").asLong());
+        assertEquals("origin", plan.get("from").get("name").asText());
+        assertEquals(2, plan.get("itineraries").size());
+
+        JsonNode leg = plan.get("itineraries").get(0).get("legs").get(0);
+        assertEquals("WALK", leg.get("mode").asText());
+        assertEquals(60000, leg.get("duration").asLong());
+        assertEquals(1000000000000L, leg.get("startTime").asLong());
+        assertEquals(response.getPlan().itinerary.get(0).legs.get(0).legGeometry.getPoints(),
+                leg.get("legGeometry").get("points").asText());
+        assertFalse(leg.get("legGeometry").has("levels"));
+        // null fields are left out
+        assertFalse(leg.has("routeId"));
+
+        JsonNode step = leg.get("steps").get(0);
+        assertEquals("DEPART", step.get("relativeDirection").asText());
+        assertEquals("NORTH", step.get("absoluteDirection").asText());
+        assertEquals("Main Street", step.get("streetName").asText());
+        assertEquals("0,12.3,10,12.5", step.get("elevation").asText());
+    }
+
+    public void testSameAsMapper() throws Exception {
+        Response response = makeResponse(2);
+        response.getRequestParameters().put("fromPlace", "45.52,-122.68");
+        response.getRequestParameters().put("toPlace", "45.53,-122.67");
+        Alert alert = Alert.createSimpleAlerts("Elevator out of service");
+        alert.effectiveStartDate = new Date(999999000000L);
+        Itinerary itinerary = response.getPlan().itinerary.get(0);
+        Leg walk = itinerary.legs.get(0);
+        walk.walkSteps.get(1).addAlerts(Collections.singleton(alert));
+        walk.walkSteps.get(2).elevation = null;
+        walk.walkSteps.get(2).exit = "3";
+        walk.walkSteps.get(2).stayOn = null;
+
+        // a transit leg, with a mix of set and null fields
+        Leg bus = new Leg();
+        bus.startTime = walk.endTime;
+        bus.endTime = (Calendar) walk.endTime.clone();
+        bus.endTime.add(Calendar.MINUTE, 10);
+        bus.mode = "BUS";
+        bus.route = "19";
+        bus.routeId = "19";
+        bus.routeType = 3;
+        bus.agencyId = "TriMet";
+        bus.headsign = "Downtown";
+        bus.realTime = null;
+        bus.distance = 2500.5;
+        bus.interlineWithPreviousLeg = false;
+        bus.from = walk.to;
+        bus.to = new Place(-122.66, 45.51, "Pioneer Square", bus.endTime, null);
+        bus.stop = new ArrayList<Place>();
+        bus.stop.add(new Place(-122.665, 45.52, "Stop in between"));
+        bus.addAlert(alert);
+        itinerary.addLeg(bus);
+        itinerary.walkDistance = null;
+        itinerary.transfers = null;
+
+        ObjectMapper mapper = SerializerUtils.getMapper();
+        JsonNode expected = mapper.readTree(mapper.writeValueAsBytes(response));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PlanJsonWriter.write(response, out);
+        JsonNode actual = mapper.readTree(out.toByteArray());
+        assertEquals(expected, actual);
+
+        // and for a response with only an error
+        response = new Response(null);
+        response.setError(new PlannerError(Message.PATH_NOT_FOUND));
+        expected = mapper.readTree(mapper.writeValueAsBytes(response));
+        out = new ByteArrayOutputStream();
+        PlanJsonWriter.write(response, out);
+        assertEquals(expected, mapper.readTree(out.toByteArray()));
+    }
+
+    static Response makeResponse(int nItineraries) {
+        Calendar start = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+        start.setTimeInMillis(1000000000000L);
+        Calendar end = (Calendar) start.clone();
+        end.add(Calendar.MINUTE, 1);
+
+        Place from = new Place(-122.68, 45.52, "origin");
+        Place to = new Place(-122.67, 45.53, "destination");
+        TripPlan plan = new TripPlan(from, to, new Date(1000000000000L));
+        for (int i = 0; i < nItineraries; i++) {
+            Itinerary itinerary = new Itinerary();
+            itinerary.startTime = start;
+            itinerary.endTime = end;
+            Leg leg = new Leg();
+            leg.startTime = start;
+            leg.endTime = end;
+            leg.from = from;
+            leg.to = to;
+            leg.legGeometry = PolylineEncoder.createEncodings(Arrays.asList(
+                    new Coordinate(-122.68, 45.52), new Coordinate(-122.675, 45.525),
+                    new Coordinate(-122.67, 45.53)));
+            leg.walkSteps = new ArrayList<WalkStep>();
+            for (int j = 0; j < 10; j++) {
+                WalkStep step = new WalkStep();
+                step.streetName = "Main Street";
+                step.relativeDirection = j == 0 ? RelativeDirection.DEPART
+                        : RelativeDirection.LEFT;
+                step.absoluteDirection = AbsoluteDirection.NORTH;
+                step.distance = 100;
+                step.lon = -122.68;
+                step.lat = 45.52;
+                step.elevation = new ArrayList<P2<Double>>();
+                step.elevation.add(new P2<Double>(0.0, 12.3));
+                step.elevation.add(new P2<Double>(10.0, 12.5));
+                leg.walkSteps.add(step);
+            }
+            itinerary.addLeg(leg);
+            plan.addItinerary(itinerary);
+        }
+        Response response = new Response(null);
+        response.setPlan(plan);
+        return response;
+    }
+}
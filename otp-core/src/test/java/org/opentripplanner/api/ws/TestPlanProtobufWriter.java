@@ -0,0 +1,83 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.api.ws;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.opentripplanner.api.model.RelativeDirection;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+
+public class TestPlanProtobufWriter extends TestCase {
+
+    public void testWritesPlan() throws Exception {
+        Response response = TestPlanJsonWriter.makeResponse(2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PlanProtobufWriter.write(response, out);
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        PlanJsonWriter.write(response, json);
+        assertTrue(out.size() < json.size() / 2);
+
+        ByteString plan = getMessages(ByteString.copyFrom(out.toByteArray()), 2).get(0);
+        List<ByteString> itineraries = getMessages(plan, 4);
+        assertEquals(2, itineraries.size());
+        ByteString leg = getMessages(itineraries.get(0), 13).get(0);
+        assertEquals(response.getPlan().itinerary.get(0).legs.get(0).legGeometry.getPoints(),
+                getMessages(leg, 26).get(0).toStringUtf8());
+        List<ByteString> steps = getMessages(leg, 27);
+        assertEquals(10, steps.size());
+
+        CodedInputStream step = steps.get(0).newCodedInput();
+        boolean sawElevation = false;
+        for (int tag = step.readTag(); tag != 0; tag = step.readTag()) {
+            int field = WireFormat.getTagFieldNumber(tag);
+            if (field == 2) {
+                assertEquals(RelativeDirection.DEPART.ordinal(), step.readEnum());
+            } else if (field == 11) {
+                int limit = step.pushLimit(step.readRawVarint32());
+                assertEquals(0.0, step.readDouble());
+                assertEquals(12.3, step.readDouble());
+                assertEquals(10.0, step.readDouble());
+                assertEquals(12.5, step.readDouble());
+                assertTrue(step.isAtEnd());
+                step.popLimit(limit);
+                sawElevation = true;
+            } else {
+                step.skipField(tag);
+            }
+        }
+        assertTrue(sawElevation);
+    }
+
+    /** @return the length-delimited fields with the given number in a message. */
+    private static List<ByteString> getMessages(ByteString message, int fieldNumber)
+            throws Exception {
+        List<ByteString> out = new ArrayList<ByteString>();
+        CodedInputStream in = message.newCodedInput();
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            if (WireFormat.getTagFieldNumber(tag) == fieldNumber) {
+                out.add(in.readBytes());
+            } else {
+                in.skipField(tag);
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,50 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.api.ws;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import junit.framework.TestCase;
+
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+
+public class TestResponseCacheFilter extends TestCase {
+
+    public void testKeyIgnoresParameterOrderAndCallback() {
+        MultivaluedMap<String, String> a = new MultivaluedMapImpl();
+        a.add("routerId", "paris");
+        a.add("agency", "RATP");
+        a.add("callback", "jQuery123");
+        MultivaluedMap<String, String> b = new MultivaluedMapImpl();
+        b.add("agency", "RATP");
+        b.add("routerId", "paris");
+        b.add("_", "1380000000000");
+        assertEquals(ResponseCacheFilter.makeKey("transit/routes", a, "application/json"),
+                ResponseCacheFilter.makeKey("transit/routes", b, "application/json"));
+    }
+
+    public void testKeyDependsOnParametersAndAccept() {
+        MultivaluedMap<String, String> a = new MultivaluedMapImpl();
+        a.add("agency", "RATP");
+        MultivaluedMap<String, String> b = new MultivaluedMapImpl();
+        b.add("agency", "SNCF");
+        String key = ResponseCacheFilter.makeKey("transit/routes", a, "application/json");
+        assertFalse(key.equals(ResponseCacheFilter.makeKey("transit/routes", b,
+                "application/json")));
+        assertFalse(key.equals(ResponseCacheFilter.makeKey("transit/routes", a,
+                "application/xml")));
+        assertFalse(key.equals(ResponseCacheFilter.makeKey("transit/modes", a,
+                "application/json")));
+    }
+}
@@ -0,0 +1,57 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestIntDisjointSet extends TestCase {
+
+    public void testSimple() {
+        IntDisjointSet set = new IntDisjointSet(5);
+        set.union(0, 1);
+        assertEquals(2, set.size(0));
+        assertEquals(set.find(0), set.find(1));
+        assertTrue(set.find(0) != set.find(2));
+        assertEquals(1, set.size(2));
+
+        set.union(2, 3);
+        set.union(3, 1);
+        assertEquals(set.find(0), set.find(3));
+        assertEquals(4, set.size(2));
+        assertEquals(1, set.size(4));
+    }
+
+    public void testMatchesDisjointSet() {
+        Random random = new Random(1);
+        IntDisjointSet set = new IntDisjointSet(700);
+        DisjointSet<Integer> expected = new DisjointSet<Integer>();
+        for (int i = 0; i < 700; ++i) {
+            expected.find(i);
+        }
+        for (int i = 0; i < 500; ++i) {
+            int a = random.nextInt(700);
+            int b = random.nextInt(700);
+            set.union(a, b);
+            expected.union(a, b);
+        }
+        for (int i = 0; i < 700; ++i) {
+            assertEquals(expected.size(expected.find(i)), set.size(i));
+            for (int j = i + 1; j < 700; j += 37) {
+                assertEquals(expected.find(i) == expected.find(j), set.find(i) == set.find(j));
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common.geometry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+
+public class CompactLineStringTest {
+
+    private static LineString line(double... ordinates) {
+        Coordinate[] coordinates = new Coordinate[ordinates.length / 2];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = new Coordinate(ordinates[2 * i], ordinates[2 * i + 1]);
+        }
+        return GeometryUtils.getGeometryFactory().createLineString(coordinates);
+    }
+
+    @Test
+    public final void testRoundTrip() {
+        LineString geometry = line(-122.6812345, 45.5123456, -122.6801, 45.5131, 179.9999999, -89.9);
+        assertTrue(CompactLineString.canEncode(geometry));
+        byte[] encoded = CompactLineString.encode(geometry);
+        LineString decoded = CompactLineString.decode(encoded,
+                CompactLineString.isEncodedReversed(geometry));
+        assertEquals(geometry.getNumPoints(), decoded.getNumPoints());
+        for (int i = 0; i < geometry.getNumPoints(); i++) {
+            assertEquals(geometry.getCoordinateN(i).x, decoded.getCoordinateN(i).x, 1e-7);
+            assertEquals(geometry.getCoordinateN(i).y, decoded.getCoordinateN(i).y, 1e-7);
+        }
+    }
+
+    @Test
+    public final void testReverseIsEncodedTheSame() {
+        LineString geometry = line(-122.68, 45.51, -122.67, 45.52, -122.66, 45.515);
+        LineString reverse = (LineString) geometry.reverse();
+        assertFalse(CompactLineString.isEncodedReversed(geometry));
+        assertTrue(CompactLineString.isEncodedReversed(reverse));
+        byte[] encoded = CompactLineString.encode(geometry);
+        assertArrayEquals(encoded, CompactLineString.encode(reverse));
+        assertTrue(CompactLineString.decode(encoded, true).equalsExact(reverse, 1e-9));
+    }
+
+    @Test
+    public final void testProjectedCoordinatesAreNotEncoded() {
+        assertFalse(CompactLineString.canEncode(line(0, 0, 500000, 4000000)));
+    }
+}
@@ -0,0 +1,111 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.calendar.CalendarServiceData;
+import org.opentripplanner.graph_builder.impl.transit_index.TransitIndexBuilder;
+import org.opentripplanner.graph_builder.model.GtfsBundle;
+import org.opentripplanner.graph_builder.model.GtfsFeedFingerprints;
+import org.opentripplanner.graph_builder.model.ReloadedStops;
+import org.opentripplanner.graph_builder.services.GraphBuilderWithGtfsDao;
+import org.opentripplanner.routing.core.TransferTable;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.services.TransitIndexService;
+
+public class TestIncrementalGtfsBuild extends TestCase {
+
+    private static final File TEST_GTFS = new File("../otp-core/src/test/resources/testagency.zip");
+
+    private GtfsGraphBuilderImpl makeBuilder(boolean incremental, List<String> removedFeeds) {
+        GtfsBundle bundle = new GtfsBundle();
+        bundle.setPath(TEST_GTFS);
+        GtfsGraphBuilderImpl gtfsBuilder = new GtfsGraphBuilderImpl(Arrays.asList(bundle));
+        List<GraphBuilderWithGtfsDao> builders = new ArrayList<GraphBuilderWithGtfsDao>();
+        builders.add(new TransitIndexBuilder());
+        gtfsBuilder.setGtfsGraphBuilders(builders);
+        gtfsBuilder.setIncremental(incremental);
+        gtfsBuilder.setRemovedFeeds(removedFeeds);
+        return gtfsBuilder;
+    }
+
+    public void testRebuildFeed() throws Exception {
+        Graph graph = new Graph();
+        makeBuilder(false, new ArrayList<String>()).buildGraph(graph,
+                new HashMap<Class<?>, Object>());
+        int nVertices = graph.countVertices();
+        int nEdges = graph.countEdges();
+        int nServiceIds = graph.getService(CalendarServiceData.class).getServiceIds().size();
+        GtfsFeedFingerprints fingerprints = graph.getService(GtfsFeedFingerprints.class);
+        assertTrue(fingerprints.isUnchanged(TEST_GTFS));
+        assertTrue(fingerprints.getAgencyIds(TEST_GTFS.getName()).contains("agency"));
+
+        // reloading the same feed replaces its transit instead of adding a second copy
+        makeBuilder(true, new ArrayList<String>()).buildGraph(graph,
+                new HashMap<Class<?>, Object>());
+        assertEquals(nVertices, graph.countVertices());
+        assertEquals(nEdges, graph.countEdges());
+        assertEquals(nServiceIds, graph.getService(CalendarServiceData.class).getServiceIds()
+                .size());
+        TransitIndexService index = graph.getService(TransitIndexService.class);
+        assertEquals(2, index.getVariantsForRoute(new AgencyAndId("agency", "18")).size());
+
+        // removing the feed removes its stops
+        GtfsGraphBuilderImpl remover = new GtfsGraphBuilderImpl(new ArrayList<GtfsBundle>());
+        remover.setIncremental(true);
+        remover.setRemovedFeeds(Arrays.asList(TEST_GTFS.getName()));
+        remover.buildGraph(graph, new HashMap<Class<?>, Object>());
+        assertEquals(0, graph.countVertices());
+        assertNull(index.getPreAlightEdge(new AgencyAndId("agency", "A")));
+        assertTrue(graph.getService(GtfsFeedFingerprints.class).getFeedNames().isEmpty());
+    }
+
+    public void testRelinkOnlyReloadedStops() throws Exception {
+        Graph graph = new Graph();
+        HashMap<Class<?>, Object> extra = new HashMap<Class<?>, Object>();
+        makeBuilder(false, new ArrayList<String>()).buildGraph(graph, extra);
+        new StreetlessStopLinker().buildGraph(graph, extra);
+        int nEdges = graph.countEdges();
+        int nTransfers = countTransfers(graph);
+        assertTrue(nTransfers > 0);
+
+        // each incremental build replaces the transfers of the reloaded stops
+        for (int i = 0; i < 2; i++) {
+            extra = new HashMap<Class<?>, Object>();
+            makeBuilder(true, new ArrayList<String>()).buildGraph(graph, extra);
+            assertTrue(((ReloadedStops) extra.get(ReloadedStops.class)).size() > 0);
+            new StreetlessStopLinker().buildGraph(graph, extra);
+            assertEquals(nEdges, graph.countEdges());
+            assertEquals(nTransfers, countTransfers(graph));
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private int countTransfers(Graph graph) {
+        int n = 0;
+        for (TransferTable.Transfer transfer : graph.getTransferTable()
+                .getAllFirstSpecificTransfers()) {
+            n += 1;
+        }
+        return n;
+    }
+}
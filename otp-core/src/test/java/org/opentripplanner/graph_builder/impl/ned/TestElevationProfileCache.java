@@ -0,0 +1,78 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.impl.ned;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.geometry.PackedCoordinateSequence;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+
+public class TestElevationProfileCache extends TestCase {
+
+    public void testRoundTrip() throws Exception {
+        File file = File.createTempFile("profiles", ".dat.gz");
+        file.deleteOnExit();
+        file.delete();
+        File tile = File.createTempFile("ned", ".tif");
+        tile.deleteOnExit();
+        List<File> sources = Arrays.asList(tile);
+
+        Geometry street = GeometryUtils.getGeometryFactory().createLineString(
+                new Coordinate[] { new Coordinate(-122.68, 45.52), new Coordinate(-122.67, 45.52) });
+        Geometry reversed = street.reverse();
+        long key = ElevationProfileCache.hash(street);
+        assertFalse(key == ElevationProfileCache.hash(reversed));
+
+        PackedCoordinateSequence profile = new PackedCoordinateSequence.Double(new Coordinate[] {
+                new Coordinate(0, 20), new Coordinate(10, 22.5), new Coordinate(15.2, 21) });
+
+        ElevationProfileCache cache = new ElevationProfileCache(file, 10, sources);
+        cache.load();
+        assertNull(cache.get(key));
+        cache.put(key, profile);
+        cache.save();
+
+        cache = new ElevationProfileCache(file, 10, sources);
+        cache.load();
+        PackedCoordinateSequence cached = cache.get(key);
+        assertNotNull(cached);
+        assertEquals(3, cached.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(profile.getOrdinate(i, 0), cached.getOrdinate(i, 0));
+            assertEquals(profile.getOrdinate(i, 1), cached.getOrdinate(i, 1));
+        }
+        assertNull(cache.get(ElevationProfileCache.hash(reversed)));
+
+        // profiles sampled at another distance are not reused
+        cache = new ElevationProfileCache(file, 5, sources);
+        cache.load();
+        assertNull(cache.get(key));
+
+        // nor are profiles sampled from other elevation data
+        FileOutputStream out = new FileOutputStream(tile);
+        out.write(new byte[] { 1, 2, 3 });
+        out.close();
+        cache = new ElevationProfileCache(file, 10, sources);
+        cache.load();
+        assertNull(cache.get(key));
+    }
+}
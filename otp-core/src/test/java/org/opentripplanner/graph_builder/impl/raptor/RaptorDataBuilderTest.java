@@ -0,0 +1,157 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.graph_builder.impl.raptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.Stop;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.model.T2;
+import org.opentripplanner.graph_builder.impl.TransferMatrixGraphBuilderImpl;
+import org.opentripplanner.routing.core.StopTransferMatrix;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.edgetype.PlainStreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.edgetype.StreetTransitLink;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.raptor.RaptorRoute;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.routing.vertextype.TransitStop;
+
+public class RaptorDataBuilderTest extends TestCase {
+
+    private static final int SIZE = 4;
+
+    /* about 550m between two intersections */
+    private static final double SPACING = 0.005;
+
+    private Graph graph;
+
+    private ArrayList<Vertex> stops;
+
+    private HashMap<Vertex, List<RaptorRoute>> routesForVertex;
+
+    /**
+     * A grid of streets with a stop at every intersection, each stop served by a route of its
+     * own so that no transfer is left out as redundant.
+     */
+    public void setUp() {
+        graph = new Graph();
+        IntersectionVertex[][] grid = new IntersectionVertex[SIZE][SIZE];
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                grid[x][y] = new IntersectionVertex(graph, "i" + x + "_" + y, -122.6 + x
+                        * SPACING, 45.5 + y * SPACING);
+            }
+        }
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                if (x + 1 < SIZE) {
+                    link(grid[x][y], grid[x + 1][y]);
+                }
+                if (y + 1 < SIZE) {
+                    link(grid[x][y], grid[x][y + 1]);
+                }
+            }
+        }
+        stops = new ArrayList<Vertex>();
+        routesForVertex = new HashMap<Vertex, List<RaptorRoute>>();
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                Stop stop = new Stop();
+                stop.setId(new AgencyAndId("agency", "s" + x + "_" + y));
+                stop.setLon(grid[x][y].getX());
+                stop.setLat(grid[x][y].getY());
+                TransitStop transitStop = new TransitStop(graph, stop);
+                new StreetTransitLink(grid[x][y], transitStop, true);
+                new StreetTransitLink(transitStop, grid[x][y], true);
+                stops.add(transitStop);
+                routesForVertex.put(transitStop, Arrays.asList(new RaptorRoute(2, 1)));
+            }
+        }
+    }
+
+    private void link(IntersectionVertex a, IntersectionVertex b) {
+        double length = (Math.abs(a.getX() - b.getX()) * 78000)
+                + (Math.abs(a.getY() - b.getY()) * 111000);
+        new PlainStreetEdge(a, b, GeometryUtils.makeLineString(a.getX(), a.getY(), b.getX(),
+                b.getY()), a.getLabel() + "-" + b.getLabel(), length,
+                StreetTraversalPermission.ALL, false);
+        new PlainStreetEdge(b, a, GeometryUtils.makeLineString(b.getX(), b.getY(), a.getX(),
+                a.getY()), b.getLabel() + "-" + a.getLabel(), length,
+                StreetTraversalPermission.ALL, true);
+    }
+
+    private StopTransferMatrix buildMatrix(double radius) {
+        TransferMatrixGraphBuilderImpl matrixBuilder = new TransferMatrixGraphBuilderImpl();
+        matrixBuilder.setRadius(radius);
+        matrixBuilder.setNThreads(3);
+        matrixBuilder.buildGraph(graph, new HashMap<Class<?>, Object>());
+        return graph.getService(StopTransferMatrix.class);
+    }
+
+    public void testTransferMatrixGivesTheStreetSearchTimes() {
+        RaptorDataBuilder builder = new RaptorDataBuilder();
+        HashMap<Vertex, T2<Integer, Double>>[] searched = builder.computeStopToStopWalkTimes(
+                stops, 1.33, RaptorDataBuilder.MAX_DISTANCE, routesForVertex, null);
+        HashMap<Vertex, T2<Integer, Double>>[] fromMatrix = builder.computeStopToStopWalkTimes(
+                stops, 1.33, RaptorDataBuilder.MAX_DISTANCE, routesForVertex,
+                buildMatrix(RaptorDataBuilder.MAX_DISTANCE));
+
+        int nTransfers = 0;
+        for (Vertex destination : stops) {
+            HashMap<Vertex, T2<Integer, Double>> expected = searched[destination.getIndex()];
+            HashMap<Vertex, T2<Integer, Double>> actual = fromMatrix[destination.getIndex()];
+            assertEquals(expected.keySet(), actual.keySet());
+            for (Vertex origin : expected.keySet()) {
+                assertEquals(expected.get(origin).getSecond(), actual.get(origin).getSecond(),
+                        0.01);
+                assertEquals(expected.get(origin).getFirst(), actual.get(origin).getFirst(), 2);
+                nTransfers++;
+            }
+        }
+        // the farthest stops are 2.8km apart along the streets
+        assertEquals(stops.size() * (stops.size() - 1), nTransfers);
+    }
+
+    public void testSmallMatrixIsNotUsed() {
+        RaptorDataBuilder builder = new RaptorDataBuilder();
+        HashMap<Vertex, T2<Integer, Double>>[] searched = builder.computeStopToStopWalkTimes(
+                stops, 1.33, RaptorDataBuilder.MAX_DISTANCE, routesForVertex, null);
+        HashMap<Vertex, T2<Integer, Double>>[] fromMatrix = builder.computeStopToStopWalkTimes(
+                stops, 1.33, RaptorDataBuilder.MAX_DISTANCE, routesForVertex, buildMatrix(1000));
+        for (Vertex destination : stops) {
+            assertEquals(searched[destination.getIndex()].keySet(),
+                    fromMatrix[destination.getIndex()].keySet());
+        }
+        // the matrix only has the transfers shorter than 1km
+        assertTrue(graph.getService(StopTransferMatrix.class).getTransfers(TraverseMode.WALK)
+                .size() < stops.size() * (stops.size() - 1));
+    }
+
+    public void testTransferMatrixIsAPrerequisite() {
+        RaptorDataBuilder builder = new RaptorDataBuilder();
+        assertFalse(builder.getPrerequisites().contains("transferMatrix"));
+        builder.setUseTransferMatrix(true);
+        assertTrue(builder.getPrerequisites().contains("transferMatrix"));
+    }
+}
@@ -28,10 +28,13 @@ import org.opentripplanner.graph_builder.impl.GtfsGraphBuilderImpl;
 import org.opentripplanner.graph_builder.model.GtfsBundle;
 import org.opentripplanner.graph_builder.model.GtfsBundles;
 import org.opentripplanner.graph_builder.services.GraphBuilderWithGtfsDao;
+import org.opentripplanner.routing.core.ServiceDay;
 import org.opentripplanner.routing.edgetype.PreAlightEdge;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.services.TransitIndexService;
+import org.opentripplanner.routing.transit_index.DepartureBoardIndex;
+import org.opentripplanner.routing.transit_index.DepartureBoardIndex.BoardTime;
 import org.opentripplanner.routing.transit_index.RouteVariant;
 
 public class TransitIndexBuilderTest extends TestCase {
@@ -78,4 +81,44 @@ public class TransitIndexBuilderTest extends TestCase {
 		assertEquals(null, directionsForRoute.iterator().next());
 
 	}
+
+	public void testDepartureBoardIndex() throws IOException {
+		Graph graph = new Graph();
+
+		GtfsBundle bundle = new GtfsBundle();
+		bundle.setPath(new File("../otp-core/src/test/resources/testagency.zip"));
+		GtfsBundles bundles = new GtfsBundles();
+		bundles.setBundles(Arrays.asList(bundle));
+		GtfsGraphBuilderImpl gtfsBuilder = new GtfsGraphBuilderImpl();
+		gtfsBuilder.setGtfsBundles(bundles);
+		List<GraphBuilderWithGtfsDao> builders = new ArrayList<GraphBuilderWithGtfsDao>();
+		builders.add(new TransitIndexBuilder());
+		gtfsBuilder.setGtfsGraphBuilders(builders);
+		gtfsBuilder.buildGraph(graph, new HashMap<Class<?>, Object>());
+
+		TransitIndexService index = graph.getService(TransitIndexService.class);
+		DepartureBoardIndex boards = index.getDepartureBoardIndex();
+		ServiceDay sd = new ServiceDay.UniversalService(graph);
+		List<ServiceDay> serviceDays = Arrays.asList(sd);
+		long start = sd.time(0);
+		long end = sd.time(86400);
+
+		AgencyAndId stop = new AgencyAndId("agency", "A");
+		List<BoardTime> departures = boards.getDepartures(stop, start, end, serviceDays, null);
+		assertFalse(departures.isEmpty());
+		for (int i = 0; i < departures.size(); i++) {
+			assertTrue(departures.get(i).time >= start && departures.get(i).time <= end);
+			if (i > 0)
+				assertTrue(departures.get(i - 1).time <= departures.get(i).time);
+		}
+
+		// a narrower interval returns the departures within it
+		long middle = departures.get(departures.size() / 2).time;
+		List<BoardTime> later = boards.getDepartures(stop, middle, end, serviceDays, null);
+		assertEquals(middle, later.get(0).time);
+		assertTrue(later.size() >= departures.size() - departures.size() / 2);
+
+		assertTrue(boards.getDepartures(new AgencyAndId("agency", "none"), start, end,
+				serviceDays, null).isEmpty());
+	}
 }
@@ -0,0 +1,91 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.gtfs;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.onebusaway.gtfs.impl.GtfsRelationalDaoImpl;
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.Stop;
+import org.onebusaway.gtfs.model.StopTime;
+import org.onebusaway.gtfs.model.Trip;
+
+public class TestExternalStopTimeSorter extends TestCase {
+
+    public void testSortsByTripAndSequence() throws Exception {
+        GtfsRelationalDaoImpl dao = new GtfsRelationalDaoImpl();
+        Trip a = trip(dao, "a");
+        Trip b = trip(dao, "b");
+        Stop s1 = stop(dao, "1");
+        Stop s2 = stop(dao, "2");
+        Stop s3 = stop(dao, "3");
+
+        // three stop times per run, so that the trips are split across runs
+        ExternalStopTimeSorter sorter = new ExternalStopTimeSorter(null, 3);
+        sorter.add(stopTime(b, s2, 2, 200));
+        sorter.add(stopTime(a, s3, 3, 300));
+        sorter.add(stopTime(a, s1, 1, 100));
+        sorter.add(stopTime(b, s1, 1, 100));
+        sorter.add(stopTime(a, s2, 2, -999)); // -999 is a missing time
+        sorter.finish(dao);
+        try {
+            List<StopTime> first = sorter.nextTrip();
+            assertEquals(3, first.size());
+            assertSame(a, first.get(0).getTrip());
+            assertSame(s1, first.get(0).getStop());
+            assertEquals(100, first.get(0).getDepartureTime());
+            assertSame(s2, first.get(1).getStop());
+            assertFalse(first.get(1).isDepartureTimeSet());
+            assertEquals("headsign", first.get(1).getStopHeadsign());
+            assertSame(s3, first.get(2).getStop());
+
+            List<StopTime> second = sorter.nextTrip();
+            assertEquals(2, second.size());
+            assertSame(b, second.get(0).getTrip());
+            assertEquals(1, second.get(0).getStopSequence());
+            assertEquals(2, second.get(1).getStopSequence());
+
+            assertNull(sorter.nextTrip());
+        } finally {
+            sorter.close();
+        }
+    }
+
+    private Trip trip(GtfsRelationalDaoImpl dao, String id) {
+        Trip trip = new Trip();
+        trip.setId(new AgencyAndId("agency", id));
+        dao.saveEntity(trip);
+        return trip;
+    }
+
+    private Stop stop(GtfsRelationalDaoImpl dao, String id) {
+        Stop stop = new Stop();
+        stop.setId(new AgencyAndId("agency", id));
+        dao.saveEntity(stop);
+        return stop;
+    }
+
+    private StopTime stopTime(Trip trip, Stop stop, int sequence, int time) {
+        StopTime st = new StopTime();
+        st.setTrip(trip);
+        st.setStop(stop);
+        st.setStopSequence(sequence);
+        st.setArrivalTime(time);
+        st.setDepartureTime(time);
+        st.setStopHeadsign("headsign");
+        return st;
+    }
+}
@@ -0,0 +1,86 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.jsonp;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+public class TestJsonpCallbackFilter extends TestCase {
+
+    private static final String BODY = "{\"plan\":{}}";
+
+    /** Stands in for the servlet, which compresses its response when the client accepts gzip. */
+    private static class GzipChain implements FilterChain {
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response)
+                throws IOException, ServletException {
+            String acceptEncoding = ((HttpServletRequest) request).getHeader("Accept-Encoding");
+            OutputStream out = response.getOutputStream();
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                ((HttpServletResponse) response).setHeader("Content-Encoding", "gzip");
+                out = new GZIPOutputStream(out);
+            }
+            out.write(BODY.getBytes("UTF-8"));
+            out.close();
+        }
+    }
+
+    public void testGzipAccepted() throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getParameterMap()).thenReturn(
+                Collections.singletonMap("callback", new String[] { "cb" }));
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new FilterServletOutputStream(out));
+
+        new JsonpCallbackFilter().doFilter(request, response, new GzipChain());
+
+        assertEquals("cb(" + BODY + ");", out.toString("UTF-8"));
+        verify(response, never()).setHeader("Content-Encoding", "gzip");
+    }
+
+    public void testNoCallback() throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getParameterMap()).thenReturn(Collections.emptyMap());
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new FilterServletOutputStream(out));
+
+        new JsonpCallbackFilter().doFilter(request, response, new GzipChain());
+
+        // plain JSON requests are still compressed
+        verify(response).setHeader("Content-Encoding", "gzip");
+        assertFalse(out.toString("UTF-8").contains(BODY));
+    }
+}
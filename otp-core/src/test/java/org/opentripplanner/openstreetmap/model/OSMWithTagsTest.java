@@ -28,6 +28,43 @@ public class OSMWithTagsTest {
         assertEquals("bar", o.getTag("FOO"));
     }
     
+    @Test
+    public void testReplaceTag() {
+        OSMWithTags o = new OSMWithTags();
+        assertFalse(o.hasTags());
+        assertNull(o.getTags());
+
+        o.addTag("foo", "bar");
+        o.addTag("FOO", "baz");
+        o.addTag("highway", "residential");
+        assertTrue(o.hasTags());
+        assertEquals("baz", o.getTag("foo"));
+        assertEquals(2, o.getTags().size());
+    }
+
+    @Test
+    public void testDictionary() {
+        OSMTagDictionary dictionary = new OSMTagDictionary();
+        String key = dictionary.getKey(new String("Surface"));
+        // keys are interned, so they are the same instances as the literals
+        assertSame("surface", key);
+        assertSame(key, dictionary.getKey(new String("surface")));
+        assertEquals(2, dictionary.size());
+
+        // every value is kept once
+        String value = dictionary.getValue(new String("cobblestone"));
+        assertSame(value, dictionary.getValue(new String("cobblestone")));
+        String name = new String("Main Street");
+        assertSame(name, dictionary.getValue(name));
+        assertSame(name, dictionary.getValue(new String("Main Street")));
+        assertEquals(4, dictionary.size());
+
+        OSMWithTags o = new OSMWithTags();
+        o.addTag(key, value);
+        assertSame(key, o.getTags().keySet().iterator().next());
+        assertEquals("cobblestone", o.getTag("SURFACE"));
+    }
+
     @Test
     public void testIsFalse() {
         assertTrue(OSMWithTags.isFalse("no"));
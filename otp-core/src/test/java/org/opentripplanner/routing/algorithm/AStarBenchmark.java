@@ -0,0 +1,76 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.algorithm;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.util.TestUtils;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Measures the bytes allocated per state and the states created per second by transit searches on
+ * the Portland test graph. This is not a unit test: run its main method, on a HotSpot JVM which
+ * can report per-thread allocations.
+ */
+public class AStarBenchmark {
+
+    private static final int TRIALS = 100;
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        Graph graph = ConstantsForTests.getInstance().getPortlandGraph();
+        RoutingRequest options = new RoutingRequest();
+        options.dateTime = TestUtils.dateInSeconds("America/Los_Angeles", 2009, 11, 1, 12, 34, 25);
+
+        Random rng = new Random(0);
+        List<String> origins = new ArrayList<String>();
+        while (origins.size() < TRIALS) {
+            String label = "TriMet_" + rng.nextInt(10000);
+            if (graph.getVertex(label) != null) {
+                origins.add(label);
+            }
+        }
+
+        GenericAStar aStar = new GenericAStar();
+        // the first round warms up the JIT
+        for (int round = 0; round <= ROUNDS; round++) {
+            long states = 0;
+            long bytesBefore = threads.getThreadAllocatedBytes(thread);
+            long startNanos = System.nanoTime();
+            for (String origin : origins) {
+                RoutingRequest request = options.clone();
+                request.setRoutingContext(graph, origin, "TriMet_10579");
+                aStar.getShortestPathTree(request);
+                states += request.rctx.counters.getStatesCreated().get();
+            }
+            long nanos = System.nanoTime() - startNanos;
+            long bytes = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+            if (round > 0) {
+                System.out.printf("round %d: %d states, %d bytes per state, %d states per s%n",
+                        round, states, bytes / states, states * 1000000000L / nanos);
+            }
+        }
+    }
+}
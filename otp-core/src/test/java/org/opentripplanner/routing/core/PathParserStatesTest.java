@@ -0,0 +1,94 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.core;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.routing.algorithm.GenericAStar;
+import org.opentripplanner.routing.edgetype.PlainStreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.pathparser.BasicPathParser;
+import org.opentripplanner.routing.pathparser.PathParser;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+public class PathParserStatesTest {
+
+    private Graph graph;
+
+    private StreetVertex a, c;
+
+    @Before
+    public void before() {
+        graph = new Graph();
+        a = new IntersectionVertex(graph, "a", 0.0, 0.0);
+        StreetVertex b = new IntersectionVertex(graph, "b", 0.001, 0.0);
+        c = new IntersectionVertex(graph, "c", 0.002, 0.0);
+        edge(a, b);
+        edge(b, c);
+    }
+
+    @Test
+    public void testCanPackParserStates() {
+        PathParser[] parsers = new PathParser[State.MAX_PACKED_PARSERS];
+        Arrays.fill(parsers, new BasicPathParser());
+        assertTrue(State.canPackParserStates(new PathParser[0]));
+        assertTrue(State.canPackParserStates(parsers));
+        assertFalse(State.canPackParserStates(Arrays.copyOf(parsers, parsers.length + 1)));
+    }
+
+    @Test
+    public void testPackedStatesMatchUnpackedStates() {
+        GraphPath packed = route(1);
+        GraphPath unpacked = route(State.MAX_PACKED_PARSERS + 1);
+        assertNull(packed.states.getLast().stateData.pathParserStates);
+        assertNotNull(unpacked.states.getLast().stateData.pathParserStates);
+        assertEquals(packed.states.size(), unpacked.states.size());
+        for (int i = 0; i < packed.states.size(); i++) {
+            int expected = unpacked.states.get(i).getPathParserState(0);
+            assertEquals(expected, packed.states.get(i).getPathParserState(0));
+            for (int p = 1; p <= State.MAX_PACKED_PARSERS; p++) {
+                assertEquals(expected, unpacked.states.get(i).getPathParserState(p));
+            }
+        }
+        assertTrue(packed.states.getLast().allPathParsersAccept());
+    }
+
+    private GraphPath route(int nParsers) {
+        RoutingRequest options = new RoutingRequest(TraverseMode.WALK);
+        options.setRoutingContext(graph, a, c);
+        options.rctx.pathParsers = new PathParser[nParsers];
+        Arrays.fill(options.rctx.pathParsers, new BasicPathParser());
+        GraphPath path = new GenericAStar().getShortestPathTree(options).getPath(c, false);
+        assertNotNull(path);
+        return path;
+    }
+
+    private void edge(StreetVertex from, StreetVertex to) {
+        Coordinate[] coords = new Coordinate[] { from.getCoordinate(), to.getCoordinate() };
+        double length = 100;
+        new PlainStreetEdge(from, to, GeometryUtils.getGeometryFactory().createLineString(coords),
+                from.getLabel() + "_" + to.getLabel(), length, StreetTraversalPermission.ALL,
+                false);
+    }
+}
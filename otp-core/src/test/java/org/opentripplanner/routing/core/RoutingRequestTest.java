@@ -3,6 +3,7 @@ package org.opentripplanner.routing.core;
 import static org.junit.Assert.*;
 
 import org.junit.Test;
+import org.onebusaway.gtfs.model.AgencyAndId;
 import org.opentripplanner.common.model.GenericLocation;
 
 public class RoutingRequestTest {
@@ -40,4 +41,40 @@ public class RoutingRequestTest {
         assertTrue(req.intermediatesEffectivelyOrdered());        
     }
 
+    @Test
+    public void testCloneCopiesBannedTripsOnWrite() {
+        RoutingRequest req = new RoutingRequest();
+        req.banTrip(new AgencyAndId("A", "1"));
+        RoutingRequest clone = req.clone();
+        assertSame(req.bannedTrips, clone.bannedTrips);
+
+        clone.banTrip(new AgencyAndId("A", "2"));
+        assertEquals(1, req.bannedTrips.size());
+        assertEquals(2, clone.bannedTrips.size());
+
+        req.banTrip(new AgencyAndId("A", "3"));
+        assertEquals(2, req.bannedTrips.size());
+        assertFalse(req.bannedTrips.containsKey(new AgencyAndId("A", "2")));
+    }
+
+    @Test
+    public void testCloneCopiesBikeWalkingOptionsOnWrite() {
+        RoutingRequest req = new RoutingRequest(TraverseMode.BICYCLE);
+        RoutingRequest clone = req.clone();
+        assertSame(req.bikeWalkingOptions, clone.bikeWalkingOptions);
+
+        clone.setArriveBy(true);
+        clone.setMaxWalkDistance(1234);
+        assertNotSame(req.bikeWalkingOptions, clone.bikeWalkingOptions);
+        assertFalse(req.bikeWalkingOptions.isArriveBy());
+        assertTrue(clone.bikeWalkingOptions.isArriveBy());
+        assertEquals(1234, clone.bikeWalkingOptions.maxWalkDistance, 0.0);
+        assertTrue(req.bikeWalkingOptions.maxWalkDistance != 1234);
+
+        RoutingRequest walk = new RoutingRequest(TraverseMode.WALK);
+        assertSame(walk, walk.bikeWalkingOptions);
+        RoutingRequest walkClone = walk.clone();
+        assertSame(walkClone, walkClone.bikeWalkingOptions);
+    }
+
 }
@@ -0,0 +1,68 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.core;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.error.VertexNotFoundException;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.services.StreetVertexIndexService;
+import org.opentripplanner.util.monitoring.RequestTrace;
+import org.opentripplanner.util.monitoring.RequestTrace.Span;
+
+public class TestRoutingContextTrace extends TestCase {
+
+    public void testSpansEndedOnVertexNotFound() {
+        Graph graph = new Graph();
+        graph.streetIndex = mock(StreetVertexIndexService.class);
+        when(graph.streetIndex.getVertexForLocation(any(GenericLocation.class),
+                any(RoutingRequest.class))).thenThrow(
+                new VertexNotFoundException(Arrays.asList("to")));
+        RoutingRequest options = new RoutingRequest();
+        options.setFrom(new GenericLocation(45.52, -122.68));
+        options.setTo(new GenericLocation(45.53, -122.67));
+
+        RequestTrace trace = new RequestTrace("plan");
+        RequestTrace.setCurrent(trace);
+        try {
+            try {
+                new RoutingContext(options, graph);
+                fail("expected a VertexNotFoundException");
+            } catch (VertexNotFoundException e) {
+                // expected
+            }
+            // the spans of the routing context are closed, so the next span is not nested in them
+            Span render = trace.start("render");
+            render.end();
+            assertEquals("plan;render", render.getPath());
+            List<String> ended = new ArrayList<String>();
+            for (Span span : trace.getSpans()) {
+                ended.add(span.getName());
+            }
+            assertTrue(ended.contains("linkVertices"));
+            assertTrue(ended.contains("routingContext"));
+        } finally {
+            RequestTrace.setCurrent(null);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.core;
+
+import junit.framework.TestCase;
+
+public class TestSearchDeadline extends TestCase {
+
+    public void testLimitTo() throws Exception {
+        SearchDeadline deadline = new SearchDeadline();
+        assertSame(deadline, deadline.limitTo(0));
+        assertSame(deadline, deadline.limitTo(-1));
+        SearchDeadline child = deadline.limitTo(0.01);
+        assertFalse(child.isExpired());
+        Thread.sleep(20);
+        assertTrue(child.isExpired());
+        assertFalse(deadline.isExpired());
+    }
+
+    public void testCancel() {
+        SearchDeadline deadline = new SearchDeadline(60);
+        SearchDeadline child = deadline.limitTo(60);
+        deadline.cancel();
+        assertTrue(deadline.isExpired());
+        assertTrue(child.isExpired());
+        assertTrue(child.isCancelled());
+    }
+
+    public void testCurrent() {
+        SearchDeadline deadline = new SearchDeadline();
+        SearchDeadline.setCurrent(deadline);
+        try {
+            assertSame(deadline, SearchDeadline.getCurrent());
+        } finally {
+            SearchDeadline.setCurrent(null);
+        }
+        assertNotSame(deadline, SearchDeadline.getCurrent());
+    }
+}
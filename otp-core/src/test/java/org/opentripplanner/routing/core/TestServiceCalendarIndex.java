@@ -0,0 +1,67 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.core;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+
+import org.onebusaway.gtfs.impl.calendar.CalendarServiceImpl;
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.calendar.CalendarServiceData;
+import org.onebusaway.gtfs.model.calendar.ServiceDate;
+
+public class TestServiceCalendarIndex extends TestCase {
+
+    public void testServicesRunning() {
+        AgencyAndId weekday = new AgencyAndId("A", "weekday");
+        AgencyAndId sunday = new AgencyAndId("A", "sunday");
+        AgencyAndId unnumbered = new AgencyAndId("A", "unnumbered");
+        CalendarServiceData data = new CalendarServiceData();
+        data.putServiceDatesForServiceId(weekday, Arrays.asList(new ServiceDate(2013, 12, 30),
+                new ServiceDate(2013, 12, 31), new ServiceDate(2014, 1, 2)));
+        data.putServiceDatesForServiceId(sunday, Arrays.asList(new ServiceDate(2014, 1, 5)));
+        data.putServiceDatesForServiceId(unnumbered, Arrays.asList(new ServiceDate(2014, 1, 1)));
+        HashMap<AgencyAndId, Integer> numbers = new HashMap<AgencyAndId, Integer>();
+        numbers.put(weekday, 0);
+        numbers.put(sunday, 1);
+        ServiceCalendarIndex index = new ServiceCalendarIndex(new CalendarServiceImpl(data),
+                new ServiceIdToNumberService(numbers));
+
+        assertEquals(bits(0), index.getServicesRunning(new ServiceDate(2013, 12, 31)));
+        assertEquals(bits(0), index.getServicesRunning(new ServiceDate(2014, 1, 2)));
+        assertEquals(bits(), index.getServicesRunning(new ServiceDate(2014, 1, 1)));
+        assertEquals(bits(1), index.getServicesRunning(new ServiceDate(2014, 1, 5)));
+        // outside the calendar
+        assertEquals(bits(), index.getServicesRunning(new ServiceDate(2013, 12, 29)));
+        assertEquals(bits(), index.getServicesRunning(new ServiceDate(2015, 1, 5)));
+    }
+
+    public void testDayNumber() {
+        assertEquals(0, ServiceCalendarIndex.getDayNumber(new ServiceDate(1970, 1, 1)));
+        assertEquals(1, ServiceCalendarIndex.getDayNumber(new ServiceDate(2014, 3, 31))
+                - ServiceCalendarIndex.getDayNumber(new ServiceDate(2014, 3, 30)));
+    }
+
+    private static BitSet bits(int... numbers) {
+        BitSet bits = new BitSet();
+        for (int n : numbers) {
+            bits.set(n);
+        }
+        return bits;
+    }
+}
@@ -2,6 +2,11 @@ package org.opentripplanner.routing.edgetype;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.opentripplanner.common.geometry.GeometryUtils;
@@ -175,6 +180,41 @@ public class PlainStreetEdgeTest {
      * Private Methods
      ****/
 
+    @Test
+    public void testGeometryDecodedOnce() {
+        PlainStreetEdge e1 = edge(v1, v2, 1.0, StreetTraversalPermission.ALL);
+        LineString geometry = e1.getGeometry();
+        assertEquals(2, geometry.getNumPoints());
+        assertSame(geometry, e1.getGeometry());
+    }
+
+    @Test
+    public void testSharedGeometry() throws Exception {
+        Coordinate[] coords = { v0.getCoordinate(), new Coordinate(0.5, 1.0),
+                v1.getCoordinate() };
+        LineString geometry = GeometryUtils.getGeometryFactory().createLineString(coords);
+        PlainStreetEdge forward = new PlainStreetEdge(v0, v1, geometry, "maple", 100,
+                StreetTraversalPermission.ALL, false);
+        PlainStreetEdge back = new PlainStreetEdge(v1, v0, (LineString) geometry.reverse(),
+                "maple", 100, StreetTraversalPermission.ALL, true);
+        assertNotSame(forward.getCompactGeometry(), back.getCompactGeometry());
+        back.shareGeometry(forward);
+        assertSame(forward.getCompactGeometry(), back.getCompactGeometry());
+        assertTrue(back.getGeometry().equalsExact(geometry.reverse(), 1e-6));
+
+        // the array is still shared after a serialization round trip
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(new PlainStreetEdge[] { forward, back });
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+                bytes.toByteArray()));
+        PlainStreetEdge[] edges = (PlainStreetEdge[]) in.readObject();
+        assertSame(edges[0].getCompactGeometry(), edges[1].getCompactGeometry());
+        assertTrue(edges[0].getGeometry().equalsExact(geometry, 1e-6));
+        assertTrue(edges[1].getGeometry().equalsExact(geometry.reverse(), 1e-6));
+    }
+
     private IntersectionVertex vertex(String label, double lat, double lon) {
         IntersectionVertex v = new IntersectionVertex(_graph, label, lat, lon);
         return v;
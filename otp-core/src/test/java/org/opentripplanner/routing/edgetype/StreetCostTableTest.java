@@ -0,0 +1,96 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.edgetype;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.opentripplanner.common.geometry.PackedCoordinateSequence;
+import org.opentripplanner.routing.core.OptimizeType;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+
+public class StreetCostTableTest extends TestCase {
+
+    private PlainStreetEdge hilly;
+
+    private PlainStreetEdge greenway;
+
+    public void setUp() {
+        Coordinate c1 = new Coordinate(-122.575033, 45.456773);
+        Coordinate c2 = new Coordinate(-122.576668, 45.451426);
+
+        StreetVertex v1 = new IntersectionVertex(null, "v1", c1.x, c1.y, null);
+        StreetVertex v2 = new IntersectionVertex(null, "v2", c2.x, c2.y, null);
+
+        GeometryFactory factory = new GeometryFactory();
+        LineString geometry = factory.createLineString(new Coordinate[] { c1, c2 });
+
+        double length = 650.0;
+        hilly = new PlainStreetEdge(v1, v2, geometry, "Hill Street", length,
+                StreetTraversalPermission.ALL, false);
+        hilly.setBicycleSafetyEffectiveLength(length * 0.74);
+        Coordinate[] profile = new Coordinate[] { new Coordinate(0, 0),
+                new Coordinate(length / 2, length / 20.0), new Coordinate(length, 0) };
+        hilly.setElevationProfile(new PackedCoordinateSequence.Double(profile), false);
+
+        greenway = new PlainStreetEdge(v2, v1, geometry, "Green Way", length,
+                StreetTraversalPermission.ALL, true);
+        greenway.setBicycleSafetyEffectiveLength(length * 0.05);
+    }
+
+    public void testTableMatchesOnTheFlyCosts() {
+        for (OptimizeType optimize : OptimizeType.values()) {
+            RoutingRequest options = new RoutingRequest(TraverseMode.BICYCLE);
+            options.optimize = optimize;
+            options.setTriangleSafetyFactor(0.5);
+            options.setTriangleSlopeFactor(0.3);
+            options.setTriangleTimeFactor(0.2);
+            assertSameCosts(options);
+        }
+        assertSameCosts(new RoutingRequest(TraverseMode.WALK));
+        RoutingRequest wheelchair = new RoutingRequest(TraverseMode.WALK);
+        wheelchair.wheelchairAccessible = true;
+        wheelchair.maxSlope = 1.0;
+        assertSameCosts(wheelchair);
+    }
+
+    public void testModifiedEdgeLeavesTable() {
+        new StreetCostTable(Arrays.asList(hilly, greenway));
+        assertTrue(hilly.hasCostTableRow());
+        hilly.setBicycleSafetyEffectiveLength(1.0);
+        assertFalse(hilly.hasCostTableRow());
+        assertTrue(greenway.hasCostTableRow());
+    }
+
+    private void assertSameCosts(RoutingRequest options) {
+        for (PlainStreetEdge edge : Arrays.asList(hilly, greenway)) {
+            edge.setCostTableRow(null, 0);
+            State onTheFly = edge.traverse(new State(edge.getFromVertex(), options));
+            StreetCostTable table = new StreetCostTable(Arrays.asList(hilly, greenway));
+            assertEquals(2, table.size());
+            State tabled = edge.traverse(new State(edge.getFromVertex(), options));
+            assertEquals(onTheFly.getWeight(), tabled.getWeight());
+            assertEquals(onTheFly.getElapsedTimeSeconds(), tabled.getElapsedTimeSeconds());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.edgetype.loader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.Stop;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.edgetype.PlainStreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.routing.vertextype.TransitStop;
+
+public class TestNetworkLinker extends TestCase {
+
+    /* stops along the streets, between and at intersections, several of them on the same street */
+    private static final double[][] STOPS = { { -73.9995, 40.0001 }, { -73.9985, 40.0001 },
+            { -73.9961, 40.0031 }, { -73.994, 40.004 }, { -73.9971, 40.0052 },
+            { -73.9999, 40.0038 }, { -73.9979, 40.0019 }, { -73.9953, 40.0059 } };
+
+    public void testBatchLookupLinksLikeSequentialLookup() {
+        List<String> sequential = link(1);
+        List<String> batch = link(4);
+        assertTrue(sequential.size() > 0);
+        assertEquals(sequential, batch);
+    }
+
+    /* link the stops of a new fixture graph on the given number of threads */
+    private List<String> link(int threads) {
+        Graph graph = makeGraph();
+        NetworkLinker linker = new NetworkLinker(graph);
+        linker.setThreads(threads);
+        linker.createLinkage();
+
+        List<String> edges = new ArrayList<String>();
+        for (Vertex v : graph.getVertices()) {
+            for (Edge e : v.getOutgoing()) {
+                edges.add(e.getClass().getSimpleName() + " " + e.getFromVertex().getLabel()
+                        + " -> " + e.getToVertex().getLabel() + " " + e.getGeometry());
+            }
+        }
+        Collections.sort(edges);
+        return edges;
+    }
+
+    /* a 4x4 grid of two-way streets about 170m apart */
+    private Graph makeGraph() {
+        Graph graph = new Graph();
+        IntersectionVertex[][] intersections = new IntersectionVertex[4][4];
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                intersections[i][j] = new IntersectionVertex(graph, "corner " + i + " " + j,
+                        -74.0 + i * 0.002, 40.0 + j * 0.002);
+            }
+        }
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                if (i < 3) {
+                    makeStreet(intersections[i][j], intersections[i + 1][j], "street " + j);
+                }
+                if (j < 3) {
+                    makeStreet(intersections[i][j], intersections[i][j + 1], "avenue " + i);
+                }
+            }
+        }
+        for (int i = 0; i < STOPS.length; i++) {
+            Stop stop = new Stop();
+            stop.setId(new AgencyAndId("agency", "stop " + i));
+            stop.setName("stop " + i);
+            stop.setLon(STOPS[i][0]);
+            stop.setLat(STOPS[i][1]);
+            new TransitStop(graph, stop).addMode(TraverseMode.BUS);
+        }
+        graph.rebuildVertexAndEdgeIndices();
+        return graph;
+    }
+
+    private void makeStreet(IntersectionVertex from, IntersectionVertex to, String name) {
+        double length = 170;
+        new PlainStreetEdge(from, to, GeometryUtils.makeLineString(from.getX(), from.getY(),
+                to.getX(), to.getY()), name, length, StreetTraversalPermission.ALL, false);
+        new PlainStreetEdge(to, from, GeometryUtils.makeLineString(to.getX(), to.getY(),
+                from.getX(), from.getY()), name, length, StreetTraversalPermission.ALL, true);
+    }
+}
@@ -16,9 +16,12 @@ package org.opentripplanner.routing.edgetype.loader;
 import static org.opentripplanner.common.IterableLibrary.filter;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 
@@ -657,4 +660,28 @@ public class TestPatternHopFactory extends TestCase {
         assertNotNull(path);
         assertEquals(TestUtils.dateInSeconds("America/New_York", 2009, 8, 1, 16, 0, 34), path.getEndTime());
     }
+
+    public void testParallelShapeMatching() throws Exception {
+        List<String> sequential = getHopGeometries(1);
+        List<String> parallel = getHopGeometries(4);
+        assertFalse(sequential.isEmpty());
+        assertEquals(sequential, parallel);
+    }
+
+    /* the geometries of the hops of a feed with shapes, matched on the given number of threads */
+    private List<String> getHopGeometries(int threads) throws Exception {
+        GtfsContext context = GtfsLibrary.readGtfs(new File(ConstantsForTests.CALTRAIN_GTFS));
+        Graph graph = new Graph();
+        GTFSPatternHopFactory factory = new GTFSPatternHopFactory(context);
+        factory.setThreads(threads);
+        factory.run(graph);
+        List<String> geometries = new ArrayList<String>();
+        for (PatternHop hop : filter(graph.getEdges(), PatternHop.class)) {
+            assertNotNull(hop.getGeometry());
+            geometries.add(hop.getFromVertex().getLabel() + " " + hop.getToVertex().getLabel()
+                    + " " + hop.getGeometry());
+        }
+        Collections.sort(geometries);
+        return geometries;
+    }
 }
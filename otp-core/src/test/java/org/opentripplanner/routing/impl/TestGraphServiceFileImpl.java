@@ -0,0 +1,90 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.opentripplanner.routing.error.GraphNotFoundException;
+import org.opentripplanner.routing.graph.Graph;
+
+public class TestGraphServiceFileImpl extends TestCase {
+
+    private Graph oldGraph;
+
+    private Graph newGraph;
+
+    /** The graph served under the router id while the new graph was loaded and warmed up. */
+    private List<Graph> served;
+
+    private GraphServiceFileImpl service;
+
+    @Override
+    protected void setUp() {
+        oldGraph = new Graph();
+        newGraph = new Graph();
+        served = new ArrayList<Graph>();
+        service = new GraphServiceFileImpl() {
+            @Override
+            protected Graph loadGraph(String routerId) {
+                served.add(getServedGraph());
+                return newGraph;
+            }
+        };
+        service.setWarmer(new GraphWarmer() {
+            @Override
+            public int warm(Graph graph, String... routerIds) {
+                served.add(getServedGraph());
+                return 0;
+            }
+        });
+        service.registerGraph("a", oldGraph);
+    }
+
+    private Graph getServedGraph() {
+        try {
+            return service.getGraph("a");
+        } catch (GraphNotFoundException e) {
+            return null;
+        }
+    }
+
+    public void testOldGraphServedUntilSwap() {
+        assertTrue(service.registerGraph("a", false));
+        // loaded, then warmed up, both while the old graph was served
+        assertEquals(2, served.size());
+        assertSame(oldGraph, served.get(0));
+        assertSame(oldGraph, served.get(1));
+        assertSame(newGraph, service.getGraph("a"));
+    }
+
+    public void testBackgroundSwap() throws Exception {
+        assertTrue(service.registerGraphInBackground("a").get());
+        assertEquals(2, served.size());
+        assertSame(oldGraph, served.get(0));
+        assertSame(oldGraph, served.get(1));
+        assertSame(newGraph, service.getGraph("a"));
+    }
+
+    public void testPreEvict() {
+        assertTrue(service.registerGraph("a", true));
+        // the router has no graph while the new one is loaded, and it is not warmed up
+        assertEquals(1, served.size());
+        assertNull(served.get(0));
+        assertSame(newGraph, service.getGraph("a"));
+    }
+}
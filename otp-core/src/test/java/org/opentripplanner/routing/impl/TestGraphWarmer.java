@@ -0,0 +1,60 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.impl;
+
+import junit.framework.TestCase;
+
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+
+public class TestGraphWarmer extends TestCase {
+
+    public void testKeepsRecentRequestsOfEachRouter() {
+        GraphWarmer warmer = new GraphWarmer();
+        warmer.setMaxRequests(2);
+        for (int i = 0; i < 3; i++) {
+            RoutingRequest request = new RoutingRequest();
+            request.routerId = "a";
+            request.dateTime = i;
+            warmer.record(request);
+        }
+        warmer.record(new RoutingRequest());
+        assertEquals(2, warmer.getRequests("a").size());
+        assertEquals(1, warmer.getRequests("a").get(0).dateTime);
+        assertEquals(1, warmer.getRequests("").size());
+        assertTrue(warmer.getRequests("b").isEmpty());
+
+        warmer.clear();
+        assertTrue(warmer.getRequests("a").isEmpty());
+    }
+
+    public void testDisabled() {
+        GraphWarmer warmer = new GraphWarmer();
+        warmer.setEnabled(false);
+        warmer.record(new RoutingRequest());
+        assertTrue(warmer.getRequests("").isEmpty());
+    }
+
+    public void testSkipsRequestsWhichFail() {
+        GraphWarmer warmer = new GraphWarmer();
+        RoutingRequest request = new RoutingRequest();
+        request.setFromString("1.0,1.0");
+        request.setToString("2.0,2.0");
+        warmer.record(request);
+        // the empty graph has no vertex near the origin
+        assertEquals(0, warmer.warm(new Graph(), ""));
+        assertNull(warmer.getRequests("").get(0).rctx);
+    }
+}
@@ -0,0 +1,91 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.impl;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.routing.algorithm.GenericAStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.util.TestUtils;
+
+public class TestRetryingPathServiceImpl extends TestCase {
+
+    private Graph graph;
+
+    private long dateTime;
+
+    public void setUp() {
+        graph = ConstantsForTests.getInstance().getPortlandGraph();
+        dateTime = TestUtils.dateInSeconds("America/Los_Angeles", 2009, 11, 1, 12, 34, 25);
+    }
+
+    private RetryingPathServiceImpl makeService(int parallelism) {
+        RetryingPathServiceImpl service = new RetryingPathServiceImpl();
+        service.setSptService(new GenericAStar());
+        service.setSearchParallelism(parallelism);
+        service.setDepartureTimeAlternatives(3);
+        service.setStreetOnlyAlternative(true);
+        return service;
+    }
+
+    private RoutingRequest makeRequest() {
+        RoutingRequest options = new RoutingRequest();
+        options.dateTime = dateTime;
+        options.setRoutingContext(graph, "TriMet_8371", "TriMet_8374");
+        return options;
+    }
+
+    public void testAlternatives() {
+        RoutingRequest options = makeRequest();
+        List<RoutingRequest> alternatives = makeService(1).makeAlternatives(options);
+        assertEquals(4, alternatives.size());
+        for (int i = 0; i < 3; i++) {
+            RoutingRequest alternative = alternatives.get(i);
+            assertEquals(dateTime + (i + 1) * 15 * 60, alternative.dateTime);
+            assertEquals(1, alternative.numItineraries);
+            assertNotSame(options.rctx, alternative.rctx);
+            assertSame(options.rctx.graph, alternative.rctx.graph);
+        }
+        RoutingRequest streetOnly = alternatives.get(3);
+        assertFalse(streetOnly.getModes().isTransit());
+        assertTrue(streetOnly.getModes().contains(TraverseMode.WALK));
+        assertEquals(dateTime, streetOnly.dateTime);
+        // the request itself is left unchanged
+        assertTrue(options.getModes().isTransit());
+        assertEquals(3, options.numItineraries);
+    }
+
+    public void testParallelSearchFindsTheSameItineraries() {
+        List<GraphPath> sequential = makeService(1).getPaths(makeRequest());
+        List<GraphPath> parallel = makeService(4).getPaths(makeRequest());
+        assertNotNull(sequential);
+        assertNotNull(parallel);
+        assertEquals(sequential.size(), parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            GraphPath expected = sequential.get(i);
+            GraphPath actual = parallel.get(i);
+            assertEquals(expected.getStartTime(), actual.getStartTime());
+            assertEquals(expected.getEndTime(), actual.getEndTime());
+            assertEquals(expected.getTrips(), actual.getTrips());
+            assertEquals(expected.getWeight(), actual.getWeight(), 0.001);
+        }
+    }
+}
@@ -50,6 +50,7 @@ import org.opentripplanner.routing.patch.AlertPatch;
 import org.opentripplanner.routing.services.TransitIndexService;
 import org.opentripplanner.routing.spt.GraphPath;
 import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.transit_index.DepartureBoardIndex;
 import org.opentripplanner.routing.transit_index.RouteSegment;
 import org.opentripplanner.routing.transit_index.RouteVariant;
 import org.opentripplanner.util.TestUtils;
@@ -183,6 +184,11 @@ public class TestPatch extends TestCase {
                 return 0;
             }
 
+            @Override
+            public DepartureBoardIndex getDepartureBoardIndex() {
+                return null;
+            }
+
             @Override
             public Collection<Stop> getStopsForRoute(AgencyAndId route) {
                 return Collections.emptyList();
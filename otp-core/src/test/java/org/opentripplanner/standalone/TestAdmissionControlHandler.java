@@ -0,0 +1,79 @@
+package org.opentripplanner.standalone;
+
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.opentripplanner.routing.impl.GraphServiceBeanImpl;
+import org.opentripplanner.standalone.AdmissionControlHandler.EndpointClass;
+import org.opentripplanner.util.monitoring.MetricsRegistry;
+
+public class TestAdmissionControlHandler extends TestCase {
+
+    public void testClassify() {
+        assertEquals(EndpointClass.PLAN,
+                AdmissionControlHandler.classify("/otp-rest-servlet/ws/plan"));
+        assertEquals(EndpointClass.PLAN,
+                AdmissionControlHandler.classify("/otp-rest-servlet/plan/first"));
+        assertEquals(EndpointClass.TRANSIT_INDEX,
+                AdmissionControlHandler.classify("/otp-rest-servlet/ws/transit/routes"));
+        assertEquals(EndpointClass.ANALYST,
+                AdmissionControlHandler.classify("/otp-rest-servlet/ws/tile/12/654/1583.png"));
+        assertEquals(EndpointClass.ANALYST,
+                AdmissionControlHandler.classify("/otp-rest-servlet/ws/legend.png"));
+        assertNull(AdmissionControlHandler.classify("/otp-rest-servlet/ws/metadata"));
+        assertNull(AdmissionControlHandler.classify("/otp-rest-servlet/ws/planner"));
+        assertNull(AdmissionControlHandler.classify("/index.html"));
+    }
+
+    public void testGetRouterId() {
+        assertEquals("", AdmissionControlHandler.getRouterId(null));
+        assertEquals("", AdmissionControlHandler.getRouterId("fromPlace=1,2&toPlace=3,4"));
+        assertEquals("new york",
+                AdmissionControlHandler.getRouterId("fromPlace=1,2&routerId=new+york"));
+    }
+
+    public void testRouterPermits() {
+        AdmissionControlHandler handler = makeHandler(new MetricsRegistry());
+        try {
+            assertNotNull(handler.getRouterPermits(""));
+            assertNotNull(handler.getRouterPermits("default"));
+            assertSame(handler.getRouterPermits("default"), handler.getRouterPermits("default"));
+            assertNull(handler.getRouterPermits("made-up"));
+        } finally {
+            handler.destroy();
+        }
+    }
+
+    public void testMetrics() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry();
+        AdmissionControlHandler handler = makeHandler(metrics);
+        try {
+            handler.getPool(EndpointClass.PLAN).recordQueueTime(3000000); // 3 ms
+            handler.getPool(EndpointClass.PLAN).recordQueueTime(1000000);
+            handler.getPool(EndpointClass.ANALYST).getRejected().incrementAndGet();
+            StringWriter out = new StringWriter();
+            metrics.write(out);
+            String text = out.toString();
+            assertTrue(text.contains("otp_admission_admitted_total{endpoint=\"plan\"} 2\n"));
+            assertTrue(text.contains("otp_admission_rejected_total{endpoint=\"analyst\"} 1\n"));
+            assertTrue(text.contains("otp_admission_queue_seconds_count{endpoint=\"plan\"} 2\n"));
+            assertTrue(text.contains(
+                    "otp_admission_queue_max_nanoseconds{endpoint=\"plan\"} 3000000\n"));
+        } finally {
+            handler.destroy();
+        }
+    }
+
+    private static AdmissionControlHandler makeHandler(MetricsRegistry metrics) {
+        HttpHandler api = new HttpHandler() {
+            @Override
+            public void service(Request request, Response response) {
+            }
+        };
+        return new AdmissionControlHandler(api, new GraphServiceBeanImpl(), 1, 1, 2, metrics);
+    }
+}
@@ -19,6 +19,8 @@ import java.util.List;
 import org.opentripplanner.util.model.EncodedPolylineBean;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
 
 import junit.framework.TestCase;
 
@@ -35,4 +37,16 @@ public class TestPolylineEncoder extends TestCase {
         assertEquals(3, eplb.getLength());
         assertNull(eplb.getLevels());
     }
+
+    public void testCreateJoinedEncodings() {
+        GeometryFactory gf = new GeometryFactory();
+        List<LineString> geometries = new ArrayList<LineString>();
+        geometries.add(gf.createLineString(new Coordinate[] {
+                new Coordinate(-73.85062, 40.903125), new Coordinate(-73.85136, 40.902261) }));
+        geometries.add(gf.createLineString(new Coordinate[] {
+                new Coordinate(-73.85136, 40.902261), new Coordinate(-73.85151, 40.902066) }));
+        EncodedPolylineBean eplb = PolylineEncoder.createJoinedEncodings(geometries);
+        assertEquals("o{sxFl}vaMjDpCf@\\", eplb.getPoints());
+        assertEquals(3, eplb.getLength());
+    }
 }
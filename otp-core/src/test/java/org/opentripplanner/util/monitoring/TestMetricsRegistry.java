@@ -0,0 +1,67 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.util.monitoring;
+
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+public class TestMetricsRegistry extends TestCase {
+
+    public void testHistogram() {
+        Histogram histogram = new Histogram(new double[] { 0.01, 0.1, 1 });
+        for (int i = 0; i < 90; i++) {
+            histogram.recordNanos(5000000); // 5 ms
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.recordNanos(50000000); // 50 ms
+        }
+        histogram.recordNanos(5000000000L); // 5 s
+        assertEquals(0.01, histogram.getPercentile(0.5));
+        assertEquals(0.1, histogram.getPercentile(0.99));
+        assertEquals(Double.POSITIVE_INFINITY, histogram.getPercentile(1));
+        assertEquals(90 * 0.005 + 9 * 0.05 + 5, histogram.getSum(), 1e-9);
+        assertEquals(0.0, new Histogram().getPercentile(0.5));
+    }
+
+    public void testWrite() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.getCounter("test_total", "A counter.", "service", "a\"b").addAndGet(3);
+        assertSame(registry.getCounter("test_total", "A counter.", "service", "a\"b"),
+                registry.getCounter("test_total", "A counter.", "service", "a\"b"));
+        registry.getGauge("test_bytes", "A gauge.").set(42);
+        Histogram histogram = registry.getHistogram("test_seconds", "A histogram.");
+        histogram.recordNanos(2000000);
+        try {
+            registry.getCounter("test_seconds", "Not a counter.");
+            fail("a histogram is not a counter");
+        } catch (IllegalArgumentException e) {
+        }
+        StringWriter out = new StringWriter();
+        registry.write(out);
+        String text = out.toString();
+        assertTrue(text.contains("# TYPE test_total counter\n"));
+        assertTrue(text.contains("test_total{service=\"a\\\"b\"} 3\n"));
+        assertTrue(text.contains("# TYPE test_bytes gauge\n"));
+        assertTrue(text.contains("test_bytes 42\n"));
+        assertTrue(text.contains("# TYPE test_seconds histogram\n"));
+        assertTrue(text.contains("test_seconds_bucket{le=\"0.001\"} 0\n"));
+        assertTrue(text.contains("test_seconds_bucket{le=\"0.0025\"} 1\n"));
+        assertTrue(text.contains("test_seconds_bucket{le=\"+Inf\"} 1\n"));
+        assertTrue(text.contains("test_seconds_count 1\n"));
+        // sorted by name
+        assertTrue(text.indexOf("test_seconds") < text.indexOf("test_total"));
+    }
+}
@@ -0,0 +1,94 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.util.monitoring;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.opentripplanner.util.monitoring.RequestTrace.Span;
+
+public class TestRequestTracer extends TestCase {
+
+    public void testSampling() {
+        RequestTracer tracer = new RequestTracer(2);
+        assertFalse(tracer.startTrace("plan").isEnabled());
+        tracer.setSampleEvery(3);
+        int enabled = 0;
+        for (int i = 0; i < 9; i++) {
+            RequestTrace trace = tracer.startTrace("plan" + i);
+            if (trace.isEnabled())
+                enabled++;
+            tracer.finish(trace);
+        }
+        assertEquals(3, enabled);
+        // the ring buffer keeps the last two
+        List<RequestTrace> traces = tracer.getTraces();
+        assertEquals(2, traces.size());
+        assertEquals("plan5", traces.get(0).getName());
+        assertEquals("plan8", traces.get(1).getName());
+        tracer.clear();
+        assertTrue(tracer.getTraces().isEmpty());
+    }
+
+    public void testSpans() throws Exception {
+        RequestTracer tracer = new RequestTracer(10);
+        tracer.setSampleEvery(1);
+        final RequestTrace trace = tracer.startTrace("plan");
+        Span paths = trace.start("paths");
+        trace.start("routingContext").end();
+        // a span on another thread is nested in the span open on the thread of the request
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                Span search = trace.start("search");
+                trace.start("heuristic").end();
+                search.end();
+            }
+        };
+        thread.start();
+        thread.join();
+        paths.end();
+        trace.start("render").end();
+        trace.addStat("verticesSettled", 42);
+        tracer.finish(trace);
+        assertTrue(trace.getDurationNanos() >= 0);
+
+        StringWriter folded = new StringWriter();
+        tracer.writeFolded(folded);
+        String text = folded.toString();
+        assertTrue(text.contains("plan "));
+        assertTrue(text.contains("plan;paths "));
+        assertTrue(text.contains("plan;paths;routingContext "));
+        assertTrue(text.contains("plan;paths;search "));
+        assertTrue(text.contains("plan;paths;search;heuristic "));
+        assertTrue(text.contains("plan;render "));
+        assertEquals(6, text.split("\n").length);
+
+        StringWriter timelines = new StringWriter();
+        tracer.writeTimelines(timelines);
+        assertTrue(timelines.toString().contains("verticesSettled=42"));
+    }
+
+    public void testDisabled() {
+        RequestTrace trace = RequestTrace.DISABLED;
+        trace.start("paths").end();
+        trace.addStat("verticesSettled", 42);
+        assertTrue(trace.getSpans().isEmpty());
+        assertTrue(trace.getStats().isEmpty());
+        assertSame(RequestTrace.DISABLED, RequestTrace.getCurrent());
+    }
+}